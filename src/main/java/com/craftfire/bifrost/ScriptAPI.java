@@ -19,20 +19,38 @@
  */
 package com.craftfire.bifrost;
 
-import java.util.HashMap;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import com.craftfire.bifrost.exceptions.ScriptException;
 
 import com.craftfire.commons.database.DataManager;
 import com.craftfire.commons.util.LoggingManager;
 
+import com.craftfire.bifrost.cache.CacheRegistry;
+import com.craftfire.bifrost.cache.CacheSnapshot;
+import com.craftfire.bifrost.cache.InvalidationBus;
+import com.craftfire.bifrost.cache.InvalidationTransport;
 import com.craftfire.bifrost.classes.cms.CMSHandle;
 import com.craftfire.bifrost.classes.cms.CMSScript;
 import com.craftfire.bifrost.classes.forum.ForumHandle;
 import com.craftfire.bifrost.classes.forum.ForumScript;
+import com.craftfire.bifrost.classes.general.Cache;
 import com.craftfire.bifrost.classes.general.Script;
 import com.craftfire.bifrost.classes.general.ScriptHandle;
+import com.craftfire.bifrost.enums.CacheGroup;
 import com.craftfire.bifrost.enums.Scripts;
 import com.craftfire.bifrost.scripts.cms.WordPress;
 import com.craftfire.bifrost.scripts.forum.PhpBB;
@@ -46,10 +64,21 @@ import com.craftfire.bifrost.scripts.forum.XenForo;
  * @see ScriptHandle
  */
 public class ScriptAPI {
+    /**
+     * The cache groups written to snapshots if no other groups have been set, the objects that are loaded most
+     * often right after a restart.
+     */
+    public static final Set<CacheGroup> DEFAULT_SNAPSHOT_GROUPS = EnumSet.of(CacheGroup.USER, CacheGroup.USER_ID,
+            CacheGroup.USER_USERNAME, CacheGroup.USER_GROUP, CacheGroup.GROUP, CacheGroup.GROUP_ID, CacheGroup.BOARD);
     private final Bifrost bifrost;
     private int handleID = 0;
-    private Map<Integer, ScriptHandle> handles = new HashMap<Integer, ScriptHandle>();
+    // The snapshot timer reads the handles while they are added and removed.
+    private final Map<Integer, ScriptHandle> handles = new ConcurrentHashMap<Integer, ScriptHandle>();
     private ScriptHandle lastHandle = null;
+    private File snapshotDirectory = null;
+    private Set<CacheGroup> snapshotGroups = DEFAULT_SNAPSHOT_GROUPS;
+    private ScheduledExecutorService snapshotTimer = null;
+    private final CacheRegistry caches = new CacheRegistry();
 
     /**
      * The default constructor.
@@ -232,6 +261,9 @@ public class ScriptAPI {
 
     /**
      * Creates a handle for given script and adds it to the list.
+     * <p>
+     * Handles of the same script for the same database and table prefix share one {@link Cache}, so objects are
+     * cached once and invalidated for all of them.
      * 
      * @param script  the script to create handle for
      * @return        an id assigned to the handle
@@ -240,6 +272,13 @@ public class ScriptAPI {
         if (script == null) {
             throw new IllegalArgumentException("Parameter 'script' cannot be null.");
         }
+        boolean shared = false;
+        String cacheKey = script.getCacheKey();
+        if (cacheKey != null) {
+            Cache cache = this.caches.acquire(cacheKey, script.getCache());
+            shared = cache != script.getCache();
+            script.setCache(cache);
+        }
         ScriptHandle handle;
         int id = this.getNewHandleID();
         switch (script.getType()) {
@@ -262,9 +301,192 @@ public class ScriptAPI {
                 "ScriptAPI: Adding handle ID: '" + id + "' with type: '" + script.getType() + "' for script: '" + script.getScriptName() + "', version: '" + script.getVersion() + "'");
         this.handles.put(id, handle);
         this.lastHandle = handle;
+        if (!shared) {
+            loadSnapshot(script);
+        }
         return id;
     }
 
+    /**
+     * Removes the handle from the list, the cache of its script is shut down if no other handle shares it.
+     *
+     * @param  handleID  the ID of the handle to remove
+     * @return           the removed handle, or null if it does not exist
+     */
+    public ScriptHandle removeHandle(int handleID) {
+        ScriptHandle handle = this.handles.remove(handleID);
+        if (handle == null) {
+            return null;
+        }
+        if (this.lastHandle == handle) {
+            this.lastHandle = null;
+        }
+        String cacheKey = handle.getScript().getCacheKey();
+        if (cacheKey != null && this.caches.release(cacheKey)) {
+            getLogger().debug("ScriptAPI: Shut down the cache of " + cacheKey);
+        }
+        getLogger().debug("ScriptAPI: Removed handle ID: '" + handleID + "'");
+        return handle;
+    }
+
+    /**
+     * Sends the cache invalidations of the handle to the other nodes that read the same database, and applies theirs.
+     * <p>
+     * The channel of the bus is the cache key of the script, so every node has to connect the handles of the same
+     * database. Handles that share a cache share its bus as well.
+     *
+     * @param  handleID   the ID of the handle
+     * @param  transport  the {@link InvalidationTransport} connecting the nodes
+     * @return            the started {@link InvalidationBus}
+     * @throws IOException  if the transport could not be opened
+     */
+    public InvalidationBus connectInvalidations(int handleID, InvalidationTransport transport) throws IOException {
+        ScriptHandle handle = getHandle(handleID);
+        if (handle == null) {
+            throw new IllegalArgumentException("Handle " + handleID + " does not exist.");
+        }
+        Cache cache = handle.getCache();
+        if (cache.getInvalidationBus() != null) {
+            return cache.getInvalidationBus();
+        }
+        String channel = handle.getScript().getCacheKey();
+        InvalidationBus bus = new InvalidationBus(cache, (channel == null) ? handle.getScript().getScriptName() : channel, transport);
+        bus.start();
+        getLogger().debug("ScriptAPI: Connected the cache invalidations of handle ID: '" + handleID + "'");
+        return bus;
+    }
+
+    /**
+     * Returns the directory the cache snapshots of the handles are written to.
+     *
+     * @return the directory, or null if snapshots are disabled
+     */
+    public File getSnapshotDirectory() {
+        return this.snapshotDirectory;
+    }
+
+    /**
+     * Sets the directory the cache snapshots of the handles are written to.
+     * <p>
+     * Handles that are added afterwards restore the snapshot of their script from this directory, see
+     * {@link CacheSnapshot}. The snapshots are written by {@link #saveSnapshots()}, which should be called on
+     * shutdown, or by the timer of {@link #scheduleSnapshots(long, TimeUnit)}.
+     *
+     * @param directory  the directory, null to disable snapshots
+     */
+    public void setSnapshotDirectory(File directory) {
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalArgumentException("Could not create the snapshot directory " + directory + ".");
+        }
+        this.snapshotDirectory = directory;
+    }
+
+    /**
+     * Sets the cache groups that are written to the snapshots, {@link #DEFAULT_SNAPSHOT_GROUPS} by default.
+     *
+     * @param groups  the {@link CacheGroup}s
+     */
+    public void setSnapshotGroups(CacheGroup... groups) {
+        this.snapshotGroups = groups.length == 0 ? EnumSet.noneOf(CacheGroup.class) : EnumSet.copyOf(Arrays.asList(groups));
+    }
+
+    /**
+     * Returns the file of the cache snapshot of the script.
+     * <p>
+     * The name depends on the script, the host, the database and the table prefix, so handles for the same
+     * database share the snapshot across restarts.
+     *
+     * @param  script  the {@link Script}
+     * @return         the file, or null if snapshots are disabled
+     */
+    public File getSnapshotFile(Script script) {
+        if (this.snapshotDirectory == null) {
+            return null;
+        }
+        String source = script.getDataManager().getHost() + "/" + script.getDataManager().getDatabase() + "/"
+                + script.getDataManager().getPrefix();
+        return new File(this.snapshotDirectory, script.getScript().name().toLowerCase() + "-"
+                + Integer.toHexString(source.hashCode()) + ".cache");
+    }
+
+    /**
+     * Writes the cache snapshots of all handles to the snapshot directory.
+     *
+     * @throws IOException  if a snapshot could not be written, the other snapshots are still written
+     */
+    public void saveSnapshots() throws IOException {
+        if (this.snapshotDirectory == null) {
+            return;
+        }
+        IOException failure = null;
+        Set<Cache> saved = Collections.newSetFromMap(new IdentityHashMap<Cache, Boolean>());
+        for (ScriptHandle handle : new ArrayList<ScriptHandle>(this.handles.values())) {
+            Script script = handle.getScript();
+            if (!saved.add(script.getCache())) {
+                // The cache is shared with a handle that has already been saved.
+                continue;
+            }
+            try {
+                script.getCache().saveSnapshot(getSnapshotFile(script), script.getCacheVersion(), this.snapshotGroups);
+                getLogger().debug("ScriptAPI: Saved the cache snapshot of " + script.getScriptName());
+            } catch (IOException e) {
+                failure = e;
+            } catch (Exception e) {
+                failure = new IOException("Could not read the cache version of " + script.getScriptName() + ": " + e.getMessage());
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Writes the cache snapshots of all handles periodically, in a background thread.
+     *
+     * @param period  the time between two snapshots, 0 to stop writing snapshots
+     * @param unit    the {@link TimeUnit} of the period
+     */
+    public synchronized void scheduleSnapshots(long period, TimeUnit unit) {
+        if (this.snapshotTimer != null) {
+            this.snapshotTimer.shutdown();
+            this.snapshotTimer = null;
+        }
+        if (period <= 0) {
+            return;
+        }
+        this.snapshotTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "Bifrost cache snapshots");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.snapshotTimer.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    saveSnapshots();
+                } catch (IOException e) {
+                    getLogger().error("ScriptAPI: Could not save the cache snapshots: " + e.getMessage());
+                }
+            }
+        }, period, period, unit);
+    }
+
+    private void loadSnapshot(Script script) {
+        File file = getSnapshotFile(script);
+        if (file == null || !file.isFile()) {
+            return;
+        }
+        try {
+            script.getCache().loadSnapshot(CacheSnapshot.open(script, file));
+            getLogger().debug("ScriptAPI: Restoring the cache snapshot " + file + " lazily");
+        } catch (IOException e) {
+            getLogger().warning("ScriptAPI: Could not read the cache snapshot " + file + ": " + e.getMessage());
+        }
+    }
+
     /**
      * Checks if a script handle already exists, returns true if it does, false if not
      *
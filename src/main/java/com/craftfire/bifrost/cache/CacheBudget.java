@@ -0,0 +1,125 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.cache;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The memory budget shared by all {@link CacheSegment}s of one {@link com.craftfire.bifrost.classes.general.Cache}.
+ * <p>
+ * The segments report the estimated size of the entries they store and remove, see {@link CacheEntry#weight()}.
+ * When the total grows over the maximum, entries are evicted from the segment that holds the most bytes until the
+ * cache fits again. Only bounded segments are evicted, unbounded segments only count towards the total.
+ */
+public class CacheBudget {
+    private final AtomicLong bytes = new AtomicLong();
+    private final List<CacheSegment> segments = new CopyOnWriteArrayList<CacheSegment>();
+    private volatile long maximumBytes;
+
+    /**
+     * Creates a new budget.
+     *
+     * @param maximumBytes  the maximum amount of bytes, 0 if unbounded
+     */
+    public CacheBudget(long maximumBytes) {
+        this.maximumBytes = maximumBytes;
+    }
+
+    /**
+     * Returns the maximum amount of bytes the cache may use.
+     *
+     * @return the maximum amount of bytes, 0 if unbounded
+     */
+    public long getMaximumBytes() {
+        return this.maximumBytes;
+    }
+
+    /**
+     * Sets the maximum amount of bytes the cache may use, evicting entries if needed.
+     *
+     * @param maximumBytes  the maximum amount of bytes, 0 if unbounded
+     */
+    public void setMaximumBytes(long maximumBytes) {
+        this.maximumBytes = maximumBytes;
+        enforce();
+    }
+
+    /**
+     * Returns the estimated amount of bytes the entries of all segments use.
+     *
+     * @return the amount of bytes
+     */
+    public long getBytes() {
+        return this.bytes.get();
+    }
+
+    /**
+     * Adds a segment to the budget, this is done by the segment itself.
+     *
+     * @param segment  the {@link CacheSegment}
+     */
+    void register(CacheSegment segment) {
+        this.segments.add(segment);
+    }
+
+    /**
+     * Changes the amount of bytes in use, this is done by the segments when entries are stored or removed.
+     *
+     * @param delta  the amount of bytes that have been added, negative if removed
+     */
+    void add(long delta) {
+        this.bytes.addAndGet(delta);
+    }
+
+    /**
+     * Returns {@code true} if the cache uses more bytes than the maximum.
+     *
+     * @return {@code true} if over the budget, {@code false} if not
+     */
+    public boolean isExceeded() {
+        long maximum = this.maximumBytes;
+        return maximum > 0 && this.bytes.get() > maximum;
+    }
+
+    /**
+     * Evicts entries from the heaviest segments until the cache fits in the budget.
+     */
+    public void enforce() {
+        if (!isExceeded()) {
+            return;
+        }
+        synchronized (this) {
+            while (isExceeded()) {
+                CacheSegment heaviest = null;
+                for (CacheSegment segment : this.segments) {
+                    if (segment.getPolicy() != null && segment.getBytes() > 0
+                            && (heaviest == null || segment.getBytes() > heaviest.getBytes())) {
+                        heaviest = segment;
+                    }
+                }
+                if (heaviest == null || !heaviest.evictHeaviest()) {
+                    return;
+                }
+            }
+        }
+    }
+}
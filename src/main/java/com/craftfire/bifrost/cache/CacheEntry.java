@@ -0,0 +1,297 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Wraps an object stored in the {@link com.craftfire.bifrost.classes.general.Cache} together with its timestamps.
+ * <p>
+ * Metadatable entries can also hold metadata, which the cleanup methods use to remember old values.
+ * <p>
+ * The entry remembers its own key, either an object or a primitive {@code int}, so it can be tracked
+ * by the {@link EvictionPolicy} and removed again when it is evicted.
+ * <p>
+ * The size of the entry is estimated once when it is created, see {@link #weight()}.
+ */
+public class CacheEntry extends EvictionPolicy.Node {
+    /**
+     * The estimated size of an entry without its key and value, including its slot in the storage.
+     */
+    public static final int OVERHEAD = 64;
+    private static final AtomicIntegerFieldUpdater<CacheEntry> REFRESHING = AtomicIntegerFieldUpdater.newUpdater(CacheEntry.class, "refreshing");
+    private final Object key;
+    private final int intKey;
+    private final Object value;
+    private final Map<String, Object> metadata;
+    private final long writeTime;
+    private final long weight;
+    private volatile long accessTime;
+    private volatile int refreshing;
+    private volatile CacheTag[] tags;
+
+    /**
+     * Creates a new entry with an object key, written now.
+     *
+     * @param key          the key of the entry, can't be null
+     * @param value        the cached object
+     * @param metadatable  {@code true} if the entry can hold metadata, {@code false} if not
+     */
+    public CacheEntry(Object key, Object value, boolean metadatable) {
+        this(key, 0, value, metadatable);
+        if (key == null) {
+            throw new IllegalArgumentException("The key can't be null.");
+        }
+    }
+
+    /**
+     * Creates a new entry with a primitive key, written now.
+     *
+     * @param key          the key of the entry
+     * @param value        the cached object
+     * @param metadatable  {@code true} if the entry can hold metadata, {@code false} if not
+     */
+    public CacheEntry(int key, Object value, boolean metadatable) {
+        this(null, key, value, metadatable);
+    }
+
+    private CacheEntry(Object key, int intKey, Object value, boolean metadatable) {
+        this.key = key;
+        this.intKey = intKey;
+        this.value = value;
+        this.metadata = metadatable ? new HashMap<String, Object>() : null;
+        this.writeTime = System.nanoTime();
+        this.accessTime = this.writeTime;
+        this.weight = OVERHEAD + SizeEstimator.estimate(key) + SizeEstimator.estimate(value);
+    }
+
+    /**
+     * Returns {@code true} if the entry has a primitive {@code int} key, {@code false} if it has an object key.
+     *
+     * @return {@code true} if the key is an {@code int}, {@code false} if not
+     */
+    public boolean hasIntKey() {
+        return this.key == null;
+    }
+
+    /**
+     * Returns the object key of the entry.
+     *
+     * @return the key, or null if the entry has an {@code int} key
+     */
+    public Object getKey() {
+        return this.key;
+    }
+
+    /**
+     * Returns the primitive key of the entry.
+     *
+     * @return the key, 0 if the entry has an object key
+     */
+    public int getIntKey() {
+        return this.intKey;
+    }
+
+    /**
+     * Returns a new entry with the same key and metadata, holding the specified object.
+     *
+     * @param  newValue  the new cached object
+     * @return           the new {@link CacheEntry}
+     */
+    public CacheEntry withValue(Object newValue) {
+        CacheEntry entry = new CacheEntry(this.key, this.intKey, newValue, isMetadatable());
+        copyMetadataTo(entry);
+        return entry;
+    }
+
+    @Override
+    protected int keyHash() {
+        return (this.key == null) ? this.intKey : this.key.hashCode();
+    }
+
+    /**
+     * Returns the estimated size of the entry, its key and its value in bytes, see {@link SizeEstimator}.
+     *
+     * @return the size in bytes
+     */
+    @Override
+    public long weight() {
+        return this.weight;
+    }
+
+    /**
+     * Returns the cached object.
+     *
+     * @return the cached object
+     */
+    public Object getValue() {
+        return this.value;
+    }
+
+    /**
+     * Returns the time the entry has been written, in {@link System#nanoTime()} units.
+     *
+     * @return the write time
+     */
+    public long getWriteTime() {
+        return this.writeTime;
+    }
+
+    /**
+     * Returns the time the entry has been read for the last time, in {@link System#nanoTime()} units.
+     *
+     * @return the access time
+     */
+    public long getAccessTime() {
+        return this.accessTime;
+    }
+
+    /**
+     * Marks the entry as read at the specified time.
+     *
+     * @param time  the access time, in {@link System#nanoTime()} units
+     */
+    public void setAccessTime(long time) {
+        this.accessTime = time;
+    }
+
+    /**
+     * Marks the entry as being refreshed.
+     *
+     * @return {@code true} if the caller should refresh the entry, {@code false} if a refresh is already running
+     */
+    public boolean startRefresh() {
+        return REFRESHING.compareAndSet(this, 0, 1);
+    }
+
+    /**
+     * Marks the refresh of the entry as finished.
+     */
+    public void finishRefresh() {
+        this.refreshing = 0;
+    }
+
+    /**
+     * Returns the tags of the entry, the entities it depends on.
+     *
+     * @return the {@link CacheTag}s, or null if the entry is not tagged
+     */
+    public CacheTag[] getTags() {
+        return this.tags;
+    }
+
+    /**
+     * Sets the tags of the entry, this is done by the {@link CacheTagIndex} when it indexes the entry.
+     *
+     * @param tags  the {@link CacheTag}s, null if the entry is not tagged
+     */
+    public void setTags(CacheTag[] tags) {
+        this.tags = tags;
+    }
+
+    /**
+     * Returns {@code true} if the entry can hold metadata, {@code false} if not.
+     *
+     * @return {@code true} if metadatable, {@code false} if not
+     */
+    public boolean isMetadatable() {
+        return this.metadata != null;
+    }
+
+    /**
+     * Returns the value of the metadata key.
+     *
+     * @param  key  the meta key
+     * @return      the meta value, or null if not set or the entry is not metadatable
+     */
+    public Object getMetadata(String key) {
+        if (this.metadata == null) {
+            return null;
+        }
+        synchronized (this.metadata) {
+            return this.metadata.get(key);
+        }
+    }
+
+    /**
+     * Sets the value of the metadata key.
+     *
+     * @param  key    the meta key
+     * @param  value  the meta value
+     * @return        {@code true} if succeeded, {@code false} if the entry is not metadatable
+     */
+    public boolean setMetadata(String key, Object value) {
+        if (this.metadata == null) {
+            return false;
+        }
+        synchronized (this.metadata) {
+            this.metadata.put(key, value);
+        }
+        return true;
+    }
+
+    /**
+     * Removes the metadata key.
+     *
+     * @param  key  the meta key
+     * @return      {@code true} if succeeded, {@code false} if the entry is not metadatable
+     */
+    public boolean removeMetadata(String key) {
+        if (this.metadata == null) {
+            return false;
+        }
+        synchronized (this.metadata) {
+            this.metadata.remove(key);
+        }
+        return true;
+    }
+
+    /**
+     * Returns a copy of all metadata of the entry.
+     *
+     * @return the metadata, or null if the entry is not metadatable
+     */
+    public Map<String, Object> copyMetadata() {
+        if (this.metadata == null) {
+            return null;
+        }
+        synchronized (this.metadata) {
+            return new HashMap<String, Object>(this.metadata);
+        }
+    }
+
+    /**
+     * Copies all metadata of this entry to the specified entry, if both are metadatable.
+     *
+     * @param target  the {@link CacheEntry} to copy the metadata to
+     */
+    public void copyMetadataTo(CacheEntry target) {
+        if (this.metadata == null || target.metadata == null) {
+            return;
+        }
+        synchronized (this.metadata) {
+            synchronized (target.metadata) {
+                target.metadata.putAll(this.metadata);
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.cache;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the expiry settings of a {@link com.craftfire.bifrost.enums.CacheGroup}.
+ * <p>
+ * An object expires when it was stored longer than the write TTL ago, or when it was not read for longer
+ * than the access TTL. An expired object can still be returned for the stale-while-revalidate period if
+ * the group has a {@link CacheLoader}, while one refresh runs in the background.
+ * <p>
+ * A duration of 0 disables that setting, {@link #NEVER} never expires.
+ */
+public class CacheExpiry {
+    /**
+     * Expiry settings that never expire an object.
+     */
+    public static final CacheExpiry NEVER = new CacheExpiry(0, 0, 0, TimeUnit.MILLISECONDS);
+    private final long expireAfterWrite;
+    private final long expireAfterAccess;
+    private final long staleWhileRevalidate;
+
+    /**
+     * Creates new expiry settings.
+     *
+     * @param expireAfterWrite      how long after being stored an object expires, 0 to disable
+     * @param expireAfterAccess     how long after being read an object expires, 0 to disable
+     * @param staleWhileRevalidate  how long an expired object may still be returned while it's refreshed, 0 to disable
+     * @param unit                  the {@link TimeUnit} of the durations
+     */
+    public CacheExpiry(long expireAfterWrite, long expireAfterAccess, long staleWhileRevalidate, TimeUnit unit) {
+        if (expireAfterWrite < 0 || expireAfterAccess < 0 || staleWhileRevalidate < 0) {
+            throw new IllegalArgumentException("The durations can't be negative.");
+        }
+        this.expireAfterWrite = unit.toNanos(expireAfterWrite);
+        this.expireAfterAccess = unit.toNanos(expireAfterAccess);
+        this.staleWhileRevalidate = unit.toNanos(staleWhileRevalidate);
+    }
+
+    /**
+     * Returns the write TTL in nanoseconds.
+     *
+     * @return the write TTL, 0 if disabled
+     */
+    public long getExpireAfterWrite() {
+        return this.expireAfterWrite;
+    }
+
+    /**
+     * Returns the access TTL in nanoseconds.
+     *
+     * @return the access TTL, 0 if disabled
+     */
+    public long getExpireAfterAccess() {
+        return this.expireAfterAccess;
+    }
+
+    /**
+     * Returns the stale-while-revalidate period in nanoseconds.
+     *
+     * @return the stale-while-revalidate period, 0 if disabled
+     */
+    public long getStaleWhileRevalidate() {
+        return this.staleWhileRevalidate;
+    }
+
+    /**
+     * Returns {@code true} if these settings ever expire an object, {@code false} if not.
+     *
+     * @return {@code true} if objects can expire, {@code false} if not
+     */
+    public boolean isExpiring() {
+        return this.expireAfterWrite > 0 || this.expireAfterAccess > 0;
+    }
+
+    /**
+     * Returns the time at which the entry expires, in {@link System#nanoTime()} units.
+     *
+     * @param  entry  the {@link CacheEntry} to check
+     * @return        the expiry time, or {@link Long#MAX_VALUE} if it doesn't expire
+     */
+    public long getExpiryTime(CacheEntry entry) {
+        long expiry = Long.MAX_VALUE;
+        if (this.expireAfterWrite > 0) {
+            expiry = entry.getWriteTime() + this.expireAfterWrite;
+        }
+        if (this.expireAfterAccess > 0) {
+            expiry = Math.min(expiry, entry.getAccessTime() + this.expireAfterAccess);
+        }
+        return expiry;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.cache;
+
+import java.sql.SQLException;
+import java.util.concurrent.CountDownLatch;
+
+import com.craftfire.bifrost.exceptions.ScriptException;
+
+/**
+ * A load of a cached object that is in progress.
+ * <p>
+ * Concurrent misses on the same object wait for the load started by the first caller instead of querying
+ * the database themselves, and receive the same value or exception.
+ */
+public class CacheLoad {
+    private final CountDownLatch done = new CountDownLatch(1);
+    private Object value;
+    private Throwable failure;
+
+    /**
+     * Completes the load with the loaded value.
+     *
+     * @param loaded  the loaded value
+     */
+    public void complete(Object loaded) {
+        this.value = loaded;
+        this.done.countDown();
+    }
+
+    /**
+     * Completes the load with an exception.
+     *
+     * @param exception  the exception thrown by the loader
+     */
+    public void fail(Throwable exception) {
+        this.failure = exception;
+        this.done.countDown();
+    }
+
+    /**
+     * Waits for the load to complete and returns the loaded value.
+     *
+     * @return                   the loaded value
+     * @throws SQLException      if the loader threw a {@link SQLException}
+     * @throws ScriptException   if the loader threw a {@link ScriptException}, or the thread was interrupted
+     */
+    public Object await() throws SQLException, ScriptException {
+        try {
+            this.done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ScriptException("Interrupted while waiting for the cache to load the object.", e);
+        }
+        if (this.failure instanceof SQLException) {
+            throw (SQLException) this.failure;
+        } else if (this.failure instanceof ScriptException) {
+            throw (ScriptException) this.failure;
+        } else if (this.failure instanceof RuntimeException) {
+            throw (RuntimeException) this.failure;
+        } else if (this.failure instanceof Error) {
+            throw (Error) this.failure;
+        }
+        return this.value;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.cache;
+
+import java.sql.SQLException;
+
+import com.craftfire.bifrost.exceptions.ScriptException;
+
+/**
+ * Loads the value of a cached object from the script when it is missing or has to be refreshed.
+ *
+ * @param <V>  the type of the loaded value
+ */
+public interface CacheLoader<V> {
+    /**
+     * Loads the value of the object with the specified ID.
+     *
+     * @param  id                the ID of the object
+     * @return                   the loaded value, or null if there is no such object
+     * @throws SQLException      if a MySQL exception occurred
+     * @throws ScriptException   if any other exception occurred
+     */
+    V load(Object id) throws SQLException, ScriptException;
+}
@@ -0,0 +1,105 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.craftfire.bifrost.classes.general.Cache;
+
+/**
+ * Shares one {@link Cache} between the scripts that read the same database, so every object is cached once and
+ * an invalidation by one handle is seen by all of them.
+ * <p>
+ * Caches are registered by a key naming the script, the database and the table prefix, and counted by the
+ * amount of scripts using them. The cache is shut down when the last script releases it.
+ */
+public class CacheRegistry {
+    private final Map<String, Shared> caches = new HashMap<String, Shared>();
+
+    /**
+     * Returns the cache registered under the key, registering the specified cache if there is none yet.
+     *
+     * @param  key    the key of the database, see {@link #getKey(String, String, String, String)}
+     * @param  cache  the {@link Cache} of the calling script, registered if the key is new
+     * @return        the shared {@link Cache}
+     */
+    public synchronized Cache acquire(String key, Cache cache) {
+        Shared shared = this.caches.get(key);
+        if (shared == null) {
+            shared = new Shared(cache);
+            this.caches.put(key, shared);
+        }
+        shared.references++;
+        return shared.cache;
+    }
+
+    /**
+     * Releases a reference to the cache registered under the key, shutting it down if it was the last one.
+     *
+     * @param  key  the key of the database
+     * @return      {@code true} if the cache has been shut down, {@code false} if it is still used
+     */
+    public synchronized boolean release(String key) {
+        Shared shared = this.caches.get(key);
+        if (shared == null) {
+            return false;
+        }
+        if (--shared.references > 0) {
+            return false;
+        }
+        this.caches.remove(key);
+        shared.cache.shutdown();
+        return true;
+    }
+
+    /**
+     * Returns the amount of scripts using the cache registered under the key.
+     *
+     * @param  key  the key of the database
+     * @return      the amount of references, 0 if no cache is registered
+     */
+    public synchronized int getReferences(String key) {
+        Shared shared = this.caches.get(key);
+        return (shared == null) ? 0 : shared.references;
+    }
+
+    /**
+     * Returns the key of a database for the specified script.
+     *
+     * @param  script    the name of the script
+     * @param  host      the host of the database
+     * @param  database  the name of the database
+     * @param  prefix    the table prefix of the script
+     * @return           the key
+     */
+    public static String getKey(String script, String host, String database, String prefix) {
+        return script + "@" + host + "/" + database + "/" + prefix;
+    }
+
+    private static final class Shared {
+        private final Cache cache;
+        private int references;
+
+        private Shared(Cache cache) {
+            this.cache = cache;
+        }
+    }
+}
@@ -0,0 +1,631 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.craftfire.bifrost.enums.CacheGroup;
+
+/**
+ * Holds the objects and the settings of one {@link CacheGroup}.
+ * <p>
+ * The {@link com.craftfire.bifrost.classes.general.Cache} keeps one segment per group, indexed by the ordinal
+ * of the group, so a lookup only hashes the ID of the object.
+ * <p>
+ * Numeric IDs, which most entities use, are kept in striped {@link IntObjectMap}s so they don't need a
+ * boxed key or a hash map node per object. All other IDs are kept in a concurrent hash map.
+ * <p>
+ * Stored entries are tagged with the entities they depend on in the {@link CacheTagIndex} of the cache.
+ * <p>
+ * The segment also counts the reads, loads and evictions of the group, see {@link #getStats()}, and the estimated
+ * bytes of its entries, which count towards the {@link CacheBudget} of the cache.
+ * <p>
+ * If the segment has an {@link OffHeapStore}, evicted entries are demoted to it and promoted back when they are
+ * looked up again.
+ */
+public class CacheSegment {
+    private static final int STRIPES = 8;
+    private static final Object NULL_KEY = new Object();
+    private final CacheGroup group;
+    private final CacheTagIndex tagIndex;
+    private final CacheBudget budget;
+    private final ConcurrentMap<Object, CacheEntry> entries = new ConcurrentHashMap<Object, CacheEntry>(16, 0.75f, 4);
+    private final IntObjectMap<CacheEntry>[] intEntries;
+    private final ConcurrentMap<Object, CacheLoad> loads = new ConcurrentHashMap<Object, CacheLoad>(16, 0.75f, 4);
+    private volatile int maximumSize;
+    private volatile EvictionPolicy policy;
+    private volatile CacheExpiry expiry = CacheExpiry.NEVER;
+    private volatile CacheLoader<?> loader;
+    private volatile OffHeapStore offHeap;
+    private final StripedCounter hits = new StripedCounter();
+    private final StripedCounter misses = new StripedCounter();
+    private final AtomicLong loadSuccesses = new AtomicLong();
+    private final AtomicLong loadFailures = new AtomicLong();
+    private final AtomicLong totalLoadTime = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+
+    /**
+     * Creates a new segment.
+     *
+     * @param group        the {@link CacheGroup} of the segment
+     * @param maximumSize  the maximum amount of objects, 0 if unbounded
+     * @param tagIndex     the {@link CacheTagIndex} of the cache
+     * @param budget       the {@link CacheBudget} of the cache
+     */
+    public CacheSegment(CacheGroup group, int maximumSize, CacheTagIndex tagIndex, CacheBudget budget) {
+        this.group = group;
+        this.tagIndex = tagIndex;
+        this.budget = budget;
+        this.maximumSize = maximumSize;
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        IntObjectMap<CacheEntry>[] stripes = new IntObjectMap[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new IntObjectMap<CacheEntry>(4);
+        }
+        this.intEntries = stripes;
+        budget.register(this);
+    }
+
+    /**
+     * Returns the {@link CacheGroup} of the segment.
+     *
+     * @return the {@link CacheGroup}
+     */
+    public CacheGroup getGroup() {
+        return this.group;
+    }
+
+    /**
+     * Returns the maximum amount of objects in the segment.
+     *
+     * @return the maximum amount of objects, 0 if unbounded
+     */
+    public int getMaximumSize() {
+        return this.maximumSize;
+    }
+
+    /**
+     * Sets the maximum amount of objects in the segment, evicting objects if needed.
+     *
+     * @param maximumSize  the maximum amount of objects, 0 if unbounded
+     */
+    public synchronized void setMaximumSize(int maximumSize) {
+        this.maximumSize = maximumSize;
+        if (maximumSize == 0) {
+            this.policy = null;
+        } else if (this.policy != null) {
+            evict(this.policy.setMaximumSize(maximumSize));
+        }
+    }
+
+    /**
+     * Returns the {@link EvictionPolicy} of the segment.
+     *
+     * @return the {@link EvictionPolicy}, or null if the segment is unbounded
+     */
+    public EvictionPolicy getPolicy() {
+        EvictionPolicy current = this.policy;
+        if (current == null && this.maximumSize > 0) {
+            synchronized (this) {
+                if (this.policy == null && this.maximumSize > 0) {
+                    this.policy = new EvictionPolicy(this.maximumSize);
+                }
+                current = this.policy;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Returns the expiry settings of the segment.
+     *
+     * @return the {@link CacheExpiry}
+     */
+    public CacheExpiry getExpiry() {
+        return this.expiry;
+    }
+
+    /**
+     * Sets the expiry settings of the segment.
+     *
+     * @param expiry  the {@link CacheExpiry}, null to never expire
+     */
+    public void setExpiry(CacheExpiry expiry) {
+        this.expiry = (expiry == null) ? CacheExpiry.NEVER : expiry;
+    }
+
+    /**
+     * Returns the {@link CacheLoader} used to refresh expired objects.
+     *
+     * @return the {@link CacheLoader}, or null if none
+     */
+    public CacheLoader<?> getLoader() {
+        return this.loader;
+    }
+
+    /**
+     * Sets the {@link CacheLoader} used to refresh expired objects.
+     *
+     * @param loader  the {@link CacheLoader}, null to remove it
+     */
+    public void setLoader(CacheLoader<?> loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Returns the {@link OffHeapStore} evicted entries are demoted to.
+     *
+     * @return the {@link OffHeapStore}, or null if evicted entries are discarded
+     */
+    public OffHeapStore getOffHeapStore() {
+        return this.offHeap;
+    }
+
+    /**
+     * Sets the {@link OffHeapStore} evicted entries are demoted to.
+     *
+     * @param offHeap  the {@link OffHeapStore}, null to discard evicted entries
+     */
+    public void setOffHeapStore(OffHeapStore offHeap) {
+        this.offHeap = offHeap;
+    }
+
+    /**
+     * Returns the entry of the object, whether it is expired or not.
+     * <p>
+     * {@link Integer} IDs are looked up in the primitive maps. Demoted entries are promoted back.
+     *
+     * @param  id  the ID of the object
+     * @return     the {@link CacheEntry}, or null if not cached
+     */
+    public CacheEntry getEntry(Object id) {
+        if (id instanceof Integer) {
+            return getEntry(((Integer) id).intValue());
+        }
+        CacheEntry entry = this.entries.get(maskNull(id));
+        return (entry == null && this.offHeap != null) ? promote(id) : entry;
+    }
+
+    /**
+     * Returns the entry of the object with a numeric ID, whether it is expired or not.
+     *
+     * @param  id  the ID of the object
+     * @return     the {@link CacheEntry}, or null if not cached
+     */
+    public CacheEntry getEntry(int id) {
+        IntObjectMap<CacheEntry> stripe = stripe(id);
+        CacheEntry entry;
+        synchronized (stripe) {
+            entry = stripe.get(id);
+        }
+        return (entry == null && this.offHeap != null) ? promote(Integer.valueOf(id)) : entry;
+    }
+
+    /**
+     * Returns the ID the entry is stored under.
+     *
+     * @param  entry  the {@link CacheEntry}
+     * @return        the ID, an {@link Integer} if the entry has a numeric ID
+     */
+    public Object getId(CacheEntry entry) {
+        return entry.hasIntKey() ? Integer.valueOf(entry.getIntKey()) : unmaskNull(entry.getKey());
+    }
+
+    /**
+     * Returns a copy of all entries of the segment, whether they are expired or not.
+     *
+     * @return the list of {@link CacheEntry}s
+     */
+    public List<CacheEntry> entries() {
+        List<CacheEntry> all = new ArrayList<CacheEntry>(this.entries.values());
+        for (IntObjectMap<CacheEntry> stripe : this.intEntries) {
+            synchronized (stripe) {
+                all.addAll(stripe.values());
+            }
+        }
+        return all;
+    }
+
+    /**
+     * Returns how long ago the entry expired.
+     *
+     * @param  entry  the {@link CacheEntry} to check
+     * @param  now    the current time, in {@link System#nanoTime()} units
+     * @return        the nanoseconds since the entry expired, negative if it didn't expire yet
+     */
+    public long getExpiredFor(CacheEntry entry, long now) {
+        CacheExpiry current = this.expiry;
+        if (!current.isExpiring()) {
+            return Long.MIN_VALUE;
+        }
+        return now - current.getExpiryTime(entry);
+    }
+
+    /**
+     * Returns {@code true} if an entry that expired the specified time ago may still be returned while it is refreshed.
+     *
+     * @param  expiredFor  the nanoseconds since the entry expired
+     * @param  loader      the {@link CacheLoader} of the caller, or null to only use the loader of the segment
+     * @return             {@code true} if the stale entry can be returned, {@code false} if not
+     */
+    public boolean isServableStale(long expiredFor, CacheLoader<?> loader) {
+        return (loader != null || this.loader != null) && expiredFor < this.expiry.getStaleWhileRevalidate();
+    }
+
+    /**
+     * Registers a load of the object, unless another load of it is already in progress.
+     *
+     * @param  id    the ID of the object
+     * @param  load  the {@link CacheLoad} of the caller
+     * @return       the {@link CacheLoad} already in progress, or null if the caller has to load the object
+     */
+    public CacheLoad startLoad(Object id, CacheLoad load) {
+        return this.loads.putIfAbsent(maskNull(id), load);
+    }
+
+    /**
+     * Unregisters a load that has been started with {@link #startLoad(Object, CacheLoad)}.
+     *
+     * @param id    the ID of the object
+     * @param load  the {@link CacheLoad} of the caller
+     */
+    public void finishLoad(Object id, CacheLoad load) {
+        this.loads.remove(maskNull(id), load);
+    }
+
+    /**
+     * Records a read of the entry for the {@link EvictionPolicy}.
+     *
+     * @param entry  the {@link CacheEntry} that has been read
+     */
+    public void recordRead(CacheEntry entry) {
+        EvictionPolicy current = getPolicy();
+        if (current != null) {
+            current.recordRead(entry);
+        }
+    }
+
+    /**
+     * Records a read that found the object.
+     */
+    public void recordHit() {
+        this.hits.increment();
+    }
+
+    /**
+     * Records a read that didn't find the object, or found it expired.
+     */
+    public void recordMiss() {
+        this.misses.increment();
+    }
+
+    /**
+     * Records a load that returned an object.
+     *
+     * @param loadTime  the nanoseconds the load took
+     */
+    public void recordLoadSuccess(long loadTime) {
+        this.loadSuccesses.incrementAndGet();
+        this.totalLoadTime.addAndGet(loadTime);
+    }
+
+    /**
+     * Records a load that threw an exception.
+     *
+     * @param loadTime  the nanoseconds the load took
+     */
+    public void recordLoadFailure(long loadTime) {
+        this.loadFailures.incrementAndGet();
+        this.totalLoadTime.addAndGet(loadTime);
+    }
+
+    /**
+     * Returns a snapshot of the statistics of the segment.
+     *
+     * @return the {@link CacheStats}
+     */
+    public CacheStats getStats() {
+        return new CacheStats(this.group, this.hits.sum(), this.misses.sum(), this.loadSuccesses.get(),
+                              this.loadFailures.get(), this.totalLoadTime.get(), this.evictions.get(), size(),
+                              this.bytes.get());
+    }
+
+    /**
+     * Returns the estimated amount of bytes the entries of the segment use.
+     *
+     * @return the amount of bytes
+     */
+    public long getBytes() {
+        return this.bytes.get();
+    }
+
+    /**
+     * Evicts the entry the {@link EvictionPolicy} picks to free memory, see {@link EvictionPolicy#evictHeaviest()}.
+     *
+     * @return {@code true} if an entry has been evicted, {@code false} if the segment is unbounded or empty
+     */
+    public boolean evictHeaviest() {
+        EvictionPolicy current = this.policy;
+        if (current == null) {
+            return false;
+        }
+        EvictionPolicy.Node victim = current.evictHeaviest();
+        if (victim == null) {
+            return false;
+        }
+        evict(Collections.singletonList(victim));
+        return true;
+    }
+
+    /**
+     * Stores an object, evicting other objects if the segment is full.
+     *
+     * @param  id           the ID of the object
+     * @param  value        the object to store
+     * @param  metadatable  {@code true} if the entry can hold metadata, {@code false} if not
+     * @return              the new {@link CacheEntry}
+     */
+    public CacheEntry put(Object id, Object value, boolean metadatable) {
+        if (id instanceof Integer) {
+            return put(((Integer) id).intValue(), value, metadatable);
+        }
+        return put(new CacheEntry(maskNull(id), value, metadatable));
+    }
+
+    /**
+     * Stores an object with a numeric ID, evicting other objects if the segment is full.
+     *
+     * @param  id           the ID of the object
+     * @param  value        the object to store
+     * @param  metadatable  {@code true} if the entry can hold metadata, {@code false} if not
+     * @return              the new {@link CacheEntry}
+     */
+    public CacheEntry put(int id, Object value, boolean metadatable) {
+        return put(new CacheEntry(id, value, metadatable));
+    }
+
+    /**
+     * Stores the entry under its own key, evicting other objects if the segment is full.
+     *
+     * @param  entry  the {@link CacheEntry} to store
+     * @return        the stored {@link CacheEntry}
+     */
+    public CacheEntry put(CacheEntry entry) {
+        removeOffHeap(getId(entry));
+        return store(entry, false);
+    }
+
+    private CacheEntry store(CacheEntry entry, boolean ifAbsent) {
+        CacheEntry previous;
+        if (entry.hasIntKey()) {
+            IntObjectMap<CacheEntry> stripe = stripe(entry.getIntKey());
+            synchronized (stripe) {
+                previous = stripe.get(entry.getIntKey());
+                if (previous != null && ifAbsent) {
+                    return previous;
+                }
+                stripe.put(entry.getIntKey(), entry);
+            }
+        } else if (ifAbsent) {
+            previous = this.entries.putIfAbsent(entry.getKey(), entry);
+            if (previous != null) {
+                return previous;
+            }
+        } else {
+            previous = this.entries.put(entry.getKey(), entry);
+        }
+        weigh(entry.weight());
+        if (previous != null) {
+            weigh(-previous.weight());
+            this.tagIndex.untag(previous);
+        }
+        CacheTag[] tags = CacheTag.of(this.group, getId(entry), entry.getValue());
+        if (tags != null) {
+            this.tagIndex.tag(this, entry, tags);
+        }
+        EvictionPolicy current = getPolicy();
+        if (current != null) {
+            evict(current.recordWrite(entry, previous));
+        }
+        this.budget.enforce();
+        return entry;
+    }
+
+    /**
+     * Removes the object.
+     *
+     * @param  id  the ID of the object
+     * @return     the removed {@link CacheEntry}, or null if not cached
+     */
+    public CacheEntry remove(Object id) {
+        if (id instanceof Integer) {
+            return remove(((Integer) id).intValue());
+        }
+        removeOffHeap(id);
+        return untrack(this.entries.remove(maskNull(id)));
+    }
+
+    /**
+     * Removes the object with a numeric ID.
+     *
+     * @param  id  the ID of the object
+     * @return     the removed {@link CacheEntry}, or null if not cached
+     */
+    public CacheEntry remove(int id) {
+        if (this.offHeap != null) {
+            removeOffHeap(Integer.valueOf(id));
+        }
+        IntObjectMap<CacheEntry> stripe = stripe(id);
+        CacheEntry removed;
+        synchronized (stripe) {
+            removed = stripe.remove(id);
+        }
+        return untrack(removed);
+    }
+
+    /**
+     * Removes the entry only if it is still stored under its key.
+     *
+     * @param  entry  the expected {@link CacheEntry}
+     * @return        {@code true} if it was removed, {@code false} if not
+     */
+    public boolean remove(CacheEntry entry) {
+        if (discard(entry)) {
+            removeOffHeap(getId(entry));
+            untrack(entry);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes all objects of the segment, including the demoted ones.
+     */
+    public void clear() {
+        OffHeapStore store = this.offHeap;
+        if (store != null) {
+            store.clear(this.group);
+        }
+        for (CacheEntry entry : this.entries.values()) {
+            if (this.entries.remove(entry.getKey(), entry)) {
+                weigh(-entry.weight());
+                this.tagIndex.untag(entry);
+            }
+        }
+        for (IntObjectMap<CacheEntry> stripe : this.intEntries) {
+            synchronized (stripe) {
+                for (CacheEntry entry : stripe.values()) {
+                    weigh(-entry.weight());
+                    this.tagIndex.untag(entry);
+                }
+                stripe.clear();
+            }
+        }
+        EvictionPolicy current = this.policy;
+        if (current != null) {
+            current.clear();
+        }
+    }
+
+    /**
+     * Returns the amount of objects in the segment.
+     *
+     * @return the amount of objects
+     */
+    public int size() {
+        int size = this.entries.size();
+        for (IntObjectMap<CacheEntry> stripe : this.intEntries) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    private IntObjectMap<CacheEntry> stripe(int id) {
+        int hash = id * 0x9e3779b9;
+        return this.intEntries[(hash >>> 16) & (STRIPES - 1)];
+    }
+
+    private static Object maskNull(Object id) {
+        return (id == null) ? NULL_KEY : id;
+    }
+
+    private static Object unmaskNull(Object key) {
+        return (key == NULL_KEY) ? null : key;
+    }
+
+    private void weigh(long delta) {
+        this.bytes.addAndGet(delta);
+        this.budget.add(delta);
+    }
+
+    private CacheEntry untrack(CacheEntry entry) {
+        if (entry == null) {
+            return null;
+        }
+        weigh(-entry.weight());
+        this.tagIndex.untag(entry);
+        EvictionPolicy current = this.policy;
+        if (current != null) {
+            current.remove(entry);
+        }
+        return entry;
+    }
+
+    private void evict(List<EvictionPolicy.Node> evicted) {
+        OffHeapStore store = this.offHeap;
+        for (EvictionPolicy.Node node : evicted) {
+            CacheEntry entry = (CacheEntry) node;
+            if (discard(entry)) {
+                weigh(-entry.weight());
+                this.tagIndex.untag(entry);
+                this.evictions.incrementAndGet();
+                if (store != null) {
+                    store.store(this.group, getId(entry), entry);
+                }
+            }
+        }
+    }
+
+    private CacheEntry promote(Object id) {
+        OffHeapStore.Stored stored = this.offHeap.take(this.group, id);
+        if (stored == null) {
+            return null;
+        }
+        CacheEntry entry;
+        if (id instanceof Integer) {
+            entry = new CacheEntry(((Integer) id).intValue(), stored.getValue(), stored.isMetadatable());
+        } else {
+            entry = new CacheEntry(maskNull(id), stored.getValue(), stored.isMetadatable());
+        }
+        if (stored.isMetadatable()) {
+            for (Map.Entry<String, Object> meta : stored.getMetadata().entrySet()) {
+                entry.setMetadata(meta.getKey(), meta.getValue());
+            }
+        }
+        // An object stored in the meantime is newer than the demoted one.
+        return store(entry, true);
+    }
+
+    private void removeOffHeap(Object id) {
+        OffHeapStore store = this.offHeap;
+        if (store != null) {
+            store.remove(this.group, id);
+        }
+    }
+
+    private boolean discard(CacheEntry entry) {
+        if (entry.hasIntKey()) {
+            IntObjectMap<CacheEntry> stripe = stripe(entry.getIntKey());
+            synchronized (stripe) {
+                return stripe.remove(entry.getIntKey(), entry);
+            }
+        }
+        return this.entries.remove(entry.getKey(), entry);
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+
+import com.craftfire.bifrost.classes.general.Cache;
+import com.craftfire.bifrost.classes.general.Script;
+import com.craftfire.bifrost.enums.CacheGroup;
+
+/**
+ * A snapshot of selected {@link CacheGroup}s in a memory-mapped file, used to start with a warm cache after a restart.
+ * <p>
+ * The file starts with the version of the data of the script the snapshot was taken from, see
+ * {@link Script#getCacheVersion()}, followed by the entries of each group. Opening a snapshot only reads the index
+ * of the groups. A group is decoded and put into the cache the first time it is used, and the first group that is
+ * restored compares the version with the current version of the script. If they differ, or the script can't tell
+ * its version, nothing is restored.
+ * <p>
+ * Only entries that haven't expired and whose key and value are supported by the {@link SnapshotCodec} are written.
+ */
+public class CacheSnapshot {
+    private static final int MAGIC = 0x42464353;
+    private static final int FORMAT = 1;
+    private final Script script;
+    private final File file;
+    private final String version;
+    private final long created;
+    private final Map<CacheGroup, ByteBuffer> groups = new EnumMap<CacheGroup, ByteBuffer>(CacheGroup.class);
+    private Boolean valid;
+
+    private CacheSnapshot(Script script, File file, String version, long created) {
+        this.script = script;
+        this.file = file;
+        this.version = version;
+        this.created = created;
+    }
+
+    /**
+     * Writes the entries of the groups of the cache to the file.
+     * <p>
+     * The snapshot is written to a temporary file next to the file first, which then replaces the file, so a crash
+     * while writing doesn't leave a broken snapshot behind.
+     *
+     * @param  cache    the {@link Cache} to write
+     * @param  file     the file of the snapshot
+     * @param  version  the current version of the data, see {@link Script#getCacheVersion()}
+     * @param  groups   the {@link CacheGroup}s to write
+     * @throws IOException  if the file could not be written
+     */
+    public static void write(Cache cache, File file, String version, Collection<CacheGroup> groups) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT);
+        out.writeLong(System.currentTimeMillis());
+        SnapshotCodec.writeString(out, version);
+        out.writeInt(groups.size());
+        ByteArrayOutputStream groupBytes = new ByteArrayOutputStream();
+        DataOutputStream groupOut = new DataOutputStream(groupBytes);
+        for (CacheGroup group : groups) {
+            groupBytes.reset();
+            CacheSegment segment = cache.getSegment(group);
+            long now = System.nanoTime();
+            int count = 0;
+            for (CacheEntry entry : segment.entries()) {
+                Object id = segment.getId(entry);
+                if (segment.getExpiredFor(entry, now) >= 0 || !SnapshotCodec.isSupported(id)
+                        || !SnapshotCodec.isSupported(entry.getValue())) {
+                    continue;
+                }
+                SnapshotCodec.write(groupOut, id);
+                groupOut.writeBoolean(entry.isMetadatable());
+                SnapshotCodec.write(groupOut, entry.getValue());
+                count++;
+            }
+            groupOut.flush();
+            SnapshotCodec.writeString(out, group.name());
+            out.writeInt(count);
+            out.writeInt(groupBytes.size());
+            groupBytes.writeTo(out);
+        }
+        out.flush();
+
+        // The temporary file is written through the channel, not a mapping, because a file that is still mapped
+        // can't be moved or replaced on Windows, and the mapping would stay until it is garbage collected.
+        File temporary = new File(file.getPath() + ".tmp");
+        FileOutputStream stream = new FileOutputStream(temporary);
+        try {
+            FileChannel channel = stream.getChannel();
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        } finally {
+            stream.close();
+        }
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Opens the snapshot in the file for the script, only the index of the groups is read.
+     *
+     * @param  script  the {@link Script} the entries will be restored for
+     * @param  file    the file of the snapshot
+     * @return         the {@link CacheSnapshot}
+     * @throws IOException  if the file could not be read or is not a valid snapshot
+     */
+    public static CacheSnapshot open(Script script, File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        MappedByteBuffer buffer;
+        try {
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        } finally {
+            // The mapping stays valid after the file has been closed.
+            raf.close();
+        }
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT) {
+                throw new IOException(file + " is not a cache snapshot of this version.");
+            }
+            long created = buffer.getLong();
+            CacheSnapshot snapshot = new CacheSnapshot(script, file, SnapshotCodec.readString(buffer), created);
+            int groupCount = buffer.getInt();
+            for (int i = 0; i < groupCount; i++) {
+                String name = SnapshotCodec.readString(buffer);
+                int count = buffer.getInt();
+                int length = buffer.getInt();
+                ByteBuffer entries = buffer.slice();
+                entries.limit(length);
+                buffer.position(buffer.position() + length);
+                try {
+                    CacheGroup group = CacheGroup.valueOf(name);
+                    if (count > 0) {
+                        snapshot.groups.put(group, entries);
+                    }
+                } catch (IllegalArgumentException e) {
+                    // The group doesn't exist anymore in this version of Bifrost.
+                }
+            }
+            return snapshot;
+        } catch (BufferUnderflowException e) {
+            throw new IOException(file + " is truncated.");
+        } catch (IllegalArgumentException e) {
+            throw new IOException(file + " is corrupted.");
+        }
+    }
+
+    /**
+     * Returns the file of the snapshot.
+     *
+     * @return the file
+     */
+    public File getFile() {
+        return this.file;
+    }
+
+    /**
+     * Returns the version of the data of the script when the snapshot was taken.
+     *
+     * @return the version, or null if the script couldn't tell its version
+     */
+    public String getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Returns the time the snapshot was taken.
+     *
+     * @return the time in milliseconds since the epoch
+     */
+    public long getCreated() {
+        return this.created;
+    }
+
+    /**
+     * Returns {@code true} if the snapshot holds entries of the group that haven't been restored yet.
+     *
+     * @param  group  the {@link CacheGroup} to check
+     * @return        {@code true} if the group is pending, {@code false} if not
+     */
+    public synchronized boolean isPending(CacheGroup group) {
+        return this.groups.containsKey(group);
+    }
+
+    /**
+     * Returns {@code true} if all groups have been restored or dropped.
+     *
+     * @return {@code true} if done, {@code false} if not
+     */
+    public synchronized boolean isDone() {
+        return this.groups.isEmpty();
+    }
+
+    /**
+     * Puts the entries of the group into the segment, unless the segment already holds an entry with the same key.
+     * <p>
+     * The first call validates the snapshot against the current version of the script, an invalid snapshot
+     * doesn't restore anything. Every group is restored at most once.
+     *
+     * @param group    the {@link CacheGroup} to restore
+     * @param segment  the {@link CacheSegment} of the group
+     */
+    public synchronized void restore(CacheGroup group, CacheSegment segment) {
+        ByteBuffer entries = this.groups.remove(group);
+        if (entries == null) {
+            return;
+        }
+        if (this.valid == null) {
+            this.valid = isCurrent();
+        }
+        if (!this.valid) {
+            this.groups.clear();
+            return;
+        }
+        try {
+            while (entries.hasRemaining()) {
+                Object id = SnapshotCodec.read(entries, this.script);
+                boolean metadatable = entries.get() != 0;
+                Object value = SnapshotCodec.read(entries, this.script);
+                if (segment.getEntry(id) == null) {
+                    segment.put(id, value, metadatable);
+                }
+            }
+        } catch (IOException e) {
+            // The rest of the group is corrupted, the entries that have been restored are fine.
+        } catch (RuntimeException e) {
+            // Same as above, the buffer ended early or an entity could not be created.
+        }
+    }
+
+    private boolean isCurrent() {
+        if (this.version == null) {
+            return false;
+        }
+        try {
+            return this.version.equals(this.script.getCacheVersion());
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
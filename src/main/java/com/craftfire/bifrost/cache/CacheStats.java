@@ -0,0 +1,187 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.cache;
+
+import com.craftfire.bifrost.enums.CacheGroup;
+
+/**
+ * A snapshot of the statistics of one {@link CacheGroup}.
+ * <p>
+ * The counters start when the {@link com.craftfire.bifrost.classes.general.Cache} is created and never reset,
+ * compare two snapshots to get the statistics of a period.
+ */
+public class CacheStats {
+    private final CacheGroup group;
+    private final long hitCount, missCount, loadSuccessCount, loadFailureCount, totalLoadTime, evictionCount;
+    private final int size;
+    private final long bytes;
+
+    /**
+     * Creates a snapshot with the specified values.
+     *
+     * @param group             the {@link CacheGroup}
+     * @param hitCount          the amount of reads that found the object
+     * @param missCount         the amount of reads that didn't find the object
+     * @param loadSuccessCount  the amount of loads that returned an object
+     * @param loadFailureCount  the amount of loads that threw an exception
+     * @param totalLoadTime     the nanoseconds spent loading objects
+     * @param evictionCount     the amount of objects evicted because the group or the cache was full
+     * @param size              the amount of objects in the group
+     * @param bytes             the estimated amount of bytes the objects in the group use
+     */
+    public CacheStats(CacheGroup group, long hitCount, long missCount, long loadSuccessCount, long loadFailureCount,
+                      long totalLoadTime, long evictionCount, int size, long bytes) {
+        this.group = group;
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.loadSuccessCount = loadSuccessCount;
+        this.loadFailureCount = loadFailureCount;
+        this.totalLoadTime = totalLoadTime;
+        this.evictionCount = evictionCount;
+        this.size = size;
+        this.bytes = bytes;
+    }
+
+    /**
+     * Returns the {@link CacheGroup} of the statistics.
+     *
+     * @return the {@link CacheGroup}
+     */
+    public CacheGroup getGroup() {
+        return this.group;
+    }
+
+    /**
+     * Returns the amount of reads that found the object.
+     *
+     * @return the amount of hits
+     */
+    public long getHitCount() {
+        return this.hitCount;
+    }
+
+    /**
+     * Returns the amount of reads that didn't find the object, or found it expired.
+     *
+     * @return the amount of misses
+     */
+    public long getMissCount() {
+        return this.missCount;
+    }
+
+    /**
+     * Returns the amount of reads.
+     *
+     * @return the amount of hits and misses
+     */
+    public long getRequestCount() {
+        return this.hitCount + this.missCount;
+    }
+
+    /**
+     * Returns the ratio of reads that found the object.
+     *
+     * @return the hit rate between 0 and 1, 1 if there were no reads
+     */
+    public double getHitRate() {
+        long requests = getRequestCount();
+        return (requests == 0) ? 1.0 : (double) this.hitCount / requests;
+    }
+
+    /**
+     * Returns the amount of loads, including the background refreshes, that returned an object.
+     *
+     * @return the amount of successful loads
+     */
+    public long getLoadSuccessCount() {
+        return this.loadSuccessCount;
+    }
+
+    /**
+     * Returns the amount of loads, including the background refreshes, that threw an exception.
+     *
+     * @return the amount of failed loads
+     */
+    public long getLoadFailureCount() {
+        return this.loadFailureCount;
+    }
+
+    /**
+     * Returns the amount of loads.
+     *
+     * @return the amount of successful and failed loads
+     */
+    public long getLoadCount() {
+        return this.loadSuccessCount + this.loadFailureCount;
+    }
+
+    /**
+     * Returns the time spent loading objects.
+     *
+     * @return the total load time in nanoseconds
+     */
+    public long getTotalLoadTime() {
+        return this.totalLoadTime;
+    }
+
+    /**
+     * Returns the average time a load took.
+     *
+     * @return the average load time in nanoseconds, 0 if there were no loads
+     */
+    public double getAverageLoadPenalty() {
+        long loads = getLoadCount();
+        return (loads == 0) ? 0.0 : (double) this.totalLoadTime / loads;
+    }
+
+    /**
+     * Returns the amount of objects evicted because the group was full, or the cache used more memory than its budget.
+     *
+     * @return the amount of evictions
+     */
+    public long getEvictionCount() {
+        return this.evictionCount;
+    }
+
+    /**
+     * Returns the amount of objects in the group when the snapshot was taken, expired objects included.
+     *
+     * @return the amount of objects
+     */
+    public int getSize() {
+        return this.size;
+    }
+
+    /**
+     * Returns the estimated amount of bytes the objects in the group used when the snapshot was taken.
+     *
+     * @return the amount of bytes
+     */
+    public long getBytes() {
+        return this.bytes;
+    }
+
+    @Override
+    public String toString() {
+        return this.group + "{hits=" + this.hitCount + ", misses=" + this.missCount + ", loads=" + getLoadCount()
+                + ", loadFailures=" + this.loadFailureCount + ", totalLoadTime=" + this.totalLoadTime
+                + ", evictions=" + this.evictionCount + ", size=" + this.size + ", bytes=" + this.bytes + "}";
+    }
+}
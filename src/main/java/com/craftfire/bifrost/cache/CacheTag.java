@@ -0,0 +1,213 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.cache;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.craftfire.bifrost.classes.general.GenericMethods;
+import com.craftfire.bifrost.enums.CacheGroup;
+
+/**
+ * Names an entity, or a relation of an entity, that cached objects depend on, like {@code user_posts:Alice}
+ * or {@code thread_posts:7}.
+ * <p>
+ * Every cached object is tagged when it is stored: objects keyed by a username or a parent ID are tagged with
+ * that relation, and objects that hold entities, like lists or the last post, are tagged with those entities.
+ * Invalidating a tag with {@link com.craftfire.bifrost.classes.general.Cache#invalidate(CacheTag...)} removes
+ * exactly the objects that depend on it.
+ */
+public final class CacheTag {
+    /**
+     * The kinds of tags.
+     */
+    public enum Kind {
+        USER(true), USER_GROUPS(true), USER_POSTS(true), USER_THREADS(true), USER_COMMENTS(true), USER_ARTICLES(true),
+        PMS_SENT(true), PMS_RECEIVED(true), BAN, GROUP, POST, THREAD, BOARD, PM, COMMENT, ARTICLE, CATEGORY,
+        THREAD_POSTS, BOARD_THREADS, BOARD_SUBS, PM_REPLIES, ARTICLE_COMMENTS, COMMENT_REPLIES, CATEGORY_ARTICLES, CATEGORY_SUBS;
+
+        private final boolean username;
+
+        private Kind() {
+            this(false);
+        }
+
+        private Kind(boolean username) {
+            this.username = username;
+        }
+
+        /**
+         * Returns {@code true} if tags of this kind have a username as ID, {@code false} if they have a numeric ID.
+         *
+         * @return {@code true} if the ID is a username, {@code false} if not
+         */
+        public boolean isUsername() {
+            return this.username;
+        }
+    }
+
+    private static final Map<CacheGroup, Kind> KEY_KINDS = new EnumMap<CacheGroup, Kind>(CacheGroup.class);
+    private static final Set<CacheGroup> ENTITY_GROUPS = EnumSet.of(CacheGroup.BAN, CacheGroup.POST, CacheGroup.PM,
+            CacheGroup.THREAD, CacheGroup.BOARD, CacheGroup.USER, CacheGroup.GROUP, CacheGroup.COMMENT,
+            CacheGroup.ARTICLE, CacheGroup.CMSCAT);
+    static {
+        keyKind(Kind.USER, CacheGroup.USER_ID, CacheGroup.USER_IP, CacheGroup.IS_BANNED, CacheGroup.IS_REGISTERED);
+        keyKind(Kind.USER_GROUPS, CacheGroup.USER_GROUP);
+        keyKind(Kind.USER_POSTS, CacheGroup.POST_COUNT, CacheGroup.POST_LAST_USER, CacheGroup.POST_LIST_USER);
+        keyKind(Kind.USER_THREADS, CacheGroup.THREAD_COUNT, CacheGroup.THREAD_LAST_USER, CacheGroup.THREAD_LIST_USER);
+        keyKind(Kind.USER_COMMENTS, CacheGroup.COMMENT_COUNT_USER, CacheGroup.COMMENT_LAST_USER, CacheGroup.COMMENT_LIST_USER);
+        keyKind(Kind.USER_ARTICLES, CacheGroup.ARTICLE_COUNT_USER, CacheGroup.ARTICLE_LAST_USER, CacheGroup.ARTICLE_LIST_USER);
+        keyKind(Kind.PMS_SENT, CacheGroup.PM_SENT, CacheGroup.PM_SENT_COUNT);
+        keyKind(Kind.PMS_RECEIVED, CacheGroup.PM_RECEIVED, CacheGroup.PM_RECEIVED_COUNT);
+        keyKind(Kind.THREAD_POSTS, CacheGroup.THREAD_POSTS, CacheGroup.POST_COUNT_THREAD);
+        keyKind(Kind.BOARD_THREADS, CacheGroup.BOARD_THREADS);
+        keyKind(Kind.BOARD_SUBS, CacheGroup.BOARD_SUBS, CacheGroup.BOARD_SUB_COUNT);
+        keyKind(Kind.PM_REPLIES, CacheGroup.PM_REPLIES, CacheGroup.PM_REPLY_COUNT);
+        keyKind(Kind.ARTICLE_COMMENTS, CacheGroup.ARTICLE_COMMENTS, CacheGroup.COMMENT_COUNT, CacheGroup.COMMENT_LAST_ARTICLE);
+        keyKind(Kind.COMMENT_REPLIES, CacheGroup.COMMENT_REPLIES, CacheGroup.COMMENT_REPLY_COUNT);
+        keyKind(Kind.CATEGORY_ARTICLES, CacheGroup.CMSCAT_ARTICLES, CacheGroup.ARTICLE_COUNT, CacheGroup.ARTICLE_LAST_CATEGORY);
+        keyKind(Kind.CATEGORY_SUBS, CacheGroup.CMSCAT_SUBS, CacheGroup.CMSCAT_SUB_COUNT);
+    }
+
+    private final Kind kind;
+    private final Object id;
+
+    /**
+     * Creates a tag.
+     *
+     * @param kind  the {@link Kind} of the tag
+     * @param id    the username or the ID of the entity
+     */
+    public CacheTag(Kind kind, Object id) {
+        if (kind == null || id == null) {
+            throw new IllegalArgumentException("The kind and the ID of a cache tag can't be null.");
+        }
+        this.kind = kind;
+        this.id = id;
+    }
+
+    /**
+     * Returns the {@link Kind} of the tag.
+     *
+     * @return the {@link Kind}
+     */
+    public Kind getKind() {
+        return this.kind;
+    }
+
+    /**
+     * Returns the username or the ID of the entity.
+     *
+     * @return the ID of the tag
+     */
+    public Object getID() {
+        return this.id;
+    }
+
+    /**
+     * Returns the tags of everything that is cached by the specified username.
+     * <p>
+     * These should be invalidated when a user is renamed.
+     *
+     * @param  username  the username
+     * @return           a tag of every username {@link Kind}
+     */
+    public static CacheTag[] ofUsername(String username) {
+        List<CacheTag> tags = new ArrayList<CacheTag>();
+        for (Kind kind : Kind.values()) {
+            if (kind.isUsername()) {
+                tags.add(new CacheTag(kind, username));
+            }
+        }
+        return tags.toArray(new CacheTag[tags.size()]);
+    }
+
+    /**
+     * Returns the tags of an object that is stored in the cache.
+     *
+     * @param  group  the {@link CacheGroup} of the object
+     * @param  id     the ID of the object, null if none
+     * @param  value  the cached object
+     * @return        the tags of the object, or null if it doesn't depend on anything
+     */
+    public static CacheTag[] of(CacheGroup group, Object id, Object value) {
+        if (value == null || ENTITY_GROUPS.contains(group)) {
+            return null;
+        }
+        List<CacheTag> tags = new ArrayList<CacheTag>();
+        Kind kind = KEY_KINDS.get(group);
+        if (kind != null && id != null) {
+            tags.add(new CacheTag(kind, id));
+        } else if (group == CacheGroup.USER_USERNAME) {
+            tags.add(new CacheTag(Kind.USER, value));
+        } else if (group == CacheGroup.GROUP_ID && !Integer.valueOf(0).equals(value)) {
+            tags.add(new CacheTag(Kind.GROUP, value));
+        }
+        if (value instanceof GenericMethods) {
+            addTag(tags, (GenericMethods) value);
+        } else if (value instanceof Iterable) {
+            for (Object element : (Iterable<?>) value) {
+                if (element instanceof GenericMethods) {
+                    addTag(tags, (GenericMethods) element);
+                }
+            }
+        }
+        return tags.isEmpty() ? null : tags.toArray(new CacheTag[tags.size()]);
+    }
+
+    private static void addTag(List<CacheTag> tags, GenericMethods object) {
+        CacheTag tag = object.getCacheTag();
+        if (tag != null) {
+            tags.add(tag);
+        }
+    }
+
+    private static void keyKind(Kind kind, CacheGroup... groups) {
+        for (CacheGroup group : groups) {
+            KEY_KINDS.put(group, kind);
+        }
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (this == object) {
+            return true;
+        }
+        if (!(object instanceof CacheTag)) {
+            return false;
+        }
+        CacheTag other = (CacheTag) object;
+        return this.kind == other.kind && this.id.equals(other.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * this.kind.hashCode() + this.id.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return this.kind.name().toLowerCase() + ":" + this.id;
+    }
+}
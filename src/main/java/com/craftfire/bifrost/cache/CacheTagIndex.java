@@ -0,0 +1,123 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Maps every {@link CacheTag} to the cache entries that are tagged with it.
+ * <p>
+ * One index is shared by all {@link CacheSegment}s of a cache. The segments index the entries they store
+ * and unindex the entries they remove, so invalidating a tag only visits the entries that depend on it.
+ */
+public class CacheTagIndex {
+    private final ConcurrentMap<CacheTag, Map<CacheEntry, CacheSegment>> index = new ConcurrentHashMap<CacheTag, Map<CacheEntry, CacheSegment>>();
+
+    /**
+     * Indexes the entry under the specified tags.
+     *
+     * @param segment  the {@link CacheSegment} that holds the entry
+     * @param entry    the {@link CacheEntry} to index
+     * @param tags     the {@link CacheTag}s of the entry
+     */
+    public void tag(CacheSegment segment, CacheEntry entry, CacheTag[] tags) {
+        entry.setTags(tags);
+        for (CacheTag tag : tags) {
+            boolean indexed = false;
+            while (!indexed) {
+                Map<CacheEntry, CacheSegment> entries = this.index.get(tag);
+                if (entries == null) {
+                    entries = new HashMap<CacheEntry, CacheSegment>(4);
+                    Map<CacheEntry, CacheSegment> existing = this.index.putIfAbsent(tag, entries);
+                    if (existing != null) {
+                        entries = existing;
+                    }
+                }
+                synchronized (entries) {
+                    // The set is dropped from the index when it is invalidated or emptied, then a new one is needed.
+                    if (this.index.get(tag) == entries) {
+                        entries.put(entry, segment);
+                        indexed = true;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the entry from the index.
+     *
+     * @param entry  the {@link CacheEntry} that has been removed from its segment
+     */
+    public void untag(CacheEntry entry) {
+        CacheTag[] tags = entry.getTags();
+        if (tags == null) {
+            return;
+        }
+        for (CacheTag tag : tags) {
+            Map<CacheEntry, CacheSegment> entries = this.index.get(tag);
+            if (entries != null) {
+                synchronized (entries) {
+                    if (entries.remove(entry) != null && entries.isEmpty()) {
+                        this.index.remove(tag, entries);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes every entry that is tagged with the specified tag from its segment.
+     *
+     * @param  tag  the {@link CacheTag} to invalidate
+     * @return      the amount of removed entries
+     */
+    public int invalidate(CacheTag tag) {
+        Map<CacheEntry, CacheSegment> entries = this.index.remove(tag);
+        if (entries == null) {
+            return 0;
+        }
+        List<Map.Entry<CacheEntry, CacheSegment>> dependents;
+        synchronized (entries) {
+            dependents = new ArrayList<Map.Entry<CacheEntry, CacheSegment>>(entries.entrySet());
+        }
+        int removed = 0;
+        for (Map.Entry<CacheEntry, CacheSegment> dependent : dependents) {
+            if (dependent.getValue().remove(dependent.getKey())) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Returns the amount of tags that have entries.
+     *
+     * @return the amount of tags
+     */
+    public int size() {
+        return this.index.size();
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * An immutable prefix of a list returned by the script, together with how far it has been loaded.
+ * <p>
+ * A cached list can serve every limit up to its size from memory, and once the script returned fewer rows than
+ * requested it is complete and serves every limit. Longer lists are built by appending only the missing tail,
+ * loaded with a {@link ListLoader} starting at {@link #size()}.
+ *
+ * @param <T>  the type of the listed objects
+ */
+public final class CachedList<T> implements Iterable<T> {
+    private final List<T> rows;
+    private final boolean complete;
+
+    /**
+     * Creates an empty list, nothing has been loaded yet.
+     */
+    public CachedList() {
+        this(Collections.<T>emptyList(), false);
+    }
+
+    private CachedList(List<T> rows, boolean complete) {
+        this.rows = rows;
+        this.complete = complete;
+    }
+
+    /**
+     * Returns the number of loaded rows, which is the offset of the first missing row.
+     *
+     * @return the number of loaded rows
+     */
+    public int size() {
+        return this.rows.size();
+    }
+
+    /**
+     * Returns {@code true} if all rows of the list have been loaded, {@code false} if there may be more.
+     *
+     * @return {@code true} if complete, {@code false} if not
+     */
+    public boolean isComplete() {
+        return this.complete;
+    }
+
+    /**
+     * Returns {@code true} if the first rows up to the limit can be served without loading.
+     *
+     * @param  limit  the number of rows, 0 for all rows
+     * @return        {@code true} if the rows are loaded, {@code false} if not
+     */
+    public boolean covers(int limit) {
+        return this.complete || ((limit > 0) && (this.rows.size() >= limit));
+    }
+
+    /**
+     * Returns the first rows of the list, up to the limit.
+     *
+     * @param  limit  the number of rows, 0 for all loaded rows
+     * @return        an unmodifiable list of the rows
+     */
+    public List<T> prefix(int limit) {
+        if ((limit <= 0) || (limit >= this.rows.size())) {
+            return this.rows;
+        }
+        return this.rows.subList(0, limit);
+    }
+
+    /**
+     * Returns a new list with the tail rows appended to the loaded rows.
+     * <p>
+     * The new list is complete if the tail has fewer rows than requested, or if all remaining rows were requested.
+     *
+     * @param  tail       the rows loaded starting at {@link #size()}, null is handled as no rows
+     * @param  requested  the number of rows that was requested for the tail, 0 if all remaining rows were requested
+     * @return            the new {@link CachedList}
+     */
+    public CachedList<T> append(List<T> tail, int requested) {
+        int count = (tail == null) ? 0 : tail.size();
+        boolean done = (requested <= 0) || (count < requested);
+        if (count == 0) {
+            return new CachedList<T>(this.rows, done);
+        }
+        List<T> merged = new ArrayList<T>(this.rows.size() + count);
+        merged.addAll(this.rows);
+        merged.addAll(tail);
+        return new CachedList<T>(Collections.unmodifiableList(merged), done);
+    }
+
+    /**
+     * Returns the rows of a list after the offset, for scripts that can't skip rows in their query.
+     *
+     * @param  list    the list, can be null
+     * @param  offset  the number of rows to skip
+     * @return         the rows after the offset, or null if the list is null
+     */
+    public static <T> List<T> skip(List<T> list, int offset) {
+        if ((list == null) || (offset <= 0)) {
+            return list;
+        }
+        return list.subList(Math.min(offset, list.size()), list.size());
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return this.rows.iterator();
+    }
+
+    @Override
+    public String toString() {
+        return "CachedList{size=" + this.rows.size() + ", complete=" + this.complete + "}";
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.cache;
+
+import java.sql.SQLException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.craftfire.bifrost.classes.general.Script;
+import com.craftfire.bifrost.exceptions.ScriptException;
+
+/**
+ * Finds the rows the script has written directly to its tables, without Bifrost, and removes the cached objects that
+ * depend on them.
+ * <p>
+ * Every poll asks the script for the rows above its {@link HighWaterMarks}, see
+ * {@link Script#pollChanges(HighWaterMarks)}. The first poll only records the marks, later polls turn every new or
+ * changed row into the same invalidations Bifrost does when it writes the row itself.
+ * <p>
+ * The poller belongs to the {@link com.craftfire.bifrost.classes.general.Cache}, so handles that share a cache
+ * poll their database once. Its thread is a daemon thread, which is started by {@link #start(long, TimeUnit)}.
+ */
+public class ChangePoller {
+    private final Script script;
+    private final HighWaterMarks marks = new HighWaterMarks();
+    private final Object pollLock = new Object();
+    private final AtomicLong polls = new AtomicLong();
+    private final AtomicLong changes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile Exception lastFailure;
+    private ScheduledExecutorService executor;
+    private ScheduledFuture<?> task;
+    private long interval;
+
+    /**
+     * Creates a new poller for the tables of the script.
+     *
+     * @param script  the {@link Script} to poll
+     */
+    public ChangePoller(Script script) {
+        if (script == null) {
+            throw new IllegalArgumentException("The script can't be null.");
+        }
+        this.script = script;
+    }
+
+    /**
+     * Polls the tables every interval, replacing the previous schedule.
+     *
+     * @param interval  the time between two polls
+     * @param unit      the {@link TimeUnit} of the interval
+     */
+    public synchronized void start(long interval, TimeUnit unit) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("The interval must be positive.");
+        }
+        if (this.task != null) {
+            this.task.cancel(false);
+        }
+        if (this.executor == null) {
+            this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "Bifrost change poller " + ChangePoller.this.script.getScriptName());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        this.interval = unit.toNanos(interval);
+        this.task = this.executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    poll();
+                } catch (Exception ignore) {
+                    // Counted by poll(), the rows above the marks are read again by the next poll.
+                }
+            }
+        }, 0, this.interval, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stops polling and stops the thread of the poller, the recorded marks are kept.
+     */
+    public synchronized void stop() {
+        this.task = null;
+        this.interval = 0;
+        if (this.executor != null) {
+            this.executor.shutdownNow();
+            this.executor = null;
+        }
+    }
+
+    /**
+     * Returns {@code true} if the tables are polled in the background, {@code false} if not.
+     *
+     * @return {@code true} if started, {@code false} if not
+     */
+    public synchronized boolean isRunning() {
+        return this.task != null;
+    }
+
+    /**
+     * Returns the time between two polls.
+     *
+     * @param  unit  the {@link TimeUnit} of the returned interval
+     * @return       the interval, 0 if the poller isn't running
+     */
+    public synchronized long getInterval(TimeUnit unit) {
+        return unit.convert(this.interval, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Polls the tables now, on the current thread.
+     *
+     * @return                  the amount of changed rows that have been found
+     * @throws SQLException     if a SQL exception occurred
+     * @throws ScriptException  if any other exception occurred
+     */
+    public int poll() throws SQLException, ScriptException {
+        synchronized (this.pollLock) {
+            this.polls.incrementAndGet();
+            try {
+                int found = this.script.pollChanges(this.marks);
+                this.changes.addAndGet(found);
+                return found;
+            } catch (SQLException e) {
+                fail(e);
+                throw e;
+            } catch (ScriptException e) {
+                fail(e);
+                throw e;
+            } catch (RuntimeException e) {
+                fail(e);
+                throw e;
+            }
+        }
+    }
+
+    private void fail(Exception e) {
+        this.failures.incrementAndGet();
+        this.lastFailure = e;
+    }
+
+    /**
+     * Returns the high-water marks the poller has recorded.
+     *
+     * @return the {@link HighWaterMarks}
+     */
+    public HighWaterMarks getMarks() {
+        return this.marks;
+    }
+
+    /**
+     * Returns the amount of polls, including the failed ones.
+     *
+     * @return the amount of polls
+     */
+    public long getPolls() {
+        return this.polls.get();
+    }
+
+    /**
+     * Returns the amount of changed rows that have been found.
+     *
+     * @return the amount of changes
+     */
+    public long getChanges() {
+        return this.changes.get();
+    }
+
+    /**
+     * Returns the amount of polls that failed.
+     *
+     * @return the amount of failures
+     */
+    public long getFailures() {
+        return this.failures.get();
+    }
+
+    /**
+     * Returns the exception of the last poll that failed.
+     *
+     * @return the exception, or null if no poll failed
+     */
+    public Exception getLastFailure() {
+        return this.lastFailure;
+    }
+}
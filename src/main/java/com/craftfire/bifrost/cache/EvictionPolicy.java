@@ -0,0 +1,346 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keeps track of the entries of one cache group and decides which of them should be evicted.
+ * <p>
+ * The policy is a Window TinyLFU: new entries enter a small LRU window (1% of the maximum size),
+ * entries leaving the window have to compete against the least recently used entry of the main space
+ * and are only admitted if the {@link FrequencySketch} has seen their key more often. The main space is a
+ * segmented LRU where entries that are read a second time are promoted to the protected segment.
+ * <p>
+ * A scan of one-time keys therefore only churns the window, while frequently used keys stay cached.
+ * <p>
+ * The tracked entries are the {@link Node}s themselves, so the policy doesn't need a map of its own.
+ * Reads are recorded in a {@link ReadBuffer} without locking and applied when the next write or eviction holds
+ * the lock, or when the buffer of the reading thread is full. All other methods are synchronized, the nodes
+ * returned from {@link #recordWrite(Node, Node)} have to be removed from the storage by the caller.
+ */
+public class EvictionPolicy {
+    private static final int UNLINKED = -1;
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+    private static final int SAMPLE = 4;
+    private final Node[] queues = {new Head(), new Head(), new Head()};
+    private final int[] sizes = new int[3];
+    private final FrequencySketch sketch;
+    private final ReadBuffer<Node> reads = new ReadBuffer<Node>();
+    private final List<Node> drained = new ArrayList<Node>();
+    private int sketchCapacity;
+    private int maximumSize;
+    private int maxWindow;
+    private int maxProtected;
+
+    /**
+     * An entry that can be tracked by an {@link EvictionPolicy}.
+     * <p>
+     * A node can only be tracked by one policy at a time.
+     */
+    public abstract static class Node {
+        private Node prev;
+        private Node next;
+        private int queue = UNLINKED;
+
+        /**
+         * Returns the hash code of the key of this node, used to estimate how popular the key is.
+         *
+         * @return the hash code of the key
+         */
+        protected abstract int keyHash();
+
+        /**
+         * Returns the estimated size of this node in bytes, used to pick the victim when memory has to be freed.
+         *
+         * @return the size in bytes
+         */
+        protected long weight() {
+            return 1;
+        }
+    }
+
+    private static final class Head extends Node {
+        private Head() {
+            ((Node) this).prev = this;
+            ((Node) this).next = this;
+        }
+
+        @Override
+        protected int keyHash() {
+            return 0;
+        }
+    }
+
+    /**
+     * Creates a new policy.
+     *
+     * @param maximumSize  the maximum number of entries, needs to be larger than 0
+     */
+    public EvictionPolicy(int maximumSize) {
+        setLimits(maximumSize);
+        this.sketchCapacity = Math.min(maximumSize, 64);
+        this.sketch = new FrequencySketch(this.sketchCapacity);
+    }
+
+    /**
+     * Returns the maximum number of entries that can be kept.
+     *
+     * @return the maximum size
+     */
+    public synchronized int getMaximumSize() {
+        return this.maximumSize;
+    }
+
+    /**
+     * Changes the maximum number of entries that can be kept.
+     *
+     * @param  maximumSize  the new maximum size, needs to be larger than 0
+     * @return              the entries that have been evicted to fit in the new size
+     */
+    public synchronized List<Node> setMaximumSize(int maximumSize) {
+        drainReads();
+        setLimits(maximumSize);
+        if (this.sketchCapacity > maximumSize) {
+            this.sketchCapacity = maximumSize;
+            this.sketch.ensureCapacity(maximumSize);
+        }
+        List<Node> evicted = new ArrayList<Node>();
+        while (size() > this.maximumSize) {
+            Node victim = victim();
+            evicted.add(evict(victim == null ? this.queues[WINDOW].next : victim));
+        }
+        return evicted;
+    }
+
+    /**
+     * Returns the amount of entries that are currently tracked.
+     *
+     * @return the amount of entries
+     */
+    public synchronized int size() {
+        return this.sizes[WINDOW] + this.sizes[PROBATION] + this.sizes[PROTECTED];
+    }
+
+    /**
+     * Records a read of the entry.
+     * <p>
+     * The read is buffered and only takes the lock of the policy if the buffer of the thread is full.
+     *
+     * @param node  the entry that has been read
+     */
+    public void recordRead(Node node) {
+        if (!this.reads.offer(node)) {
+            synchronized (this) {
+                drainReads();
+                onRead(node);
+            }
+        }
+    }
+
+    /**
+     * Records a write of the entry and returns the entries that need to be evicted.
+     * <p>
+     * If the entry replaced another entry with the same key, it takes over its position.
+     * The returned list may contain the written entry itself if it was not admitted.
+     *
+     * @param  node      the entry that has been written
+     * @param  replaced  the entry that has been replaced, or null if none
+     * @return           the entries that have been evicted, empty if none
+     */
+    public synchronized List<Node> recordWrite(Node node, Node replaced) {
+        drainReads();
+        this.sketch.increment(node.keyHash());
+        if (node.queue != UNLINKED) {
+            onHit(node);
+            return Collections.emptyList();
+        }
+        if (replaced != null && replaced.queue != UNLINKED) {
+            node.queue = replaced.queue;
+            node.prev = replaced.prev;
+            node.next = replaced.next;
+            node.prev.next = node;
+            node.next.prev = node;
+            replaced.prev = null;
+            replaced.next = null;
+            replaced.queue = UNLINKED;
+            onHit(node);
+            return Collections.emptyList();
+        }
+        link(node, WINDOW);
+        int size = size();
+        if (size > this.sketchCapacity && this.sketchCapacity < this.maximumSize) {
+            // The sketch grows with the cache, so small groups don't pay for the full table.
+            this.sketchCapacity = (int) Math.min((long) this.sketchCapacity * 2, this.maximumSize);
+            this.sketch.ensureCapacity(this.sketchCapacity);
+        }
+        List<Node> evicted = null;
+        while (this.sizes[WINDOW] > this.maxWindow) {
+            if (evicted == null) {
+                evicted = new ArrayList<Node>(1);
+            }
+            Node candidate = this.queues[WINDOW].next;
+            unlink(candidate);
+            if (this.sizes[PROBATION] + this.sizes[PROTECTED] < this.maximumSize - this.maxWindow) {
+                link(candidate, PROBATION);
+                continue;
+            }
+            Node victim = victim();
+            if (victim == null || this.sketch.frequency(candidate.keyHash()) <= this.sketch.frequency(victim.keyHash())) {
+                evicted.add(candidate);
+            } else {
+                evicted.add(evict(victim));
+                link(candidate, PROBATION);
+            }
+        }
+        return (evicted == null) ? Collections.<Node>emptyList() : evicted;
+    }
+
+    /**
+     * Stops tracking the entry that frees the most memory for its value, and returns it.
+     * <p>
+     * The first few entries that would be evicted next are compared by their {@link Node#weight()} divided by
+     * how often their key has been used, so one large and rarely used entry goes before many small ones.
+     * The returned entry has to be removed from the storage by the caller.
+     *
+     * @return the evicted entry, or null if no entries are tracked
+     */
+    public synchronized Node evictHeaviest() {
+        drainReads();
+        int queue = PROBATION;
+        if (this.sizes[PROBATION] == 0) {
+            queue = (this.sizes[PROTECTED] > 0) ? PROTECTED : WINDOW;
+        }
+        Node head = this.queues[queue];
+        Node victim = null;
+        double victimScore = -1;
+        Node node = head.next;
+        for (int i = 0; i < SAMPLE && node != head; i++, node = node.next) {
+            double score = (double) node.weight() / (1 + this.sketch.frequency(node.keyHash()));
+            if (score > victimScore) {
+                victim = node;
+                victimScore = score;
+            }
+        }
+        return (victim == null) ? null : evict(victim);
+    }
+
+    /**
+     * Stops tracking the entry.
+     *
+     * @param node  the entry that has been removed from the cache
+     */
+    public synchronized void remove(Node node) {
+        if (node.queue != UNLINKED) {
+            unlink(node);
+        }
+    }
+
+    /**
+     * Stops tracking all entries, the frequency history is kept.
+     */
+    public synchronized void clear() {
+        drainReads();
+        for (int i = 0; i < this.queues.length; i++) {
+            Node head = this.queues[i];
+            while (head.next != head) {
+                unlink(head.next);
+            }
+        }
+    }
+
+    private void setLimits(int maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("The maximum size needs to be larger than 0.");
+        }
+        this.maximumSize = maximumSize;
+        this.maxWindow = Math.max(1, maximumSize / 100);
+        this.maxProtected = (int) ((maximumSize - this.maxWindow) * 0.8);
+    }
+
+    private void drainReads() {
+        this.reads.drainTo(this.drained);
+        for (int i = 0; i < this.drained.size(); i++) {
+            onRead(this.drained.get(i));
+        }
+        this.drained.clear();
+    }
+
+    private void onRead(Node node) {
+        this.sketch.increment(node.keyHash());
+        // The entry may have been removed or evicted since it was read.
+        if (node.queue != UNLINKED) {
+            onHit(node);
+        }
+    }
+
+    private void onHit(Node node) {
+        if (node.queue == PROBATION) {
+            unlink(node);
+            link(node, PROTECTED);
+            while (this.sizes[PROTECTED] > this.maxProtected) {
+                Node demoted = this.queues[PROTECTED].next;
+                unlink(demoted);
+                link(demoted, PROBATION);
+            }
+        } else {
+            int queue = node.queue;
+            unlink(node);
+            link(node, queue);
+        }
+    }
+
+    private Node victim() {
+        if (this.sizes[PROBATION] > 0) {
+            return this.queues[PROBATION].next;
+        } else if (this.sizes[PROTECTED] > 0) {
+            return this.queues[PROTECTED].next;
+        }
+        return null;
+    }
+
+    private Node evict(Node node) {
+        unlink(node);
+        return node;
+    }
+
+    private void link(Node node, int queue) {
+        Node head = this.queues[queue];
+        node.queue = queue;
+        node.prev = head.prev;
+        node.next = head;
+        head.prev.next = node;
+        head.prev = node;
+        this.sizes[queue]++;
+    }
+
+    private void unlink(Node node) {
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+        node.prev = null;
+        node.next = null;
+        this.sizes[node.queue]--;
+        node.queue = UNLINKED;
+    }
+}
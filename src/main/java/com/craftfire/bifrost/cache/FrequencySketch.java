@@ -0,0 +1,158 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.cache;
+
+/**
+ * A 4-bit count-min sketch that estimates how often a key has been seen recently.
+ * <p>
+ * Each key is counted in four of the sixteen 4-bit counters packed into one {@code long}, so the
+ * sketch needs roughly eight bytes per cached entry. When the number of increments reaches ten times
+ * the cache size all counters are halved, which lets the popularity of old keys decay over time.
+ * <p>
+ * This class is not thread safe, it is guarded by the {@link EvictionPolicy} that owns it.
+ */
+public class FrequencySketch {
+    private static final long[] SEED = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+    private long[] table;
+    private int tableMask;
+    private int sampleSize;
+    private int size;
+
+    /**
+     * Creates a sketch sized for a cache of the specified maximum size.
+     *
+     * @param maximumSize  the maximum number of entries of the cache
+     */
+    public FrequencySketch(int maximumSize) {
+        ensureCapacity(maximumSize);
+    }
+
+    /**
+     * Resizes the sketch for a cache of the specified maximum size.
+     * <p>
+     * The counters are kept. A larger table repeats the old one, so every key keeps its estimate until the copies
+     * drift apart, a smaller table keeps the larger count of the counters it merges. Either way no key is estimated
+     * lower than before.
+     *
+     * @param maximumSize  the maximum number of entries of the cache
+     */
+    public void ensureCapacity(int maximumSize) {
+        int maximum = Math.min(Math.max(maximumSize, 8), 1 << 30);
+        this.sampleSize = maximum > Integer.MAX_VALUE / 10 ? Integer.MAX_VALUE : maximum * 10;
+        int length = Integer.highestOneBit(maximum - 1) << 1;
+        if (this.table != null && this.table.length == length) {
+            return;
+        }
+        long[] old = this.table;
+        this.table = new long[length];
+        this.tableMask = length - 1;
+        if (old == null) {
+            return;
+        }
+        if (length > old.length) {
+            for (int i = 0; i < length; i++) {
+                this.table[i] = old[i & (old.length - 1)];
+            }
+        } else {
+            for (int i = 0; i < old.length; i++) {
+                this.table[i & this.tableMask] = max(this.table[i & this.tableMask], old[i]);
+            }
+        }
+        if (this.size >= this.sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * Returns the estimated number of occurrences of the key, between 0 and 15.
+     *
+     * @param  keyHash  the hash code of the key to look up
+     * @return          the estimated frequency of the key
+     */
+    public int frequency(int keyHash) {
+        int hash = spread(keyHash);
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int count = (int) ((this.table[index] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * Increments the popularity of the key, periodically aging all counters.
+     *
+     * @param keyHash  the hash code of the key that has been accessed
+     */
+    public void increment(int keyHash) {
+        int hash = spread(keyHash);
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+        if (added && ++this.size == this.sampleSize) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(int index, int counter) {
+        int offset = counter << 2;
+        long mask = 0xfL << offset;
+        if ((this.table[index] & mask) != mask) {
+            this.table[index] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    private void reset() {
+        int count = 0;
+        for (int i = 0; i < this.table.length; i++) {
+            count += Long.bitCount(this.table[i] & ONE_MASK);
+            this.table[i] = (this.table[i] >>> 1) & RESET_MASK;
+        }
+        this.size = (this.size >>> 1) - (count >>> 2);
+    }
+
+    private static long max(long a, long b) {
+        long max = 0;
+        for (int offset = 0; offset < 64; offset += 4) {
+            max |= Math.max((a >>> offset) & 0xfL, (b >>> offset) & 0xfL) << offset;
+        }
+        return max;
+    }
+
+    private int indexOf(int item, int i) {
+        long hash = (item + SEED[i]) * SEED[i];
+        hash += hash >>> 32;
+        return ((int) hash) & this.tableMask;
+    }
+
+    private static int spread(int x) {
+        int hash = ((x >>> 16) ^ x) * 0x45d9f3b;
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        return (hash >>> 16) ^ hash;
+    }
+}
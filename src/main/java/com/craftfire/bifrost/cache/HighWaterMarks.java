@@ -0,0 +1,80 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The high-water marks of a {@link ChangePoller}, the highest ID or time of every table the script has already seen.
+ * <p>
+ * Rows above the mark of their table have been written after the last poll, by Bifrost or by the script itself, see
+ * {@link com.craftfire.bifrost.classes.general.Script#pollChanges(HighWaterMarks)}.
+ */
+public class HighWaterMarks {
+    private final Map<String, Long> marks = new HashMap<String, Long>();
+
+    /**
+     * Returns {@code true} if the mark has been recorded, {@code false} if the table hasn't been polled yet.
+     *
+     * @param  name  the name of the mark
+     * @return       {@code true} if recorded, {@code false} if not
+     */
+    public synchronized boolean has(String name) {
+        return this.marks.containsKey(name);
+    }
+
+    /**
+     * Returns the value of the mark.
+     *
+     * @param  name  the name of the mark
+     * @return       the value, or 0 if the mark hasn't been recorded
+     */
+    public synchronized long get(String name) {
+        Long value = this.marks.get(name);
+        return (value == null) ? 0 : value;
+    }
+
+    /**
+     * Records the value of the mark.
+     *
+     * @param name   the name of the mark
+     * @param value  the highest ID or time that has been seen
+     */
+    public synchronized void set(String name, long value) {
+        this.marks.put(name, value);
+    }
+
+    /**
+     * Forgets all marks, the next poll records them again without reporting any changes.
+     */
+    public synchronized void clear() {
+        this.marks.clear();
+    }
+
+    /**
+     * Returns a copy of all recorded marks.
+     *
+     * @return the marks by their name
+     */
+    public synchronized Map<String, Long> toMap() {
+        return new HashMap<String, Long>(this.marks);
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.cache;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import com.craftfire.bifrost.enums.CacheGroup;
+
+/**
+ * Remembers the entities loaded during one operation, so every lookup of the same entity returns the same object
+ * and queries the script only once, even if the {@link com.craftfire.bifrost.classes.general.Cache} doesn't keep it.
+ * <p>
+ * A scope is opened with {@link com.craftfire.bifrost.classes.general.ScriptHandle#openScope()} and belongs to the
+ * thread that opened it. It should be closed in a {@code finally} block or a try-with-resources statement, which
+ * discards everything it remembered. Scopes can be nested, a nested scope also returns the entities of the scopes
+ * around it.
+ * <p>
+ * The scope assumes the operation changes entities through the objects it has read, it never reloads them.
+ * Lookups that didn't find anything are not remembered.
+ */
+public class IdentityScope implements AutoCloseable {
+    private final ThreadLocal<IdentityScope> binding;
+    private final IdentityScope parent;
+    private final Map<CacheGroup, IntObjectMap<Object>> entities = new EnumMap<CacheGroup, IntObjectMap<Object>>(CacheGroup.class);
+    private boolean closed;
+
+    /**
+     * Creates a new scope and binds it to the current thread.
+     *
+     * @param binding  the binding of the scopes of the handle, the new scope replaces the current one until closed
+     */
+    public IdentityScope(ThreadLocal<IdentityScope> binding) {
+        this.binding = binding;
+        this.parent = binding.get();
+        binding.set(this);
+    }
+
+    /**
+     * Returns the scope this scope has been opened in.
+     *
+     * @return the parent {@link IdentityScope}, or null if this is the outermost scope
+     */
+    public IdentityScope getParent() {
+        return this.parent;
+    }
+
+    /**
+     * Returns the entity of the group with the specified ID, if it has been loaded in this scope or the scopes
+     * around it.
+     *
+     * @param  group  the {@link CacheGroup} of the entity
+     * @param  id     the ID of the entity
+     * @return        the entity, or null if it hasn't been loaded
+     */
+    public Object get(CacheGroup group, int id) {
+        for (IdentityScope scope = this; scope != null; scope = scope.parent) {
+            IntObjectMap<Object> loaded = scope.entities.get(group);
+            Object entity = (loaded == null) ? null : loaded.get(id);
+            if (entity != null) {
+                return entity;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Remembers the entity of the group until the scope is closed.
+     *
+     * @param group   the {@link CacheGroup} of the entity
+     * @param id      the ID of the entity
+     * @param entity  the entity, null is ignored
+     */
+    public void put(CacheGroup group, int id, Object entity) {
+        if (entity == null || this.closed) {
+            return;
+        }
+        IntObjectMap<Object> loaded = this.entities.get(group);
+        if (loaded == null) {
+            loaded = new IntObjectMap<Object>(16);
+            this.entities.put(group, loaded);
+        }
+        loaded.put(id, entity);
+    }
+
+    /**
+     * Forgets the entity of the group, so the next lookup loads it again.
+     *
+     * @param group  the {@link CacheGroup} of the entity
+     * @param id     the ID of the entity
+     */
+    public void remove(CacheGroup group, int id) {
+        for (IdentityScope scope = this; scope != null; scope = scope.parent) {
+            IntObjectMap<Object> loaded = scope.entities.get(group);
+            if (loaded != null) {
+                loaded.remove(id);
+            }
+        }
+    }
+
+    /**
+     * Returns the amount of entities remembered by this scope, without the scopes around it.
+     *
+     * @return the amount of entities
+     */
+    public int size() {
+        int size = 0;
+        for (IntObjectMap<Object> loaded : this.entities.values()) {
+            size += loaded.size();
+        }
+        return size;
+    }
+
+    /**
+     * Returns {@code true} if the scope has been closed.
+     *
+     * @return {@code true} if closed, {@code false} if not
+     */
+    public boolean isClosed() {
+        return this.closed;
+    }
+
+    /**
+     * Discards the entities of the scope and makes the scope around it the current scope again.
+     * <p>
+     * Closing a scope twice does nothing.
+     *
+     * @throws IllegalStateException  if a scope opened in this scope is still open, or the scope belongs to another thread
+     */
+    @Override
+    public void close() {
+        if (this.closed) {
+            return;
+        }
+        if (this.binding.get() != this) {
+            throw new IllegalStateException("Scopes must be closed by their thread, in the reverse order they have been opened.");
+        }
+        if (this.parent == null) {
+            this.binding.remove();
+        } else {
+            this.binding.set(this.parent);
+        }
+        this.entities.clear();
+        this.closed = true;
+    }
+}
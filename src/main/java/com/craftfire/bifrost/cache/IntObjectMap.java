@@ -0,0 +1,263 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A map from primitive {@code int} keys to objects, using open addressing with linear probing.
+ * <p>
+ * Compared to a {@code HashMap<Integer, V>} this doesn't allocate a boxed key or a node per mapping,
+ * the keys and values are kept in two parallel arrays. Null values are not supported.
+ * <p>
+ * This class is not thread safe.
+ *
+ * @param <V>  the type of the values
+ */
+public class IntObjectMap<V> {
+    private static final float LOAD_FACTOR = 0.6f;
+    private int[] keys;
+    private Object[] values;
+    private int mask;
+    private int size;
+    private int threshold;
+
+    /**
+     * Creates a new empty map.
+     */
+    public IntObjectMap() {
+        this(16);
+    }
+
+    /**
+     * Creates a new empty map that can hold the specified amount of mappings without resizing.
+     *
+     * @param expectedSize  the expected amount of mappings
+     */
+    public IntObjectMap(int expectedSize) {
+        allocate(Math.max(4, Integer.highestOneBit(Math.max(1, (int) (expectedSize / LOAD_FACTOR))) << 1));
+    }
+
+    /**
+     * Returns the value of the key.
+     *
+     * @param  key  the key
+     * @return      the value, or null if the key is not mapped
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int slot = find(key);
+        return (slot < 0) ? null : (V) this.values[slot];
+    }
+
+    /**
+     * Returns {@code true} if the key is mapped, {@code false} if not.
+     *
+     * @param  key  the key
+     * @return      {@code true} if mapped, {@code false} if not
+     */
+    public boolean containsKey(int key) {
+        return find(key) >= 0;
+    }
+
+    /**
+     * Maps the key to the value.
+     *
+     * @param  key    the key
+     * @param  value  the value, can't be null
+     * @return        the previous value, or null if the key was not mapped
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("The value can't be null.");
+        }
+        int slot = mix(key) & this.mask;
+        while (this.values[slot] != null) {
+            if (this.keys[slot] == key) {
+                V previous = (V) this.values[slot];
+                this.values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        this.keys[slot] = key;
+        this.values[slot] = value;
+        if (++this.size > this.threshold) {
+            rehash(this.keys.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * Removes the key.
+     *
+     * @param  key  the key
+     * @return      the removed value, or null if the key was not mapped
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        int slot = find(key);
+        if (slot < 0) {
+            return null;
+        }
+        V previous = (V) this.values[slot];
+        removeSlot(slot);
+        return previous;
+    }
+
+    /**
+     * Removes the key only if it is mapped to the specified value.
+     *
+     * @param  key    the key
+     * @param  value  the expected value, compared by identity
+     * @return        {@code true} if removed, {@code false} if not
+     */
+    public boolean remove(int key, V value) {
+        int slot = find(key);
+        if (slot < 0 || this.values[slot] != value) {
+            return false;
+        }
+        removeSlot(slot);
+        return true;
+    }
+
+    /**
+     * Removes all mappings.
+     */
+    public void clear() {
+        if (this.size > 0) {
+            allocate(16);
+        }
+    }
+
+    /**
+     * Returns the amount of mappings.
+     *
+     * @return the amount of mappings
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns {@code true} if there are no mappings, {@code false} if there are.
+     *
+     * @return {@code true} if empty, {@code false} if not
+     */
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Returns a copy of all keys, in no particular order.
+     *
+     * @return the keys
+     */
+    public int[] keys() {
+        int[] copy = new int[this.size];
+        int i = 0;
+        for (int slot = 0; slot < this.values.length; slot++) {
+            if (this.values[slot] != null) {
+                copy[i++] = this.keys[slot];
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Returns a copy of all values, in no particular order.
+     *
+     * @return the values
+     */
+    @SuppressWarnings("unchecked")
+    public List<V> values() {
+        List<V> copy = new ArrayList<V>(this.size);
+        for (Object value : this.values) {
+            if (value != null) {
+                copy.add((V) value);
+            }
+        }
+        return copy;
+    }
+
+    private int find(int key) {
+        int slot = mix(key) & this.mask;
+        while (this.values[slot] != null) {
+            if (this.keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        return -1;
+    }
+
+    private void removeSlot(int slot) {
+        this.size--;
+        // Shift the following entries of the probe sequence back, so no tombstones are needed.
+        int last = slot;
+        int current = slot;
+        while (true) {
+            current = (current + 1) & this.mask;
+            Object value = this.values[current];
+            if (value == null) {
+                break;
+            }
+            int home = mix(this.keys[current]) & this.mask;
+            if (last <= current ? (last >= home || home > current) : (last >= home && home > current)) {
+                this.keys[last] = this.keys[current];
+                this.values[last] = value;
+                last = current;
+            }
+        }
+        this.values[last] = null;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = this.keys;
+        Object[] oldValues = this.values;
+        allocate(capacity);
+        for (int slot = 0; slot < oldValues.length; slot++) {
+            if (oldValues[slot] != null) {
+                int target = mix(oldKeys[slot]) & this.mask;
+                while (this.values[target] != null) {
+                    target = (target + 1) & this.mask;
+                }
+                this.keys[target] = oldKeys[slot];
+                this.values[target] = oldValues[slot];
+                this.size++;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        this.keys = new int[capacity];
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+        this.size = 0;
+        this.threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int mix(int key) {
+        int hash = key * 0x9e3779b9;
+        return hash ^ (hash >>> 16);
+    }
+}
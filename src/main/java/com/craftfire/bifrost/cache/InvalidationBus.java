@@ -0,0 +1,476 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.craftfire.bifrost.classes.general.Cache;
+import com.craftfire.bifrost.classes.general.ScriptUser;
+import com.craftfire.bifrost.enums.CacheGroup;
+
+/**
+ * Sends the invalidations of a {@link Cache} to the caches of other nodes that read the same database, and applies
+ * theirs, so an object changed on one node doesn't stay stale on the others.
+ * <p>
+ * Removed objects, cleared groups and invalidated tags are collected for {@link #DEFAULT_FLUSH_DELAY} and sent as
+ * one compact message through the {@link InvalidationTransport}. A received invalidation is applied like a local
+ * one, and an invalidated entity tag also removes the entity itself, which the node that changed it stores again
+ * right away. Received invalidations are not sent on.
+ * <p>
+ * Messages carry the channel of the bus, usually the cache key of the script, so buses of different databases can
+ * share a transport.
+ */
+public class InvalidationBus implements InvalidationTransport.Receiver {
+    /**
+     * How long invalidations are collected before they are sent, in milliseconds.
+     */
+    public static final long DEFAULT_FLUSH_DELAY = 2;
+    private static final short MAGIC = 0x4249;
+    private static final byte FORMAT = 1;
+    private static final byte REMOVE = 1;
+    private static final byte CLEAR = 2;
+    private static final byte TAG = 3;
+    private static final int MAXIMUM_COUNT = 0xFFFF;
+    private static final ThreadLocal<Boolean> APPLYING = new ThreadLocal<Boolean>();
+    private final Cache cache;
+    private final String channel;
+    private final InvalidationTransport transport;
+    private final long node = new Random().nextLong();
+    private final int headerSize;
+    private final Set<Invalidation> pending = new LinkedHashSet<Invalidation>();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile long flushDelay = DEFAULT_FLUSH_DELAY;
+    private ScheduledExecutorService executor;
+    private boolean flushScheduled;
+
+    /**
+     * Creates a new bus, it has to be started with {@link #start()}.
+     *
+     * @param cache      the {@link Cache} whose invalidations are sent and which receives the others
+     * @param channel    the channel of the bus, only messages of the same channel are applied
+     * @param transport  the {@link InvalidationTransport} that carries the messages
+     */
+    public InvalidationBus(Cache cache, String channel, InvalidationTransport transport) {
+        this.cache = cache;
+        this.channel = channel;
+        this.transport = transport;
+        // Magic, format, node, channel and count.
+        this.headerSize = 2 + 1 + 8 + 4 + channel.getBytes(SnapshotCodec.UTF8).length + 2;
+    }
+
+    /**
+     * Opens the transport and attaches the bus to the cache.
+     *
+     * @throws IOException  if the transport could not be opened
+     */
+    public synchronized void start() throws IOException {
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "Bifrost invalidation bus");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.transport.open(this);
+        this.cache.setInvalidationBus(this);
+    }
+
+    /**
+     * Detaches the bus from the cache, sends the pending invalidations and closes the transport.
+     */
+    public void close() {
+        if (this.cache.getInvalidationBus() == this) {
+            this.cache.setInvalidationBus(null);
+        }
+        flush();
+        synchronized (this) {
+            if (this.executor != null) {
+                this.executor.shutdown();
+                this.executor = null;
+            }
+        }
+        this.transport.close();
+    }
+
+    /**
+     * Returns the channel of the bus.
+     *
+     * @return the channel
+     */
+    public String getChannel() {
+        return this.channel;
+    }
+
+    /**
+     * Sets how long invalidations are collected before they are sent.
+     *
+     * @param delay  the delay in milliseconds, 0 to send every invalidation right away
+     */
+    public void setFlushDelay(long delay) {
+        if (delay < 0) {
+            throw new IllegalArgumentException("The delay can't be negative.");
+        }
+        this.flushDelay = delay;
+    }
+
+    /**
+     * Returns the amount of messages that have been sent.
+     *
+     * @return the amount of sent messages
+     */
+    public long getSent() {
+        return this.sent.get();
+    }
+
+    /**
+     * Returns the amount of messages of other nodes that have been applied.
+     *
+     * @return the amount of received messages
+     */
+    public long getReceived() {
+        return this.received.get();
+    }
+
+    /**
+     * Returns the amount of messages that could not be sent.
+     *
+     * @return the amount of failures
+     */
+    public long getFailures() {
+        return this.failures.get();
+    }
+
+    /**
+     * Sends the removal of an object.
+     *
+     * @param group  the {@link CacheGroup} of the object
+     * @param id     the ID of the object
+     */
+    public void publishRemove(CacheGroup group, Object id) {
+        if (SnapshotCodec.isSupported(id)) {
+            publish(new Invalidation(REMOVE, group.ordinal(), id));
+        } else {
+            publishClear(group);
+        }
+    }
+
+    /**
+     * Sends the clearing of a group.
+     *
+     * @param group  the {@link CacheGroup} that has been cleared
+     */
+    public void publishClear(CacheGroup group) {
+        publish(new Invalidation(CLEAR, group.ordinal(), null));
+    }
+
+    /**
+     * Sends the invalidation of tags.
+     *
+     * @param tags  the invalidated {@link CacheTag}s, null tags are ignored
+     */
+    public void publishTags(CacheTag... tags) {
+        for (CacheTag tag : tags) {
+            if (tag != null && SnapshotCodec.isSupported(tag.getID())) {
+                publish(new Invalidation(TAG, tag.getKind().ordinal(), tag.getID()));
+            }
+        }
+    }
+
+    /**
+     * Sends the collected invalidations now.
+     * <p>
+     * An invalidation that doesn't fit in a message by itself, like the removal of an object with a huge ID, is
+     * sent as the clearing of the groups it could affect instead.
+     */
+    public void flush() {
+        List<Invalidation> batch;
+        synchronized (this) {
+            this.flushScheduled = false;
+            if (this.pending.isEmpty()) {
+                return;
+            }
+            batch = new ArrayList<Invalidation>(this.pending);
+            this.pending.clear();
+        }
+        try {
+            int limit = this.transport.getMaximumMessageSize() - this.headerSize;
+            List<byte[]> records = new ArrayList<byte[]>();
+            Set<Invalidation> fallbacks = new LinkedHashSet<Invalidation>();
+            for (Invalidation invalidation : batch) {
+                byte[] record = invalidation.toByteArray();
+                if (record.length <= limit) {
+                    records.add(record);
+                } else {
+                    fallbacks.addAll(invalidation.getFallbacks());
+                }
+            }
+            fallbacks.removeAll(batch);
+            for (Invalidation fallback : fallbacks) {
+                byte[] record = fallback.toByteArray();
+                if (record.length <= limit) {
+                    records.add(record);
+                } else {
+                    this.failures.incrementAndGet();
+                }
+            }
+            ByteArrayOutputStream message = new ByteArrayOutputStream();
+            int count = 0;
+            for (byte[] record : records) {
+                if (count > 0 && (message.size() + record.length > limit || count == MAXIMUM_COUNT)) {
+                    send(message.toByteArray(), message.size(), count);
+                    message.reset();
+                    count = 0;
+                }
+                message.write(record);
+                count++;
+            }
+            send(message.toByteArray(), message.size(), count);
+        } catch (IOException e) {
+            this.failures.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void receive(byte[] message) {
+        ByteBuffer in = ByteBuffer.wrap(message);
+        List<Invalidation> invalidations;
+        try {
+            if (in.getShort() != MAGIC || in.get() != FORMAT || in.getLong() == this.node
+                    || !this.channel.equals(SnapshotCodec.readString(in))) {
+                return;
+            }
+            int count = in.getShort() & 0xFFFF;
+            // The whole message is read first, so a broken record doesn't leave it half applied.
+            invalidations = new ArrayList<Invalidation>(count);
+            for (int i = 0; i < count; i++) {
+                invalidations.add(read(in));
+            }
+        } catch (BufferUnderflowException e) {
+            // A broken or foreign message.
+            return;
+        } catch (IOException e) {
+            // A broken or foreign message.
+            return;
+        }
+        APPLYING.set(Boolean.TRUE);
+        try {
+            for (Invalidation invalidation : invalidations) {
+                apply(invalidation);
+            }
+        } finally {
+            APPLYING.remove();
+        }
+        this.received.incrementAndGet();
+    }
+
+    private static Invalidation read(ByteBuffer in) throws IOException {
+        byte type = in.get();
+        int ordinal = in.getShort() & 0xFFFF;
+        switch (type) {
+        case REMOVE:
+            checkOrdinal(ordinal, CacheGroup.values().length);
+            return new Invalidation(type, ordinal, SnapshotCodec.read(in, null));
+        case CLEAR:
+            checkOrdinal(ordinal, CacheGroup.values().length);
+            return new Invalidation(type, ordinal, null);
+        case TAG:
+            checkOrdinal(ordinal, CacheTag.Kind.values().length);
+            return new Invalidation(type, ordinal, SnapshotCodec.read(in, null));
+        default:
+            throw new IOException("Unknown invalidation type " + type);
+        }
+    }
+
+    private static void checkOrdinal(int ordinal, int length) throws IOException {
+        if (ordinal >= length) {
+            throw new IOException("Unknown invalidation ordinal " + ordinal);
+        }
+    }
+
+    private void apply(Invalidation invalidation) {
+        switch (invalidation.type) {
+        case REMOVE:
+            this.cache.remove(CacheGroup.values()[invalidation.ordinal], invalidation.id);
+            break;
+        case CLEAR:
+            this.cache.clear(CacheGroup.values()[invalidation.ordinal]);
+            break;
+        default:
+            CacheTag tag = new CacheTag(CacheTag.Kind.values()[invalidation.ordinal], invalidation.id);
+            this.cache.invalidate(tag);
+            removeEntity(tag);
+            break;
+        }
+    }
+
+    private void removeEntity(CacheTag tag) {
+        CacheGroup group = entityGroup(tag.getKind());
+        if (group == null) {
+            return;
+        }
+        if (tag.getKind() != CacheTag.Kind.USER) {
+            this.cache.remove(group, tag.getID());
+            return;
+        }
+        // Users are tagged by their username, their entries are found by it.
+        CacheSegment segment = this.cache.getSegment(group);
+        for (CacheEntry entry : segment.entries()) {
+            if (entry.getValue() instanceof ScriptUser && tag.getID().equals(((ScriptUser) entry.getValue()).getUsername())) {
+                segment.remove(entry);
+            }
+        }
+    }
+
+    private static CacheGroup entityGroup(CacheTag.Kind kind) {
+        switch (kind) {
+        case USER:
+            return CacheGroup.USER;
+        case BAN:
+            return CacheGroup.BAN;
+        case GROUP:
+            return CacheGroup.GROUP;
+        case POST:
+            return CacheGroup.POST;
+        case THREAD:
+            return CacheGroup.THREAD;
+        case BOARD:
+            return CacheGroup.BOARD;
+        case PM:
+            return CacheGroup.PM;
+        case COMMENT:
+            return CacheGroup.COMMENT;
+        case ARTICLE:
+            return CacheGroup.ARTICLE;
+        case CATEGORY:
+            return CacheGroup.CMSCAT;
+        default:
+            return null;
+        }
+    }
+
+    private void publish(Invalidation invalidation) {
+        if (APPLYING.get() != null) {
+            return;
+        }
+        long delay = this.flushDelay;
+        synchronized (this) {
+            if (this.executor == null) {
+                return;
+            }
+            this.pending.add(invalidation);
+            if (this.flushScheduled) {
+                return;
+            }
+            this.flushScheduled = true;
+            this.executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void send(byte[] records, int length, int count) throws IOException {
+        if (count == 0) {
+            return;
+        }
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(length + this.headerSize);
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeShort(MAGIC);
+        out.writeByte(FORMAT);
+        out.writeLong(this.node);
+        SnapshotCodec.writeString(out, this.channel);
+        out.writeShort(count);
+        out.write(records, 0, length);
+        out.flush();
+        this.transport.send(buffer.toByteArray());
+        this.sent.incrementAndGet();
+    }
+
+    private static final class Invalidation {
+        private final byte type;
+        private final int ordinal;
+        private final Object id;
+
+        private Invalidation(byte type, int ordinal, Object id) {
+            this.type = type;
+            this.ordinal = ordinal;
+            this.id = id;
+        }
+
+        private byte[] toByteArray() throws IOException {
+            ByteArrayOutputStream record = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(record);
+            out.writeByte(this.type);
+            out.writeShort(this.ordinal);
+            if (this.type != CLEAR) {
+                SnapshotCodec.write(out, this.id);
+            }
+            out.flush();
+            return record.toByteArray();
+        }
+
+        private List<Invalidation> getFallbacks() {
+            // A removed object is covered by clearing its group, a tag by clearing all groups it may be used in.
+            List<Invalidation> clears = new ArrayList<Invalidation>();
+            if (this.type == TAG) {
+                for (CacheGroup group : CacheGroup.values()) {
+                    clears.add(new Invalidation(CLEAR, group.ordinal(), null));
+                }
+            } else {
+                clears.add(new Invalidation(CLEAR, this.ordinal, null));
+            }
+            return clears;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof Invalidation)) {
+                return false;
+            }
+            Invalidation other = (Invalidation) object;
+            return this.type == other.type && this.ordinal == other.ordinal
+                    && ((this.id == null) ? other.id == null : this.id.equals(other.id));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * this.type + this.ordinal) + ((this.id == null) ? 0 : this.id.hashCode());
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.cache;
+
+import java.io.IOException;
+
+/**
+ * Carries the messages of an {@link InvalidationBus} to the buses of the other nodes.
+ * <p>
+ * A transport delivers every message it sends to the receivers of the other nodes, it may deliver it to its own
+ * receiver as well. Messages may get lost, the bus only needs them to arrive quickly.
+ *
+ * @see LoopbackTransport
+ * @see MulticastTransport
+ */
+public interface InvalidationTransport {
+    /**
+     * Starts delivering the messages of the other nodes to the receiver.
+     *
+     * @param  receiver     the {@link Receiver} of the messages
+     * @throws IOException  if the transport could not be opened
+     */
+    void open(Receiver receiver) throws IOException;
+
+    /**
+     * Sends a message to the other nodes.
+     *
+     * @param  message      the message, at most {@link #getMaximumMessageSize()} bytes
+     * @throws IOException  if the message could not be sent
+     */
+    void send(byte[] message) throws IOException;
+
+    /**
+     * Returns the maximum size of a message, larger batches are split.
+     *
+     * @return the maximum size in bytes
+     */
+    int getMaximumMessageSize();
+
+    /**
+     * Stops sending and receiving messages.
+     */
+    void close();
+
+    /**
+     * Receives the messages of the other nodes.
+     */
+    interface Receiver {
+        /**
+         * Handles a received message.
+         *
+         * @param message  the message
+         */
+        void receive(byte[] message);
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.cache;
+
+import java.sql.SQLException;
+import java.util.List;
+
+import com.craftfire.bifrost.exceptions.ScriptException;
+
+/**
+ * Loads a range of rows of a list from the script, used by {@link CachedList}s to fetch the rows they are missing.
+ *
+ * @param <T>  the type of the listed objects
+ */
+public interface ListLoader<T> {
+    /**
+     * Loads the rows of the list starting at the specified offset.
+     *
+     * @param  offset            the number of rows to skip
+     * @param  limit             the maximum number of rows to load, 0 to load all remaining rows
+     * @return                   the loaded rows, in the order of the list
+     * @throws SQLException      if a MySQL exception occurred
+     * @throws ScriptException   if any other exception occurred
+     */
+    List<T> load(int offset, int limit) throws SQLException, ScriptException;
+}
@@ -0,0 +1,90 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.cache;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Delivers the messages of an {@link InvalidationBus} to the other transports of the same {@link Hub}, within one
+ * JVM. This is meant for tests, and for several caches of one application that read the same database.
+ * <p>
+ * Messages are delivered right away, on the thread that sends them.
+ */
+public class LoopbackTransport implements InvalidationTransport {
+    /**
+     * The maximum size of a message.
+     */
+    public static final int MAXIMUM_MESSAGE_SIZE = 64 * 1024;
+    private final Hub hub;
+    private volatile Receiver receiver;
+
+    /**
+     * Creates a new transport connected to the hub.
+     *
+     * @param hub  the {@link Hub} shared by the transports that talk to each other
+     */
+    public LoopbackTransport(Hub hub) {
+        this.hub = hub;
+    }
+
+    @Override
+    public void open(Receiver messageReceiver) {
+        this.receiver = messageReceiver;
+        this.hub.transports.addIfAbsent(this);
+    }
+
+    @Override
+    public void send(byte[] message) {
+        for (LoopbackTransport transport : this.hub.transports) {
+            Receiver target = transport.receiver;
+            if (transport != this && target != null) {
+                target.receive(message.clone());
+            }
+        }
+    }
+
+    @Override
+    public int getMaximumMessageSize() {
+        return MAXIMUM_MESSAGE_SIZE;
+    }
+
+    @Override
+    public void close() {
+        this.hub.transports.remove(this);
+        this.receiver = null;
+    }
+
+    /**
+     * Connects the transports that deliver messages to each other.
+     */
+    public static final class Hub {
+        private final CopyOnWriteArrayList<LoopbackTransport> transports = new CopyOnWriteArrayList<LoopbackTransport>();
+
+        /**
+         * Returns the transports that are open.
+         *
+         * @return the list of {@link LoopbackTransport}s
+         */
+        public List<LoopbackTransport> getTransports() {
+            return this.transports;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.cache;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.util.Arrays;
+
+/**
+ * Delivers the messages of an {@link InvalidationBus} to all nodes that joined the same UDP multicast group.
+ * <p>
+ * Every message is sent as one datagram, small enough not to be fragmented on a usual network. The node receives
+ * its own messages as well, the bus ignores them. Lost datagrams are not sent again.
+ */
+public class MulticastTransport implements InvalidationTransport {
+    /**
+     * The maximum size of a message, it fits in one Ethernet frame.
+     */
+    public static final int MAXIMUM_MESSAGE_SIZE = 1400;
+    /**
+     * How many routers a message may pass if no other value has been set, 1 keeps it in the local network.
+     */
+    public static final int DEFAULT_TIME_TO_LIVE = 1;
+    private final InetAddress group;
+    private final int port;
+    private final int timeToLive;
+    private final NetworkInterface networkInterface;
+    private volatile MulticastSocket socket;
+
+    /**
+     * Creates a new transport that stays in the local network.
+     *
+     * @param group  the address of the multicast group, like {@code 239.255.66.70}
+     * @param port   the port of the multicast group
+     */
+    public MulticastTransport(InetAddress group, int port) {
+        this(group, port, DEFAULT_TIME_TO_LIVE);
+    }
+
+    /**
+     * Creates a new transport.
+     *
+     * @param group       the address of the multicast group
+     * @param port        the port of the multicast group
+     * @param timeToLive  how many routers a message may pass
+     */
+    public MulticastTransport(InetAddress group, int port, int timeToLive) {
+        this(group, port, timeToLive, (NetworkInterface) null);
+    }
+
+    /**
+     * Creates a new transport that joins the group on the network interface with the specified local address.
+     *
+     * @param  group           the address of the multicast group
+     * @param  port            the port of the multicast group
+     * @param  timeToLive      how many routers a message may pass
+     * @param  localAddress    the address of the local network interface, see
+     *                         {@link NetworkInterface#getByInetAddress(InetAddress)}
+     * @throws SocketException  if no network interface has the local address
+     */
+    public MulticastTransport(InetAddress group, int port, int timeToLive, InetAddress localAddress)
+            throws SocketException {
+        this(group, port, timeToLive, getNetworkInterface(localAddress));
+    }
+
+    /**
+     * Creates a new transport that joins the group on the specified network interface.
+     *
+     * @param group             the address of the multicast group
+     * @param port              the port of the multicast group
+     * @param timeToLive        how many routers a message may pass
+     * @param networkInterface  the network interface to join the group on, null for the default interface of the
+     *                          system
+     */
+    public MulticastTransport(InetAddress group, int port, int timeToLive, NetworkInterface networkInterface) {
+        if (!group.isMulticastAddress()) {
+            throw new IllegalArgumentException(group + " is not a multicast address.");
+        }
+        this.group = group;
+        this.port = port;
+        this.timeToLive = timeToLive;
+        this.networkInterface = networkInterface;
+    }
+
+    private static NetworkInterface getNetworkInterface(InetAddress localAddress) throws SocketException {
+        NetworkInterface networkInterface = NetworkInterface.getByInetAddress(localAddress);
+        if (networkInterface == null) {
+            throw new SocketException("No network interface has the address " + localAddress.getHostAddress() + ".");
+        }
+        return networkInterface;
+    }
+
+    /**
+     * Returns the network interface the group is joined on.
+     *
+     * @return the {@link NetworkInterface}, or null if the default interface of the system is used
+     */
+    public NetworkInterface getNetworkInterface() {
+        return this.networkInterface;
+    }
+
+    @Override
+    public void open(final Receiver receiver) throws IOException {
+        final MulticastSocket opened = new MulticastSocket(this.port);
+        opened.setTimeToLive(this.timeToLive);
+        if (this.networkInterface != null) {
+            opened.setNetworkInterface(this.networkInterface);
+        }
+        opened.joinGroup(new InetSocketAddress(this.group, this.port), this.networkInterface);
+        this.socket = opened;
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                byte[] buffer = new byte[MAXIMUM_MESSAGE_SIZE];
+                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                while (!opened.isClosed()) {
+                    try {
+                        packet.setLength(buffer.length);
+                        opened.receive(packet);
+                        receiver.receive(Arrays.copyOfRange(buffer, packet.getOffset(), packet.getOffset() + packet.getLength()));
+                    } catch (IOException e) {
+                        // The socket has been closed, or the datagram was broken.
+                    } catch (RuntimeException e) {
+                        // A broken message must not stop the receiver.
+                    }
+                }
+            }
+        }, "Bifrost invalidation receiver " + this.group.getHostAddress() + ":" + this.port);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void send(byte[] message) throws IOException {
+        MulticastSocket current = this.socket;
+        if (current == null) {
+            throw new IOException("The transport is not open.");
+        }
+        current.send(new DatagramPacket(message, message.length, this.group, this.port));
+    }
+
+    @Override
+    public int getMaximumMessageSize() {
+        return MAXIMUM_MESSAGE_SIZE;
+    }
+
+    @Override
+    public void close() {
+        MulticastSocket current = this.socket;
+        this.socket = null;
+        if (current != null) {
+            try {
+                current.leaveGroup(new InetSocketAddress(this.group, this.port), this.networkInterface);
+            } catch (IOException ignore) {
+                // The socket is closed anyway.
+            }
+            current.close();
+        }
+    }
+}
@@ -0,0 +1,434 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.craftfire.bifrost.classes.general.Script;
+import com.craftfire.bifrost.enums.CacheGroup;
+
+/**
+ * Keeps entries evicted from the {@link com.craftfire.bifrost.classes.general.Cache} compressed outside of the
+ * Java heap, so large objects like posts and articles can be promoted back without querying the database again.
+ * <p>
+ * Entries are encoded with the {@link SnapshotCodec}, compressed and appended to direct {@link ByteBuffer} slabs,
+ * which are allocated when they are first written to. When the last slab is full the oldest slab is reused, and
+ * all entries that are still stored in it are dropped. Space of entries that have been promoted or removed is
+ * freed only when their slab is reused.
+ * <p>
+ * The metadata of an entry is stored with it, as far as the codec supports its values.
+ */
+public class OffHeapStore {
+    /**
+     * The size of one slab in bytes.
+     */
+    public static final int SLAB_SIZE = 1 << 20;
+    private final Script script;
+    private final long capacity;
+    private final ByteBuffer[] slabs;
+    private final List<List<Key>> slabKeys;
+    private final Map<Key, Location> index = new HashMap<Key, Location>();
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final Inflater inflater = new Inflater();
+    private int current;
+    private long bytes;
+    private long demotions;
+    private long promotions;
+    private long drops;
+
+    /**
+     * Creates a new store, no memory is allocated until the first entry is stored.
+     *
+     * @param script    the {@link Script} the stored objects are created for when they are promoted
+     * @param capacity  the maximum amount of bytes of the slabs, at least one slab is used
+     */
+    public OffHeapStore(Script script, long capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The capacity must be positive.");
+        }
+        this.script = script;
+        int count = (int) Math.min(Integer.MAX_VALUE, Math.max(1, capacity / SLAB_SIZE));
+        this.capacity = (capacity < SLAB_SIZE) ? capacity : (long) count * SLAB_SIZE;
+        this.slabs = new ByteBuffer[count];
+        this.slabKeys = new ArrayList<List<Key>>(count);
+        for (int i = 0; i < count; i++) {
+            this.slabKeys.add(new ArrayList<Key>());
+        }
+    }
+
+    /**
+     * Returns {@code true} if the object of the entry can be stored, see {@link SnapshotCodec#isSupported(Object)}.
+     *
+     * @param  entry  the {@link CacheEntry} to check
+     * @return        {@code true} if it can be stored, {@code false} if not
+     */
+    public static boolean isSupported(CacheEntry entry) {
+        return entry.getValue() != null && SnapshotCodec.isSupported(entry.getValue());
+    }
+
+    /**
+     * Stores the entry, replacing the stored entry of the same object.
+     *
+     * @param  group  the {@link CacheGroup} of the entry
+     * @param  id     the ID of the object
+     * @param  entry  the {@link CacheEntry} to store
+     * @return        {@code true} if it has been stored, {@code false} if it isn't supported or too large
+     */
+    public boolean store(CacheGroup group, Object id, CacheEntry entry) {
+        if (!isSupported(entry)) {
+            return false;
+        }
+        byte[] raw;
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(buffer);
+            writeMetadata(out, entry);
+            SnapshotCodec.write(out, entry.getValue());
+            out.flush();
+            raw = buffer.toByteArray();
+        } catch (IOException e) {
+            return false;
+        }
+        synchronized (this) {
+            byte[] compressed = compress(raw);
+            Key key = new Key(group, id);
+            drop(this.index.remove(key));
+            if (compressed == null || compressed.length > slabSize()) {
+                return false;
+            }
+            ByteBuffer slab = slabFor(compressed.length);
+            Location location = new Location(this.current, slab.position(), compressed.length, raw.length);
+            slab.put(compressed);
+            this.index.put(key, location);
+            this.slabKeys.get(this.current).add(key);
+            this.bytes += compressed.length;
+            this.demotions++;
+            return true;
+        }
+    }
+
+    /**
+     * Removes the stored entry of the object and returns it, to be stored in the cache again.
+     *
+     * @param  group  the {@link CacheGroup} of the entry
+     * @param  id     the ID of the object
+     * @return        the stored object, or null if not stored
+     */
+    public synchronized Stored take(CacheGroup group, Object id) {
+        Location location = this.index.remove(new Key(group, id));
+        if (location == null) {
+            return null;
+        }
+        drop(location);
+        byte[] compressed = new byte[location.length];
+        ByteBuffer slab = this.slabs[location.slab].duplicate();
+        slab.position(location.offset);
+        slab.get(compressed);
+        byte[] raw = new byte[location.rawLength];
+        try {
+            this.inflater.reset();
+            this.inflater.setInput(compressed);
+            if (this.inflater.inflate(raw) != raw.length) {
+                return null;
+            }
+            ByteBuffer in = ByteBuffer.wrap(raw);
+            Map<String, Object> metadata = readMetadata(in);
+            Object value = SnapshotCodec.read(in, this.script);
+            this.promotions++;
+            return new Stored(value, metadata);
+        } catch (DataFormatException e) {
+            return null;
+        } catch (IOException e) {
+            return null;
+        } catch (RuntimeException e) {
+            // The constructors of the entities might throw if the script changed in between.
+            return null;
+        }
+    }
+
+    /**
+     * Removes the stored entry of the object.
+     *
+     * @param group  the {@link CacheGroup} of the entry
+     * @param id     the ID of the object
+     */
+    public synchronized void remove(CacheGroup group, Object id) {
+        drop(this.index.remove(new Key(group, id)));
+    }
+
+    /**
+     * Removes all stored entries of the group.
+     *
+     * @param group  the {@link CacheGroup} to clear
+     */
+    public synchronized void clear(CacheGroup group) {
+        Iterator<Map.Entry<Key, Location>> iterator = this.index.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Key, Location> stored = iterator.next();
+            if (stored.getKey().group == group) {
+                drop(stored.getValue());
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns {@code true} if an entry of the object is stored.
+     *
+     * @param  group  the {@link CacheGroup} of the entry
+     * @param  id     the ID of the object
+     * @return        {@code true} if stored, {@code false} if not
+     */
+    public synchronized boolean contains(CacheGroup group, Object id) {
+        return this.index.containsKey(new Key(group, id));
+    }
+
+    /**
+     * Returns the amount of stored entries.
+     *
+     * @return the amount of entries
+     */
+    public synchronized int size() {
+        return this.index.size();
+    }
+
+    /**
+     * Returns the compressed bytes of the stored entries.
+     *
+     * @return the amount of bytes
+     */
+    public synchronized long getBytes() {
+        return this.bytes;
+    }
+
+    /**
+     * Returns the maximum amount of bytes of the slabs.
+     *
+     * @return the capacity in bytes
+     */
+    public long getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Returns the amount of entries that have been stored.
+     *
+     * @return the amount of demotions
+     */
+    public synchronized long getDemotions() {
+        return this.demotions;
+    }
+
+    /**
+     * Returns the amount of entries that have been taken back into the cache.
+     *
+     * @return the amount of promotions
+     */
+    public synchronized long getPromotions() {
+        return this.promotions;
+    }
+
+    /**
+     * Returns the amount of entries that have been dropped because their slab has been reused.
+     *
+     * @return the amount of dropped entries
+     */
+    public synchronized long getDrops() {
+        return this.drops;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "OffHeapStore{size=" + this.index.size() + ", bytes=" + this.bytes + ", capacity=" + this.capacity
+                + ", demotions=" + this.demotions + ", promotions=" + this.promotions + ", drops=" + this.drops + "}";
+    }
+
+    private int slabSize() {
+        return (int) Math.min(SLAB_SIZE, this.capacity);
+    }
+
+    private ByteBuffer slabFor(int length) {
+        ByteBuffer slab = this.slabs[this.current];
+        if (slab != null && slab.remaining() >= length) {
+            return slab;
+        }
+        if (slab != null) {
+            this.current = (this.current + 1) % this.slabs.length;
+            slab = this.slabs[this.current];
+        }
+        if (slab == null) {
+            slab = ByteBuffer.allocateDirect(slabSize());
+            this.slabs[this.current] = slab;
+        } else {
+            // Reuse the oldest slab, dropping the entries that are still stored in it.
+            for (Key key : this.slabKeys.get(this.current)) {
+                Location location = this.index.get(key);
+                if (location != null && location.slab == this.current) {
+                    this.index.remove(key);
+                    drop(location);
+                    this.drops++;
+                }
+            }
+            slab.clear();
+        }
+        this.slabKeys.get(this.current).clear();
+        return slab;
+    }
+
+    private void drop(Location location) {
+        if (location != null) {
+            this.bytes -= location.length;
+        }
+    }
+
+    private byte[] compress(byte[] raw) {
+        this.deflater.reset();
+        this.deflater.setInput(raw);
+        this.deflater.finish();
+        byte[] buffer = new byte[raw.length + raw.length / 1000 + 64];
+        int length = this.deflater.deflate(buffer);
+        if (!this.deflater.finished()) {
+            return null;
+        }
+        byte[] compressed = new byte[length];
+        System.arraycopy(buffer, 0, compressed, 0, length);
+        return compressed;
+    }
+
+    private static void writeMetadata(DataOutputStream out, CacheEntry entry) throws IOException {
+        if (!entry.isMetadatable()) {
+            out.writeInt(-1);
+            return;
+        }
+        Map<String, Object> metadata = entry.copyMetadata();
+        Iterator<Object> values = metadata.values().iterator();
+        while (values.hasNext()) {
+            if (!SnapshotCodec.isSupported(values.next())) {
+                values.remove();
+            }
+        }
+        out.writeInt(metadata.size());
+        for (Map.Entry<String, Object> meta : metadata.entrySet()) {
+            SnapshotCodec.writeString(out, meta.getKey());
+            SnapshotCodec.write(out, meta.getValue());
+        }
+    }
+
+    private Map<String, Object> readMetadata(ByteBuffer in) throws IOException {
+        int size = in.getInt();
+        if (size < 0) {
+            return null;
+        }
+        Map<String, Object> metadata = new HashMap<String, Object>();
+        for (int i = 0; i < size; i++) {
+            metadata.put(SnapshotCodec.readString(in), SnapshotCodec.read(in, this.script));
+        }
+        return metadata;
+    }
+
+    /**
+     * An object taken from the store.
+     */
+    public static final class Stored {
+        private final Object value;
+        private final Map<String, Object> metadata;
+
+        private Stored(Object value, Map<String, Object> metadata) {
+            this.value = value;
+            this.metadata = metadata;
+        }
+
+        /**
+         * Returns the stored object.
+         *
+         * @return the object
+         */
+        public Object getValue() {
+            return this.value;
+        }
+
+        /**
+         * Returns {@code true} if the entry of the object was metadatable.
+         *
+         * @return {@code true} if metadatable, {@code false} if not
+         */
+        public boolean isMetadatable() {
+            return this.metadata != null;
+        }
+
+        /**
+         * Returns the stored metadata of the entry.
+         *
+         * @return the metadata, or null if the entry was not metadatable
+         */
+        public Map<String, Object> getMetadata() {
+            return this.metadata;
+        }
+    }
+
+    private static final class Key {
+        private final CacheGroup group;
+        private final Object id;
+
+        private Key(CacheGroup group, Object id) {
+            this.group = group;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) object;
+            return this.group == other.group && ((this.id == null) ? other.id == null : this.id.equals(other.id));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * this.group.hashCode() + ((this.id == null) ? 0 : this.id.hashCode());
+        }
+    }
+
+    private static final class Location {
+        private final int slab;
+        private final int offset;
+        private final int length;
+        private final int rawLength;
+
+        private Location(int slab, int offset, int length, int rawLength) {
+            this.slab = slab;
+            this.offset = offset;
+            this.length = length;
+            this.rawLength = rawLength;
+        }
+    }
+}
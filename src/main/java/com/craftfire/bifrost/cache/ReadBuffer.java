@@ -0,0 +1,96 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.cache;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A lossy buffer of reads, so the readers of a cache don't have to take the lock of its {@link EvictionPolicy}.
+ * <p>
+ * Every thread adds to the ring buffer picked by its ID, like the cells of a {@link StripedCounter}, without
+ * locking. A read is dropped if another thread claimed the same slot at the same time, losing a few reads only
+ * makes the frequency estimates a little lower. The buffers are drained by the owner of the lock.
+ *
+ * @param <E>  the type of the recorded elements
+ */
+public class ReadBuffer<E> {
+    private static final int PADDING = 8;
+    private static final int MAXIMUM_STRIPES = 8;
+    private static final int SIZE = 16;
+    private static final int STRIPES;
+    static {
+        int stripes = 1;
+        int processors = Runtime.getRuntime().availableProcessors();
+        while (stripes < processors && stripes < MAXIMUM_STRIPES) {
+            stripes <<= 1;
+        }
+        STRIPES = stripes;
+    }
+    private final AtomicReferenceArray<E> slots = new AtomicReferenceArray<E>(STRIPES * SIZE);
+    private final AtomicLongArray tails = new AtomicLongArray(STRIPES * PADDING);
+    private final long[] heads = new long[STRIPES];
+
+    /**
+     * Adds the element to the buffer of the current thread.
+     *
+     * @param  element  the element to add
+     * @return          {@code false} if the buffer is full and has to be drained, {@code true} if not
+     */
+    public boolean offer(E element) {
+        long id = Thread.currentThread().getId();
+        int hash = (int) (id ^ (id >>> 32)) * 0x9e3779b9;
+        int stripe = (hash >>> 16) & (STRIPES - 1);
+        long tail = this.tails.get(stripe * PADDING);
+        int index = stripe * SIZE + (int) (tail & (SIZE - 1));
+        if (this.slots.get(index) != null) {
+            return false;
+        }
+        if (this.tails.compareAndSet(stripe * PADDING, tail, tail + 1)) {
+            this.slots.lazySet(index, element);
+        }
+        return true;
+    }
+
+    /**
+     * Moves the elements of all buffers to the list, in the order they have been added per thread.
+     * <p>
+     * Only one thread may drain the buffer at a time, the caller has to hold the lock the buffer is drained under.
+     *
+     * @param sink  the list to add the elements to
+     */
+    public void drainTo(List<E> sink) {
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            long head = this.heads[stripe];
+            for (int i = 0; i < SIZE; i++) {
+                int index = stripe * SIZE + (int) (head & (SIZE - 1));
+                E element = this.slots.get(index);
+                if (element == null) {
+                    break;
+                }
+                this.slots.lazySet(index, null);
+                sink.add(element);
+                head++;
+            }
+            this.heads[stripe] = head;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.cache;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.craftfire.bifrost.classes.general.Cache;
+import com.craftfire.bifrost.enums.CacheGroup;
+
+/**
+ * Refreshes objects without an ID, like the total counters and the last post, in the background before they
+ * expire, so the threads that read them never wait for their query.
+ * <p>
+ * Every scheduled {@link CacheGroup} is refreshed with the {@link CacheLoader} of its group, see
+ * {@link Cache#setLoader(CacheGroup, CacheLoader)}, once per interval. The interval is varied by a random jitter
+ * every time, so the groups of many handles don't all query their databases at the same moment. Objects that are
+ * not cached, or haven't been read since their last refresh, are skipped, see
+ * {@link Cache#refreshAhead(CacheGroup, Object)}.
+ * <p>
+ * The thread of the scheduler is a daemon thread, which is started when the first group is scheduled.
+ */
+public class RefreshScheduler {
+    /**
+     * The jitter used if no other jitter has been set, the interval varies by up to 10% in both directions.
+     */
+    public static final double DEFAULT_JITTER = 0.1;
+    private final Cache cache;
+    private final String name;
+    private final Map<CacheGroup, Task> tasks = new EnumMap<CacheGroup, Task>(CacheGroup.class);
+    private ScheduledExecutorService executor;
+
+    /**
+     * Creates a new scheduler for the cache.
+     *
+     * @param cache  the {@link Cache} to refresh
+     * @param name   the name of the thread of the scheduler
+     */
+    public RefreshScheduler(Cache cache, String name) {
+        this.cache = cache;
+        this.name = name;
+    }
+
+    /**
+     * Refreshes the object of the group every interval, varied by {@link #DEFAULT_JITTER}.
+     *
+     * @param group     the {@link CacheGroup} to refresh
+     * @param interval  the time between two refreshes
+     * @param unit      the {@link TimeUnit} of the interval
+     */
+    public void schedule(CacheGroup group, long interval, TimeUnit unit) {
+        schedule(group, interval, unit, DEFAULT_JITTER);
+    }
+
+    /**
+     * Refreshes the object of the group every interval, replacing the previous schedule of the group.
+     *
+     * @param group     the {@link CacheGroup} to refresh
+     * @param interval  the time between two refreshes
+     * @param unit      the {@link TimeUnit} of the interval
+     * @param jitter    the fraction of the interval it is varied by, between 0 and 1
+     */
+    public synchronized void schedule(CacheGroup group, long interval, TimeUnit unit, double jitter) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("The interval must be positive.");
+        }
+        if (jitter < 0 || jitter >= 1) {
+            throw new IllegalArgumentException("The jitter must be at least 0 and less than 1.");
+        }
+        Task task = new Task(group, unit.toNanos(interval), jitter);
+        this.tasks.put(group, task);
+        task.schedule();
+    }
+
+    /**
+     * Stops refreshing the object of the group.
+     *
+     * @param group  the {@link CacheGroup} to stop refreshing
+     */
+    public synchronized void cancel(CacheGroup group) {
+        this.tasks.remove(group);
+    }
+
+    /**
+     * Returns the groups that are refreshed by the scheduler.
+     *
+     * @return the set of {@link CacheGroup}s
+     */
+    public synchronized Set<CacheGroup> getGroups() {
+        if (this.tasks.isEmpty()) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(EnumSet.copyOf(this.tasks.keySet()));
+    }
+
+    /**
+     * Returns the interval of the group.
+     *
+     * @param  group  the {@link CacheGroup} to check
+     * @param  unit   the {@link TimeUnit} of the returned interval
+     * @return        the interval, 0 if the group isn't refreshed
+     */
+    public synchronized long getInterval(CacheGroup group, TimeUnit unit) {
+        Task task = this.tasks.get(group);
+        return (task == null) ? 0 : unit.convert(task.interval, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stops refreshing all groups and stops the thread of the scheduler.
+     * <p>
+     * Groups that are scheduled afterwards start a new thread.
+     */
+    public synchronized void shutdown() {
+        this.tasks.clear();
+        if (this.executor != null) {
+            this.executor.shutdownNow();
+            this.executor = null;
+        }
+    }
+
+    private synchronized boolean isScheduled(Task task) {
+        return this.tasks.get(task.group) == task;
+    }
+
+    private synchronized ScheduledExecutorService getExecutor() {
+        if (this.executor == null) {
+            this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, RefreshScheduler.this.name);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return this.executor;
+    }
+
+    private final class Task implements Runnable {
+        private final CacheGroup group;
+        private final long interval;
+        private final double jitter;
+
+        private Task(CacheGroup group, long interval, double jitter) {
+            this.group = group;
+            this.interval = interval;
+            this.jitter = jitter;
+        }
+
+        private void schedule() {
+            long spread = (long) (this.interval * this.jitter);
+            long delay = this.interval;
+            if (spread > 0) {
+                delay += ThreadLocalRandom.current().nextLong(-spread, spread + 1);
+            }
+            getExecutor().schedule(this, delay, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public void run() {
+            if (!isScheduled(this)) {
+                return;
+            }
+            try {
+                RefreshScheduler.this.cache.refreshAhead(this.group, 1);
+            } catch (Exception ignore) {
+                // The object expires as usual and is loaded again by the next thread that reads it.
+            }
+            synchronized (RefreshScheduler.this) {
+                if (isScheduled(this)) {
+                    schedule();
+                }
+            }
+        }
+    }
+}
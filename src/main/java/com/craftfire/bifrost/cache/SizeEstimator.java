@@ -0,0 +1,112 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.cache;
+
+import java.util.Date;
+import java.util.Map;
+
+import com.craftfire.bifrost.classes.general.GenericMethods;
+
+/**
+ * Estimates how many bytes of heap a cached object retains.
+ * <p>
+ * The estimates assume a 64-bit JVM with compressed references and strings with two bytes per character.
+ * They don't need to be exact, they only have to rank a post with a long body above thousands of cached IDs.
+ * Objects that are shared between several entries, like an entity in a cached list, are counted for every entry.
+ * <p>
+ * Entities estimate their own fields, see {@link GenericMethods#estimateSize()}.
+ */
+public final class SizeEstimator {
+    /**
+     * The size of the header of an object.
+     */
+    public static final int OBJECT_OVERHEAD = 16;
+    /**
+     * The size of a reference to an object.
+     */
+    public static final int REFERENCE = 4;
+    private static final int STRING_OVERHEAD = 40;
+    private static final int BOXED = 16;
+    private static final int DATE = 24;
+    private static final int MAP_ENTRY = 32;
+
+    private SizeEstimator() {
+    }
+
+    /**
+     * Returns the estimated size of the object, including the objects it holds.
+     * <p>
+     * Strings, boxed primitives, dates, entities, collections, maps and {@link Iterable}s like {@link CachedList}
+     * are estimated from their contents, enums are shared and don't count, any other object counts as an empty object.
+     *
+     * @param  object  the object, can be null
+     * @return         the estimated size in bytes
+     */
+    public static long estimate(Object object) {
+        if (object == null || object instanceof Enum) {
+            return 0;
+        } else if (object instanceof String) {
+            return estimate((String) object);
+        } else if (object instanceof Number || object instanceof Boolean || object instanceof Character) {
+            return BOXED;
+        } else if (object instanceof Date) {
+            return DATE;
+        } else if (object instanceof GenericMethods) {
+            return ((GenericMethods) object).estimateSize();
+        } else if (object instanceof Map) {
+            long size = OBJECT_OVERHEAD * 3;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) object).entrySet()) {
+                size += MAP_ENTRY + REFERENCE + estimate(entry.getKey()) + estimate(entry.getValue());
+            }
+            return size;
+        } else if (object instanceof Iterable) {
+            long size = OBJECT_OVERHEAD * 2;
+            for (Object element : (Iterable<?>) object) {
+                size += REFERENCE + estimate(element);
+            }
+            return size;
+        }
+        return OBJECT_OVERHEAD;
+    }
+
+    /**
+     * Returns the estimated size of the string.
+     *
+     * @param  string  the string, can be null
+     * @return         the estimated size in bytes, 0 if the string is null
+     */
+    public static long estimate(String string) {
+        return (string == null) ? 0 : STRING_OVERHEAD + 2L * string.length();
+    }
+
+    /**
+     * Returns the estimated size of the strings.
+     *
+     * @param  strings  the strings, any of them can be null
+     * @return          the estimated size in bytes
+     */
+    public static long estimate(String... strings) {
+        long size = 0;
+        for (String string : strings) {
+            size += estimate(string);
+        }
+        return size;
+    }
+}
@@ -0,0 +1,388 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.cache;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import com.craftfire.bifrost.classes.cms.CMSArticle;
+import com.craftfire.bifrost.classes.cms.CMSComment;
+import com.craftfire.bifrost.classes.cms.CMSScript;
+import com.craftfire.bifrost.classes.cms.CMSUser;
+import com.craftfire.bifrost.classes.forum.ForumBoard;
+import com.craftfire.bifrost.classes.forum.ForumPost;
+import com.craftfire.bifrost.classes.forum.ForumScript;
+import com.craftfire.bifrost.classes.forum.ForumThread;
+import com.craftfire.bifrost.classes.forum.ForumUser;
+import com.craftfire.bifrost.classes.general.Group;
+import com.craftfire.bifrost.classes.general.Message;
+import com.craftfire.bifrost.classes.general.Script;
+import com.craftfire.bifrost.classes.general.ScriptUser;
+import com.craftfire.bifrost.enums.Gender;
+
+/**
+ * Encodes the cached objects of a {@link CacheSnapshot} into a compact binary form and back.
+ * <p>
+ * Supported are null, {@link Integer}s, {@link Long}s, {@link Boolean}s, strings, dates, lists of supported
+ * objects, and the entities that are loaded most often after a restart: users, groups and boards. The
+ * {@link OffHeapStore} uses the same encoding for posts, threads, articles and comments. Entities are created again
+ * for the script that reads them, as the type of user its script creates.
+ */
+public final class SnapshotCodec {
+    static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final byte NULL = 0;
+    private static final byte INTEGER = 1;
+    private static final byte LONG = 2;
+    private static final byte BOOLEAN = 3;
+    private static final byte STRING = 4;
+    private static final byte DATE = 5;
+    private static final byte LIST = 6;
+    private static final byte USER = 7;
+    private static final byte GROUP = 8;
+    private static final byte BOARD = 9;
+    private static final byte POST = 10;
+    private static final byte THREAD = 11;
+    private static final byte ARTICLE = 12;
+    private static final byte COMMENT = 13;
+
+    private SnapshotCodec() {
+    }
+
+    /**
+     * Returns {@code true} if the object can be written to a snapshot.
+     *
+     * @param  object  the object to check
+     * @return         {@code true} if supported, {@code false} if not
+     */
+    public static boolean isSupported(Object object) {
+        if (object == null || object instanceof Integer || object instanceof Long || object instanceof Boolean
+                || object instanceof String || object instanceof Date || object instanceof ScriptUser
+                || object instanceof ForumBoard || object instanceof ForumPost || object instanceof ForumThread
+                || object instanceof CMSArticle || object instanceof CMSComment) {
+            return true;
+        } else if (object instanceof Group) {
+            return ((Group) object).getUsers() == null || isSupported(((Group) object).getUsers());
+        } else if (object instanceof List) {
+            for (Object element : (List<?>) object) {
+                if (!isSupported(element)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Writes the object, which has to be supported, see {@link #isSupported(Object)}.
+     *
+     * @param  out     the stream to write to
+     * @param  object  the object to write
+     * @throws IOException  if the stream could not be written
+     */
+    public static void write(DataOutputStream out, Object object) throws IOException {
+        if (object == null) {
+            out.writeByte(NULL);
+        } else if (object instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) object);
+        } else if (object instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) object);
+        } else if (object instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) object);
+        } else if (object instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String) object);
+        } else if (object instanceof Date) {
+            out.writeByte(DATE);
+            out.writeLong(((Date) object).getTime());
+        } else if (object instanceof List) {
+            List<?> list = (List<?>) object;
+            out.writeByte(LIST);
+            out.writeInt(list.size());
+            for (Object element : list) {
+                write(out, element);
+            }
+        } else if (object instanceof ScriptUser) {
+            out.writeByte(USER);
+            writeUser(out, (ScriptUser) object);
+        } else if (object instanceof Group) {
+            Group group = (Group) object;
+            out.writeByte(GROUP);
+            out.writeInt(group.getID());
+            writeString(out, group.getName());
+            writeString(out, group.getDescription());
+            out.writeInt(group.getUserCount());
+            write(out, group.getUsers());
+        } else if (object instanceof ForumBoard) {
+            ForumBoard board = (ForumBoard) object;
+            out.writeByte(BOARD);
+            out.writeInt(board.getID());
+            writeString(out, board.getName());
+            writeString(out, board.getDescription());
+            out.writeInt(board.getParentID());
+        } else if (object instanceof ForumPost) {
+            ForumPost post = (ForumPost) object;
+            out.writeByte(POST);
+            out.writeInt(post.getThreadID());
+            writeMessage(out, post);
+        } else if (object instanceof ForumThread) {
+            ForumThread thread = (ForumThread) object;
+            out.writeByte(THREAD);
+            out.writeInt(thread.getFirstPostID());
+            out.writeInt(thread.getLastPostID());
+            out.writeInt(thread.getBoardID());
+            out.writeInt(thread.getViewsCount());
+            out.writeInt(thread.getRepliesCount());
+            out.writeBoolean(thread.isLocked());
+            out.writeBoolean(thread.isPoll());
+            out.writeBoolean(thread.isSticky());
+            writeMessage(out, thread);
+        } else if (object instanceof CMSArticle) {
+            CMSArticle article = (CMSArticle) object;
+            out.writeByte(ARTICLE);
+            out.writeInt(article.getCategoryID());
+            writeString(out, article.getIntro());
+            writeString(out, article.getUrl());
+            out.writeInt(article.getViewsCount());
+            out.writeBoolean(article.isPublic());
+            out.writeBoolean(article.isFeatured());
+            out.writeBoolean(article.isAllowingComments());
+            writeMessage(out, article);
+        } else if (object instanceof CMSComment) {
+            CMSComment comment = (CMSComment) object;
+            out.writeByte(COMMENT);
+            out.writeInt(comment.getArticleID());
+            out.writeInt(comment.getParentID());
+            writeMessage(out, comment);
+        } else {
+            throw new IOException("Objects of " + object.getClass() + " can't be written to a snapshot.");
+        }
+    }
+
+    /**
+     * Reads an object that has been written with {@link #write(DataOutputStream, Object)}.
+     *
+     * @param  in      the buffer to read from
+     * @param  script  the script the entities are created for
+     * @return         the object
+     * @throws IOException  if the buffer doesn't contain a valid object
+     */
+    @SuppressWarnings("unchecked")
+    public static Object read(ByteBuffer in, Script script) throws IOException {
+        byte type = in.get();
+        switch (type) {
+            case NULL:
+                return null;
+            case INTEGER:
+                return in.getInt();
+            case LONG:
+                return in.getLong();
+            case BOOLEAN:
+                return in.get() != 0;
+            case STRING:
+                return readString(in);
+            case DATE:
+                return new Date(in.getLong());
+            case LIST:
+                int size = in.getInt();
+                List<Object> list = new ArrayList<Object>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(read(in, script));
+                }
+                return list;
+            case USER:
+                return readUser(in, script);
+            case GROUP:
+                Group group = new Group(script, in.getInt(), readString(in));
+                group.setDescription(readString(in));
+                group.setUserCount(in.getInt());
+                group.setUsers((List<ScriptUser>) read(in, script));
+                return group;
+            case BOARD:
+                ForumBoard board = new ForumBoard(forumScript(script), in.getInt());
+                board.setName(readString(in));
+                board.setDescription(readString(in));
+                board.setParentID(in.getInt());
+                return board;
+            case POST:
+                ForumPost post = new ForumPost(forumScript(script), 0, in.getInt());
+                return readMessage(in, script, post);
+            case THREAD:
+                ForumThread thread = new ForumThread(forumScript(script), in.getInt(), in.getInt(), 0, in.getInt());
+                thread.setViewsCount(in.getInt());
+                thread.setRepliesCount(in.getInt());
+                thread.setLocked(in.get() != 0);
+                thread.setPoll(in.get() != 0);
+                thread.setSticky(in.get() != 0);
+                return readMessage(in, script, thread);
+            case ARTICLE:
+                CMSArticle article = new CMSArticle(cmsScript(script), 0, in.getInt());
+                article.setIntro(readString(in));
+                article.setUrl(readString(in));
+                article.setViewsCount(in.getInt());
+                article.setPublic(in.get() != 0);
+                article.setFeatured(in.get() != 0);
+                article.setAllowComments(in.get() != 0);
+                return readMessage(in, script, article);
+            case COMMENT:
+                CMSComment comment = new CMSComment(cmsScript(script), 0, in.getInt());
+                comment.setParentID(in.getInt());
+                return readMessage(in, script, comment);
+            default:
+                throw new IOException("Unknown object type " + type + " in the snapshot.");
+        }
+    }
+
+    /**
+     * Writes a string, which may be null.
+     *
+     * @param  out     the stream to write to
+     * @param  string  the string to write
+     * @throws IOException  if the stream could not be written
+     */
+    public static void writeString(DataOutputStream out, String string) throws IOException {
+        if (string == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = string.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a string that has been written with {@link #writeString(DataOutputStream, String)}.
+     *
+     * @param  in  the buffer to read from
+     * @return     the string, can be null
+     * @throws IOException  if the buffer doesn't contain a valid string
+     */
+    public static String readString(ByteBuffer in) throws IOException {
+        int length = in.getInt();
+        if (length == -1) {
+            return null;
+        } else if (length < 0 || length > in.remaining()) {
+            throw new IOException("Invalid string length " + length + " in the snapshot.");
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    private static void writeMessage(DataOutputStream out, Message message) throws IOException {
+        // The ID is written last, the constructors of some messages look up other objects by their ID.
+        writeString(out, message.getTitle());
+        writeString(out, message.getBody());
+        write(out, message.getDate());
+        out.writeBoolean(message.isDeleted());
+        write(out, message.getAuthor());
+        out.writeInt(message.getID());
+    }
+
+    private static Message readMessage(ByteBuffer in, Script script, Message message) throws IOException {
+        message.setTitle(readString(in));
+        message.setBody(readString(in));
+        message.setDate((Date) read(in, script));
+        message.setDeleted(in.get() != 0);
+        message.setAuthor((ScriptUser) read(in, script));
+        message.setID(in.getInt());
+        return message;
+    }
+
+    private static ForumScript forumScript(Script script) throws IOException {
+        if (!(script instanceof ForumScript)) {
+            throw new IOException("Forum objects can only be read for a forum script.");
+        }
+        return (ForumScript) script;
+    }
+
+    private static CMSScript cmsScript(Script script) throws IOException {
+        if (!(script instanceof CMSScript)) {
+            throw new IOException("CMS objects can only be read for a CMS script.");
+        }
+        return (CMSScript) script;
+    }
+
+    private static void writeUser(DataOutputStream out, ScriptUser user) throws IOException {
+        out.writeInt(user.getID());
+        writeString(out, user.getUsername());
+        writeString(out, user.getPassword());
+        writeString(out, user.getPasswordSalt());
+        writeString(out, user.getEmail());
+        writeString(out, user.getUserTitle());
+        writeString(out, user.getNickname());
+        writeString(out, user.getRealName());
+        writeString(out, user.getFirstName());
+        writeString(out, user.getLastName());
+        writeString(out, user.getStatusMessage());
+        writeString(out, user.getAvatarURL());
+        writeString(out, user.getProfileURL());
+        writeString(out, user.getRegIP());
+        writeString(out, user.getLastIP());
+        write(out, user.getRegDate());
+        write(out, user.getLastLogin());
+        write(out, user.getBirthday());
+        writeString(out, (user.getGender() == null) ? null : user.getGender().name());
+        out.writeBoolean(user.isActivated());
+        out.writeBoolean(user.isAnonymous());
+    }
+
+    private static ScriptUser readUser(ByteBuffer in, Script script) throws IOException {
+        int id = in.getInt();
+        String username = readString(in);
+        String password = readString(in);
+        ScriptUser user;
+        if (script instanceof ForumScript) {
+            user = new ForumUser((ForumScript) script, id, username, password);
+        } else if (script instanceof CMSScript) {
+            user = new CMSUser((CMSScript) script, id, username, password);
+        } else {
+            user = new ScriptUser(script, id, username, password);
+        }
+        user.setPasswordSalt(readString(in));
+        user.setEmail(readString(in));
+        user.setUserTitle(readString(in));
+        user.setNickname(readString(in));
+        user.setRealName(readString(in));
+        user.setFirstName(readString(in));
+        user.setLastName(readString(in));
+        user.setStatusMessage(readString(in));
+        user.setAvatarURL(readString(in));
+        user.setProfileURL(readString(in));
+        user.setRegIP(readString(in));
+        user.setLastIP(readString(in));
+        user.setRegDate((Date) read(in, script));
+        user.setLastLogin((Date) read(in, script));
+        user.setBirthday((Date) read(in, script));
+        String gender = readString(in);
+        user.setGender((gender == null) ? null : Gender.valueOf(gender));
+        user.setActivated(in.get() != 0);
+        user.setAnonymous(in.get() != 0);
+        return user;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that is spread over several cells, so threads that count at the same time don't fight over one value.
+ * <p>
+ * Every thread adds to the cell picked by its ID, the cells are summed when the counter is read.
+ * The cells are padded to separate cache lines.
+ */
+public class StripedCounter {
+    private static final int PADDING = 8;
+    private static final int MAXIMUM_STRIPES = 8;
+    private static final int STRIPES;
+    static {
+        int stripes = 1;
+        int processors = Runtime.getRuntime().availableProcessors();
+        while (stripes < processors && stripes < MAXIMUM_STRIPES) {
+            stripes <<= 1;
+        }
+        STRIPES = stripes;
+    }
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+    /**
+     * Adds one to the counter.
+     */
+    public void increment() {
+        add(1);
+    }
+
+    /**
+     * Adds the specified amount to the counter.
+     *
+     * @param amount  the amount to add
+     */
+    public void add(long amount) {
+        long id = Thread.currentThread().getId();
+        int hash = (int) (id ^ (id >>> 32)) * 0x9e3779b9;
+        this.cells.getAndAdd(((hash >>> 16) & (STRIPES - 1)) * PADDING, amount);
+    }
+
+    /**
+     * Returns the current value of the counter.
+     * <p>
+     * Additions made while the cells are summed might not be included.
+     *
+     * @return the sum of all cells
+     */
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += this.cells.get(i * PADDING);
+        }
+        return sum;
+    }
+}
@@ -22,6 +22,7 @@ package com.craftfire.bifrost.classes.cms;
 import java.sql.SQLException;
 import java.util.List;
 
+import com.craftfire.bifrost.cache.CacheTag;
 import com.craftfire.bifrost.classes.general.Message;
 import com.craftfire.bifrost.classes.general.ScriptHandle;
 import com.craftfire.bifrost.classes.general.ScriptUser;
@@ -260,6 +261,11 @@ public class CMSArticle extends Message implements ViewsCounter {
         getHandle().createArticle(this);
     }
 
+    @Override
+    public CacheTag getCacheTag() {
+        return new CacheTag(CacheTag.Kind.ARTICLE, getID());
+    }
+
     /**
      * Returns {@code true} if the handle contains an article cache with the given id parameter,
      * {@code false} if not.
@@ -269,7 +275,7 @@ public class CMSArticle extends Message implements ViewsCounter {
      * @return         {@code true} if contains, {@code false} if not
      */
     public static boolean hasCache(ScriptHandle handle, int id) {
-        return handle.getCache().contains(CacheGroup.ARTICLE, id);
+        return handle.getCache().containsInt(CacheGroup.ARTICLE, id);
     }
 
     /**
@@ -279,7 +285,7 @@ public class CMSArticle extends Message implements ViewsCounter {
      * @param article  the CMSArticle object
      */
     public static void addCache(ScriptHandle handle, CMSArticle article) {
-        handle.getCache().putMetadatable(CacheGroup.ARTICLE, article.getID(), article);
+        handle.getCache().putMetadatableInt(CacheGroup.ARTICLE, article.getID(), article);
         handle.getCache().setMetadata(CacheGroup.ARTICLE, article.getID(), "bifrost-cache.old-category", article.getCategoryID());
         if (article.getAuthor() != null) {
             handle.getCache().setMetadata(CacheGroup.ARTICLE, article.getID(), "bifrost-cache.old-author", article.getAuthor().getUsername());
@@ -296,8 +302,8 @@ public class CMSArticle extends Message implements ViewsCounter {
      * @return         CMSArticle object if cache was found, {@code null} if no cache was found
      */
     public static CMSArticle getCache(ScriptHandle handle, int id) {
-        if (handle.getCache().contains(CacheGroup.ARTICLE, id)) {
-            return (CMSArticle) handle.getCache().get(CacheGroup.ARTICLE, id);
+        if (handle.getCache().containsInt(CacheGroup.ARTICLE, id)) {
+            return (CMSArticle) handle.getCache().getInt(CacheGroup.ARTICLE, id);
         }
         return null;
     }
@@ -314,33 +320,31 @@ public class CMSArticle extends Message implements ViewsCounter {
      * @see            com.craftfire.bifrost.classes.general.Cache
      */
     public static void cleanupCache(ScriptHandle handle, CMSArticle article, CacheCleanupReason reason) {
-        handle.getCache().remove(CacheGroup.CMSCAT_ARTICLES, article.getCategoryID());
-        handle.getCache().remove(CacheGroup.ARTICLE_COUNT, article.getCategoryID());
-        handle.getCache().remove(CacheGroup.ARTICLE_LAST_CATEGORY, article.getCategoryID());
+        handle.getCache().invalidate(new CacheTag(CacheTag.Kind.CATEGORY_ARTICLES, article.getCategoryID()));
         if (article.getAuthor() != null) {
-            String username = article.getAuthor().getUsername();
-            handle.getCache().remove(CacheGroup.ARTICLE_LIST_USER, username);
-            handle.getCache().remove(CacheGroup.ARTICLE_COUNT_USER, username);
-            handle.getCache().remove(CacheGroup.ARTICLE_LAST_USER, username);
+            handle.getCache().invalidate(new CacheTag(CacheTag.Kind.USER_ARTICLES, article.getAuthor().getUsername()));
         }
         switch (reason) {
         case CREATE:
-            handle.getCache().clear(CacheGroup.ARTICLE_COUNT);
+            handle.getCache().clear(CacheGroup.ARTICLE_COUNT_TOTAL);
+            handle.getCache().clear(CacheGroup.ARTICLE_LAST);
             handle.getCache().clear(CacheGroup.ARTICLE_LIST);
             break;
         case OTHER:
-            handle.getCache().clear(CacheGroup.ARTICLE_COUNT);
+            handle.getCache().clear(CacheGroup.ARTICLE_COUNT_TOTAL);
+            handle.getCache().clear(CacheGroup.ARTICLE_LAST);
             handle.getCache().clear(CacheGroup.ARTICLE_LIST);
             /* Passes through */
         case UPDATE:
             Object oldCategory = handle.getCache().getMetadata(CacheGroup.ARTICLE, article.getID(), "bifrost-cache.old-category");
             Object oldUsername = handle.getCache().getMetadata(CacheGroup.ARTICLE, article.getID(), "bifrost-cache.old-author");
-            handle.getCache().remove(CacheGroup.CMSCAT_ARTICLES, oldCategory);
-            handle.getCache().remove(CacheGroup.ARTICLE_COUNT, oldCategory);
-            handle.getCache().remove(CacheGroup.ARTICLE_LAST_CATEGORY, oldCategory);
-            handle.getCache().remove(CacheGroup.ARTICLE_LIST_USER, oldUsername);
-            handle.getCache().remove(CacheGroup.ARTICLE_COUNT_USER, oldUsername);
-            handle.getCache().remove(CacheGroup.ARTICLE_LAST_USER, oldUsername);
+            handle.getCache().invalidate(article.getCacheTag());
+            if (oldCategory != null) {
+                handle.getCache().invalidate(new CacheTag(CacheTag.Kind.CATEGORY_ARTICLES, oldCategory));
+            }
+            if (oldUsername != null) {
+                handle.getCache().invalidate(new CacheTag(CacheTag.Kind.USER_ARTICLES, oldUsername));
+            }
             break;
         }
 
@@ -22,6 +22,7 @@ package com.craftfire.bifrost.classes.cms;
 import java.sql.SQLException;
 import java.util.List;
 
+import com.craftfire.bifrost.cache.CacheTag;
 import com.craftfire.bifrost.classes.general.Cache;
 import com.craftfire.bifrost.classes.general.Category;
 import com.craftfire.bifrost.classes.general.ScriptHandle;
@@ -173,6 +174,11 @@ public class CMSCategory extends Category {
         getHandle().createCategory(this);
     }
 
+    @Override
+    public CacheTag getCacheTag() {
+        return new CacheTag(CacheTag.Kind.CATEGORY, getID());
+    }
+
     /**
      * Returns {@code true} if the handle contains a category cache with the given id parameter,
      * {@code false} if not.
@@ -182,7 +188,7 @@ public class CMSCategory extends Category {
      * @return         {@code true} if contains, {@code false} if not
      */
     public static boolean hasCache(ScriptHandle handle, int id) {
-        return handle.getCache().contains(CacheGroup.CMSCAT, id);
+        return handle.getCache().containsInt(CacheGroup.CMSCAT, id);
     }
 
     /**
@@ -192,7 +198,7 @@ public class CMSCategory extends Category {
      * @param category  the category object
      */
     public static void addCache(ScriptHandle handle, CMSCategory category) {
-        handle.getCache().putMetadatable(CacheGroup.CMSCAT, category.getID(), category);
+        handle.getCache().putMetadatableInt(CacheGroup.CMSCAT, category.getID(), category);
         handle.getCache().setMetadata(CacheGroup.CMSCAT, category.getID(), "bifrost-cache.old-parent", category.getParentID());
     }
 
@@ -204,8 +210,8 @@ public class CMSCategory extends Category {
      * @return         category object if cache was found, {@code null} if no cache was found
      */
     public static CMSCategory getCache(ScriptHandle handle, int id) {
-        if (handle.getCache().contains(CacheGroup.CMSCAT, id)) {
-            return (CMSCategory) handle.getCache().get(CacheGroup.CMSCAT, id);
+        if (handle.getCache().containsInt(CacheGroup.CMSCAT, id)) {
+            return (CMSCategory) handle.getCache().getInt(CacheGroup.CMSCAT, id);
         }
         return null;
     }
@@ -222,8 +228,7 @@ public class CMSCategory extends Category {
      * @see             Cache
      */
     public static void cleanupCache(ScriptHandle handle, CMSCategory category, CacheCleanupReason reason) {
-        handle.getCache().remove(CacheGroup.CMSCAT_SUBS, category.getParentID());
-        handle.getCache().remove(CacheGroup.CMSCAT_SUB_COUNT, category.getParentID());
+        handle.getCache().invalidate(new CacheTag(CacheTag.Kind.CATEGORY_SUBS, category.getParentID()));
         switch (reason) {
         case CREATE:
             handle.getCache().clear(CacheGroup.CMSCAT_LIST);
@@ -235,8 +240,10 @@ public class CMSCategory extends Category {
             /* Passes through */
         case UPDATE:
             Object oldParent = handle.getCache().getMetadata(CacheGroup.CMSCAT, category.getID(), "bifrost-cache.old-parent");
-            handle.getCache().remove(CacheGroup.CMSCAT_SUBS, oldParent);
-            handle.getCache().remove(CacheGroup.CMSCAT_SUB_COUNT, oldParent);
+            handle.getCache().invalidate(category.getCacheTag());
+            if (oldParent != null) {
+                handle.getCache().invalidate(new CacheTag(CacheTag.Kind.CATEGORY_SUBS, oldParent));
+            }
             break;
         }
     }
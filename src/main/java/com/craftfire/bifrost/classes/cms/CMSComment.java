@@ -22,6 +22,7 @@ package com.craftfire.bifrost.classes.cms;
 import java.sql.SQLException;
 import java.util.List;
 
+import com.craftfire.bifrost.cache.CacheTag;
 import com.craftfire.bifrost.classes.general.Cache;
 import com.craftfire.bifrost.classes.general.Category;
 import com.craftfire.bifrost.classes.general.Message;
@@ -198,6 +199,11 @@ public class CMSComment extends Message {
         getHandle().createComment(this);
     }
 
+    @Override
+    public CacheTag getCacheTag() {
+        return new CacheTag(CacheTag.Kind.COMMENT, getID());
+    }
+
     /**
      * Returns {@code true} if the handle contains a comment cache with the given id parameter,
      * {@code false} if not.
@@ -207,7 +213,7 @@ public class CMSComment extends Message {
      * @return         {@code true} if contains, {@code false} if not
      */
     public static boolean hasCache(ScriptHandle handle, int id) {
-        return handle.getCache().contains(CacheGroup.COMMENT, id);
+        return handle.getCache().containsInt(CacheGroup.COMMENT, id);
     }
 
     /**
@@ -217,7 +223,7 @@ public class CMSComment extends Message {
      * @param comment  the CMSComment object
      */
     public static void addCache(ScriptHandle handle, CMSComment comment) {
-        handle.getCache().putMetadatable(CacheGroup.COMMENT, comment.getID(), comment);
+        handle.getCache().putMetadatableInt(CacheGroup.COMMENT, comment.getID(), comment);
         handle.getCache().setMetadata(CacheGroup.COMMENT, comment.getID(), "bifrost-cache.old-article", comment.getArticleID());
         handle.getCache().setMetadata(CacheGroup.COMMENT, comment.getID(), "bifrost-cache.old-parent", comment.getParentID());
         if (comment.getAuthor() != null) {
@@ -235,8 +241,8 @@ public class CMSComment extends Message {
      * @return         ForumPost object if cache was found, {@code null} if no cache was found
      */
     public static CMSComment getCache(ScriptHandle handle, int id) {
-        if (handle.getCache().contains(CacheGroup.COMMENT, id)) {
-            return (CMSComment) handle.getCache().get(CacheGroup.COMMENT, id);
+        if (handle.getCache().containsInt(CacheGroup.COMMENT, id)) {
+            return (CMSComment) handle.getCache().getInt(CacheGroup.COMMENT, id);
         }
         return null;
     }
@@ -253,38 +259,36 @@ public class CMSComment extends Message {
      * @see            Cache
      */
     public static void cleanupCache(ScriptHandle handle, CMSComment comment, CacheCleanupReason reason) {
-        handle.getCache().remove(CacheGroup.ARTICLE_COMMENTS, comment.getArticleID());
-        handle.getCache().remove(CacheGroup.COMMENT_COUNT, comment.getArticleID());
-        handle.getCache().remove(CacheGroup.COMMENT_LAST_ARTICLE, comment.getArticleID());
+        handle.getCache().invalidate(new CacheTag(CacheTag.Kind.ARTICLE_COMMENTS, comment.getArticleID()));
         if (comment.getAuthor() != null) {
-            String username = comment.getAuthor().getUsername();
-            handle.getCache().remove(CacheGroup.COMMENT_LIST_USER, username);
-            handle.getCache().remove(CacheGroup.COMMENT_COUNT_USER, username);
-            handle.getCache().remove(CacheGroup.COMMENT_LAST_USER, username);
+            handle.getCache().invalidate(new CacheTag(CacheTag.Kind.USER_COMMENTS, comment.getAuthor().getUsername()));
         }
-        handle.getCache().remove(CacheGroup.COMMENT_REPLIES, comment.getParentID());
-        handle.getCache().remove(CacheGroup.COMMENT_REPLY_COUNT, comment.getParentID());
+        handle.getCache().invalidate(new CacheTag(CacheTag.Kind.COMMENT_REPLIES, comment.getParentID()));
         switch (reason) {
         case CREATE:
             handle.getCache().clear(CacheGroup.COMMENT_COUNT_TOTAL);
+            handle.getCache().clear(CacheGroup.COMMENT_LAST);
             handle.getCache().clear(CacheGroup.COMMENT_LIST);
             break;
         case OTHER:
             handle.getCache().clear(CacheGroup.COMMENT_COUNT_TOTAL);
+            handle.getCache().clear(CacheGroup.COMMENT_LAST);
             handle.getCache().clear(CacheGroup.COMMENT_LIST);
             /* Passes through */
         case UPDATE:
             Object oldArticle = handle.getCache().getMetadata(CacheGroup.COMMENT, comment.getID(), "bifrost-cache.old-article");
             Object oldUsername = handle.getCache().getMetadata(CacheGroup.COMMENT, comment.getID(), "bifrost-cache.old-author");
             Object oldParent = handle.getCache().getMetadata(CacheGroup.COMMENT, comment.getID(), "bifrost-cache.old-parent");
-            handle.getCache().remove(CacheGroup.ARTICLE_COMMENTS, oldArticle);
-            handle.getCache().remove(CacheGroup.COMMENT_COUNT, oldArticle);
-            handle.getCache().remove(CacheGroup.COMMENT_LAST_ARTICLE, oldArticle);
-            handle.getCache().remove(CacheGroup.COMMENT_LIST_USER, oldUsername);
-            handle.getCache().remove(CacheGroup.COMMENT_COUNT_USER, oldUsername);
-            handle.getCache().remove(CacheGroup.COMMENT_LAST_USER, oldUsername);
-            handle.getCache().remove(CacheGroup.COMMENT_REPLIES, oldParent);
-            handle.getCache().remove(CacheGroup.COMMENT_REPLY_COUNT, oldParent);
+            handle.getCache().invalidate(comment.getCacheTag());
+            if (oldArticle != null) {
+                handle.getCache().invalidate(new CacheTag(CacheTag.Kind.ARTICLE_COMMENTS, oldArticle));
+            }
+            if (oldUsername != null) {
+                handle.getCache().invalidate(new CacheTag(CacheTag.Kind.USER_COMMENTS, oldUsername));
+            }
+            if (oldParent != null) {
+                handle.getCache().invalidate(new CacheTag(CacheTag.Kind.COMMENT_REPLIES, oldParent));
+            }
             break;
         }
     }
@@ -24,6 +24,8 @@ import java.util.List;
 
 import com.craftfire.commons.database.DataManager;
 
+import com.craftfire.bifrost.cache.CacheLoader;
+import com.craftfire.bifrost.cache.ListLoader;
 import com.craftfire.bifrost.classes.general.ScriptHandle;
 import com.craftfire.bifrost.classes.general.ScriptUser;
 import com.craftfire.bifrost.enums.CacheCleanupReason;
@@ -47,6 +49,16 @@ public class CMSHandle extends ScriptHandle {
         super(handleID, script);
     }
 
+    @Override
+    protected void setupCache() {
+        super.setupCache();
+        setCountExpiry(CacheGroup.COMMENT_COUNT_TOTAL);
+        setCountExpiry(CacheGroup.ARTICLE_COUNT_TOTAL);
+        setCountExpiry(CacheGroup.CMSCAT_COUNT);
+        setRefreshAhead(CacheGroup.COMMENT_COUNT_TOTAL, COUNT_REFRESH_INTERVAL, totalCommentCountLoader());
+        setRefreshAhead(CacheGroup.ARTICLE_COUNT_TOTAL, COUNT_REFRESH_INTERVAL, totalArticleCountLoader());
+    }
+
     /**
      * Returns the CMSScript object
      *
@@ -87,168 +99,148 @@ public class CMSHandle extends ScriptHandle {
      * @see CMSScript#getComment(int) Documentation for this method
      */
     public CMSComment getComment(int commentid) throws ScriptException {
-        if (getCache().contains(CacheGroup.COMMENT, commentid)) {
-            return (CMSComment) getCache().get(CacheGroup.COMMENT, commentid);
-        }
-        CMSComment cmt = getCMSScript().getComment(commentid);
-        getCache().put(CacheGroup.COMMENT, commentid, cmt);
-        return cmt;
+        return getScopedCached(CacheGroup.COMMENT, commentid, new CacheLoader<CMSComment>() {
+            @Override
+            public CMSComment load(Object id) throws ScriptException {
+                return getCMSScript().getComment((Integer) id);
+            }
+        });
     }
 
     /**
      * @see CMSScript#getComments(int) Documentation for this method
      */
-    @SuppressWarnings("unchecked")
     public List<CMSComment> getComments(int limit) throws ScriptException {
-        if (getCache().contains(CacheGroup.COMMENT_LIST)) {
-            List<CMSComment> cmts = (List<CMSComment>) getCache().get(CacheGroup.COMMENT_LIST);
-            if (cmts.size() == ((limit == 0) ? getCommentTotalCount() : limit)) {
-                return cmts;
-            } else if ((cmts.size() > limit) && (limit != 0)) {
-                return cmts.subList(0, limit);
+        return getCachedList(CacheGroup.COMMENT_LIST, limit, new ListLoader<CMSComment>() {
+            @Override
+            public List<CMSComment> load(int offset, int count) throws ScriptException {
+                return getCMSScript().getComments(offset, count);
             }
-        }
-        List<CMSComment> cmts = getCMSScript().getComments(limit);
-        getCache().put(CacheGroup.COMMENT, cmts);
-        return cmts;
+        });
     }
 
     /**
      * @see CMSScript#getCommentTotalCount() Documentation for this method
      */
     public int getCommentTotalCount() throws ScriptException {
-        if (getCache().contains(CacheGroup.COMMENT_COUNT_TOTAL)) {
-            return (Integer) getCache().get(CacheGroup.COMMENT_COUNT_TOTAL);
-        }
-        int cmts = getCMSScript().getCommentTotalCount();
-        getCache().put(CacheGroup.COMMENT_COUNT_TOTAL, cmts);
-        return cmts;
+        return getCached(CacheGroup.COMMENT_COUNT_TOTAL, totalCommentCountLoader());
+    }
+
+    private CacheLoader<Integer> totalCommentCountLoader() {
+        return new CacheLoader<Integer>() {
+            @Override
+            public Integer load(Object id) throws ScriptException {
+                return getCMSScript().getCommentTotalCount();
+            }
+        };
     }
 
     /**
      * @see CMSScript#getCommentsOnArticle(int, int) Documentation for this method
      */
-    @SuppressWarnings("unchecked")
-    public List<CMSComment> getCommentsOnArticle(int articleid, int limit) throws ScriptException {
-        if (getCache().contains(CacheGroup.ARTICLE_COMMENTS, articleid)) {
-            List<CMSComment> cmts = (List<CMSComment>) getCache().get(CacheGroup.ARTICLE_COMMENTS, articleid);
-            if (cmts.size() == ((limit == 0) ? getCommentCount(articleid) : limit)) {
-                return cmts;
-            } else if ((cmts.size() > limit) && (limit != 0)) {
-                return cmts.subList(0, limit);
+    public List<CMSComment> getCommentsOnArticle(final int articleid, int limit) throws ScriptException {
+        return getCachedList(CacheGroup.ARTICLE_COMMENTS, articleid, limit, new ListLoader<CMSComment>() {
+            @Override
+            public List<CMSComment> load(int offset, int count) throws ScriptException {
+                return getCMSScript().getCommentsOnArticle(articleid, offset, count);
             }
-        }
-        List<CMSComment> cmts = getCMSScript().getCommentsOnArticle(articleid, limit);
-        getCache().put(CacheGroup.ARTICLE_COMMENTS, articleid, cmts);
-        return cmts;
+        });
     }
 
     /**
      * @see CMSScript#getCommentCount(int) Documentation for this method
      */
     public int getCommentCount(int articleid) throws ScriptException {
-        if (getCache().contains(CacheGroup.COMMENT_COUNT, articleid)) {
-            return (Integer) getCache().get(CacheGroup.COMMENT_COUNT, articleid);
-        }
-        int cmts = getCMSScript().getCommentCount(articleid);
-        getCache().put(CacheGroup.COMMENT_COUNT, articleid, cmts);
-        return cmts;
+        return getCached(CacheGroup.COMMENT_COUNT, articleid, new CacheLoader<Integer>() {
+            @Override
+            public Integer load(Object id) throws ScriptException {
+                return getCMSScript().getCommentCount((Integer) id);
+            }
+        });
     }
 
     /**
      * @see CMSScript#getCommentReplies(int, int) Documentation for this method
      */
-    @SuppressWarnings("unchecked")
-    public List<CMSComment> getCommentReplies(int commentid, int limit) throws ScriptException {
-        if (getCache().contains(CacheGroup.COMMENT_REPLIES, commentid)) {
-            List<CMSComment> cmts = (List<CMSComment>) getCache().get(CacheGroup.COMMENT_REPLIES, commentid);
-            if (cmts.size() == ((limit == 0) ? getCommentReplyCount(commentid) : limit)) {
-                return cmts;
-            } else if ((cmts.size() > limit) && (limit != 0)) {
-                return cmts.subList(0, limit);
+    public List<CMSComment> getCommentReplies(final int commentid, int limit) throws ScriptException {
+        return getCachedList(CacheGroup.COMMENT_REPLIES, commentid, limit, new ListLoader<CMSComment>() {
+            @Override
+            public List<CMSComment> load(int offset, int count) throws ScriptException {
+                return getCMSScript().getCommentReplies(commentid, offset, count);
             }
-        }
-        List<CMSComment> cmts = getCMSScript().getCommentReplies(commentid, limit);
-        getCache().put(CacheGroup.COMMENT_REPLIES, commentid, cmts);
-        return cmts;
+        });
     }
 
     /**
      * @see CMSScript#getCommentReplyCount(int) Documentation for this method
      */
     public int getCommentReplyCount(int commentid) throws ScriptException {
-        if (getCache().contains(CacheGroup.COMMENT_REPLY_COUNT, commentid)) {
-            return (Integer) getCache().get(CacheGroup.COMMENT_REPLY_COUNT, commentid);
-        }
-        int cmts = getCMSScript().getCommentReplyCount(commentid);
-        getCache().put(CacheGroup.COMMENT_REPLY_COUNT, commentid, cmts);
-        return cmts;
+        return getCached(CacheGroup.COMMENT_REPLY_COUNT, commentid, new CacheLoader<Integer>() {
+            @Override
+            public Integer load(Object id) throws ScriptException {
+                return getCMSScript().getCommentReplyCount((Integer) id);
+            }
+        });
     }
 
     /**
      * @see CMSScript#getUserComments(String, int) Documentation for this method
      */
-    @SuppressWarnings("unchecked")
-    public List<CMSComment> getUserComments(String username, int limit) throws ScriptException {
-        if (getCache().contains(CacheGroup.COMMENT_LIST_USER, username)) {
-            List<CMSComment> cmts = (List<CMSComment>) getCache().get(CacheGroup.COMMENT_LIST_USER, username);
-            if (cmts.size() == ((limit == 0) ? getUserCommentCount(username) : limit)) {
-                return cmts;
-            } else if ((cmts.size() > limit) && (limit != 0)) {
-                return cmts.subList(0, limit);
+    public List<CMSComment> getUserComments(final String username, int limit) throws ScriptException {
+        return getCachedList(CacheGroup.COMMENT_LIST_USER, username, limit, new ListLoader<CMSComment>() {
+            @Override
+            public List<CMSComment> load(int offset, int count) throws ScriptException {
+                return getCMSScript().getUserComments(username, offset, count);
             }
-        }
-        List<CMSComment> cmts = getCMSScript().getUserComments(username, limit);
-        getCache().put(CacheGroup.COMMENT_LIST_USER, username, cmts);
-        return cmts;
+        });
     }
 
     /**
      * @see CMSScript#getUserCommentCount(String) Documentation for this method
      */
     public int getUserCommentCount(String username) throws ScriptException {
-        if (getCache().contains(CacheGroup.COMMENT_COUNT_USER, username)) {
-            return (Integer) getCache().get(CacheGroup.COMMENT_COUNT_USER, username);
-        }
-        int cmts = getCMSScript().getUserCommentCount(username);
-        getCache().put(CacheGroup.COMMENT_COUNT_USER, username, cmts);
-        return cmts;
+        return getCached(CacheGroup.COMMENT_COUNT_USER, username, new CacheLoader<Integer>() {
+            @Override
+            public Integer load(Object id) throws ScriptException {
+                return getCMSScript().getUserCommentCount((String) id);
+            }
+        });
     }
 
     /**
      * @see CMSScript#getLastComment() Documentation for this method
      */
     public CMSComment getLastComment() throws ScriptException {
-        if (getCache().contains(CacheGroup.COMMENT_LAST)) {
-            return (CMSComment) getCache().get(CacheGroup.COMMENT_LAST);
-        }
-        CMSComment cmt = getCMSScript().getLastComment();
-        getCache().put(CacheGroup.COMMENT_LAST, cmt);
-        return cmt;
+        return getCached(CacheGroup.COMMENT_LAST, new CacheLoader<CMSComment>() {
+            @Override
+            public CMSComment load(Object id) throws ScriptException {
+                return getCMSScript().getLastComment();
+            }
+        });
     }
 
     /**
      * @see CMSScript#getLastUserComment(String) Documentation for this method
      */
     public CMSComment getLastUserComment(String username) throws ScriptException {
-        if (getCache().contains(CacheGroup.COMMENT_LAST_USER, username)) {
-            return (CMSComment) getCache().get(CacheGroup.COMMENT_LAST_USER, username);
-        }
-        CMSComment cmt = getCMSScript().getLastUserComment(username);
-        getCache().put(CacheGroup.COMMENT_LAST_USER, username, cmt);
-        return cmt;
+        return getCached(CacheGroup.COMMENT_LAST_USER, username, new CacheLoader<CMSComment>() {
+            @Override
+            public CMSComment load(Object id) throws ScriptException {
+                return getCMSScript().getLastUserComment((String) id);
+            }
+        });
     }
 
     /**
      * @see CMSScript#getLastCommentOnArticle(int) Documentation for this method
      */
     public CMSComment getLastCommentOnArticle(int articleid) throws ScriptException {
-        if (getCache().contains(CacheGroup.COMMENT_LAST_ARTICLE, articleid)) {
-            return (CMSComment) getCache().get(CacheGroup.COMMENT_LAST_ARTICLE, articleid);
-        }
-        CMSComment cmt = getCMSScript().getLastCommentOnArticle(articleid);
-        getCache().put(CacheGroup.COMMENT_LAST_ARTICLE, articleid, cmt);
-        return cmt;
+        return getCached(CacheGroup.COMMENT_LAST_ARTICLE, articleid, new CacheLoader<CMSComment>() {
+            @Override
+            public CMSComment load(Object id) throws ScriptException {
+                return getCMSScript().getLastCommentOnArticle((Integer) id);
+            }
+        });
     }
 
     /**
@@ -273,138 +265,124 @@ public class CMSHandle extends ScriptHandle {
      * @see CMSScript#getArticle(int) Documentation for this method
      */
     public CMSArticle getArticle(int articleid) throws ScriptException {
-        if (getCache().contains(CacheGroup.ARTICLE, articleid)) {
-            return (CMSArticle) getCache().get(CacheGroup.ARTICLE, articleid);
-        }
-        CMSArticle art = getCMSScript().getArticle(articleid);
-        getCache().put(CacheGroup.ARTICLE, articleid, art);
-        return art;
+        return getScopedCached(CacheGroup.ARTICLE, articleid, new CacheLoader<CMSArticle>() {
+            @Override
+            public CMSArticle load(Object id) throws ScriptException {
+                return getCMSScript().getArticle((Integer) id);
+            }
+        });
     }
 
     /**
      * @see CMSScript#getArticles(int) Documentation for this method
      */
-    @SuppressWarnings("unchecked")
     public List<CMSArticle> getArticles(int limit) throws ScriptException {
-        if (getCache().contains(CacheGroup.ARTICLE_LIST)) {
-            List<CMSArticle> arts = (List<CMSArticle>) getCache().get(CacheGroup.ARTICLE_LIST);
-            if (arts.size() == ((limit == 0) ? getArticleTotalCount() : limit)) {
-                return arts;
-            } else if ((arts.size() > limit) && (limit != 0)) {
-                return arts.subList(0, limit);
+        return getCachedList(CacheGroup.ARTICLE_LIST, limit, new ListLoader<CMSArticle>() {
+            @Override
+            public List<CMSArticle> load(int offset, int count) throws ScriptException {
+                return getCMSScript().getArticles(offset, count);
             }
-        }
-        List<CMSArticle> arts = getCMSScript().getArticles(limit);
-        getCache().put(CacheGroup.ARTICLE_LIST, arts);
-        return arts;
+        });
     }
 
     /**
      * @see CMSScript#getArticleTotalCount() Documentation for this method
      */
     public int getArticleTotalCount() throws ScriptException {
-        if (getCache().contains(CacheGroup.ARTICLE_COUNT_TOTAL)) {
-            return (Integer) getCache().get(CacheGroup.ARTICLE_COUNT_TOTAL);
-        }
-        int arts = getCMSScript().getArticleTotalCount();
-        getCache().put(CacheGroup.ARTICLE_COUNT_TOTAL, arts);
-        return arts;
+        return getCached(CacheGroup.ARTICLE_COUNT_TOTAL, totalArticleCountLoader());
+    }
+
+    private CacheLoader<Integer> totalArticleCountLoader() {
+        return new CacheLoader<Integer>() {
+            @Override
+            public Integer load(Object id) throws ScriptException {
+                return getCMSScript().getArticleTotalCount();
+            }
+        };
     }
 
     /**
      * @see CMSScript#getArticlesFromCategory(int, int) Documentation for this method
      */
-    @SuppressWarnings("unchecked")
-    public List<CMSArticle> getArticlesFromCategory(int catid, int limit) throws ScriptException {
-        if (getCache().contains(CacheGroup.CMSCAT_ARTICLES, catid)) {
-            List<CMSArticle> arts = (List<CMSArticle>) getCache().get(CacheGroup.CMSCAT_ARTICLES, catid);
-            if (arts.size() == ((limit == 0) ? getArticleCount(catid) : limit)) {
-                return arts;
-            } else if ((arts.size() > limit) && (limit != 0)) {
-                return arts.subList(0, limit);
+    public List<CMSArticle> getArticlesFromCategory(final int catid, int limit) throws ScriptException {
+        return getCachedList(CacheGroup.CMSCAT_ARTICLES, catid, limit, new ListLoader<CMSArticle>() {
+            @Override
+            public List<CMSArticle> load(int offset, int count) throws ScriptException {
+                return getCMSScript().getArticlesFromCategory(catid, offset, count);
             }
-        }
-        List<CMSArticle> arts = getCMSScript().getArticlesFromCategory(catid, limit);
-        getCache().put(CacheGroup.CMSCAT_ARTICLES, catid, arts);
-        return arts;
+        });
     }
 
     /**
      * @see CMSScript#getArticleCount(int) Documentation for this method
      */
     public int getArticleCount(int catid) throws ScriptException {
-        if (getCache().contains(CacheGroup.ARTICLE_COUNT, catid)) {
-            return (Integer) getCache().get(CacheGroup.ARTICLE_COUNT, catid);
-        }
-        int arts = getCMSScript().getArticleCount(catid);
-        getCache().put(CacheGroup.ARTICLE_COUNT, catid, arts);
-        return arts;
+        return getCached(CacheGroup.ARTICLE_COUNT, catid, new CacheLoader<Integer>() {
+            @Override
+            public Integer load(Object id) throws ScriptException {
+                return getCMSScript().getArticleCount((Integer) id);
+            }
+        });
     }
 
     /**
      * @see CMSScript#getUserArticles(String, int) Documentation for this method
      */
-    @SuppressWarnings("unchecked")
-    public List<CMSArticle> getUserArticles(String username, int limit) throws ScriptException {
-        if (getCache().contains(CacheGroup.ARTICLE_LIST_USER, username)) {
-            List<CMSArticle> arts = (List<CMSArticle>) getCache().get(CacheGroup.ARTICLE_LIST_USER, username);
-            if (arts.size() == ((limit == 0) ? getUserArticleCount(username) : limit)) {
-                return arts;
-            } else if ((arts.size() > limit) && (limit != 0)) {
-                return arts.subList(0, limit);
+    public List<CMSArticle> getUserArticles(final String username, int limit) throws ScriptException {
+        return getCachedList(CacheGroup.ARTICLE_LIST_USER, username, limit, new ListLoader<CMSArticle>() {
+            @Override
+            public List<CMSArticle> load(int offset, int count) throws ScriptException {
+                return getCMSScript().getUserArticles(username, offset, count);
             }
-        }
-        List<CMSArticle> arts = getCMSScript().getUserArticles(username, limit);
-        getCache().put(CacheGroup.ARTICLE_LIST_USER, username, arts);
-        return arts;
+        });
     }
 
     /**
      * @see CMSScript#getUserArticleCount(String) Documentation for this method
      */
     public int getUserArticleCount(String username) throws ScriptException {
-        if (getCache().contains(CacheGroup.ARTICLE_COUNT_USER, username)) {
-            return (Integer) getCache().get(CacheGroup.ARTICLE_COUNT_USER, username);
-        }
-        int arts = getCMSScript().getUserArticleCount(username);
-        getCache().put(CacheGroup.ARTICLE_COUNT_USER, username, arts);
-        return arts;
+        return getCached(CacheGroup.ARTICLE_COUNT_USER, username, new CacheLoader<Integer>() {
+            @Override
+            public Integer load(Object id) throws ScriptException {
+                return getCMSScript().getUserArticleCount((String) id);
+            }
+        });
     }
 
     /**
      * @see CMSScript#getLastArticle() Documentation for this method
      */
     public CMSArticle getLastArticle() throws ScriptException {
-        if (getCache().contains(CacheGroup.ARTICLE_LAST)) {
-            return (CMSArticle) getCache().get(CacheGroup.ARTICLE_LAST);
-        }
-        CMSArticle art = getCMSScript().getLastArticle();
-        getCache().put(CacheGroup.ARTICLE_LAST, art);
-        return art;
+        return getCached(CacheGroup.ARTICLE_LAST, new CacheLoader<CMSArticle>() {
+            @Override
+            public CMSArticle load(Object id) throws ScriptException {
+                return getCMSScript().getLastArticle();
+            }
+        });
     }
 
     /**
      * @see CMSScript#getLastUserArticle(String) Documentation for this method
      */
     public CMSArticle getLastUserArticle(String username) throws ScriptException {
-        if (getCache().contains(CacheGroup.ARTICLE_LAST_USER, username)) {
-            return (CMSArticle) getCache().get(CacheGroup.ARTICLE_LAST_USER, username);
-        }
-        CMSArticle art = getCMSScript().getLastUserArticle(username);
-        getCache().put(CacheGroup.ARTICLE_LAST_USER, username, art);
-        return art;
+        return getCached(CacheGroup.ARTICLE_LAST_USER, username, new CacheLoader<CMSArticle>() {
+            @Override
+            public CMSArticle load(Object id) throws ScriptException {
+                return getCMSScript().getLastUserArticle((String) id);
+            }
+        });
     }
 
     /**
      * @see CMSScript#getLastArticleFromCategory(int) Documentation for this method
      */
     public CMSArticle getLastArticleFromCategory(int catid) throws ScriptException {
-        if (getCache().contains(CacheGroup.ARTICLE_LAST_CATEGORY, catid)) {
-            return (CMSArticle) getCache().get(CacheGroup.ARTICLE_LAST_CATEGORY, catid);
-        }
-        CMSArticle art = getCMSScript().getLastArticleFromCategory(catid);
-        getCache().put(CacheGroup.ARTICLE_LAST_CATEGORY, catid, art);
-        return art;
+        return getCached(CacheGroup.ARTICLE_LAST_CATEGORY, catid, new CacheLoader<CMSArticle>() {
+            @Override
+            public CMSArticle load(Object id) throws ScriptException {
+                return getCMSScript().getLastArticleFromCategory((Integer) id);
+            }
+        });
     }
 
     /**
@@ -429,72 +407,60 @@ public class CMSHandle extends ScriptHandle {
      * @see CMSScript#getCategory(int) Documentation for this method
      */
     public CMSCategory getCategory(int catid) throws ScriptException {
-        if (getCache().contains(CacheGroup.CMSCAT, catid)) {
-            return (CMSCategory) getCache().get(CacheGroup.CMSCAT, catid);
-        }
-        CMSCategory cat = getCMSScript().getCategory(catid);
-        getCache().put(CacheGroup.CMSCAT, catid, cat);
-        return cat;
+        return getScopedCached(CacheGroup.CMSCAT, catid, new CacheLoader<CMSCategory>() {
+            @Override
+            public CMSCategory load(Object id) throws ScriptException {
+                return getCMSScript().getCategory((Integer) id);
+            }
+        });
     }
 
     /**
      * @see CMSScript#getCategories(int) Documentation for this method
      */
-    @SuppressWarnings("unchecked")
     public List<CMSCategory> getCategories(int limit) throws ScriptException {
-        if (getCache().contains(CacheGroup.CMSCAT_LIST)) {
-            List<CMSCategory> cats = (List<CMSCategory>) getCache().get(CacheGroup.CMSCAT_LIST);
-            if (cats.size() == ((limit == 0) ? getCategoryCount() : limit)) {
-                return cats;
-            } else if ((cats.size() > limit) && (limit != 0)) {
-                return cats.subList(0, limit);
+        return getCachedList(CacheGroup.CMSCAT_LIST, limit, new ListLoader<CMSCategory>() {
+            @Override
+            public List<CMSCategory> load(int offset, int count) throws ScriptException {
+                return getCMSScript().getCategories(offset, count);
             }
-        }
-        List<CMSCategory> cats = getCMSScript().getCategories(limit);
-        getCache().put(CacheGroup.CMSCAT_LIST, cats);
-        return cats;
+        });
     }
 
     /**
      * @see CMSScript#getCategoryCount() Documentation for this method
      */
     public int getCategoryCount() throws ScriptException {
-        if (getCache().contains(CacheGroup.CMSCAT_COUNT)) {
-            return (Integer) getCache().get(CacheGroup.CMSCAT_COUNT);
-        }
-        int cats = getCMSScript().getCategoryCount();
-        getCache().put(CacheGroup.CMSCAT_COUNT, cats);
-        return cats;
+        return getCached(CacheGroup.CMSCAT_COUNT, new CacheLoader<Integer>() {
+            @Override
+            public Integer load(Object id) throws ScriptException {
+                return getCMSScript().getCategoryCount();
+            }
+        });
     }
 
     /**
      * @see CMSScript#getSubCategories(int, int) Documentation for this method
      */
-    @SuppressWarnings("unchecked")
-    public List<CMSCategory> getSubCategories(int catid, int limit) throws ScriptException {
-        if (getCache().contains(CacheGroup.CMSCAT_SUBS, catid)) {
-            List<CMSCategory> cats = (List<CMSCategory>) getCache().get(CacheGroup.CMSCAT_SUBS, catid);
-            if (cats.size() == ((limit == 0) ? getSubCategoryCount(catid) : limit)) {
-                return cats;
-            } else if ((cats.size() > limit) && (limit != 0)) {
-                return cats.subList(0, limit);
+    public List<CMSCategory> getSubCategories(final int catid, int limit) throws ScriptException {
+        return getCachedList(CacheGroup.CMSCAT_SUBS, catid, limit, new ListLoader<CMSCategory>() {
+            @Override
+            public List<CMSCategory> load(int offset, int count) throws ScriptException {
+                return getCMSScript().getSubCategories(catid, offset, count);
             }
-        }
-        List<CMSCategory> cats = getCMSScript().getSubCategories(catid, limit);
-        getCache().put(CacheGroup.CMSCAT_SUBS, catid, cats);
-        return cats;
+        });
     }
 
     /**
      * @see CMSScript#getSubCategoryCount(int) Documentation for this method
      */
     public int getSubCategoryCount(int catid) throws ScriptException {
-        if (getCache().contains(CacheGroup.CMSCAT_SUB_COUNT, catid)) {
-            return (Integer) getCache().get(CacheGroup.CMSCAT_SUB_COUNT, catid);
-        }
-        int cats = getCMSScript().getSubCategoryCount(catid);
-        getCache().put(CacheGroup.CMSCAT_SUB_COUNT, catid, cats);
-        return cats;
+        return getCached(CacheGroup.CMSCAT_SUB_COUNT, catid, new CacheLoader<Integer>() {
+            @Override
+            public Integer load(Object id) throws ScriptException {
+                return getCMSScript().getSubCategoryCount((Integer) id);
+            }
+        });
     }
 
     /**
@@ -24,6 +24,7 @@ import java.util.List;
 
 import com.craftfire.commons.database.DataManager;
 
+import com.craftfire.bifrost.cache.CachedList;
 import com.craftfire.bifrost.classes.general.Script;
 import com.craftfire.bifrost.classes.general.ScriptUser;
 import com.craftfire.bifrost.enums.Scripts;
@@ -70,6 +71,24 @@ public class CMSScript extends Script {
         throw new ScriptException();
     }
 
+    /**
+     * Returns a List with {@link CMSComment} objects like {@link #getComments(int)}, skipping the first {@code offset}
+     * objects.
+     * <p>
+     * This is used by the cache to load only the objects it is missing. Scripts that can skip rows in their query
+     * should override this method, by default the first {@code offset + limit} objects are loaded with
+     * {@link #getComments(int)} and the first {@code offset} objects are dropped.
+     *
+     * @param  offset           the number of objects to skip
+     * @param  limit            the limit, set to {@code 0} if you want to return all
+     * @return                  List with {@link CMSComment} objects, if none are found it returns an empty List
+     * @throws ScriptException  if the method is not supported by the script
+     * @see                     #getComments(int)
+     */
+    public List<CMSComment> getComments(int offset, int limit) throws ScriptException {
+        return CachedList.skip(getComments((limit == 0) ? 0 : offset + limit), offset);
+    }
+
     /**
      * Returns the complete count of how many comments have been made.
      * 
@@ -97,6 +116,25 @@ public class CMSScript extends Script {
         throw new ScriptException();
     }
 
+    /**
+     * Returns a List with {@link CMSComment} objects like {@link #getCommentsOnArticle(int, int)}, skipping the first
+     * {@code offset} objects.
+     * <p>
+     * This is used by the cache to load only the objects it is missing. Scripts that can skip rows in their query
+     * should override this method, by default the first {@code offset + limit} objects are loaded with
+     * {@link #getCommentsOnArticle(int, int)} and the first {@code offset} objects are dropped.
+     *
+     * @param  articleid        the artcile ID to grab the comments from
+     * @param  offset           the number of objects to skip
+     * @param  limit            the limit, set to {@code 0} if you want to return all
+     * @return                  List with {@link CMSComment} objects, if none are found it returns an empty List
+     * @throws ScriptException  if the method is not supported by the script
+     * @see                     #getCommentsOnArticle(int, int)
+     */
+    public List<CMSComment> getCommentsOnArticle(int articleid, int offset, int limit) throws ScriptException {
+        return CachedList.skip(getCommentsOnArticle(articleid, (limit == 0) ? 0 : offset + limit), offset);
+    }
+
     /**
      * Returns the count of how many comments are there on the given {@code articleid}.
      *
@@ -126,6 +164,25 @@ public class CMSScript extends Script {
         throw new ScriptException();
     }
 
+    /**
+     * Returns a List with {@link CMSComment} objects like {@link #getCommentReplies(int, int)}, skipping the first
+     * {@code offset} objects.
+     * <p>
+     * This is used by the cache to load only the objects it is missing. Scripts that can skip rows in their query
+     * should override this method, by default the first {@code offset + limit} objects are loaded with
+     * {@link #getCommentReplies(int, int)} and the first {@code offset} objects are dropped.
+     *
+     * @param  commentid        the ID of the comment to grab the replying comments from
+     * @param  offset           the number of objects to skip
+     * @param  limit            the limit, set to {@code 0} if you want to return all
+     * @return                  List with {@link CMSComment} objects, if none are found it returns an empty List
+     * @throws ScriptException  if the method is not supported by the script
+     * @see                     #getCommentReplies(int, int)
+     */
+    public List<CMSComment> getCommentReplies(int commentid, int offset, int limit) throws ScriptException {
+        return CachedList.skip(getCommentReplies(commentid, (limit == 0) ? 0 : offset + limit), offset);
+    }
+
     /**
      * Returns the count of how many comments replying to the given {@code commentid} are there.
      *
@@ -154,6 +211,25 @@ public class CMSScript extends Script {
         throw new ScriptException();
     }
 
+    /**
+     * Returns a List with {@link CMSComment} objects like {@link #getUserComments(String, int)}, skipping the first
+     * {@code offset} objects.
+     * <p>
+     * This is used by the cache to load only the objects it is missing. Scripts that can skip rows in their query
+     * should override this method, by default the first {@code offset + limit} objects are loaded with
+     * {@link #getUserComments(String, int)} and the first {@code offset} objects are dropped.
+     *
+     * @param  username         the username to grab the comments from
+     * @param  offset           the number of objects to skip
+     * @param  limit            the limit, set to {@code 0} if you want to return all
+     * @return                  List with {@link CMSComment} objects, if none are found it returns an empty List
+     * @throws ScriptException  if the method is not supported by the script
+     * @see                     #getUserComments(String, int)
+     */
+    public List<CMSComment> getUserComments(String username, int offset, int limit) throws ScriptException {
+        return CachedList.skip(getUserComments(username, (limit == 0) ? 0 : offset + limit), offset);
+    }
+
     /**
      * Returns an amount of how many comments {@code username} has made.
      *
@@ -246,6 +322,24 @@ public class CMSScript extends Script {
         throw new ScriptException();
     }
 
+    /**
+     * Returns a List with {@link CMSArticle} objects like {@link #getArticles(int)}, skipping the first {@code offset}
+     * objects.
+     * <p>
+     * This is used by the cache to load only the objects it is missing. Scripts that can skip rows in their query
+     * should override this method, by default the first {@code offset + limit} objects are loaded with
+     * {@link #getArticles(int)} and the first {@code offset} objects are dropped.
+     *
+     * @param  offset           the number of objects to skip
+     * @param  limit            the limit, set to {@code 0} if you want to return all
+     * @return                  List with {@link CMSArticle} objects, if none are found it returns an empty List
+     * @throws ScriptException  if the method is not supported by the script
+     * @see                     #getArticles(int)
+     */
+    public List<CMSArticle> getArticles(int offset, int limit) throws ScriptException {
+        return CachedList.skip(getArticles((limit == 0) ? 0 : offset + limit), offset);
+    }
+
     /**
      * Returns the complete count of how many articles have been made.
      * 
@@ -273,6 +367,25 @@ public class CMSScript extends Script {
         throw new ScriptException();
     }
 
+    /**
+     * Returns a List with {@link CMSArticle} objects like {@link #getArticlesFromCategory(int, int)}, skipping the
+     * first {@code offset} objects.
+     * <p>
+     * This is used by the cache to load only the objects it is missing. Scripts that can skip rows in their query
+     * should override this method, by default the first {@code offset + limit} objects are loaded with
+     * {@link #getArticlesFromCategory(int, int)} and the first {@code offset} objects are dropped.
+     *
+     * @param  catid            the category ID to grab the articles from
+     * @param  offset           the number of objects to skip
+     * @param  limit            the limit, set to {@code 0} if you want to return all
+     * @return                  List with {@link CMSArticle} objects, if none are found it returns an empty List
+     * @throws ScriptException  if the method is not supported by the script
+     * @see                     #getArticlesFromCategory(int, int)
+     */
+    public List<CMSArticle> getArticlesFromCategory(int catid, int offset, int limit) throws ScriptException {
+        return CachedList.skip(getArticlesFromCategory(catid, (limit == 0) ? 0 : offset + limit), offset);
+    }
+
     /**
      * Returns the count of how many articles are there in the given category ID.
      * 
@@ -301,6 +414,25 @@ public class CMSScript extends Script {
         throw new ScriptException();
     }
 
+    /**
+     * Returns a List with {@link CMSArticle} objects like {@link #getUserArticles(String, int)}, skipping the first
+     * {@code offset} objects.
+     * <p>
+     * This is used by the cache to load only the objects it is missing. Scripts that can skip rows in their query
+     * should override this method, by default the first {@code offset + limit} objects are loaded with
+     * {@link #getUserArticles(String, int)} and the first {@code offset} objects are dropped.
+     *
+     * @param  username         the username to grab the articles from
+     * @param  offset           the number of objects to skip
+     * @param  limit            the limit, set to {@code 0} if you want to return all
+     * @return                  List with {@link CMSArticle} objects, if none are found it returns an empty List
+     * @throws ScriptException  if the method is not supported by the script
+     * @see                     #getUserArticles(String, int)
+     */
+    public List<CMSArticle> getUserArticles(String username, int offset, int limit) throws ScriptException {
+        return CachedList.skip(getUserArticles(username, (limit == 0) ? 0 : offset + limit), offset);
+    }
+
     /**
      * Returns an amount of how many articles {@code username} has made.
      *
@@ -391,6 +523,24 @@ public class CMSScript extends Script {
         throw new ScriptException();
     }
 
+    /**
+     * Returns a List with {@link CMSCategory} objects like {@link #getCategories(int)}, skipping the first
+     * {@code offset} objects.
+     * <p>
+     * This is used by the cache to load only the objects it is missing. Scripts that can skip rows in their query
+     * should override this method, by default the first {@code offset + limit} objects are loaded with
+     * {@link #getCategories(int)} and the first {@code offset} objects are dropped.
+     *
+     * @param  offset           the number of objects to skip
+     * @param  limit            the limit, set to {@code 0} if you want to return all
+     * @return                  List with {@link CMSCategory} objects, if none are found it returns an empty List
+     * @throws ScriptException  if the method is not supported by the script
+     * @see                     #getCategories(int)
+     */
+    public List<CMSCategory> getCategories(int offset, int limit) throws ScriptException {
+        return CachedList.skip(getCategories((limit == 0) ? 0 : offset + limit), offset);
+    }
+
     /**
      * Returns the complete count of how many categories are there.
      * 
@@ -418,6 +568,25 @@ public class CMSScript extends Script {
         throw new ScriptException();
     }
 
+    /**
+     * Returns a List with {@link CMSCategory} objects like {@link #getSubCategories(int, int)}, skipping the first
+     * {@code offset} objects.
+     * <p>
+     * This is used by the cache to load only the objects it is missing. Scripts that can skip rows in their query
+     * should override this method, by default the first {@code offset + limit} objects are loaded with
+     * {@link #getSubCategories(int, int)} and the first {@code offset} objects are dropped.
+     *
+     * @param  catid            the category ID to grab the subcategories from
+     * @param  offset           the number of objects to skip
+     * @param  limit            the limit, set to {@code 0} if you want to return all
+     * @return                  List with {@link CMSCategory} objects, if none are found it returns an empty List
+     * @throws ScriptException  if the method is not supported by the script
+     * @see                     #getSubCategories(int, int)
+     */
+    public List<CMSCategory> getSubCategories(int catid, int offset, int limit) throws ScriptException {
+        return CachedList.skip(getSubCategories(catid, (limit == 0) ? 0 : offset + limit), offset);
+    }
+
     /**
      * Returns the count of how many subcategories are there in the given category ID.
      * 
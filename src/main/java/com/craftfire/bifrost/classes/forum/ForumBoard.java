@@ -22,6 +22,7 @@ package com.craftfire.bifrost.classes.forum;
 import java.sql.SQLException;
 import java.util.List;
 
+import com.craftfire.bifrost.cache.CacheTag;
 import com.craftfire.bifrost.classes.general.Cache;
 import com.craftfire.bifrost.classes.general.Category;
 import com.craftfire.bifrost.classes.general.ScriptHandle;
@@ -130,6 +131,11 @@ public class ForumBoard extends Category {
         getHandle().createBoard(this);
     }
 
+    @Override
+    public CacheTag getCacheTag() {
+        return new CacheTag(CacheTag.Kind.BOARD, getID());
+    }
+
     /**
      * Returns {@code true} if the handle contains a board cache with the given id parameter,
      * {@code false} if not.
@@ -139,7 +145,7 @@ public class ForumBoard extends Category {
      * @return         {@code true} if contains, {@code false} if not
      */
     public static boolean hasCache(ScriptHandle handle, int id) {
-        return handle.getCache().contains(CacheGroup.BOARD, id);
+        return handle.getCache().containsInt(CacheGroup.BOARD, id);
     }
 
     /**
@@ -149,7 +155,7 @@ public class ForumBoard extends Category {
      * @param board   the board object
      */
     public static void addCache(ScriptHandle handle, ForumBoard board) {
-        handle.getCache().putMetadatable(CacheGroup.BOARD, board.getID(), board);
+        handle.getCache().putMetadatableInt(CacheGroup.BOARD, board.getID(), board);
         handle.getCache().setMetadata(CacheGroup.BOARD, board.getID(), "bifrost-cache.old-parent", board.getParentID());
     }
 
@@ -161,8 +167,8 @@ public class ForumBoard extends Category {
      * @return         board object if cache was found, {@code null} if no cache was found
      */
     public static ForumBoard getCache(ScriptHandle handle, int id) {
-        if (handle.getCache().contains(CacheGroup.BOARD, id)) {
-            return (ForumBoard) handle.getCache().get(CacheGroup.BOARD, id);
+        if (handle.getCache().containsInt(CacheGroup.BOARD, id)) {
+            return (ForumBoard) handle.getCache().getInt(CacheGroup.BOARD, id);
         }
         return null;
     }
@@ -179,17 +185,24 @@ public class ForumBoard extends Category {
      * @see           Cache
      */
     public static void cleanupCache(ScriptHandle handle, ForumBoard board, CacheCleanupReason reason) {
-        handle.getCache().remove(CacheGroup.BOARD_SUBS, board.getParentID());
+        handle.getCache().invalidate(new CacheTag(CacheTag.Kind.BOARD_SUBS, board.getParentID()));
+        Object oldParentID = handle.getCache().getMetadata(CacheGroup.BOARD, board.getID(), "bifrost-cache.old-parent");
         switch (reason) {
         case OTHER:
-            handle.getCache().remove(CacheGroup.BOARD_SUBS, handle.getCache().getMetadata(CacheGroup.BOARD, board.getID(), "bifrost-cache.old-parent"));
+            handle.getCache().invalidate(board.getCacheTag());
+            if (oldParentID != null) {
+                handle.getCache().invalidate(new CacheTag(CacheTag.Kind.BOARD_SUBS, oldParentID));
+            }
             /* Passes through */
         case CREATE:
             handle.getCache().clear(CacheGroup.BOARD_COUNT);
             handle.getCache().clear(CacheGroup.BOARD_LIST);
             break;
         case UPDATE:
-            handle.getCache().remove(CacheGroup.BOARD_SUBS, handle.getCache().getMetadata(CacheGroup.BOARD, board.getID(), "bifrost-cache.old-parent"));
+            handle.getCache().invalidate(board.getCacheTag());
+            if (oldParentID != null) {
+                handle.getCache().invalidate(new CacheTag(CacheTag.Kind.BOARD_SUBS, oldParentID));
+            }
             break;
         }
     }
@@ -20,16 +20,20 @@
 package com.craftfire.bifrost.classes.forum;
 
 import java.sql.SQLException;
+import java.util.Iterator;
 import java.util.List;
 
 import com.craftfire.commons.database.DataManager;
 
+import com.craftfire.bifrost.cache.CacheLoader;
+import com.craftfire.bifrost.cache.ListLoader;
 import com.craftfire.bifrost.classes.general.ScriptHandle;
 import com.craftfire.bifrost.classes.general.ScriptUser;
 import com.craftfire.bifrost.enums.CacheCleanupReason;
 import com.craftfire.bifrost.enums.CacheGroup;
 import com.craftfire.bifrost.enums.Scripts;
 import com.craftfire.bifrost.exceptions.ScriptException;
+import com.craftfire.bifrost.sql.KeysetIterator;
 
 /**
  * This class contains methods relevant to methods to use for a forum script.
@@ -47,6 +51,19 @@ public class ForumHandle extends ScriptHandle {
         super(handleID, script);
     }
 
+    @Override
+    protected void setupCache() {
+        super.setupCache();
+        setCountExpiry(CacheGroup.POST_COUNT_TOTAL);
+        setCountExpiry(CacheGroup.THREAD_COUNT_TOTAL);
+        setCountExpiry(CacheGroup.BOARD_COUNT);
+        setRefreshAhead(CacheGroup.POST_COUNT_TOTAL, COUNT_REFRESH_INTERVAL, totalPostCountLoader());
+        setRefreshAhead(CacheGroup.THREAD_COUNT_TOTAL, COUNT_REFRESH_INTERVAL, totalThreadCountLoader());
+        setRefreshAhead(CacheGroup.POST_LAST, LAST_REFRESH_INTERVAL, lastPostLoader());
+        setRefreshAhead(CacheGroup.THREAD_LAST, LAST_REFRESH_INTERVAL, lastThreadLoader());
+        setRefreshAhead(CacheGroup.URL_FORUM, URL_REFRESH_INTERVAL, forumURLLoader());
+    }
+
     /**
      * Returns the ForumScript object
      *
@@ -87,66 +104,75 @@ public class ForumHandle extends ScriptHandle {
      * @see ForumScript#getPost(int) Documentation for this method
      */
     public ForumPost getPost(int postID) throws ScriptException, SQLException {
-        if (ForumPost.hasCache(this, postID)) {
-            return ForumPost.getCache(this, postID);
-        }
-        ForumPost post = this.getForumScript().getPost(postID);
-        ForumPost.addCache(this, post);
-        return post;
+        return getScoped(CacheGroup.POST, postID, new CacheLoader<ForumPost>() {
+            @Override
+            public ForumPost load(Object id) throws ScriptException, SQLException {
+                ForumPost post = getForumScript().getPost((Integer) id);
+                if (post != null) {
+                    ForumPost.addCache(ForumHandle.this, post);
+                }
+                return post;
+            }
+        });
     }
 
     /**
      * @see ForumScript#getPosts(int) Documentation for this method
      */
-    @SuppressWarnings("unchecked")
     public List<ForumPost> getPosts(int limit) throws ScriptException, SQLException {
-        if (getCache().contains(CacheGroup.POST_LIST)) {
-            List<ForumPost> posts = (List<ForumPost>) getCache().get(CacheGroup.POST_LIST);
-            if (posts.size() == ((limit == 0) ? getTotalPostCount() : limit)) {
-                return posts;
-            } else if ((posts.size() > limit) && (limit != 0)) {
-                return posts.subList(0, limit);
+        return getList(CacheGroup.POST_LIST, limit, new ListLoader<ForumPost>() {
+            @Override
+            public List<ForumPost> load(int offset, int count) throws ScriptException, SQLException {
+                return getForumScript().getPosts(offset, count);
             }
-        }
-        List<ForumPost> posts = this.getForumScript().getPosts(limit);
-        getCache().put(CacheGroup.POST_LIST, posts);
-        return posts;
+        });
+    }
+
+    /**
+     * Walks all posts in the order of their IDs, loading {@code pageSize} posts at a time with
+     * {@link ForumScript#getPostsAfter(int, int)}.
+     * <p>
+     * The posts bypass the cache, so walking a large board only keeps one page in memory.
+     *
+     * @param  pageSize  the number of posts loaded at once
+     * @return           the iterator over the posts, see {@link KeysetIterator} for how it reports errors
+     */
+    public Iterator<ForumPost> iteratePosts(int pageSize) {
+        return new KeysetIterator<ForumPost>(pageSize) {
+            @Override
+            protected List<ForumPost> load(int after, int limit) throws SQLException, ScriptException {
+                return getForumScript().getPostsAfter(after, limit);
+            }
+
+            @Override
+            protected int getKey(ForumPost post) {
+                return post.getID();
+            }
+        };
     }
 
     /**
      * @see ForumScript#getPostsFromThread(int, int) Documentation for this method
      */
-    @SuppressWarnings("unchecked")
-    public List<ForumPost> getPostsFromThread(int threadid, int limit) throws ScriptException, SQLException {
-        if (getCache().contains(CacheGroup.THREAD_POSTS, threadid)) {
-            List<ForumPost> posts = (List<ForumPost>) getCache().get(CacheGroup.THREAD_POSTS, threadid);
-            if (posts.size() == ((limit == 0) ? getPostCountInThread(threadid) : limit)) {
-                return posts;
-            } else if ((posts.size() > limit) && (limit !=0)) {
-                return posts.subList(0, limit);
+    public List<ForumPost> getPostsFromThread(final int threadid, int limit) throws ScriptException, SQLException {
+        return getList(CacheGroup.THREAD_POSTS, threadid, limit, new ListLoader<ForumPost>() {
+            @Override
+            public List<ForumPost> load(int offset, int count) throws ScriptException, SQLException {
+                return getForumScript().getPostsFromThread(threadid, offset, count);
             }
-        }
-        List<ForumPost> posts = this.getForumScript().getPostsFromThread(threadid, limit);
-        getCache().put(CacheGroup.THREAD_POSTS, threadid, posts);
-        return posts;
+        });
     }
 
     /**
      * @see ForumScript#getUserPosts(String, int) Documentation for this method
      */
-    @SuppressWarnings("unchecked")
-    public List<ForumPost> getUserPosts(String username, int limit) throws ScriptException {
-        if (getCache().contains(CacheGroup.POST_LIST_USER, username)) {
-            List<ForumPost> posts = (List<ForumPost>) getCache().get(CacheGroup.POST_LIST_USER, username);
-            if (posts.size() == ((limit == 0) ? getPostCount(username) : limit)) {
-                return posts;
-            } else if ((posts.size() > limit) && (limit != 0)) {
-                return posts.subList(0, limit);
+    public List<ForumPost> getUserPosts(final String username, int limit) throws ScriptException {
+        return getCachedList(CacheGroup.POST_LIST_USER, username, limit, new ListLoader<ForumPost>() {
+            @Override
+            public List<ForumPost> load(int offset, int count) throws ScriptException {
+                return getForumScript().getUserPosts(username, offset, count);
             }
-        }
-        List<ForumPost> posts = this.getForumScript().getUserPosts(username, limit);
-        getCache().put(CacheGroup.POST_LIST_USER, username, posts);
-        return posts;
+        });
     }
 
     /**
@@ -167,178 +193,214 @@ public class ForumHandle extends ScriptHandle {
         ForumPost.addCache(this, post);
     }
 
+    /**
+     * @see ForumScript#createPosts(List) Documentation for this method
+     */
+    public void createPosts(List<ForumPost> posts) throws SQLException, ScriptException {
+        this.getForumScript().createPosts(posts);
+        for (ForumPost post : posts) {
+            ForumPost.cleanupCache(this, post, CacheCleanupReason.CREATE);
+            ForumPost.addCache(this, post);
+        }
+    }
+
     /**
      * @see ForumScript#getPostCount(String) Documentation for this method
      */
     public int getPostCount(String username) throws ScriptException {
-        if (getCache().contains(CacheGroup.POST_COUNT, username)) {
-            return (Integer) getCache().get(CacheGroup.POST_COUNT, username);
-        }
-        int count = this.getForumScript().getPostCount(username);
-        getCache().put(CacheGroup.POST_COUNT, username, count);
-        return count;
+        return getCached(CacheGroup.POST_COUNT, username, new CacheLoader<Integer>() {
+            @Override
+            public Integer load(Object id) throws ScriptException, SQLException {
+                return getForumScript().getPostCount((String) id);
+            }
+        });
     }
 
     /**
      * @see ForumScript#getPostCountInThread(int) Documentation for this method
      */
     public int getPostCountInThread(int threadid) throws ScriptException {
-        if (getCache().contains(CacheGroup.POST_COUNT_THREAD, threadid)) {
-            return (Integer) getCache().get(CacheGroup.POST_COUNT_THREAD, threadid);
-        }
-        int count = this.getForumScript().getPostCountInThread(threadid);
-        getCache().put(CacheGroup.POST_COUNT_THREAD, threadid, count);
-        return count;
+        return getCached(CacheGroup.POST_COUNT_THREAD, threadid, new CacheLoader<Integer>() {
+            @Override
+            public Integer load(Object id) throws ScriptException {
+                return getForumScript().getPostCountInThread((Integer) id);
+            }
+        });
     }
 
     /**
      * @see ForumScript#getTotalPostCount() Documentation for this method
      */
     public int getTotalPostCount() throws ScriptException {
-        if (getCache().contains(CacheGroup.POST_COUNT_TOTAL)) {
-            return (Integer) getCache().get(CacheGroup.POST_COUNT_TOTAL);
-        }
-        int count = this.getForumScript().getTotalPostCount();
-        getCache().put(CacheGroup.POST_COUNT_TOTAL, count);
-        return count;
+        return getCached(CacheGroup.POST_COUNT_TOTAL, totalPostCountLoader());
+    }
+
+    private CacheLoader<Integer> totalPostCountLoader() {
+        return new CacheLoader<Integer>() {
+            @Override
+            public Integer load(Object id) throws ScriptException, SQLException {
+                return getForumScript().getTotalPostCount();
+            }
+        };
     }
 
     /**
      * @see ForumScript#getLastPost() Documentation for this method
      */
     public ForumPost getLastPost() throws ScriptException, SQLException {
-        if (getCache().contains(CacheGroup.POST_LAST)) {
-            return (ForumPost) getCache().get(CacheGroup.POST_LAST);
-        }
-        ForumPost post = this.getForumScript().getLastPost();
-        getCache().put(CacheGroup.POST_LAST, post);
-        return post;
+        return getCache().get(CacheGroup.POST_LAST, lastPostLoader());
+    }
+
+    private CacheLoader<ForumPost> lastPostLoader() {
+        return new CacheLoader<ForumPost>() {
+            @Override
+            public ForumPost load(Object id) throws ScriptException, SQLException {
+                return getForumScript().getLastPost();
+            }
+        };
     }
 
     /**
      * @see ForumScript#getLastUserPost(String) Documentation for this method
      */
     public ForumPost getLastUserPost(String username) throws ScriptException, SQLException {
-        if (getCache().contains(CacheGroup.POST_LAST_USER, username)) {
-            return (ForumPost) getCache().get(CacheGroup.POST_LAST_USER, username);
-        }
-        ForumPost post = this.getForumScript().getLastUserPost(username);
-        getCache().put(CacheGroup.POST_LAST_USER, username, post);
-        return post;
+        return getCache().get(CacheGroup.POST_LAST_USER, username, new CacheLoader<ForumPost>() {
+            @Override
+            public ForumPost load(Object id) throws ScriptException, SQLException {
+                return getForumScript().getLastUserPost((String) id);
+            }
+        });
     }
 
     /**
      * @see ForumScript#getTotalThreadCount() Documentation for this method
      */
     public int getTotalThreadCount() throws ScriptException {
-        if (getCache().contains(CacheGroup.THREAD_COUNT_TOTAL)) {
-            return (Integer) getCache().get(CacheGroup.THREAD_COUNT_TOTAL);
-        }
-        int count = this.getForumScript().getTotalThreadCount();
-        getCache().put(CacheGroup.THREAD_COUNT_TOTAL, count);
-        return count;
+        return getCached(CacheGroup.THREAD_COUNT_TOTAL, totalThreadCountLoader());
+    }
+
+    private CacheLoader<Integer> totalThreadCountLoader() {
+        return new CacheLoader<Integer>() {
+            @Override
+            public Integer load(Object id) throws ScriptException, SQLException {
+                return getForumScript().getTotalThreadCount();
+            }
+        };
     }
 
     /**
      * @see ForumScript#getThreadCount(String) Documentation for this method
      */
     public int getThreadCount(String username) throws ScriptException {
-        if (getCache().contains(CacheGroup.THREAD_COUNT, username)) {
-            return (Integer) getCache().get(CacheGroup.THREAD_COUNT, username);
-        }
-        int count = this.getForumScript().getThreadCount(username);
-        getCache().put(CacheGroup.THREAD_COUNT, username, count);
-        return count;
+        return getCached(CacheGroup.THREAD_COUNT, username, new CacheLoader<Integer>() {
+            @Override
+            public Integer load(Object id) throws ScriptException, SQLException {
+                return getForumScript().getThreadCount((String) id);
+            }
+        });
     }
 
     /**
      * @see ForumScript#getLastThread() Documentation for this method
      */
     public ForumThread getLastThread() throws ScriptException, SQLException {
-        if (getCache().contains(CacheGroup.THREAD_LAST)) {
-            return (ForumThread) getCache().get(CacheGroup.THREAD_LAST);
-        }
-        ForumThread thread = this.getForumScript().getLastThread();
-        getCache().put(CacheGroup.THREAD_LAST, thread);
-        return thread;
+        return getCache().get(CacheGroup.THREAD_LAST, lastThreadLoader());
+    }
+
+    private CacheLoader<ForumThread> lastThreadLoader() {
+        return new CacheLoader<ForumThread>() {
+            @Override
+            public ForumThread load(Object id) throws ScriptException, SQLException {
+                return getForumScript().getLastThread();
+            }
+        };
     }
 
     /**
      * @see ForumScript#getLastUserThread(String) Documentation for this method
      */
     public ForumThread getLastUserThread(String username) throws ScriptException, SQLException {
-        if (getCache().contains(CacheGroup.THREAD_LAST_USER, username)) {
-            return (ForumThread) getCache().get(CacheGroup.THREAD_LAST_USER, username);
-        }
-        ForumThread thread = this.getForumScript().getLastUserThread(username);
-        getCache().put(CacheGroup.THREAD_LAST_USER, username, thread);
-        return thread;
+        return getCache().get(CacheGroup.THREAD_LAST_USER, username, new CacheLoader<ForumThread>() {
+            @Override
+            public ForumThread load(Object id) throws ScriptException, SQLException {
+                return getForumScript().getLastUserThread((String) id);
+            }
+        });
     }
 
     /**
      * @see ForumScript#getThread(int) Documentation for this method
      */
     public ForumThread getThread(int threadID) throws ScriptException, SQLException {
-        if (ForumThread.hasCache(this, threadID)) {
-            return ForumThread.getCache(this, threadID);
-        }
-        ForumThread thread = this.getForumScript().getThread(threadID);
-        ForumThread.addCache(this, thread);
-        return thread;
+        return getScoped(CacheGroup.THREAD, threadID, new CacheLoader<ForumThread>() {
+            @Override
+            public ForumThread load(Object id) throws ScriptException, SQLException {
+                ForumThread thread = getForumScript().getThread((Integer) id);
+                if (thread != null) {
+                    ForumThread.addCache(ForumHandle.this, thread);
+                }
+                return thread;
+            }
+        });
     }
 
     /**
      * @see ForumScript#getThreads(int) Documentation for this method
      */
-    @SuppressWarnings("unchecked")
     public List<ForumThread> getThreads(int limit) throws ScriptException, SQLException {
-        if (getCache().contains(CacheGroup.THREAD_LIST)) {
-            List<ForumThread> threads = (List<ForumThread>) getCache().get(CacheGroup.THREAD_LIST);
-            if (threads.size() == ((limit == 0) ? getTotalThreadCount() : limit)) {
-                return threads;
-            } else if ((threads.size() > limit) && (limit != 0)) {
-                return threads.subList(0, limit);
+        return getList(CacheGroup.THREAD_LIST, limit, new ListLoader<ForumThread>() {
+            @Override
+            public List<ForumThread> load(int offset, int count) throws ScriptException, SQLException {
+                return getForumScript().getThreads(offset, count);
             }
-        }
-        List<ForumThread> threads = this.getForumScript().getThreads(limit);
-        getCache().put(CacheGroup.THREAD_LIST, threads);
-        return threads;
+        });
+    }
+
+    /**
+     * Walks all threads in the order of their IDs, loading {@code pageSize} threads at a time with
+     * {@link ForumScript#getThreadsAfter(int, int)}.
+     * <p>
+     * The threads bypass the cache, so walking a large board only keeps one page in memory.
+     *
+     * @param  pageSize  the number of threads loaded at once
+     * @return           the iterator over the threads, see {@link KeysetIterator} for how it reports errors
+     */
+    public Iterator<ForumThread> iterateThreads(int pageSize) {
+        return new KeysetIterator<ForumThread>(pageSize) {
+            @Override
+            protected List<ForumThread> load(int after, int limit) throws SQLException, ScriptException {
+                return getForumScript().getThreadsAfter(after, limit);
+            }
+
+            @Override
+            protected int getKey(ForumThread thread) {
+                return thread.getID();
+            }
+        };
     }
 
     /**
      * @see ForumScript#getThreadsFromBoard(int, int) Documentation for this method
      */
-    @SuppressWarnings("unchecked")
-    public List<ForumThread> getThreadsFromBoard(int boardid, int limit) throws ScriptException {
-        if (getCache().contains(CacheGroup.BOARD_THREADS, boardid) && (limit != 0)) {
-            List<ForumThread> threads = (List<ForumThread>) getCache().get(CacheGroup.BOARD_THREADS, boardid);
-            if (threads.size() == limit) {
-                return threads;
-            } else if ((threads.size() > limit) && (limit != 0)) {
-                return threads.subList(0, limit);
+    public List<ForumThread> getThreadsFromBoard(final int boardid, int limit) throws ScriptException {
+        return getCachedList(CacheGroup.BOARD_THREADS, boardid, limit, new ListLoader<ForumThread>() {
+            @Override
+            public List<ForumThread> load(int offset, int count) throws ScriptException {
+                return getForumScript().getThreadsFromBoard(boardid, offset, count);
             }
-        }
-        List<ForumThread> threads = getForumScript().getThreadsFromBoard(boardid, limit);
-        getCache().put(CacheGroup.BOARD_THREADS, boardid, threads);
-        return threads;
+        });
     }
 
     /**
      * @see ForumScript#getUserThreads(String, int) Documentation for this method
      */
-    @SuppressWarnings("unchecked")
-    public List<ForumThread> getUserThreads(String username, int limit) throws ScriptException {
-        if (getCache().contains(CacheGroup.THREAD_LIST_USER, username)) {
-            List<ForumThread> threads = (List<ForumThread>) getCache().get(CacheGroup.THREAD_LIST_USER, username);
-            if (threads.size() == ((limit == 0) ? getThreadCount(username) : limit)) {
-                return threads;
-            } else if ((threads.size() > limit) && (limit != 0)) {
-                return threads.subList(0, limit);
+    public List<ForumThread> getUserThreads(final String username, int limit) throws ScriptException {
+        return getCachedList(CacheGroup.THREAD_LIST_USER, username, limit, new ListLoader<ForumThread>() {
+            @Override
+            public List<ForumThread> load(int offset, int count) throws ScriptException {
+                return getForumScript().getUserThreads(username, offset, count);
             }
-        }
-        List<ForumThread> threads = getForumScript().getUserThreads(username, limit);
-        getCache().put(CacheGroup.THREAD_LIST_USER, username, threads);
-        return threads;
+        });
     }
 
     /**
@@ -359,76 +421,79 @@ public class ForumHandle extends ScriptHandle {
         ForumThread.addCache(this, thread);
     }
 
+    /**
+     * @see ForumScript#createThreads(List) Documentation for this method
+     */
+    public void createThreads(List<ForumThread> threads) throws SQLException, ScriptException {
+        this.getForumScript().createThreads(threads);
+        for (ForumThread thread : threads) {
+            ForumThread.cleanupCache(this, thread, CacheCleanupReason.CREATE);
+            ForumThread.addCache(this, thread);
+        }
+    }
+
     /**
      * @see ForumScript#getBoards(int) Documentation for this method
      */
-    @SuppressWarnings("unchecked")
     public List<ForumBoard> getBoards(int limit) throws ScriptException {
-        if (getCache().contains(CacheGroup.BOARD_LIST)) {
-            List<ForumBoard> boards = (List<ForumBoard>) getCache().get(CacheGroup.BOARD_LIST);
-            if (boards.size() == ((limit == 0) ? getBoardCount() : limit)) {
-                return boards;
-            } else if ((boards.size() > limit) && (limit != 0)) {
-                return boards.subList(0, limit);
+        return getCachedList(CacheGroup.BOARD_LIST, limit, new ListLoader<ForumBoard>() {
+            @Override
+            public List<ForumBoard> load(int offset, int count) throws ScriptException {
+                return getForumScript().getBoards(offset, count);
             }
-        }
-        List<ForumBoard> boards = getForumScript().getBoards(limit);
-        getCache().put(CacheGroup.BOARD_LIST, boards);
-        return boards;
+        });
     }
 
     /**
      * @see ForumScript#getBoardCount() Documentation for this method
      */
     public int getBoardCount() throws ScriptException {
-        if (getCache().contains(CacheGroup.BOARD_COUNT)) {
-            return (Integer) getCache().get(CacheGroup.BOARD_COUNT);
-        }
-        int count = getForumScript().getBoardCount();
-        getCache().put(CacheGroup.BOARD_COUNT, count);
-        return count;
+        return getCached(CacheGroup.BOARD_COUNT, new CacheLoader<Integer>() {
+            @Override
+            public Integer load(Object id) throws ScriptException {
+                return getForumScript().getBoardCount();
+            }
+        });
     }
 
     /**
      * @see ForumScript#getSubBoardCount(int) Documentation for this method
      */
     public int getSubBoardCount(int boardid) throws ScriptException {
-        if (getCache().contains(CacheGroup.BOARD_SUB_COUNT, boardid)) {
-            return (Integer) getCache().get(CacheGroup.BOARD_SUB_COUNT, boardid);
-        }
-        int count = getForumScript().getSubBoardCount(boardid);
-        getCache().put(CacheGroup.BOARD_SUB_COUNT, boardid, count);
-        return count;
+        return getCached(CacheGroup.BOARD_SUB_COUNT, boardid, new CacheLoader<Integer>() {
+            @Override
+            public Integer load(Object id) throws ScriptException {
+                return getForumScript().getSubBoardCount((Integer) id);
+            }
+        });
     }
 
     /**
      * @see ForumScript#getSubBoards(int, int) Documentation for this method
      */
-    @SuppressWarnings("unchecked")
-    public List<ForumBoard> getSubBoards(int boardid, int limit) throws ScriptException {
-        if (getCache().contains(CacheGroup.BOARD_SUBS, boardid)) {
-            List<ForumBoard> boards = (List<ForumBoard>) getCache().get(CacheGroup.BOARD_SUBS, boardid);
-            if (boards.size() == ((limit == 0) ? getSubBoardCount(boardid) : limit)) {
-                return boards;
-            } else if ((boards.size() > limit) && (limit != 0)) {
-                return boards.subList(0, limit);
+    public List<ForumBoard> getSubBoards(final int boardid, int limit) throws ScriptException {
+        return getCachedList(CacheGroup.BOARD_SUBS, boardid, limit, new ListLoader<ForumBoard>() {
+            @Override
+            public List<ForumBoard> load(int offset, int count) throws ScriptException {
+                return getForumScript().getSubBoards(boardid, offset, count);
             }
-        }
-        List<ForumBoard> boards = getForumScript().getSubBoards(boardid, limit);
-        getCache().put(CacheGroup.BOARD_SUBS, boardid, boards);
-        return boards;
+        });
     }
 
     /**
      * @see ForumScript#getBoard(int) Documentation for this method
      */
     public ForumBoard getBoard(int boardID) throws ScriptException {
-        if (ForumBoard.hasCache(this, boardID)) {
-            return ForumBoard.getCache(this, boardID);
-        }
-        ForumBoard board = getForumScript().getBoard(boardID);
-        ForumBoard.addCache(this, board);
-        return board;
+        return getScopedCached(CacheGroup.BOARD, boardID, new CacheLoader<ForumBoard>() {
+            @Override
+            public ForumBoard load(Object id) throws ScriptException {
+                ForumBoard board = getForumScript().getBoard((Integer) id);
+                if (board != null) {
+                    ForumBoard.addCache(ForumHandle.this, board);
+                }
+                return board;
+            }
+        });
     }
 
     /**
@@ -453,12 +518,16 @@ public class ForumHandle extends ScriptHandle {
      * @see ForumScript#getForumURL() Documentation for this method
      */
     public String getForumURL() throws ScriptException {
-        if (getCache().contains(CacheGroup.URL_FORUM)) {
-            return (String) getCache().get(CacheGroup.URL_FORUM);
-        }
-        String url = this.getForumScript().getForumURL();
-        getCache().put(CacheGroup.URL_FORUM, url);
-        return url;
+        return getCached(CacheGroup.URL_FORUM, forumURLLoader());
+    }
+
+    private CacheLoader<String> forumURLLoader() {
+        return new CacheLoader<String>() {
+            @Override
+            public String load(Object id) throws ScriptException {
+                return getForumScript().getForumURL();
+            }
+        };
     }
 
     /**
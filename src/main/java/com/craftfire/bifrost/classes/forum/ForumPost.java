@@ -23,6 +23,7 @@ import java.sql.SQLException;
 import java.util.Date;
 import java.util.List;
 
+import com.craftfire.bifrost.cache.CacheTag;
 import com.craftfire.bifrost.classes.general.Message;
 import com.craftfire.bifrost.classes.general.ScriptHandle;
 import com.craftfire.bifrost.classes.general.ScriptUser;
@@ -190,6 +191,11 @@ public class ForumPost extends Message {
         getHandle().createPost(this);
     }
 
+    @Override
+    public CacheTag getCacheTag() {
+        return new CacheTag(CacheTag.Kind.POST, getID());
+    }
+
     /**
      * Returns {@code true} if the handle contains a post cache with the given id parameter,
      * {@code false} if not.
@@ -199,7 +205,7 @@ public class ForumPost extends Message {
      * @return         {@code true} if contains, {@code false} if not
      */
     public static boolean hasCache(ScriptHandle handle, int id) {
-        return handle.getCache().contains(CacheGroup.POST, id);
+        return handle.getCache().containsInt(CacheGroup.POST, id);
     }
 
     /**
@@ -209,7 +215,7 @@ public class ForumPost extends Message {
      * @param post    the ForumPost object
      */
     public static void addCache(ScriptHandle handle, ForumPost post) {
-        handle.getCache().putMetadatable(CacheGroup.POST, post.getID(), post);
+        handle.getCache().putMetadatableInt(CacheGroup.POST, post.getID(), post);
         handle.getCache().setMetadata(CacheGroup.POST, post.getID(), "bifrost-cache.old-thread", post.getThreadID());
         if (post.getAuthor() != null) {
             handle.getCache().setMetadata(CacheGroup.POST, post.getID(), "bifrost-cache.old-author", post.getAuthor().getUsername());
@@ -227,8 +233,8 @@ public class ForumPost extends Message {
      */
     public static ForumPost getCache(ScriptHandle handle, int id) {
         ForumPost temp = null;
-        if (handle.getCache().contains(CacheGroup.POST, id)) {
-            temp = (ForumPost) handle.getCache().get(CacheGroup.POST, id);
+        if (handle.getCache().containsInt(CacheGroup.POST, id)) {
+            temp = (ForumPost) handle.getCache().getInt(CacheGroup.POST, id);
         }
         return temp;
     }
@@ -245,11 +251,9 @@ public class ForumPost extends Message {
      */
     public static void cleanupCache(ScriptHandle handle, ForumPost post, CacheCleanupReason reason) {
         if (post.getAuthor() != null) {
-            handle.getCache().remove(CacheGroup.POST_COUNT, post.getAuthor().getUsername());
-            handle.getCache().remove(CacheGroup.POST_LAST_USER, post.getAuthor().getUsername());
-            handle.getCache().remove(CacheGroup.POST_LIST_USER, post.getAuthor().getUsername());
+            handle.getCache().invalidate(new CacheTag(CacheTag.Kind.USER_POSTS, post.getAuthor().getUsername()));
         }
-        handle.getCache().remove(CacheGroup.THREAD_POSTS, post.getThreadID());
+        handle.getCache().invalidate(new CacheTag(CacheTag.Kind.THREAD_POSTS, post.getThreadID()));
         switch (reason) {
         case CREATE:
             handle.getCache().clear(CacheGroup.POST_COUNT_TOTAL);
@@ -264,10 +268,13 @@ public class ForumPost extends Message {
         case UPDATE:
             Object oldUsername = handle.getCache().getMetadata(CacheGroup.POST, post.getID(), "bifrost-cache.old-author");
             Object oldThreadID = handle.getCache().getMetadata(CacheGroup.POST, post.getID(), "bifrost-cache.old-thread");
-            handle.getCache().remove(CacheGroup.POST_COUNT, oldUsername);
-            handle.getCache().remove(CacheGroup.POST_LAST_USER, oldUsername);
-            handle.getCache().remove(CacheGroup.POST_LIST_USER, oldUsername);
-            handle.getCache().remove(CacheGroup.THREAD_POSTS, oldThreadID);
+            handle.getCache().invalidate(post.getCacheTag());
+            if (oldUsername != null) {
+                handle.getCache().invalidate(new CacheTag(CacheTag.Kind.USER_POSTS, oldUsername));
+            }
+            if (oldThreadID != null) {
+                handle.getCache().invalidate(new CacheTag(CacheTag.Kind.THREAD_POSTS, oldThreadID));
+            }
             break;
         }
     }
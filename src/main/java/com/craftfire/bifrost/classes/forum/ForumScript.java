@@ -24,10 +24,14 @@ import java.util.List;
 
 import com.craftfire.commons.database.DataManager;
 
+import com.craftfire.bifrost.cache.CachedList;
 import com.craftfire.bifrost.classes.general.Script;
 import com.craftfire.bifrost.classes.general.ScriptUser;
+import com.craftfire.bifrost.enums.CacheCleanupReason;
+import com.craftfire.bifrost.enums.CacheGroup;
 import com.craftfire.bifrost.enums.Scripts;
 import com.craftfire.bifrost.exceptions.ScriptException;
+import com.craftfire.bifrost.sql.Transaction;
 
 /**
  * This class contains methods relevant to direct methods for each forum script.
@@ -42,6 +46,59 @@ public class ForumScript extends Script {
         return (ForumHandle) super.getHandle();
     }
 
+    /**
+     * Removes the cached objects that depend on a post the script has created or changed without Bifrost.
+     *
+     * @param postid    the ID of the post
+     * @param threadid  the ID of the thread which the post is posted in
+     * @param boardid   the ID of the board which the post is posted in
+     * @param userid    the ID of the author, 0 if unknown
+     * @param username  the username of the author, null if unknown
+     * @param created   {@code true} if the post is new, {@code false} if it has been changed
+     */
+    protected void postChanged(int postid, int threadid, int boardid, int userid, String username, boolean created) {
+        ForumPost post = new ForumPost(this, postid, threadid);
+        if (username != null) {
+            post.setAuthor(new ForumUser(this, userid, username, null));
+        }
+        if (getHandle() != null) {
+            ForumPost.cleanupCache(getHandle(), post, created ? CacheCleanupReason.CREATE : CacheCleanupReason.UPDATE);
+        }
+        getCache().removeInt(CacheGroup.POST, postid);
+        if (created) {
+            // The last post and the reply count of the thread and the board have changed with it.
+            getCache().removeInt(CacheGroup.THREAD, threadid);
+            getCache().removeInt(CacheGroup.BOARD, boardid);
+        }
+    }
+
+    /**
+     * Removes the cached objects that depend on a thread the script has created or changed without Bifrost.
+     *
+     * @param threadid     the ID of the thread
+     * @param boardid      the ID of the board which the thread is posted in
+     * @param firstpostid  the ID of the first post in the thread
+     * @param lastpostid   the ID of the last post in the thread
+     * @param userid       the ID of the author, 0 if unknown
+     * @param username     the username of the author, null if unknown
+     * @param created      {@code true} if the thread is new, {@code false} if it has been changed
+     */
+    protected void threadChanged(int threadid, int boardid, int firstpostid, int lastpostid, int userid, String username,
+                                 boolean created) {
+        ForumThread thread = new ForumThread(this, firstpostid, lastpostid, threadid, boardid);
+        if (username != null) {
+            thread.setAuthor(new ForumUser(this, userid, username, null));
+        }
+        if (getHandle() != null) {
+            ForumThread.cleanupCache(getHandle(), thread, created ? CacheCleanupReason.CREATE :
+                                                                     CacheCleanupReason.UPDATE);
+        }
+        getCache().removeInt(CacheGroup.THREAD, threadid);
+        if (created) {
+            getCache().removeInt(CacheGroup.BOARD, boardid);
+        }
+    }
+
     /**
      * Returns an amount of how many posts are there in {@code threadid}.
      *
@@ -58,9 +115,10 @@ public class ForumScript extends Script {
      *
      * @param  username           the username to get the count from.
      * @return                    the amount of how many posts the username have made, returns 0 if none
+     * @throws SQLException       if a SQL exception occurred
      * @throws ScriptException  if the method is not supported by the script
      */
-    public int getPostCount(String username) throws ScriptException {
+    public int getPostCount(String username) throws SQLException, ScriptException {
         throw new ScriptException();
     }
 
@@ -68,9 +126,10 @@ public class ForumScript extends Script {
      * Returns the complete count of how many posts have been made.
      *
      * @return                    the amount of how many posts have been made, returns 0 if none
+     * @throws SQLException       if a SQL exception occurred
      * @throws ScriptException  if the method is not supported by the script
      */
-	public int getTotalPostCount() throws ScriptException {
+	public int getTotalPostCount() throws SQLException, ScriptException {
 		throw new ScriptException();
 	}
 
@@ -111,6 +170,41 @@ public class ForumScript extends Script {
 		throw new ScriptException();
 	}
 
+    /**
+     * Returns a List with {@link ForumPost} objects, skipping the first {@code offset} objects.
+     * <p>
+     * This is used by the cache to load only the objects it is missing. Scripts that can skip rows in their
+     * query should override this method, by default the first {@code offset + limit} objects are loaded with
+     * {@link #getPosts(int)} and the first {@code offset} objects are dropped.
+     *
+     * @param  offset           the number of objects to skip
+     * @param  limit            the limit, set to {@code 0} if you want to return all
+     * @return                  List with {@link ForumPost} objects, if none are found it returns an empty List
+     * @throws ScriptException  if the method is not supported by the script
+     * @throws SQLException     if a SQL exception occurred
+     * @see                     #getPosts(int)
+     */
+    public List<ForumPost> getPosts(int offset, int limit) throws SQLException, ScriptException {
+        return CachedList.skip(getPosts((limit == 0) ? 0 : offset + limit), offset);
+    }
+
+    /**
+     * Returns a page of {@link ForumPost} objects ordered by their ID, starting after the specified ID.
+     * <p>
+     * This is used to walk all posts page by page, see {@link com.craftfire.bifrost.sql.KeysetIterator}.
+     * Unlike {@link #getPosts(int, int)} the query doesn't skip the rows before the page, so a page at the end
+     * of the table loads as fast as the first page.
+     *
+     * @param  postid           the ID of the last object of the previous page, 0 to start at the first object
+     * @param  limit            the maximum number of objects to return
+     * @return                  List with {@link ForumPost} objects, if none are found it returns an empty List
+     * @throws SQLException     if a SQL exception occurred
+     * @throws ScriptException  if the method is not supported by the script
+     */
+    public List<ForumPost> getPostsAfter(int postid, int limit) throws SQLException, ScriptException {
+        throw new ScriptException();
+    }
+
     /**
      * Returns a List with ForumPost objects from the given thread/topic ID.
      * <p>
@@ -131,6 +225,27 @@ public class ForumScript extends Script {
 		throw new ScriptException();
 	}
 
+    /**
+     * Returns a List with {@link ForumPost} objects like {@link #getPostsFromThread(int, int)}, skipping the first
+     * {@code offset} objects.
+     * <p>
+     * This is used by the cache to load only the objects it is missing. Scripts that can skip rows in their query
+     * should override this method, by default the first {@code offset + limit} objects are loaded with
+     * {@link #getPostsFromThread(int, int)} and the first {@code offset} objects are dropped.
+     *
+     * @param  threadid         the thread ID to grab the posts from
+     * @param  offset           the number of objects to skip
+     * @param  limit            the limit, set to {@code 0} if you want to return all
+     * @return                  List with {@link ForumPost} objects, if none are found it returns an empty List
+     * @throws SQLException     if a SQL exception occurred
+     * @throws ScriptException  if the method is not supported by the script
+     * @see                     #getPostsFromThread(int, int)
+     */
+    public List<ForumPost> getPostsFromThread(int threadid, int offset, int limit)
+            throws SQLException, ScriptException {
+        return CachedList.skip(getPostsFromThread(threadid, (limit == 0) ? 0 : offset + limit), offset);
+    }
+
     /**
      * Returns a List with ForumPost objects that have been made by the {@code username}.
      * <p>
@@ -150,6 +265,25 @@ public class ForumScript extends Script {
         throw new ScriptException();
     }
 
+    /**
+     * Returns a List with {@link ForumPost} objects like {@link #getUserPosts(String, int)}, skipping the first
+     * {@code offset} objects.
+     * <p>
+     * This is used by the cache to load only the objects it is missing. Scripts that can skip rows in their query
+     * should override this method, by default the first {@code offset + limit} objects are loaded with
+     * {@link #getUserPosts(String, int)} and the first {@code offset} objects are dropped.
+     *
+     * @param  username         the username to grab the posts from
+     * @param  offset           the number of objects to skip
+     * @param  limit            the limit, set to {@code 0} if you want to return all
+     * @return                  List with {@link ForumPost} objects, if none are found it returns an empty List
+     * @throws ScriptException  if the method is not supported by the script
+     * @see                     #getUserPosts(String, int)
+     */
+    public List<ForumPost> getUserPosts(String username, int offset, int limit) throws ScriptException {
+        return CachedList.skip(getUserPosts(username, (limit == 0) ? 0 : offset + limit), offset);
+    }
+
     /**
      * Returns a ForumPost object of the given post id, if nothing is found it returns null.
      *
@@ -187,14 +321,37 @@ public class ForumScript extends Script {
 		throw new ScriptException();
 	}
 
+    /**
+     * Creates many {@link ForumPost} objects with whatever values set by the user, like {@link #createPost(ForumPost)}.
+     * <p>
+     * All posts are created in one transaction, so either all or none of them are created. Scripts that can insert
+     * the rows of many posts at once override this, by default the posts are created one by one.
+     *
+     * @param  posts            the {@link ForumPost} objects, their IDs are set once they are created
+     * @throws SQLException     if a SQL exception occurred
+     * @throws ScriptException  if the method is not supported by the script
+     * @see                     ForumPost
+     */
+    public void createPosts(final List<ForumPost> posts) throws SQLException, ScriptException {
+        transaction(new Transaction() {
+            @Override
+            public void run() throws SQLException, ScriptException {
+                for (ForumPost post : posts) {
+                    createPost(post);
+                }
+            }
+        });
+    }
+
     /**
      * Returns an amount of how many threads {@code username} has made.
      *
      * @param  username           the username to get the count from
      * @return                    the amount of how many threads the username have made, returns 0 if none
+     * @throws SQLException       if a SQL exception occurred
      * @throws ScriptException  if the method is not supported by the script
      */
-	public int getThreadCount(String username) throws ScriptException {
+	public int getThreadCount(String username) throws SQLException, ScriptException {
 		throw new ScriptException();
 	}
 
@@ -202,9 +359,10 @@ public class ForumScript extends Script {
      * Returns the complete count of how many threads have been made.
      *
      * @return                    the amount of how many threads have been made, returns 0 if none
+     * @throws SQLException       if a SQL exception occurred
      * @throws ScriptException  if the method is not supported by the script
      */
-	public int getTotalThreadCount() throws ScriptException {
+	public int getTotalThreadCount() throws SQLException, ScriptException {
 		throw new ScriptException();
 	}
 
@@ -265,6 +423,25 @@ public class ForumScript extends Script {
         throw new ScriptException();
     }
 
+    /**
+     * Returns a List with {@link ForumThread} objects like {@link #getThreadsFromBoard(int, int)}, skipping the first
+     * {@code offset} objects.
+     * <p>
+     * This is used by the cache to load only the objects it is missing. Scripts that can skip rows in their query
+     * should override this method, by default the first {@code offset + limit} objects are loaded with
+     * {@link #getThreadsFromBoard(int, int)} and the first {@code offset} objects are dropped.
+     *
+     * @param  boardid          the board ID to grab the threads from
+     * @param  offset           the number of objects to skip
+     * @param  limit            the limit, set to {@code 0} if you want to return all
+     * @return                  List with {@link ForumThread} objects, if none are found it returns an empty List
+     * @throws ScriptException  if the method is not supported by the script
+     * @see                     #getThreadsFromBoard(int, int)
+     */
+    public List<ForumThread> getThreadsFromBoard(int boardid, int offset, int limit) throws ScriptException {
+        return CachedList.skip(getThreadsFromBoard(boardid, (limit == 0) ? 0 : offset + limit), offset);
+    }
+
     /**
      * Returns a List with ForumThread objects that have been made by {@code username}.
      * <p>
@@ -284,6 +461,25 @@ public class ForumScript extends Script {
         throw new ScriptException();
     }
 
+    /**
+     * Returns a List with {@link ForumThread} objects like {@link #getUserThreads(String, int)}, skipping the first
+     * {@code offset} objects.
+     * <p>
+     * This is used by the cache to load only the objects it is missing. Scripts that can skip rows in their query
+     * should override this method, by default the first {@code offset + limit} objects are loaded with
+     * {@link #getUserThreads(String, int)} and the first {@code offset} objects are dropped.
+     *
+     * @param  username         the username to grab the thread list from
+     * @param  offset           the number of objects to skip
+     * @param  limit            the limit, set to {@code 0} if you want to return all
+     * @return                  List with {@link ForumThread} objects, if none are found it returns an empty List
+     * @throws ScriptException  if the method is not supported by the script
+     * @see                     #getUserThreads(String, int)
+     */
+    public List<ForumThread> getUserThreads(String username, int offset, int limit) throws ScriptException {
+        return CachedList.skip(getUserThreads(username, (limit == 0) ? 0 : offset + limit), offset);
+    }
+
     /**
      * Returns a List with ForumThread objects.
      * <p>
@@ -303,6 +499,41 @@ public class ForumScript extends Script {
 		throw new ScriptException();
 	}
 
+    /**
+     * Returns a List with {@link ForumThread} objects, skipping the first {@code offset} objects.
+     * <p>
+     * This is used by the cache to load only the objects it is missing. Scripts that can skip rows in their
+     * query should override this method, by default the first {@code offset + limit} objects are loaded with
+     * {@link #getThreads(int)} and the first {@code offset} objects are dropped.
+     *
+     * @param  offset           the number of objects to skip
+     * @param  limit            the limit, set to {@code 0} if you want to return all
+     * @return                  List with {@link ForumThread} objects, if none are found it returns an empty List
+     * @throws ScriptException  if the method is not supported by the script
+     * @throws SQLException     if a SQL exception occurred
+     * @see                     #getThreads(int)
+     */
+    public List<ForumThread> getThreads(int offset, int limit) throws SQLException, ScriptException {
+        return CachedList.skip(getThreads((limit == 0) ? 0 : offset + limit), offset);
+    }
+
+    /**
+     * Returns a page of {@link ForumThread} objects ordered by their ID, starting after the specified ID.
+     * <p>
+     * This is used to walk all threads page by page, see {@link com.craftfire.bifrost.sql.KeysetIterator}.
+     * Unlike {@link #getThreads(int, int)} the query doesn't skip the rows before the page, so a page at the end
+     * of the table loads as fast as the first page.
+     *
+     * @param  threadid         the ID of the last object of the previous page, 0 to start at the first object
+     * @param  limit            the maximum number of objects to return
+     * @return                  List with {@link ForumThread} objects, if none are found it returns an empty List
+     * @throws SQLException     if a SQL exception occurred
+     * @throws ScriptException  if the method is not supported by the script
+     */
+    public List<ForumThread> getThreadsAfter(int threadid, int limit) throws SQLException, ScriptException {
+        throw new ScriptException();
+    }
+
     /**
      * Updated the ForumThread object with whatever values set by the user.
      *
@@ -327,6 +558,30 @@ public class ForumScript extends Script {
 		throw new ScriptException();
 	}
 
+    /**
+     * Creates many {@link ForumThread} objects with whatever values set by the user, like
+     * {@link #createThread(ForumThread)}.
+     * <p>
+     * All threads and their first posts are created in one transaction, so either all or none of them are created.
+     * Scripts that can insert the rows of many threads at once override this, by default the threads are created one
+     * by one.
+     *
+     * @param  threads          the {@link ForumThread} objects, their IDs are set once they are created
+     * @throws SQLException     if a SQL exception occurred
+     * @throws ScriptException  if the method is not supported by the script
+     * @see                     ForumThread
+     */
+    public void createThreads(final List<ForumThread> threads) throws SQLException, ScriptException {
+        transaction(new Transaction() {
+            @Override
+            public void run() throws SQLException, ScriptException {
+                for (ForumThread thread : threads) {
+                    createThread(thread);
+                }
+            }
+        });
+    }
+
     /**
      * Returns the complete count of how many boards have been made.
      *
@@ -379,6 +634,25 @@ public class ForumScript extends Script {
         throw new ScriptException();
     }
 
+    /**
+     * Returns a List with {@link ForumBoard} objects like {@link #getSubBoards(int, int)}, skipping the first
+     * {@code offset} objects.
+     * <p>
+     * This is used by the cache to load only the objects it is missing. Scripts that can skip rows in their query
+     * should override this method, by default the first {@code offset + limit} objects are loaded with
+     * {@link #getSubBoards(int, int)} and the first {@code offset} objects are dropped.
+     *
+     * @param  boardid          the board ID to grab the sub boards from
+     * @param  offset           the number of objects to skip
+     * @param  limit            the limit, set to {@code 0} if you want to return all
+     * @return                  List with {@link ForumBoard} objects, if none are found it returns an empty List
+     * @throws ScriptException  if the method is not supported by the script
+     * @see                     #getSubBoards(int, int)
+     */
+    public List<ForumBoard> getSubBoards(int boardid, int offset, int limit) throws ScriptException {
+        return CachedList.skip(getSubBoards(boardid, (limit == 0) ? 0 : offset + limit), offset);
+    }
+
     /**
      * Returns a List with ForumBoard objects.
      * <p>
@@ -397,6 +671,24 @@ public class ForumScript extends Script {
         throw new ScriptException();
     }
 
+    /**
+     * Returns a List with {@link ForumBoard} objects like {@link #getBoards(int)}, skipping the first {@code offset}
+     * objects.
+     * <p>
+     * This is used by the cache to load only the objects it is missing. Scripts that can skip rows in their query
+     * should override this method, by default the first {@code offset + limit} objects are loaded with
+     * {@link #getBoards(int)} and the first {@code offset} objects are dropped.
+     *
+     * @param  offset           the number of objects to skip
+     * @param  limit            the limit, set to {@code 0} if you want to return all
+     * @return                  List with {@link ForumBoard} objects, if none are found it returns an empty List
+     * @throws ScriptException  if the method is not supported by the script
+     * @see                     #getBoards(int)
+     */
+    public List<ForumBoard> getBoards(int offset, int limit) throws ScriptException {
+        return CachedList.skip(getBoards((limit == 0) ? 0 : offset + limit), offset);
+    }
+
     /**
      * Update the ForumBoard object with whatever values set by the user.
      *
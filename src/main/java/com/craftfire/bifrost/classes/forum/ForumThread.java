@@ -23,6 +23,7 @@ import java.sql.SQLException;
 import java.util.Date;
 import java.util.List;
 
+import com.craftfire.bifrost.cache.CacheTag;
 import com.craftfire.bifrost.classes.general.Cache;
 import com.craftfire.bifrost.classes.general.Message;
 import com.craftfire.bifrost.classes.general.ScriptHandle;
@@ -126,6 +127,24 @@ public class ForumThread extends Message implements ViewsCounter {
         return getHandle().getPostsFromThread(getID(), limit);
     }
 
+    /**
+     * Returns the ID of the first post of the thread.
+     *
+     * @return the ID of the first post
+     */
+    public int getFirstPostID() {
+        return this.firstpostid;
+    }
+
+    /**
+     * Returns the ID of the last post of the thread.
+     *
+     * @return the ID of the last post
+     */
+    public int getLastPostID() {
+        return this.lastpostid;
+    }
+
     /**
      * Returns the first Post of the thread.
      *
@@ -306,6 +325,11 @@ public class ForumThread extends Message implements ViewsCounter {
         getHandle().createThread(this);
     }
 
+    @Override
+    public CacheTag getCacheTag() {
+        return new CacheTag(CacheTag.Kind.THREAD, getID());
+    }
+
     /**
      * Returns {@code true} if the handle contains a thread cache with the given id parameter,
      * {@code false} if not.
@@ -315,7 +339,7 @@ public class ForumThread extends Message implements ViewsCounter {
      * @return         {@code true} if contains, {@code false} if not
      */
     public static boolean hasCache(ScriptHandle handle, int id) {
-        return handle.getCache().contains(CacheGroup.THREAD, id);
+        return handle.getCache().containsInt(CacheGroup.THREAD, id);
     }
 
     /**
@@ -325,7 +349,7 @@ public class ForumThread extends Message implements ViewsCounter {
      * @param thread  the ForumThread object
      */
     public static void addCache(ScriptHandle handle, ForumThread thread) {
-        handle.getCache().putMetadatable(CacheGroup.THREAD, thread.getID(), thread);
+        handle.getCache().putMetadatableInt(CacheGroup.THREAD, thread.getID(), thread);
         handle.getCache().setMetadata(CacheGroup.THREAD, thread.getID(), "bifrost-cache.old-board", thread.getBoardID());
         if (thread.getAuthor() != null) {
             handle.getCache().setMetadata(CacheGroup.THREAD, thread.getID(), "bifrost-cache.old-author", thread.getAuthor().getUsername());
@@ -342,8 +366,8 @@ public class ForumThread extends Message implements ViewsCounter {
      * @return         ForumThread object if cache was found, {@code null} if no cache was found
      */
     public static ForumThread getCache(ScriptHandle handle, int id) {
-        if (handle.getCache().contains(CacheGroup.THREAD, id)) {
-            return (ForumThread) handle.getCache().get(CacheGroup.THREAD, id);
+        if (handle.getCache().containsInt(CacheGroup.THREAD, id)) {
+            return (ForumThread) handle.getCache().getInt(CacheGroup.THREAD, id);
         }
         return null;
     }
@@ -361,11 +385,9 @@ public class ForumThread extends Message implements ViewsCounter {
      */
     public static void cleanupCache(ScriptHandle handle, ForumThread thread, CacheCleanupReason reason) {
         if (thread.getAuthor() != null) {
-            handle.getCache().remove(CacheGroup.THREAD_COUNT, thread.getAuthor().getUsername());
-            handle.getCache().remove(CacheGroup.THREAD_LIST_USER, thread.getAuthor().getUsername());
-            handle.getCache().remove(CacheGroup.THREAD_LAST_USER, thread.getAuthor().getUsername());
+            handle.getCache().invalidate(new CacheTag(CacheTag.Kind.USER_THREADS, thread.getAuthor().getUsername()));
         }
-        handle.getCache().remove(CacheGroup.BOARD_THREADS, thread.getBoardID());
+        handle.getCache().invalidate(new CacheTag(CacheTag.Kind.BOARD_THREADS, thread.getBoardID()));
         switch (reason) {
         case CREATE:
             handle.getCache().clear(CacheGroup.THREAD_COUNT_TOTAL);
@@ -380,10 +402,13 @@ public class ForumThread extends Message implements ViewsCounter {
         case UPDATE:
             Object oldUsername = handle.getCache().getMetadata(CacheGroup.THREAD, thread.getID(), "bifrost-cache.old-author");
             Object oldBoardID = handle.getCache().getMetadata(CacheGroup.THREAD, thread.getID(), "bifrost-cache.old-board");
-            handle.getCache().remove(CacheGroup.THREAD_COUNT, oldUsername);
-            handle.getCache().remove(CacheGroup.THREAD_LIST_USER, oldUsername);
-            handle.getCache().remove(CacheGroup.THREAD_LAST_USER, oldUsername);
-            handle.getCache().remove(CacheGroup.BOARD_THREADS, oldBoardID);
+            handle.getCache().invalidate(thread.getCacheTag());
+            if (oldUsername != null) {
+                handle.getCache().invalidate(new CacheTag(CacheTag.Kind.USER_THREADS, oldUsername));
+            }
+            if (oldBoardID != null) {
+                handle.getCache().invalidate(new CacheTag(CacheTag.Kind.BOARD_THREADS, oldBoardID));
+            }
             break;
         }
     }
@@ -24,6 +24,8 @@ import java.net.URI;
 import java.sql.SQLException;
 import java.util.Date;
 
+import com.craftfire.bifrost.cache.CacheTag;
+import com.craftfire.bifrost.cache.SizeEstimator;
 import com.craftfire.bifrost.enums.CacheCleanupReason;
 import com.craftfire.bifrost.enums.CacheGroup;
 import com.craftfire.bifrost.exceptions.ScriptException;
@@ -365,6 +367,19 @@ public class Ban extends GenericMethods {
         getHandle().addBan(this);
     }
 
+    @Override
+    public CacheTag getCacheTag() {
+        return new CacheTag(CacheTag.Kind.BAN, getID());
+    }
+
+    @Override
+    public long estimateSize() {
+        return super.estimateSize() + 32 + SizeEstimator.estimate(this.name, this.reason, this.notes)
+                + SizeEstimator.estimate((this.email == null) ? null : this.email.toString())
+                + SizeEstimator.estimate(this.startdate) + SizeEstimator.estimate(this.enddate)
+                + ((this.ipAddress == null) ? 0 : SizeEstimator.OBJECT_OVERHEAD * 2);
+    }
+
     /**
      * Returns {@code true} if the handle contains a ban cache with the given id parameter,
      * {@code false} if not.
@@ -415,11 +430,19 @@ public class Ban extends GenericMethods {
     public static void cleanupCache(ScriptHandle handle, Ban ban, CacheCleanupReason reason) {
         switch (reason) {
             case CREATE:
+                handle.getCache().clear(CacheGroup.BAN_LIST);
+                handle.getCache().clear(CacheGroup.BAN_COUNT);
+                handle.getCache().clear(CacheGroup.IS_BANNED);
+                break;
             case OTHER:
                 handle.getCache().clear(CacheGroup.BAN_LIST);
                 handle.getCache().clear(CacheGroup.BAN_COUNT);
+                handle.getCache().invalidate(ban.getCacheTag());
+                handle.getCache().clear(CacheGroup.IS_BANNED);
                 break;
             case UPDATE:
+                handle.getCache().invalidate(ban.getCacheTag());
+                handle.getCache().clear(CacheGroup.IS_BANNED);
                 break;
         }
     }
@@ -19,32 +19,497 @@
  */
 package com.craftfire.bifrost.classes.general;
 
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 import com.craftfire.commons.cache.CacheManager;
 import com.craftfire.commons.cache.MetadatableCacheItem;
 
+import com.craftfire.bifrost.cache.CacheBudget;
+import com.craftfire.bifrost.cache.CacheEntry;
+import com.craftfire.bifrost.cache.CacheExpiry;
+import com.craftfire.bifrost.cache.CacheLoad;
+import com.craftfire.bifrost.cache.CacheLoader;
+import com.craftfire.bifrost.cache.CacheSegment;
+import com.craftfire.bifrost.cache.CacheSnapshot;
+import com.craftfire.bifrost.cache.CacheStats;
+import com.craftfire.bifrost.cache.CacheTag;
+import com.craftfire.bifrost.cache.CacheTagIndex;
+import com.craftfire.bifrost.cache.ChangePoller;
+import com.craftfire.bifrost.cache.EvictionPolicy;
+import com.craftfire.bifrost.cache.InvalidationBus;
+import com.craftfire.bifrost.cache.OffHeapStore;
+import com.craftfire.bifrost.cache.RefreshScheduler;
+import com.craftfire.bifrost.cache.SizeEstimator;
 import com.craftfire.bifrost.enums.CacheGroup;
+import com.craftfire.bifrost.exceptions.ScriptException;
 
 /**
  * Handles all different cache within each {@link com.craftfire.bifrost.classes.general.Script}
  * <p>
- * It uses the {@link CacheManager} to store the different objects.
+ * Every {@link CacheGroup} has its own {@link CacheSegment}, stored at the ordinal of the group, which holds
+ * the objects of that group by their ID.
+ * <p>
+ * Every {@link CacheGroup} is bounded to {@link #DEFAULT_MAXIMUM_SIZE} objects unless a different limit
+ * has been set with {@link #setMaximumSize(CacheGroup, int)}. When a group is full the {@link EvictionPolicy}
+ * decides which object gets evicted, based on how recently and how frequently the objects have been used.
+ * <p>
+ * Objects can also expire, see {@link #setExpiry(CacheGroup, CacheExpiry)}. Expired objects are treated as
+ * if they were not cached, unless the group is allowed to serve stale objects while they are refreshed.
+ * Frequently read objects can also be refreshed before they expire, see {@link #refreshAhead(CacheGroup, Object)}.
+ * <p>
+ * Objects should be read with {@link #get(CacheGroup, Object, CacheLoader)}, which loads missing objects
+ * once, even if many threads ask for the same object at the same time.
+ * <p>
+ * Stored objects are tagged with the entities they depend on, see {@link CacheTag}. When an entity changes,
+ * {@link #invalidate(CacheTag...)} removes exactly the objects that depend on it.
+ * <p>
+ * Loads that didn't find anything, like the ID of an unknown username, can be kept in a separate negative tier
+ * that is small and expires quickly, see {@link #get(CacheGroup, Object, CacheLoader, Object)}.
+ * <p>
+ * The estimated size of every stored object is counted, see {@link SizeEstimator}. The whole cache is bounded to
+ * {@link #DEFAULT_MAXIMUM_BYTES} unless a different budget has been set with {@link #setMaximumBytes(long)}; when
+ * it uses more, objects are evicted from the group that uses the most bytes, large and rarely used objects first.
+ * <p>
+ * Every group counts its hits, misses, loads, evictions and bytes, see {@link #getStats(CacheGroup)}.
+ * <p>
+ * Selected groups can be written to a {@link CacheSnapshot} and restored after a restart, see
+ * {@link #loadSnapshot(CacheSnapshot)}.
+ * <p>
+ * Removed objects, cleared groups and invalidated tags can be sent to the caches of other nodes that read the same
+ * database, see {@link InvalidationBus}.
+ * <p>
+ * Rows the script writes to its tables without Bifrost can be found by a {@link ChangePoller}, which removes the
+ * objects that depend on them, see {@link #getChangePoller()}.
+ * <p>
+ * Posts, threads, articles and comments that are evicted are demoted to a compressed {@link OffHeapStore} and
+ * promoted back when they are read again, see {@link #setOffHeapCapacity(long)}.
  */
 public class Cache {
-    private final CacheManager cacheManager = new CacheManager();
+    /**
+     * The maximum amount of objects per {@link CacheGroup} if no other limit has been set.
+     */
+    public static final int DEFAULT_MAXIMUM_SIZE = 10000;
+    /**
+     * The maximum amount of bytes all objects of the cache may use if no other budget has been set, 64 MB.
+     */
+    public static final long DEFAULT_MAXIMUM_BYTES = 64L * 1024 * 1024;
+    /**
+     * The maximum amount of "not found" results per {@link CacheGroup} if no other limit has been set.
+     */
+    public static final int DEFAULT_NEGATIVE_MAXIMUM_SIZE = 1000;
+    /**
+     * The expiry of "not found" results if no other expiry has been set, they are kept for 30 seconds.
+     */
+    public static final CacheExpiry DEFAULT_NEGATIVE_EXPIRY = new CacheExpiry(30, 0, 0, TimeUnit.SECONDS);
+    /**
+     * The maximum amount of bytes of the {@link OffHeapStore} if no other capacity has been set, 32 MB.
+     */
+    public static final long DEFAULT_OFF_HEAP_CAPACITY = 32L * 1024 * 1024;
+    /**
+     * The {@link CacheGroup}s whose evicted objects are demoted to the {@link OffHeapStore}.
+     */
+    public static final Set<CacheGroup> OFF_HEAP_GROUPS = Collections.unmodifiableSet(EnumSet.of(CacheGroup.POST,
+            CacheGroup.THREAD, CacheGroup.ARTICLE, CacheGroup.COMMENT));
+    private static final Object MISS = new Object();
+    private final CacheSegment[] segments;
+    private final AtomicReferenceArray<CacheSegment> negativeSegments;
+    private final CacheTagIndex tagIndex = new CacheTagIndex();
+    private final CacheBudget budget = new CacheBudget(DEFAULT_MAXIMUM_BYTES);
+    private final Script script;
+    private ExecutorService refreshExecutor;
+    private RefreshScheduler refreshScheduler;
+    private ChangePoller changePoller;
+    private volatile CacheSnapshot snapshot;
+    private volatile InvalidationBus invalidationBus;
+    private OffHeapStore offHeap;
 
     /**
-     * Returns the {@link CacheManager} that is being used.
+     * Creates a new empty cache without an {@link OffHeapStore}.
+     */
+    public Cache() {
+        this(null);
+    }
+
+    /**
+     * Creates a new empty cache for the script, with an {@link OffHeapStore} of
+     * {@link #DEFAULT_OFF_HEAP_CAPACITY}.
      *
-     * @return {@link CacheManager}
+     * @param script  the {@link Script} the demoted objects are created for, null to not demote objects
      */
+    public Cache(Script script) {
+        this.script = script;
+        CacheGroup[] groups = CacheGroup.values();
+        this.segments = new CacheSegment[groups.length];
+        for (CacheGroup group : groups) {
+            this.segments[group.ordinal()] = new CacheSegment(group, DEFAULT_MAXIMUM_SIZE, this.tagIndex, this.budget);
+        }
+        this.negativeSegments = new AtomicReferenceArray<CacheSegment>(groups.length);
+        if (script != null) {
+            setOffHeapCapacity(DEFAULT_OFF_HEAP_CAPACITY);
+        }
+    }
+
+    /**
+     * Returns the {@link CacheSegment} that holds the objects of the specified {@link CacheGroup}.
+     *
+     * @param  group  the {@link CacheGroup}
+     * @return        the {@link CacheSegment} of the group
+     */
+    public CacheSegment getSegment(CacheGroup group) {
+        CacheSegment segment = this.segments[group.ordinal()];
+        CacheSnapshot pending = this.snapshot;
+        if (pending != null && pending.isPending(group)) {
+            pending.restore(group, segment);
+            if (pending.isDone()) {
+                this.snapshot = null;
+            }
+        }
+        return segment;
+    }
+
+    /**
+     * Writes the objects of the specified groups to a snapshot file, see {@link CacheSnapshot}.
+     *
+     * @param  file     the file of the snapshot
+     * @param  version  the current version of the data of the script, see {@link Script#getCacheVersion()}
+     * @param  groups   the {@link CacheGroup}s to write
+     * @throws IOException  if the file could not be written
+     */
+    public void saveSnapshot(File file, String version, Collection<CacheGroup> groups) throws IOException {
+        CacheSnapshot.write(this, file, version, groups);
+    }
+
+    /**
+     * Restores the objects of the snapshot lazily, each group is restored the first time it is used.
+     * <p>
+     * Objects that are already cached when their group is restored are kept.
+     *
+     * @param snapshot  the {@link CacheSnapshot} to restore, null to drop the pending snapshot
+     */
+    public void loadSnapshot(CacheSnapshot snapshot) {
+        this.snapshot = (snapshot == null || snapshot.isDone()) ? null : snapshot;
+    }
+
+    /**
+     * Returns a {@link CacheManager} with a detached copy of the objects that are cached right now.
+     * <p>
+     * The cache doesn't keep its objects in a {@link CacheManager} anymore. The returned manager is a copy: objects
+     * put into it, removed from it or changed through its metadata are not written back to the cache, and later
+     * changes of the cache are not seen by it. Callers that used to write through the manager must use the setters
+     * of this class instead. Objects are stored under the name of their group, like they used to be.
+     * <p>
+     * Groups of a snapshot that haven't been restored yet, see {@link #loadSnapshot(CacheSnapshot)}, are left out
+     * rather than restored by the copy.
+     *
+     * @return     a new {@link CacheManager} with a copy of the cached objects
+     * @deprecated  use {@link #getSegment(CacheGroup)} or the getters of this class
+     */
+    @Deprecated
     public CacheManager getCacheManager() {
-        return this.cacheManager;
+        CacheManager manager = new CacheManager();
+        for (CacheGroup group : CacheGroup.values()) {
+            CacheSegment segment = this.segments[group.ordinal()];
+            for (CacheEntry entry : segment.entries()) {
+                if (!isLive(segment, entry)) {
+                    continue;
+                }
+                Object id = segment.getId(entry);
+                if (!entry.isMetadatable()) {
+                    manager.put(group.toString(), id, entry.getValue());
+                    continue;
+                }
+                manager.putMetadatable(group.toString(), id, entry.getValue());
+                MetadatableCacheItem item = manager.getMetadatableItem(group.toString(), id);
+                for (Map.Entry<String, Object> metadata : entry.copyMetadata().entrySet()) {
+                    item.setMetaData(metadata.getKey(), metadata.getValue());
+                }
+            }
+        }
+        return manager;
+    }
+
+    /**
+     * Returns the {@link CacheSegment} that holds the "not found" results of the specified {@link CacheGroup}.
+     *
+     * @param  group  the {@link CacheGroup}
+     * @return        the negative {@link CacheSegment} of the group, or null if it hasn't been used yet
+     */
+    public CacheSegment getNegativeSegment(CacheGroup group) {
+        return this.negativeSegments.get(group.ordinal());
+    }
+
+    /**
+     * Sets the maximum amount of "not found" results that are kept for the specified {@link CacheGroup}.
+     *
+     * @param group        the {@link CacheGroup} to limit
+     * @param maximumSize  the maximum amount of results, at least 1
+     */
+    public void setNegativeMaximumSize(CacheGroup group, int maximumSize) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("The maximum size of the negative cache must be at least 1.");
+        }
+        negativeSegment(group).setMaximumSize(maximumSize);
+    }
+
+    /**
+     * Sets how long "not found" results of the specified {@link CacheGroup} are kept.
+     *
+     * @param group   the {@link CacheGroup} to change
+     * @param expiry  the {@link CacheExpiry}, null for {@link #DEFAULT_NEGATIVE_EXPIRY}
+     */
+    public void setNegativeExpiry(CacheGroup group, CacheExpiry expiry) {
+        negativeSegment(group).setExpiry((expiry == null) ? DEFAULT_NEGATIVE_EXPIRY : expiry);
+    }
+
+    /**
+     * Returns the maximum amount of objects that can be stored in the specified {@link CacheGroup}.
+     *
+     * @param  group  the {@link CacheGroup} to check
+     * @return        the maximum amount of objects, 0 if the group is unbounded
+     */
+    public int getMaximumSize(CacheGroup group) {
+        return getSegment(group).getMaximumSize();
+    }
+
+    /**
+     * Sets the maximum amount of objects that can be stored in the specified {@link CacheGroup}.
+     * <p>
+     * If the group currently holds more objects, the least valuable objects are evicted right away.
+     *
+     * @param group        the {@link CacheGroup} to limit
+     * @param maximumSize  the maximum amount of objects, 0 to make the group unbounded
+     */
+    public void setMaximumSize(CacheGroup group, int maximumSize) {
+        if (maximumSize < 0) {
+            throw new IllegalArgumentException("The maximum size can't be negative.");
+        }
+        getSegment(group).setMaximumSize(maximumSize);
+    }
+
+    /**
+     * Returns the maximum amount of bytes all objects of the cache may use.
+     *
+     * @return the maximum amount of bytes, 0 if the cache is unbounded
+     */
+    public long getMaximumBytes() {
+        return this.budget.getMaximumBytes();
+    }
+
+    /**
+     * Sets the maximum amount of bytes all objects of the cache may use.
+     * <p>
+     * If the cache currently uses more, objects are evicted right away. Groups without a maximum size count
+     * towards the budget but are never evicted.
+     *
+     * @param maximumBytes  the maximum amount of bytes, 0 to make the cache unbounded
+     */
+    public void setMaximumBytes(long maximumBytes) {
+        if (maximumBytes < 0) {
+            throw new IllegalArgumentException("The maximum amount of bytes can't be negative.");
+        }
+        this.budget.setMaximumBytes(maximumBytes);
+    }
+
+    /**
+     * Returns the {@link OffHeapStore} evicted objects are demoted to.
+     *
+     * @return the {@link OffHeapStore}, or null if evicted objects are discarded
+     */
+    public synchronized OffHeapStore getOffHeapStore() {
+        return this.offHeap;
+    }
+
+    /**
+     * Sets the maximum amount of bytes of the {@link OffHeapStore}, the objects demoted so far are dropped.
+     * <p>
+     * The memory is allocated outside of the Java heap when it is first used, in slabs of
+     * {@link OffHeapStore#SLAB_SIZE} bytes.
+     *
+     * @param capacity  the maximum amount of bytes, 0 to discard evicted objects
+     */
+    public synchronized void setOffHeapCapacity(long capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("The off-heap capacity can't be negative.");
+        }
+        if (capacity > 0 && this.script == null) {
+            throw new IllegalStateException("Objects can only be demoted by a cache of a script.");
+        }
+        this.offHeap = (capacity == 0) ? null : new OffHeapStore(this.script, capacity);
+        for (CacheGroup group : OFF_HEAP_GROUPS) {
+            this.segments[group.ordinal()].setOffHeapStore(this.offHeap);
+        }
+    }
+
+    /**
+     * Returns the estimated amount of bytes all objects of the cache use.
+     *
+     * @return the amount of bytes
+     */
+    public long getBytes() {
+        return this.budget.getBytes();
+    }
+
+    /**
+     * Returns the estimated amount of bytes the objects of the specified {@link CacheGroup} use, including
+     * its "not found" results.
+     *
+     * @param  group  the {@link CacheGroup} to check
+     * @return        the amount of bytes
+     */
+    public long getBytes(CacheGroup group) {
+        CacheSegment negatives = getNegativeSegment(group);
+        return getSegment(group).getBytes() + ((negatives == null) ? 0 : negatives.getBytes());
+    }
+
+    /**
+     * Returns the expiry settings of the specified {@link CacheGroup}.
+     *
+     * @param  group  the {@link CacheGroup} to check
+     * @return        the {@link CacheExpiry}, {@link CacheExpiry#NEVER} if none have been set
+     */
+    public CacheExpiry getExpiry(CacheGroup group) {
+        return getSegment(group).getExpiry();
+    }
+
+    /**
+     * Sets the expiry settings of the specified {@link CacheGroup}.
+     * <p>
+     * The settings apply to the objects already in the group as well.
+     *
+     * @param group   the {@link CacheGroup} to change
+     * @param expiry  the {@link CacheExpiry}, null to never expire the objects
+     */
+    public void setExpiry(CacheGroup group, CacheExpiry expiry) {
+        getSegment(group).setExpiry(expiry);
+    }
+
+    /**
+     * Sets the {@link CacheLoader} that is used to refresh expired objects of the specified {@link CacheGroup}.
+     * <p>
+     * Stale objects are only returned if the group has a loader, otherwise they are removed once they expire.
+     *
+     * @param group   the {@link CacheGroup} of the loader
+     * @param loader  the {@link CacheLoader}, null to remove it
+     */
+    public void setLoader(CacheGroup group, CacheLoader<?> loader) {
+        getSegment(group).setLoader(loader);
+    }
+
+    /**
+     * Reloads the object with the {@link CacheLoader} of its group before it expires, if it has been read since
+     * it was stored.
+     * <p>
+     * Objects that are not cached, or have not been read since they were stored, are left alone so they expire
+     * as usual. This is called by the {@link RefreshScheduler} of the handle, off the threads that read the object.
+     *
+     * @param  group  the {@link CacheGroup} of the object
+     * @param  id     the unique ID of the object
+     * @return        {@code true} if the object has been reloaded, {@code false} if not
+     * @throws SQLException      if the loader threw a {@link SQLException}
+     * @throws ScriptException   if the loader threw a {@link ScriptException}
+     */
+    public boolean refreshAhead(CacheGroup group, Object id) throws SQLException, ScriptException {
+        CacheSegment segment = getSegment(group);
+        CacheLoader<?> loader = segment.getLoader();
+        CacheEntry entry = segment.getEntry(id);
+        if (loader == null || entry == null || entry.getAccessTime() == entry.getWriteTime() || !entry.startRefresh()) {
+            return false;
+        }
+        try {
+            reload(segment, entry, loader);
+            return true;
+        } finally {
+            entry.finishRefresh();
+        }
+    }
+
+    /**
+     * Returns the {@link InvalidationBus} the invalidations of the cache are sent to.
+     *
+     * @return the {@link InvalidationBus}, or null if the invalidations stay local
+     */
+    public InvalidationBus getInvalidationBus() {
+        return this.invalidationBus;
+    }
+
+    /**
+     * Sets the {@link InvalidationBus} the invalidations of the cache are sent to, this is done by
+     * {@link InvalidationBus#start()}.
+     *
+     * @param invalidationBus  the {@link InvalidationBus}, null to keep the invalidations local
+     */
+    public void setInvalidationBus(InvalidationBus invalidationBus) {
+        this.invalidationBus = invalidationBus;
+    }
+
+    /**
+     * Returns the {@link RefreshScheduler} that refreshes the objects of the cache ahead of their expiry.
+     * <p>
+     * Handles sharing the cache share its scheduler, so every group is refreshed once.
+     *
+     * @return the {@link RefreshScheduler}
+     */
+    public synchronized RefreshScheduler getRefreshScheduler() {
+        if (this.refreshScheduler == null) {
+            this.refreshScheduler = new RefreshScheduler(this, "Bifrost cache refresh-ahead");
+        }
+        return this.refreshScheduler;
+    }
+
+    /**
+     * Returns the {@link ChangePoller} that finds the rows the script has written without Bifrost.
+     * <p>
+     * Handles sharing the cache share its poller, so their database is polled once.
+     *
+     * @return                        the {@link ChangePoller}
+     * @throws IllegalStateException  if the cache doesn't belong to a script
+     */
+    public synchronized ChangePoller getChangePoller() {
+        if (this.changePoller == null) {
+            if (this.script == null) {
+                throw new IllegalStateException("Only the cache of a script can poll for changes.");
+            }
+            this.changePoller = new ChangePoller(this.script);
+        }
+        return this.changePoller;
+    }
+
+    /**
+     * Stops the background threads of the cache, this is done when no script uses it any longer.
+     * <p>
+     * The cached objects are kept, using the cache afterwards starts the threads again when needed.
+     */
+    public synchronized void shutdown() {
+        if (this.refreshScheduler != null) {
+            this.refreshScheduler.shutdown();
+        }
+        if (this.changePoller != null) {
+            this.changePoller.stop();
+        }
+        if (this.refreshExecutor != null) {
+            this.refreshExecutor.shutdown();
+            this.refreshExecutor = null;
+        }
     }
 
     /**
      * Puts an object without an ID in the specified {@link CacheGroup} group parameter.
      * <p>
-     * This will override any previous object in the specified {@link CacheGroup} per {@link CacheManager}.
+     * This will override any previous object in the specified {@link CacheGroup}.
      *
      * @param group   the {@link CacheGroup} which the object should be placed in
      * @param object  the object that is going to be stored
@@ -63,13 +528,13 @@ public class Cache {
      * @param object  the object that is going to be stored
      */
     public void put(CacheGroup group, Object id, Object object) {
-        this.cacheManager.put(group.toString(), id, object);
+        getSegment(group).put(id, object, false);
     }
 
     /**
      * Puts an object without an ID in the specified {@link CacheGroup} group parameter as metadatable cache item.
      * <p>
-     * This will override any previous object in the specified {@link CacheGroup} per {@link CacheManager}.
+     * This will override any previous object in the specified {@link CacheGroup}.
      *
      * @param group   the {@link CacheGroup} which the object should be placed in
      * @param object  the object that is going to be stored
@@ -88,7 +553,43 @@ public class Cache {
      * @param object  the object that is going to be stored
      */
     public void putMetadatable(CacheGroup group, Object id, Object object) {
-        this.cacheManager.putMetadatable(group.toString(), id, object);
+        getSegment(group).put(id, object, true);
+    }
+
+    /**
+     * Puts an object with a numeric ID in the specified {@link CacheGroup} group parameter.
+     *
+     * @param group   the {@link CacheGroup} which the object should be placed in
+     * @param id      the ID of the stored object.
+     * @param object  the object that is going to be stored
+     */
+    public void putInt(CacheGroup group, int id, Object object) {
+        getSegment(group).put(id, object, false);
+    }
+
+    /**
+     * Puts an object with a numeric ID in the specified {@link CacheGroup} group parameter as metadatable cache item.
+     *
+     * @param group   the {@link CacheGroup} which the object should be placed in
+     * @param id      the ID of the stored object.
+     * @param object  the object that is going to be stored
+     */
+    public void putMetadatableInt(CacheGroup group, int id, Object object) {
+        getSegment(group).put(id, object, true);
+    }
+
+    /**
+     * Puts a "not found" result with an ID in the negative tier of the specified {@link CacheGroup}.
+     * <p>
+     * This is meant for callers that load several objects at once and learn which ones don't exist, the result
+     * expires like the ones stored by {@link #get(CacheGroup, Object, CacheLoader, Object)}.
+     *
+     * @param group     the {@link CacheGroup} of the object
+     * @param id        the ID of the object that doesn't exist
+     * @param notFound  the value that stands for the missing object, like {@code null} or {@code 0}
+     */
+    public void putNotFound(CacheGroup group, Object id, Object notFound) {
+        negativeSegment(group).put(id, notFound, false);
     }
 
     /**
@@ -111,11 +612,184 @@ public class Cache {
      * @return        the object that has been stored, returns null if no stored object could be found
      */
     public Object get(CacheGroup group, Object id) {
-        return this.cacheManager.get(group.toString(), id);
+        CacheSegment segment = getSegment(group);
+        Object value = lookup(segment, segment.getEntry(id), null);
+        return (value == MISS) ? null : value;
+    }
+
+    /**
+     * Returns the object without an ID of the specified {@link CacheGroup}, loading it if it is not cached.
+     *
+     * @see    #get(CacheGroup, Object, CacheLoader)
+     * @param  group   the {@link CacheGroup} which the object should be grabbed from
+     * @param  loader  the {@link CacheLoader} that loads the object if it's not cached
+     * @return         the cached or loaded object
+     * @throws SQLException      if the loader threw a {@link SQLException}
+     * @throws ScriptException   if the loader threw a {@link ScriptException}
+     */
+    public <V> V get(CacheGroup group, CacheLoader<V> loader) throws SQLException, ScriptException {
+        return get(group, 1, loader);
+    }
+
+    /**
+     * Returns the object of the specified {@link CacheGroup} group parameter by the id parameter,
+     * loading and storing it if it is not cached.
+     * <p>
+     * If several threads miss the same object at the same time, only the first one calls the loader,
+     * the others wait for it and return the same object. The loaded object is stored as well when it
+     * is null, unless the loader stored the object itself, like the {@code addCache} methods do.
+     * <p>
+     * If the object is expired but the group allows stale objects, the stale object is returned and
+     * the loader refreshes it in the background.
+     *
+     * @param  group   the {@link CacheGroup} which the object should be grabbed from
+     * @param  id      the unique ID of the object
+     * @param  loader  the {@link CacheLoader} that loads the object if it's not cached
+     * @return         the cached or loaded object
+     * @throws SQLException      if the loader threw a {@link SQLException}
+     * @throws ScriptException   if the loader threw a {@link ScriptException}
+     */
+    public <V> V get(CacheGroup group, Object id, CacheLoader<V> loader) throws SQLException, ScriptException {
+        return get(group, id, loader, null, false);
+    }
+
+    /**
+     * Returns the object of the specified {@link CacheGroup} group parameter by the id parameter,
+     * loading it if it is not cached, and keeping "not found" results in the negative tier of the group.
+     * <p>
+     * If the loader returns the {@code notFound} value, it is not stored with the other objects of the group,
+     * but in a small negative tier that expires after {@link #DEFAULT_NEGATIVE_EXPIRY}, unless other settings
+     * have been set with {@link #setNegativeExpiry(CacheGroup, CacheExpiry)}. This keeps repeated lookups
+     * of unknown names away from the database without filling the group with them.
+     * <p>
+     * {@link #remove(CacheGroup, Object)}, {@link #clear(CacheGroup)} and {@link #invalidate(CacheTag...)}
+     * remove negative results as well, so creating the missing object makes it visible right away.
+     *
+     * @see    #get(CacheGroup, Object, CacheLoader)
+     * @param  group     the {@link CacheGroup} which the object should be grabbed from
+     * @param  id        the unique ID of the object
+     * @param  loader    the {@link CacheLoader} that loads the object if it's not cached
+     * @param  notFound  the value the loader returns if the object doesn't exist, like {@code 0} or {@code false}
+     * @return           the cached or loaded object
+     * @throws SQLException      if the loader threw a {@link SQLException}
+     * @throws ScriptException   if the loader threw a {@link ScriptException}
+     */
+    public <V> V get(CacheGroup group, Object id, CacheLoader<V> loader, V notFound) throws SQLException, ScriptException {
+        return get(group, id, loader, notFound, true);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <V> V get(CacheGroup group, Object id, CacheLoader<V> loader, V notFound, boolean negative) throws SQLException, ScriptException {
+        CacheSegment segment = getSegment(group);
+        Object value = read(segment, segment.getEntry(id), loader);
+        if (value == MISS && negative) {
+            CacheSegment negatives = getNegativeSegment(group);
+            if (negatives != null && isLive(negatives, negatives.getEntry(id))) {
+                value = notFound;
+            }
+        }
+        if (value == MISS) {
+            segment.recordMiss();
+            value = load(segment, id, loader, negative ? notFound : MISS);
+        } else {
+            segment.recordHit();
+        }
+        return (V) value;
+    }
+
+    /**
+     * Returns the object of the specified {@link CacheGroup} group parameter by the numeric id parameter,
+     * loading and storing it if it is not cached.
+     *
+     * @see    #get(CacheGroup, Object, CacheLoader)
+     * @param  group   the {@link CacheGroup} which the object should be grabbed from
+     * @param  id      the unique ID of the object
+     * @param  loader  the {@link CacheLoader} that loads the object if it's not cached
+     * @return         the cached or loaded object
+     * @throws SQLException      if the loader threw a {@link SQLException}
+     * @throws ScriptException   if the loader threw a {@link ScriptException}
+     */
+    @SuppressWarnings("unchecked")
+    public <V> V getInt(CacheGroup group, int id, CacheLoader<V> loader) throws SQLException, ScriptException {
+        CacheSegment segment = getSegment(group);
+        Object value = lookup(segment, segment.getEntry(id), loader);
+        if (value == MISS) {
+            value = load(segment, id, loader, MISS);
+        }
+        return (V) value;
+    }
+
+    /**
+     * Returns the object of the specified {@link CacheGroup} group parameter by the numeric id parameter.
+     * <p>
+     * This avoids boxing the ID, which makes it the preferred lookup for entities like users, posts and threads.
+     *
+     * @param  group  the {@link CacheGroup} which the object should be grabbed from
+     * @param  id     the unique ID of the object
+     * @return        the object that has been stored, returns null if no stored object could be found
+     */
+    public Object getInt(CacheGroup group, int id) {
+        CacheSegment segment = getSegment(group);
+        Object value = lookup(segment, segment.getEntry(id), null);
+        return (value == MISS) ? null : value;
+    }
+
+    /**
+     * Returns the cached objects of the specified {@link CacheGroup} by their numeric IDs, without loading the
+     * objects that are not cached.
+     * <p>
+     * Objects that have been stored as null are returned as well, so the IDs that are missing from the returned
+     * map are exactly the IDs that have to be loaded.
+     *
+     * @param  group  the {@link CacheGroup} which the objects should be grabbed from
+     * @param  ids    the unique IDs of the objects
+     * @return        the cached objects by their ID
+     */
+    public Map<Integer, Object> getAllInt(CacheGroup group, Collection<Integer> ids) {
+        CacheSegment segment = getSegment(group);
+        Map<Integer, Object> objects = new HashMap<Integer, Object>();
+        for (int id : ids) {
+            Object value = lookup(segment, segment.getEntry(id), null);
+            if (value != MISS) {
+                objects.put(id, value);
+            }
+        }
+        return objects;
     }
 
     /**
-     * Returns {@code true} if the {@link CacheManager} contains an object with the specified group parameter,
+     * Returns the cached objects of the specified {@link CacheGroup} by their IDs, without loading the objects
+     * that are not cached.
+     * <p>
+     * Objects that have been stored as null and "not found" results of the negative tier are returned as well,
+     * so the IDs that are missing from the returned map are exactly the IDs that have to be loaded.
+     *
+     * @see    #get(CacheGroup, Object, CacheLoader, Object)
+     * @param  group  the {@link CacheGroup} which the objects should be grabbed from
+     * @param  ids    the unique IDs of the objects
+     * @return        the cached objects by their ID
+     */
+    public <K> Map<K, Object> getAll(CacheGroup group, Collection<K> ids) {
+        CacheSegment segment = getSegment(group);
+        CacheSegment negatives = getNegativeSegment(group);
+        Map<K, Object> objects = new HashMap<K, Object>();
+        for (K id : ids) {
+            Object value = lookup(segment, segment.getEntry(id), null);
+            if (value == MISS && negatives != null) {
+                CacheEntry negative = negatives.getEntry(id);
+                if (isLive(negatives, negative)) {
+                    value = negative.getValue();
+                }
+            }
+            if (value != MISS) {
+                objects.put(id, value);
+            }
+        }
+        return objects;
+    }
+
+    /**
+     * Returns {@code true} if the cache contains an object with the specified group parameter,
      * returns {@code false} if not.
      * <p>
      * This should only be used when checking an object which has been stored without an ID.
@@ -128,7 +802,7 @@ public class Cache {
     }
 
     /**
-     * Returns {@code true} if the {@link CacheManager} group parameter contains the id parameter,
+     * Returns {@code true} if the cache group parameter contains the id parameter,
      * returns {@code false} if not.
      * <p>
      * The object id is specified by the id param and the group is specified by the group param.
@@ -138,7 +812,21 @@ public class Cache {
      * @return        {@code true} if contains {@code false} if not
      */
     public boolean contains(CacheGroup group, Object id) {
-         return this.cacheManager.contains(group.toString(), id);
+        CacheSegment segment = getSegment(group);
+        return isLive(segment, segment.getEntry(id));
+    }
+
+    /**
+     * Returns {@code true} if the cache group parameter contains the numeric id parameter,
+     * returns {@code false} if not.
+     *
+     * @param  group  the {@link CacheGroup} to check
+     * @param  id     the ID of the object to check
+     * @return        {@code true} if contains {@code false} if not
+     */
+    public boolean containsInt(CacheGroup group, int id) {
+        CacheSegment segment = getSegment(group);
+        return isLive(segment, segment.getEntry(id));
     }
 
     /**
@@ -147,7 +835,15 @@ public class Cache {
      * @param group  the {@link CacheGroup} to clear
      */
     public void clear(CacheGroup group) {
-        this.cacheManager.clear(group.toString());
+        getSegment(group).clear();
+        CacheSegment negatives = getNegativeSegment(group);
+        if (negatives != null) {
+            negatives.clear();
+        }
+        InvalidationBus bus = this.invalidationBus;
+        if (bus != null) {
+            bus.publishClear(group);
+        }
     }
 
     /**
@@ -157,7 +853,33 @@ public class Cache {
      * @param id     the id of the object
      */
     public void remove(CacheGroup group, Object id) {
-        this.cacheManager.remove(group.toString(), id);
+        getSegment(group).remove(id);
+        CacheSegment negatives = getNegativeSegment(group);
+        if (negatives != null) {
+            negatives.remove(id);
+        }
+        InvalidationBus bus = this.invalidationBus;
+        if (bus != null) {
+            bus.publishRemove(group, id);
+        }
+    }
+
+    /**
+     * Removes the object with the numeric ID from the cache.
+     *
+     * @param group  the {@link CacheGroup} which the object should be removed from
+     * @param id     the id of the object
+     */
+    public void removeInt(CacheGroup group, int id) {
+        getSegment(group).remove(id);
+        CacheSegment negatives = getNegativeSegment(group);
+        if (negatives != null) {
+            negatives.remove(id);
+        }
+        InvalidationBus bus = this.invalidationBus;
+        if (bus != null) {
+            bus.publishRemove(group, id);
+        }
     }
 
     /**
@@ -174,12 +896,8 @@ public class Cache {
      * @return        {@code true} if succeeded, {@code false} if not
      */
     public boolean setMetadata(CacheGroup group, Object id, String key, Object value) {
-        MetadatableCacheItem item = this.cacheManager.getMetadatableItem(group.toString(), id);
-        if (item == null) {
-            return false;
-        }
-        item.setMetaData(key, value);
-        return true;
+        CacheEntry entry = getSegment(group).getEntry(id);
+        return entry != null && entry.setMetadata(key, value);
     }
 
     /**
@@ -191,11 +909,8 @@ public class Cache {
      * @return        value of the meta key, or null if the object is not metadatable, not present in cache, or other error occurred
      */
     public Object getMetadata(CacheGroup group, Object id, String key) {
-        MetadatableCacheItem item = this.cacheManager.getMetadatableItem(group.toString(), id);
-        if (item == null) {
-            return null;
-        }
-        return item.getMetaData(key);
+        CacheEntry entry = getSegment(group).getEntry(id);
+        return (entry == null) ? null : entry.getMetadata(key);
     }
 
     /**
@@ -211,11 +926,204 @@ public class Cache {
      * @return        {@code true} if succeeded, {@code false} if not
      */
     public boolean removeMetadata(CacheGroup group, Object id, String key) {
-        MetadatableCacheItem item = this.cacheManager.getMetadatableItem(group.toString(), id);
-        if (item == null) {
+        CacheEntry entry = getSegment(group).getEntry(id);
+        return entry != null && entry.removeMetadata(key);
+    }
+
+    /**
+     * Removes every object that depends on one of the specified tags, from all groups.
+     *
+     * @param  tags  the {@link CacheTag}s to invalidate
+     * @return       the amount of removed objects
+     */
+    public int invalidate(CacheTag... tags) {
+        int removed = 0;
+        for (CacheTag tag : tags) {
+            if (tag != null) {
+                removed += this.tagIndex.invalidate(tag);
+            }
+        }
+        InvalidationBus bus = this.invalidationBus;
+        if (bus != null) {
+            bus.publishTags(tags);
+        }
+        return removed;
+    }
+
+    /**
+     * Returns a snapshot of the statistics of the specified {@link CacheGroup}.
+     *
+     * @param  group  the {@link CacheGroup}
+     * @return        the {@link CacheStats} of the group
+     */
+    public CacheStats getStats(CacheGroup group) {
+        return getSegment(group).getStats();
+    }
+
+    /**
+     * Returns a snapshot of the statistics of every {@link CacheGroup}.
+     *
+     * @return a map with the {@link CacheStats} of each group
+     */
+    public Map<CacheGroup, CacheStats> getStats() {
+        Map<CacheGroup, CacheStats> stats = new EnumMap<CacheGroup, CacheStats>(CacheGroup.class);
+        for (CacheSegment segment : this.segments) {
+            stats.put(segment.getGroup(), segment.getStats());
+        }
+        return stats;
+    }
+
+    private Object lookup(CacheSegment segment, CacheEntry entry, CacheLoader<?> loader) {
+        Object value = read(segment, entry, loader);
+        if (value == MISS) {
+            segment.recordMiss();
+        } else {
+            segment.recordHit();
+        }
+        return value;
+    }
+
+    private Object read(CacheSegment segment, CacheEntry entry, CacheLoader<?> loader) {
+        if (entry == null) {
+            return MISS;
+        }
+        long now = System.nanoTime();
+        long expiredFor = segment.getExpiredFor(entry, now);
+        if (expiredFor >= 0) {
+            if (!segment.isServableStale(expiredFor, loader)) {
+                segment.remove(entry);
+                return MISS;
+            }
+            refresh(segment, entry, loader);
+        } else {
+            entry.setAccessTime(now);
+        }
+        segment.recordRead(entry);
+        return entry.getValue();
+    }
+
+    private Object load(CacheSegment segment, Object id, CacheLoader<?> loader, Object notFound) throws SQLException, ScriptException {
+        CacheLoad load = new CacheLoad();
+        CacheLoad running = segment.startLoad(id, load);
+        if (running != null) {
+            return running.await();
+        }
+        try {
+            // Another thread might have finished loading the object right before this load started.
+            CacheEntry before = segment.getEntry(id);
+            Object value = read(segment, before, loader);
+            if (value == MISS) {
+                value = timedLoad(segment, loader, id);
+                CacheEntry after = segment.getEntry(id);
+                if (notFound != MISS && (value == null ? notFound == null : value.equals(notFound))) {
+                    negativeSegment(segment.getGroup()).put(id, value, false);
+                } else if (after == null || after == before) {
+                    segment.put(id, value, false);
+                }
+            }
+            load.complete(value);
+            return value;
+        } catch (SQLException e) {
+            load.fail(e);
+            throw e;
+        } catch (ScriptException e) {
+            load.fail(e);
+            throw e;
+        } catch (RuntimeException e) {
+            load.fail(e);
+            throw e;
+        } catch (Error e) {
+            load.fail(e);
+            throw e;
+        } finally {
+            segment.finishLoad(id, load);
+        }
+    }
+
+    private CacheSegment negativeSegment(CacheGroup group) {
+        CacheSegment negatives = this.negativeSegments.get(group.ordinal());
+        if (negatives == null) {
+            negatives = new CacheSegment(group, DEFAULT_NEGATIVE_MAXIMUM_SIZE, this.tagIndex, this.budget);
+            negatives.setExpiry(DEFAULT_NEGATIVE_EXPIRY);
+            if (!this.negativeSegments.compareAndSet(group.ordinal(), null, negatives)) {
+                negatives = this.negativeSegments.get(group.ordinal());
+            }
+        }
+        return negatives;
+    }
+
+    private Object timedLoad(CacheSegment segment, CacheLoader<?> loader, Object id) throws SQLException, ScriptException {
+        long start = System.nanoTime();
+        boolean loaded = false;
+        try {
+            Object value = loader.load(id);
+            loaded = true;
+            return value;
+        } finally {
+            if (loaded) {
+                segment.recordLoadSuccess(System.nanoTime() - start);
+            } else {
+                segment.recordLoadFailure(System.nanoTime() - start);
+            }
+        }
+    }
+
+    private boolean isLive(CacheSegment segment, CacheEntry entry) {
+        if (entry == null) {
+            return false;
+        }
+        long expiredFor = segment.getExpiredFor(entry, System.nanoTime());
+        if (expiredFor >= 0 && !segment.isServableStale(expiredFor, null)) {
+            segment.remove(entry);
             return false;
         }
-        item.removeMetaData(key);
         return true;
     }
+
+    private void refresh(final CacheSegment segment, final CacheEntry entry, CacheLoader<?> callerLoader) {
+        final CacheLoader<?> loader = (segment.getLoader() != null) ? segment.getLoader() : callerLoader;
+        if (loader == null || !entry.startRefresh()) {
+            return;
+        }
+        getRefreshExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    reload(segment, entry, loader);
+                } catch (Exception ignore) {
+                    // The stale object is served until it's out of the stale period, after that it is loaded again.
+                } finally {
+                    entry.finishRefresh();
+                }
+            }
+        });
+    }
+
+    private void reload(CacheSegment segment, CacheEntry entry, CacheLoader<?> loader) throws SQLException, ScriptException {
+        Object value = timedLoad(segment, loader, entry.hasIntKey() ? entry.getIntKey() : entry.getKey());
+        CacheEntry current = entry.hasIntKey() ? segment.getEntry(entry.getIntKey()) : segment.getEntry(entry.getKey());
+        if (current != entry) {
+            // The object has been replaced or removed while it was refreshed.
+            return;
+        }
+        if (value == null) {
+            segment.remove(entry);
+        } else {
+            segment.put(entry.withValue(value));
+        }
+    }
+
+    private synchronized ExecutorService getRefreshExecutor() {
+        if (this.refreshExecutor == null) {
+            this.refreshExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "Bifrost cache refresh");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return this.refreshExecutor;
+    }
 }
@@ -19,6 +19,7 @@
  */
 package com.craftfire.bifrost.classes.general;
 
+import com.craftfire.bifrost.cache.SizeEstimator;
 import com.craftfire.bifrost.exceptions.ScriptException;
 
 import java.util.List;
@@ -162,6 +163,11 @@ public abstract class Category extends GenericMethods implements MessageParent {
         return getMessages(limit);
     }
 
+    @Override
+    public long estimateSize() {
+        return super.estimateSize() + 12 + SizeEstimator.estimate(this.name, this.description);
+    }
+
     /**
      * @see java.lang.Object#toString()
      */
@@ -19,6 +19,8 @@
  */
 package com.craftfire.bifrost.classes.general;
 
+import com.craftfire.bifrost.cache.CacheTag;
+import com.craftfire.bifrost.cache.SizeEstimator;
 import com.craftfire.bifrost.exceptions.ScriptException;
 
 import java.sql.SQLException;
@@ -57,6 +59,26 @@ public class GenericMethods {
         this.id = id;
     }
 
+    /**
+     * Returns the tag of the cached objects that hold this object, like the lists that contain it.
+     *
+     * @return the {@link CacheTag} of the object, or null if cached objects don't depend on it
+     */
+    public CacheTag getCacheTag() {
+        return null;
+    }
+
+    /**
+     * Returns the estimated number of bytes the object retains in the cache, see {@link SizeEstimator}.
+     * <p>
+     * Classes that hold strings or other objects should add their size to the size of the object.
+     *
+     * @return the estimated size in bytes
+     */
+    public long estimateSize() {
+        return SizeEstimator.OBJECT_OVERHEAD + 8;
+    }
+
     /**
      * Returns the handle.
      *
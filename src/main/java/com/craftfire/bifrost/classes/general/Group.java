@@ -20,10 +20,11 @@
 package com.craftfire.bifrost.classes.general;
 
 import java.sql.SQLException;
-import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
+import com.craftfire.bifrost.cache.CacheTag;
+import com.craftfire.bifrost.cache.SizeEstimator;
 import com.craftfire.bifrost.enums.CacheCleanupReason;
 import com.craftfire.bifrost.enums.CacheGroup;
 import com.craftfire.bifrost.exceptions.ScriptException;
@@ -174,6 +175,17 @@ public class Group extends GenericMethods {
         this.getHandle().createGroup(this);
     }
 
+    @Override
+    public CacheTag getCacheTag() {
+        return new CacheTag(CacheTag.Kind.GROUP, getID());
+    }
+
+    @Override
+    public long estimateSize() {
+        return super.estimateSize() + 16 + SizeEstimator.estimate(this.groupname, this.groupdescription)
+                + SizeEstimator.estimate(this.users);
+    }
+
     /**
      * Returns {@code true} if the handle contains a group cache with the given id parameter,
      * {@code false} if not.
@@ -186,6 +198,18 @@ public class Group extends GenericMethods {
         return handle.getCache().contains(CacheGroup.GROUP, id);
     }
 
+    /**
+     * Returns {@code true} if the handle contains a group cache with the given numeric id parameter,
+     * {@code false} if not.
+     *
+     * @param  handle  the script handle
+     * @param  id      the id of the object to look for
+     * @return         {@code true} if contains, {@code false} if not
+     */
+    public static boolean hasCache(ScriptHandle handle, int id) {
+        return handle.getCache().containsInt(CacheGroup.GROUP, id);
+    }
+
     /**
      * Adds a Group to the cache with the given script handle
      *
@@ -193,19 +217,7 @@ public class Group extends GenericMethods {
      * @param group   the Group object
      */
     public static void addCache(ScriptHandle handle, Group group) {
-        handle.getCache().putMetadatable(CacheGroup.GROUP, group.getID(), group);
-        handle.getCache().setMetadata(CacheGroup.GROUP, group.getID(), "bifrost-cache.old-name", group.getName());
-        if (group.getUsers() != null) {
-            List<String> usernames = new ArrayList<String>();
-            Iterator<ScriptUser> iterator = group.getUsers().iterator();
-            while (iterator.hasNext()) {
-                ScriptUser user = iterator.next();
-                if (user != null) {
-                    usernames.add(user.getUsername());
-                }
-            }
-            handle.getCache().setMetadata(CacheGroup.GROUP, group.getID(), "bifrost-cache.old-users", usernames);
-        }
+        handle.getCache().putInt(CacheGroup.GROUP, group.getID(), group);
     }
 
     /**
@@ -222,6 +234,20 @@ public class Group extends GenericMethods {
         return null;
     }
 
+    /**
+     * Returns the Group object by the given numeric id if found, returns {@code null} if no cache was found.
+     *
+     * @param  handle  the script handle
+     * @param  id      the id of the group
+     * @return         Group object if cache was found, {@code null} if no cache was found
+     */
+    public static Group getCache(ScriptHandle handle, int id) {
+        if (handle.getCache().containsInt(CacheGroup.GROUP, id)) {
+            return (Group) handle.getCache().getInt(CacheGroup.GROUP, id);
+        }
+        return null;
+    }
+
     /**
      * Removes outdated cache elements related to given {@code group} from cache.
      * <p>
@@ -232,7 +258,6 @@ public class Group extends GenericMethods {
      * @param group   the group to cleanup related cache
      * @param reason  the reason of cache cleanup, {@link CacheCleanupReason#OTHER} causes full cleanup
      */
-    @SuppressWarnings("unchecked")
     public static void cleanupCache(ScriptHandle handle, Group group, CacheCleanupReason reason) {
         handle.getCache().remove(CacheGroup.GROUP_ID, group.getName());
         if (group.getUsers() != null) {
@@ -240,7 +265,7 @@ public class Group extends GenericMethods {
             while (iterator.hasNext()) {
                 ScriptUser user = iterator.next();
                 if (user != null) {
-                    handle.getCache().remove(CacheGroup.USER_GROUP, user.getUsername());
+                    handle.getCache().invalidate(new CacheTag(CacheTag.Kind.USER_GROUPS, user.getUsername()));
                 }
             }
         }
@@ -254,16 +279,8 @@ public class Group extends GenericMethods {
             handle.getCache().clear(CacheGroup.GROUP_LIST);
             /* Passes through */
         case UPDATE:
-            Object oldName = handle.getCache().getMetadata(CacheGroup.GROUP, group.getID(), "bifrost-cache.old-name");
-            List<String> oldUsernames = (List<String>) handle.getCache().getMetadata(CacheGroup.GROUP, group.getID(), "bifrost-cache.old-users");
-            handle.getCache().remove(CacheGroup.GROUP_ID, oldName);
-            if (oldUsernames != null) {
-                Iterator<String> iterator = oldUsernames.iterator();
-                while (iterator.hasNext()) {
-                    String username = iterator.next();
-                    handle.getCache().remove(CacheGroup.USER_GROUP, username);
-                }
-            }
+            /* The old name and the group lists of the old members hold the group, so they are tagged with it. */
+            handle.getCache().invalidate(group.getCacheTag());
             break;
         }
     }
@@ -19,6 +19,7 @@
  */
 package com.craftfire.bifrost.classes.general;
 
+import com.craftfire.bifrost.cache.SizeEstimator;
 import com.craftfire.bifrost.exceptions.ScriptException;
 
 import java.sql.SQLException;
@@ -202,6 +203,12 @@ public abstract class Message extends GenericMethods implements MessageParent {
         this.categoryid = categoryid;
     }
 
+    @Override
+    public long estimateSize() {
+        return super.estimateSize() + 24 + SizeEstimator.estimate(this.title, this.body)
+                + SizeEstimator.estimate(this.date) + SizeEstimator.estimate(this.author);
+    }
+
     /**
      * 
      * @see java.lang.Object#toString()
@@ -22,6 +22,7 @@ package com.craftfire.bifrost.classes.general;
 import java.sql.SQLException;
 import java.util.*;
 
+import com.craftfire.bifrost.cache.CacheTag;
 import com.craftfire.bifrost.enums.CacheCleanupReason;
 import com.craftfire.bifrost.enums.CacheGroup;
 import com.craftfire.bifrost.exceptions.ScriptException;
@@ -257,6 +258,11 @@ public class PrivateMessage extends Message {
        getHandle().createPrivateMessage(this);
     }
 
+    @Override
+    public CacheTag getCacheTag() {
+        return new CacheTag(CacheTag.Kind.PM, getID());
+    }
+
     /**
      * Returns {@code true} if the handle contains a private message cache with the given id parameter,
      * {@code false} if not.
@@ -269,6 +275,18 @@ public class PrivateMessage extends Message {
         return handle.getCache().contains(CacheGroup.PM, id);
     }
 
+    /**
+     * Returns {@code true} if the handle contains a private message cache with the given numeric id parameter,
+     * {@code false} if not.
+     *
+     * @param  handle  the script handle
+     * @param  id      the id of the object to look for
+     * @return         {@code true} if contains, {@code false} if not
+     */
+    public static boolean hasCache(ScriptHandle handle, int id) {
+        return handle.getCache().containsInt(CacheGroup.PM, id);
+    }
+
     /**
      * Adds a PrivateMessage to the cache with the given script handle
      *
@@ -276,7 +294,7 @@ public class PrivateMessage extends Message {
      * @param privateMessage  the PrivateMessage object
      */
     public static void addCache(ScriptHandle handle, PrivateMessage privateMessage) {
-        handle.getCache().putMetadatable(CacheGroup.PM, privateMessage.getID(), privateMessage);
+        handle.getCache().putMetadatableInt(CacheGroup.PM, privateMessage.getID(), privateMessage);
         handle.getCache().setMetadata(CacheGroup.PM, privateMessage.getID(), "bifrost-cache.pm.old-parent", privateMessage.getParentID());
         if (privateMessage.getAuthor() != null) {
             handle.getCache().setMetadata(CacheGroup.PM, privateMessage.getID(), "bifrost-cache.pm.old-author", privateMessage.getAuthor().getUsername());
@@ -312,6 +330,20 @@ public class PrivateMessage extends Message {
         return null;
     }
 
+    /**
+     * Returns the PrivateMessage object by the given numeric id if found, returns {@code null} if no cache was found.
+     *
+     * @param  handle  the script handle
+     * @param  id      the id of the private message
+     * @return         PrivateMessage object if cache was found, {@code null} if no cache was found
+     */
+    public static PrivateMessage getCache(ScriptHandle handle, int id) {
+        if (handle.getCache().containsInt(CacheGroup.PM, id)) {
+            return (PrivateMessage) handle.getCache().getInt(CacheGroup.PM, id);
+        }
+        return null;
+    }
+
     /**
      * Removes outdated cache elements related to given {@code privateMessage} from cache.
      * <p>
@@ -325,41 +357,43 @@ public class PrivateMessage extends Message {
      */
     @SuppressWarnings("unchecked")
     public static void cleanupCache(ScriptHandle handle, PrivateMessage privateMessage, CacheCleanupReason reason) {
-        handle.getCache().remove(CacheGroup.PM_REPLIES, privateMessage.getParentID());
+        handle.getCache().invalidate(new CacheTag(CacheTag.Kind.PM_REPLIES, privateMessage.getParentID()));
         if (privateMessage.getAuthor() != null) {
-            handle.getCache().remove(CacheGroup.PM_SENT, privateMessage.getAuthor().getUsername());
-            handle.getCache().remove(CacheGroup.PM_SENT_COUNT, privateMessage.getAuthor().getUsername());
+            handle.getCache().invalidate(new CacheTag(CacheTag.Kind.PMS_SENT, privateMessage.getAuthor().getUsername()));
         }
         if (privateMessage.getRecipients() != null) {
             Iterator<ScriptUser> iterator = privateMessage.getRecipients().iterator();
             while (iterator.hasNext()) {
                 ScriptUser user = iterator.next();
                 if (user != null) {
-                    handle.getCache().remove(CacheGroup.PM_RECEIVED, user.getUsername());
-                    handle.getCache().remove(CacheGroup.PM_RECEIVED_COUNT, user.getUsername());
+                    handle.getCache().invalidate(new CacheTag(CacheTag.Kind.PMS_RECEIVED, user.getUsername()));
                 }
             }
         }
         switch (reason) {
         case CREATE:
+            handle.getCache().clear(CacheGroup.PM_COUNT);
             handle.getCache().clear(CacheGroup.PM_LIST);
             break;
         case OTHER:
+            handle.getCache().clear(CacheGroup.PM_COUNT);
             handle.getCache().clear(CacheGroup.PM_LIST);
             /* Passes through */
         case UPDATE:
             Object oldParentid = handle.getCache().getMetadata(CacheGroup.PM, privateMessage.getID(), "bifrost-cache.pm.old-parent");
             Object oldUsername = handle.getCache().getMetadata(CacheGroup.PM, privateMessage.getID(), "bifrost-cache.pm.old-author");
             List<String> oldRecipients = (List<String>) handle.getCache().getMetadata(CacheGroup.PM, privateMessage.getID(), "bifrost-cache.pm.old-recipients");
-            handle.getCache().remove(CacheGroup.PM_REPLIES, oldParentid);
-            handle.getCache().remove(CacheGroup.PM_SENT, oldUsername);
-            handle.getCache().remove(CacheGroup.PM_SENT_COUNT, oldUsername);
+            handle.getCache().invalidate(privateMessage.getCacheTag());
+            if (oldParentid != null) {
+                handle.getCache().invalidate(new CacheTag(CacheTag.Kind.PM_REPLIES, oldParentid));
+            }
+            if (oldUsername != null) {
+                handle.getCache().invalidate(new CacheTag(CacheTag.Kind.PMS_SENT, oldUsername));
+            }
             if (oldRecipients != null) {
                 Iterator<String> iterator = oldRecipients.iterator();
                 while (iterator.hasNext()) {
-                    String username = iterator.next();
-                    handle.getCache().remove(CacheGroup.PM_RECEIVED, username);
-                    handle.getCache().remove(CacheGroup.PM_RECEIVED_COUNT, username);
+                    handle.getCache().invalidate(new CacheTag(CacheTag.Kind.PMS_RECEIVED, iterator.next()));
                 }
             }
             break;
@@ -19,27 +19,94 @@
  */
 package com.craftfire.bifrost.classes.general;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import com.craftfire.commons.database.DataManager;
 import com.craftfire.commons.util.LoggingManager;
 import com.craftfire.commons.util.Version;
 import com.craftfire.commons.util.VersionRange;
 
+import com.craftfire.bifrost.cache.CacheRegistry;
+import com.craftfire.bifrost.cache.CacheTag;
+import com.craftfire.bifrost.cache.CachedList;
+import com.craftfire.bifrost.cache.HighWaterMarks;
+import com.craftfire.bifrost.enums.CacheCleanupReason;
+import com.craftfire.bifrost.enums.CacheGroup;
 import com.craftfire.bifrost.enums.ScriptType;
 import com.craftfire.bifrost.enums.Scripts;
 import com.craftfire.bifrost.exceptions.ScriptException;
+import com.craftfire.bifrost.sql.QueryTemplate;
+import com.craftfire.bifrost.sql.RowMapper;
+import com.craftfire.bifrost.sql.StatementCache;
+import com.craftfire.bifrost.sql.Transaction;
 
 /**
  * This class contains methods relevant to direct methods for each script.
+ * <p>
+ * Every method that reads the database declares {@link SQLException}, including the ones that only declared
+ * {@link ScriptException} before the queries ran as prepared statements, like {@link #authenticate(String, String)},
+ * {@link #getUserID(String)} and the counters. Code that calls the script directly has to handle it as well; the
+ * getters of {@link ScriptHandle} still wrap it into a {@link ScriptException}, so their signatures are unchanged.
  */
 public class Script {
+    /**
+     * The maximum amount of changed rows read per table and poll, see {@link #pollChanges(HighWaterMarks)}.
+     */
+    public static final int CHANGE_BATCH_SIZE = 500;
+    /**
+     * The maximum amount of IDs or names per query of {@link #getUsers(Collection)} and
+     * {@link #getUsersByName(Collection)}, longer lists are split into several queries.
+     */
+    public static final int USER_BATCH_SIZE = 100;
+    /**
+     * The maximum amount of compiled queries kept by {@link #compile(QueryTemplate)}, the least recently used one is
+     * dropped when there are more.
+     */
+    public static final int COMPILED_SIZE = 256;
+    private static final RowMapper<String> STRING_MAPPER = new RowMapper<String>() {
+        @Override
+        public String map(ResultSet row) throws SQLException {
+            return row.getString(1);
+        }
+    };
+    private static final RowMapper<Integer> INT_MAPPER = new RowMapper<Integer>() {
+        @Override
+        public Integer map(ResultSet row) throws SQLException {
+            return row.getInt(1);
+        }
+    };
+    private static final RowMapper<HashMap<String, Object>> MAP_MAPPER = new RowMapper<HashMap<String, Object>>() {
+        @Override
+        public HashMap<String, Object> map(ResultSet row) throws SQLException {
+            ResultSetMetaData columns = row.getMetaData();
+            HashMap<String, Object> map = new HashMap<String, Object>();
+            for (int i = 1; i <= columns.getColumnCount(); i++) {
+                map.put(columns.getColumnLabel(i), row.getObject(i));
+            }
+            return map;
+        }
+    };
     private final Version version;
     private final Scripts script;
     private final DataManager dataManager;
-    private final Cache cache;
+    private Cache cache;
+    private final StatementCache statements;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, String> compiled = new LinkedHashMap<String, String>(16, 0.75f, true);
     private VersionRange[] versionRanges;
     private String scriptName, shortName;
     private ScriptHandle handle;
@@ -52,7 +119,8 @@ public class Script {
         this.version = version;
         this.script = script;
         this.dataManager = dataManager;
-        this.cache = new Cache();
+        this.cache = new Cache(this);
+        this.statements = new StatementCache(dataManager);
     }
 
     /**
@@ -74,6 +142,583 @@ public class Script {
         return this.cache;
     }
 
+    /**
+     * Replaces the {@link Cache} of the script, this is used to share one cache between the scripts that read the
+     * same database, see {@link com.craftfire.bifrost.cache.CacheRegistry}.
+     * <p>
+     * This has to be done before a handle is created for the script.
+     *
+     * @param cache  the new {@link Cache}
+     */
+    public void setCache(Cache cache) {
+        if (cache == null) {
+            throw new IllegalArgumentException("The cache can't be null.");
+        }
+        this.cache = cache;
+    }
+
+    /**
+     * Returns the key of the database of the script, scripts with the same key can share their {@link Cache}.
+     *
+     * @return the key, or null if the script has no {@link DataManager}
+     */
+    public String getCacheKey() {
+        if (this.dataManager == null) {
+            return null;
+        }
+        return CacheRegistry.getKey(this.script.name(), this.dataManager.getHost(), this.dataManager.getDatabase(),
+                                    this.dataManager.getPrefix());
+    }
+
+    /**
+     * Returns a cheap version of the data of the script, which changes whenever the cached data may have changed.
+     * <p>
+     * The version is stored in a {@link com.craftfire.bifrost.cache.CacheSnapshot}, which is only restored if the
+     * version is still the same. Scripts that can't tell their version return null and never restore snapshots.
+     *
+     * @return                  the version, or null if unknown
+     * @throws SQLException     if a SQL exception occurred
+     * @throws ScriptException  if any other exception occurred
+     */
+    public String getCacheVersion() throws SQLException, ScriptException {
+        return null;
+    }
+
+    /**
+     * Finds the rows that have been written to the tables of the script since the last poll, and removes the cached
+     * objects that depend on them, see {@link com.craftfire.bifrost.cache.ChangePoller}.
+     * <p>
+     * Every table keeps its own mark, the highest ID or time that has been seen. The first poll only records the
+     * marks, later polls read at most {@link #CHANGE_BATCH_SIZE} rows above every mark and raise it to the last row.
+     * Scripts that can't tell their changes return 0 and never invalidate anything.
+     *
+     * @param  marks            the {@link HighWaterMarks} of the last poll, raised by this poll
+     * @return                  the amount of changed rows that have been found
+     * @throws SQLException     if a SQL exception occurred
+     * @throws ScriptException  if any other exception occurred
+     */
+    public int pollChanges(HighWaterMarks marks) throws SQLException, ScriptException {
+        return 0;
+    }
+
+    /**
+     * Returns the rows of the table above its high-water mark, and raises the mark to the last of them.
+     * <p>
+     * The mark is named after the table and its expression. The first call only records the mark and returns no
+     * rows. The rows are ordered by their mark and limited to {@link #CHANGE_BATCH_SIZE}, the rest is returned by
+     * the next call. Marks that several rows can share, like times, need the ID of the rows as well: the batches are
+     * split between rows of the same mark, and the ID of the last row is recorded with it so the next call starts
+     * after that row.
+     *
+     * @param  marks        the {@link HighWaterMarks} of the script
+     * @param  table        the table without its prefix
+     * @param  mark         the column or expression the mark is taken from, which only grows for new or changed rows
+     * @param  id           the unique column that orders the rows of the same mark; null if the mark is unique
+     * @param  columns      the columns of the rows to return
+     * @param  before       the expression the mark must be below, so rows written in the same second as the poll are
+     *                      returned by the next poll; null if the mark is an ID
+     * @return               the changed rows, an empty list if none
+     * @throws SQLException  if a SQL exception occurred
+     */
+    protected List<HashMap<String, Object>> getChangedRows(HighWaterMarks marks, String table, String mark, String id,
+                                                           String columns, String before) throws SQLException {
+        String from = " FROM `" + QueryTemplate.PREFIX + table + "` WHERE " +
+                ((before == null) ? "1" : mark + " < " + before);
+        String name = table + "." + mark, idName = name + "." + id;
+        if (!marks.has(name)) {
+            String max = queryString(new QueryTemplate("SELECT MAX(" + mark + ")" + from));
+            marks.set(name, (max == null) ? 0 : Long.parseLong(max));
+            if (id != null) {
+                // The rows that share the current mark have been seen as well.
+                String maxID = queryString(new QueryTemplate("SELECT MAX(" + id + ")" + from + " AND " + mark + " = ?"),
+                                           marks.get(name));
+                marks.set(idName, (maxID == null) ? 0 : Long.parseLong(maxID));
+            }
+            return new ArrayList<HashMap<String, Object>>();
+        }
+        List<HashMap<String, Object>> rows;
+        if (id == null) {
+            rows = query(new QueryTemplate(
+                    "SELECT " + mark + " AS `bifrost_mark`, " + columns + from + " AND " + mark + " > ? ORDER BY " +
+                            "`bifrost_mark` ASC LIMIT " + CHANGE_BATCH_SIZE), MAP_MAPPER, marks.get(name));
+        } else {
+            rows = query(new QueryTemplate(
+                    "SELECT " + mark + " AS `bifrost_mark`, " + id + " AS `bifrost_id`, " + columns + from + " AND (" +
+                            mark + " > ? OR (" + mark + " = ? AND " + id + " > ?)) ORDER BY `bifrost_mark` ASC, " +
+                            "`bifrost_id` ASC LIMIT " + CHANGE_BATCH_SIZE), MAP_MAPPER, marks.get(name),
+                    marks.get(name), marks.get(idName));
+        }
+        if (rows.isEmpty()) {
+            return rows;
+        }
+        HashMap<String, Object> last = rows.get(rows.size() - 1);
+        marks.set(name, Long.parseLong(last.get("bifrost_mark").toString()));
+        if (id != null) {
+            marks.set(idName, Long.parseLong(last.get("bifrost_id").toString()));
+        }
+        return rows;
+    }
+
+    /**
+     * Returns the {@link StatementCache} of the script, which keeps the prepared statements of its queries.
+     *
+     * @return the {@link StatementCache} of the script
+     */
+    public StatementCache getStatementCache() {
+        return this.statements;
+    }
+
+    /**
+     * Returns the query of the template with the table prefix and the other tokens of the script resolved, see
+     * {@link #resolve(String)}.
+     * <p>
+     * The last {@link #COMPILED_SIZE} templates are resolved once, later calls return the same query. Templates
+     * that are built for one call, like lists of varying length, only push out the oldest ones.
+     *
+     * @param  template  the {@link QueryTemplate}
+     * @return           the compiled query
+     */
+    protected String compile(QueryTemplate template) {
+        synchronized (this.compiled) {
+            String sql = this.compiled.get(template.getSQL());
+            if (sql != null) {
+                return sql;
+            }
+        }
+        String sql = resolve(template.getSQL());
+        synchronized (this.compiled) {
+            this.compiled.put(template.getSQL(), sql);
+            if (this.compiled.size() > COMPILED_SIZE) {
+                Iterator<String> eldest = this.compiled.values().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+        }
+        return sql;
+    }
+
+    /**
+     * Resolves the tokens of the text of a template, scripts with more tokens than the table prefix override this.
+     *
+     * @param  sql  the text of the template
+     * @return      the query with {@link QueryTemplate#PREFIX} replaced by the table prefix
+     */
+    protected String resolve(String sql) {
+        String prefix = getDataManager().getPrefix();
+        return sql.replace(QueryTemplate.PREFIX, (prefix == null) ? "" : prefix);
+    }
+
+    /**
+     * Runs the query of the template and maps every row of its result with the {@link RowMapper}.
+     * <p>
+     * The query is executed as a prepared statement from the {@link StatementCache}, with the parameters bound in
+     * their order. The rows are decoded while the result is read, nothing is copied into a table model first.
+     *
+     * @param  template      the {@link QueryTemplate} of the SELECT query
+     * @param  mapper        the {@link RowMapper} of the rows, which must not run queries itself
+     * @param  parameters    the values of the parameters of the query
+     * @param  <T>           the type of the mapped objects
+     * @return               the mapped rows in the order of the result, an empty list if none
+     * @throws SQLException  if the query or the mapper failed
+     */
+    protected <T> List<T> query(QueryTemplate template, final RowMapper<T> mapper, final Object... parameters)
+            throws SQLException {
+        return execute(compile(template), new StatementWork<List<T>>() {
+            @Override
+            public List<T> run(PreparedStatement statement) throws SQLException {
+                List<T> rows = new ArrayList<T>();
+                bind(statement, parameters);
+                ResultSet result = statement.executeQuery();
+                try {
+                    while (result.next()) {
+                        rows.add(mapper.map(result));
+                    }
+                } finally {
+                    result.close();
+                }
+                return rows;
+            }
+        });
+    }
+
+    /**
+     * Runs the query of the template and maps its first row, see {@link #query(QueryTemplate, RowMapper, Object...)}.
+     *
+     * @param  template      the {@link QueryTemplate} of the SELECT query
+     * @param  mapper        the {@link RowMapper} of the row
+     * @param  parameters    the values of the parameters of the query
+     * @param  <T>           the type of the mapped object
+     * @return               the mapped row, or null if the result is empty
+     * @throws SQLException  if the query or the mapper failed
+     */
+    protected <T> T queryFirst(QueryTemplate template, RowMapper<T> mapper, Object... parameters) throws SQLException {
+        List<T> rows = query(template, mapper, parameters);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    /**
+     * Runs a query with a list of values, like {@code IN ({list})}, and maps the rows of all its results.
+     * <p>
+     * The values are split into chunks of {@link #USER_BATCH_SIZE}, and the last chunk is padded with its last value,
+     * so every chunk runs the same query and prepared statement whatever the amount of values.
+     *
+     * @see    QueryTemplate#list(String, int)
+     * @param  sql           the text of the query, with {@code {list}} where the parameters of the values go
+     * @param  mapper        the {@link RowMapper} of the rows, which must not run queries itself
+     * @param  values        the values of the list
+     * @param  <T>           the type of the mapped objects
+     * @return               the mapped rows of all chunks, an empty list if none
+     * @throws SQLException  if the query or the mapper failed
+     */
+    protected <T> List<T> queryList(String sql, RowMapper<T> mapper, Collection<?> values) throws SQLException {
+        List<T> rows = new ArrayList<T>();
+        if (values.isEmpty()) {
+            return rows;
+        }
+        QueryTemplate template = QueryTemplate.list(sql, USER_BATCH_SIZE);
+        Object[] all = values.toArray();
+        for (int from = 0; from < all.length; from += USER_BATCH_SIZE) {
+            Object[] chunk = Arrays.copyOfRange(all, from, from + USER_BATCH_SIZE);
+            for (int i = Math.min(all.length - from, USER_BATCH_SIZE); i < chunk.length; i++) {
+                chunk[i] = chunk[i - 1];
+            }
+            rows.addAll(query(template, mapper, chunk));
+        }
+        return rows;
+    }
+
+    /**
+     * Runs a query with a list of values in chunks, see {@link #queryList(String, RowMapper, Collection)}, and returns
+     * every row of the results as a map of the column labels to the values.
+     *
+     * @param  sql           the text of the query, with {@code {list}} where the parameters of the values go
+     * @param  values        the values of the list
+     * @return               the rows of all chunks, an empty list if none
+     * @throws SQLException  if the query failed
+     */
+    protected List<HashMap<String, Object>> queryMapList(String sql, Collection<?> values) throws SQLException {
+        return queryList(sql, MAP_MAPPER, values);
+    }
+
+    /**
+     * Runs the query of the template and returns every row of its result as a map of the column labels to the values.
+     *
+     * @param  template      the {@link QueryTemplate} of the SELECT query
+     * @param  parameters    the values of the parameters of the query
+     * @return               the rows in the order of the result, an empty list if none
+     * @throws SQLException  if the query failed
+     */
+    protected List<HashMap<String, Object>> queryMaps(QueryTemplate template, Object... parameters) throws SQLException {
+        return query(template, MAP_MAPPER, parameters);
+    }
+
+    /**
+     * Runs the query of the template and returns its first row as a map of the column labels to the values.
+     *
+     * @param  template      the {@link QueryTemplate} of the SELECT query
+     * @param  parameters    the values of the parameters of the query
+     * @return               the row, or null if the result is empty
+     * @throws SQLException  if the query failed
+     */
+    protected HashMap<String, Object> queryMap(QueryTemplate template, Object... parameters) throws SQLException {
+        return queryFirst(template, MAP_MAPPER, parameters);
+    }
+
+    /**
+     * Runs the query of the template and returns the first column of its first row.
+     *
+     * @param  template      the {@link QueryTemplate} of the SELECT query
+     * @param  parameters    the values of the parameters of the query
+     * @return               the value as a string, or null if the result is empty
+     * @throws SQLException  if the query failed
+     */
+    protected String queryString(QueryTemplate template, Object... parameters) throws SQLException {
+        return queryFirst(template, STRING_MAPPER, parameters);
+    }
+
+    /**
+     * Runs the query of the template and returns the first column of its first row as a number.
+     *
+     * @param  template      the {@link QueryTemplate} of the SELECT query
+     * @param  parameters    the values of the parameters of the query
+     * @return               the value, or 0 if the result is empty or the value is null
+     * @throws SQLException  if the query failed
+     */
+    protected int queryInt(QueryTemplate template, Object... parameters) throws SQLException {
+        Integer value = queryFirst(template, INT_MAPPER, parameters);
+        return (value == null) ? 0 : value;
+    }
+
+    /**
+     * Runs the INSERT, UPDATE or DELETE query of the template as a prepared statement from the {@link StatementCache}.
+     *
+     * @param  template      the {@link QueryTemplate} of the query
+     * @param  parameters    the values of the parameters of the query
+     * @return               the amount of changed rows
+     * @throws SQLException  if the query failed
+     */
+    protected int update(QueryTemplate template, final Object... parameters) throws SQLException {
+        return execute(compile(template), new StatementWork<Integer>() {
+            @Override
+            public Integer run(PreparedStatement statement) throws SQLException {
+                bind(statement, parameters);
+                return statement.executeUpdate();
+            }
+        });
+    }
+
+    /**
+     * Runs the INSERT, UPDATE or DELETE query of the template once for every row of parameters, as one JDBC batch.
+     * <p>
+     * The keys of inserted rows aren't read, see {@link #insertBatch(QueryTemplate, List)} for that.
+     *
+     * @param  template      the {@link QueryTemplate} of the query
+     * @param  rows          the values of the parameters of every run
+     * @return               the amount of changed rows of every run
+     * @throws SQLException  if the query failed
+     */
+    protected int[] updateBatch(QueryTemplate template, final List<Object[]> rows) throws SQLException {
+        if (rows.isEmpty()) {
+            return new int[0];
+        }
+        return execute(compile(template), new StatementWork<int[]>() {
+            @Override
+            public int[] run(PreparedStatement statement) throws SQLException {
+                for (Object[] parameters : rows) {
+                    bind(statement, parameters);
+                    statement.addBatch();
+                }
+                return statement.executeBatch();
+            }
+        });
+    }
+
+    /**
+     * Runs the INSERT query of the template once for every row of parameters, as one JDBC batch, and returns the
+     * keys the database generated for the inserted rows.
+     *
+     * @param  template      the {@link QueryTemplate} of the INSERT query
+     * @param  rows          the values of the parameters of every row
+     * @return               the generated key of every row, in the order of the rows
+     * @throws SQLException  if the query failed or didn't return a key for every row
+     */
+    protected int[] insertBatch(QueryTemplate template, final List<Object[]> rows) throws SQLException {
+        if (rows.isEmpty()) {
+            return new int[0];
+        }
+        return execute(compile(template), new StatementWork<int[]>() {
+            @Override
+            public int[] run(PreparedStatement statement) throws SQLException {
+                for (Object[] parameters : rows) {
+                    bind(statement, parameters);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+                int[] keys = generatedKeys(statement, rows.size());
+                if (keys.length < rows.size()) {
+                    throw new SQLException("Only " + keys.length + " of " + rows.size() +
+                            " inserted rows returned a key.");
+                }
+                return keys;
+            }
+        });
+    }
+
+    /**
+     * Inserts a row into the table, with the values bound as parameters.
+     * <p>
+     * The column names are part of the query, they must come from the script and never from its input.
+     *
+     * @param  data          the values of the row, by their column
+     * @param  table         the table without its prefix
+     * @return               the key the database generated for the row, or 0 if the table has none
+     * @throws SQLException  if the query failed
+     */
+    protected int insertFields(Map<String, Object> data, String table) throws SQLException {
+        StringBuilder columns = new StringBuilder(), values = new StringBuilder();
+        final Object[] parameters = new Object[data.size()];
+        int i = 0;
+        for (Map.Entry<String, Object> field : data.entrySet()) {
+            if (i > 0) {
+                columns.append(", ");
+                values.append(", ");
+            }
+            columns.append('`').append(field.getKey()).append('`');
+            values.append('?');
+            parameters[i++] = field.getValue();
+        }
+        String sql = "INSERT INTO `" + QueryTemplate.PREFIX + table + "` (" + columns + ") VALUES (" + values + ")";
+        return execute(compile(new QueryTemplate(sql)), new StatementWork<Integer>() {
+            @Override
+            public Integer run(PreparedStatement statement) throws SQLException {
+                bind(statement, parameters);
+                statement.executeUpdate();
+                int[] keys = generatedKeys(statement, 1);
+                return (keys.length == 0) ? 0 : keys[0];
+            }
+        });
+    }
+
+    /**
+     * Updates the rows of the table that match the condition, with the values bound as parameters.
+     * <p>
+     * The column names and the condition are part of the query, they must come from the script and never from its
+     * input. The values of the condition are passed as parameters, like
+     * {@code updateFields(data, "users", "`user_id` = ?", user.getID())}.
+     *
+     * @param  data          the new values of the fields, by their column
+     * @param  table         the table without its prefix
+     * @param  where         the condition of the rows, with {@code ?} for its parameters
+     * @param  parameters    the values of the parameters of the condition
+     * @return               the amount of changed rows
+     * @throws SQLException  if the query failed
+     */
+    protected int updateFields(Map<String, Object> data, String table, String where, Object... parameters)
+            throws SQLException {
+        StringBuilder sql = new StringBuilder("UPDATE `").append(QueryTemplate.PREFIX).append(table).append("` SET ");
+        Object[] values = new Object[data.size() + parameters.length];
+        int i = 0;
+        for (Map.Entry<String, Object> field : data.entrySet()) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append('`').append(field.getKey()).append("` = ?");
+            values[i++] = field.getValue();
+        }
+        System.arraycopy(parameters, 0, values, i, parameters.length);
+        return update(new QueryTemplate(sql.append(" WHERE ").append(where).toString()), values);
+    }
+
+    /**
+     * Runs the work in one transaction of the connection of the {@link StatementCache}, it is committed if the work
+     * succeeds and rolled back if it throws an exception.
+     * <p>
+     * The connection is locked for the thread while the work runs, the queries of other threads wait for the
+     * transaction to end so they don't end up in it. Transactions started by the work join the transaction that is
+     * already running.
+     *
+     * @param  work             the queries of the transaction
+     * @throws SQLException     if a SQL exception occurred
+     * @throws ScriptException  if any other exception occurred
+     */
+    protected void transaction(Transaction work) throws SQLException, ScriptException {
+        this.lock.writeLock().lock();
+        try {
+            Connection connection = this.statements.getConnection();
+            if (!connection.getAutoCommit()) {
+                work.run();
+                return;
+            }
+            connection.setAutoCommit(false);
+            boolean committed = false;
+            try {
+                work.run();
+                connection.commit();
+                committed = true;
+            } finally {
+                if (!committed) {
+                    try {
+                        connection.rollback();
+                    } catch (SQLException e) {
+                        // The exception of the work is more useful, the connection may be gone already.
+                    }
+                }
+                try {
+                    connection.setAutoCommit(true);
+                } catch (SQLException e) {
+                    if (committed) {
+                        throw e;
+                    }
+                    // Like the rollback, the exception of the work is more useful than that of a broken connection.
+                }
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the row count of a {@code LIMIT ?, ?} parameter for a limit of the script API.
+     *
+     * @param  limit  the limit, 0 or less for no limit
+     * @return        the limit, or the largest row count if there is no limit
+     */
+    protected static long rowCount(int limit) {
+        // LIMIT needs a row count, so no limit is the largest one.
+        return (limit > 0) ? limit : Long.MAX_VALUE;
+    }
+
+    /**
+     * Runs the work on the prepared statement of the query from the {@link StatementCache}.
+     * <p>
+     * A prepared statement can only run one query at a time, so the work holds the lock of its statement while it
+     * executes it and reads the result. Different queries of the script run at the same time, how far they overlap on
+     * the one connection is up to the JDBC driver. Only a {@link #transaction(Transaction)} locks the whole
+     * connection. A statement the cache has closed in the meantime is prepared again.
+     *
+     * @param  sql           the compiled query
+     * @param  work          the work on the statement
+     * @param  <T>           the type of the result of the work
+     * @return               the result of the work
+     * @throws SQLException  if the query couldn't be prepared or the work failed
+     */
+    private <T> T execute(String sql, StatementWork<T> work) throws SQLException {
+        this.lock.readLock().lock();
+        try {
+            while (true) {
+                PreparedStatement statement = this.statements.prepare(sql);
+                synchronized (statement) {
+                    if (!statement.isClosed()) {
+                        statement.clearParameters();
+                        return work.run(statement);
+                    }
+                }
+            }
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    private static int[] generatedKeys(PreparedStatement statement, int count) throws SQLException {
+        int[] keys = new int[count];
+        int i = 0;
+        ResultSet result = statement.getGeneratedKeys();
+        try {
+            while (i < count && result.next()) {
+                keys[i++] = result.getInt(1);
+            }
+        } finally {
+            result.close();
+        }
+        return (i < count) ? Arrays.copyOf(keys, i) : keys;
+    }
+
+    private static void bind(PreparedStatement statement, Object[] parameters) throws SQLException {
+        for (int i = 0; i < parameters.length; i++) {
+            statement.setObject(i + 1, parameters[i]);
+        }
+    }
+
+    /**
+     * Removes the cached objects that depend on a user the script has created or changed without Bifrost.
+     *
+     * @param userid    the ID of the user
+     * @param username  the username of the user
+     * @param created   {@code true} if the user is new, {@code false} if it has been changed
+     */
+    protected void userChanged(int userid, String username, boolean created) {
+        ScriptUser user = new ScriptUser(this, userid, username, null);
+        if (getHandle() != null) {
+            ScriptUser.cleanupCache(getHandle(), user, created ? CacheCleanupReason.CREATE : CacheCleanupReason.UPDATE);
+        }
+        getCache().removeInt(CacheGroup.USER, userid);
+        if (created) {
+            getCache().clear(CacheGroup.USER_LAST_REG);
+            // Drops the "not found" results of the new username.
+            getCache().invalidate(CacheTag.ofUsername(username));
+        }
+    }
+
     /**
      * Returns the {@link DataManager} of the current script.
      *
@@ -220,9 +865,10 @@ public class Script {
      * @param  username           the username of the user
      * @param  password           the password of the user
      * @return                    {@code true} if the password matches with the username's password
+     * @throws SQLException       if a SQL exception occurred
      * @throws ScriptException  if the method is not supported by the script
      */
-    public boolean authenticate(String username, String password) throws ScriptException {
+    public boolean authenticate(String username, String password) throws SQLException, ScriptException {
         throw new ScriptException();
     }
 
@@ -256,9 +902,10 @@ public class Script {
      *
      * @param  username           the username to get the user ID from
      * @return                    user ID of {@code username}, returns {@code 0} if nothing was found
+     * @throws SQLException       if a SQL exception occurred
      * @throws ScriptException  if the method is not supported by the script
      */
-    public int getUserID(String username) throws ScriptException {
+    public int getUserID(String username) throws SQLException, ScriptException {
         throw new ScriptException();
     }
 
@@ -292,6 +939,71 @@ public class Script {
         throw new ScriptException();
     }
 
+    /**
+     * Returns the {@link ScriptUser} objects of the given user IDs.
+     * <p>
+     * Scripts that support it load all users with one query, the others load them one by one.
+     * The handle splits long lists into lists of at most {@link #USER_BATCH_SIZE} IDs.
+     *
+     * @param  userids            the user IDs to get the {@link ScriptUser} objects from
+     * @return                    a list of {@link ScriptUser} objects in no particular order,
+     *                            users that don't exist are left out
+     * @throws SQLException       if a SQL exception occurred
+     * @throws ScriptException  if the method is not supported by the script
+     * @see                       ScriptUser
+     */
+    public List<ScriptUser> getUsers(Collection<Integer> userids) throws SQLException, ScriptException {
+        List<ScriptUser> users = new ArrayList<ScriptUser>();
+        for (int userid : userids) {
+            ScriptUser user = getUser(userid);
+            if (user != null) {
+                users.add(user);
+            }
+        }
+        return users;
+    }
+
+    /**
+     * Returns a page of {@link ScriptUser} objects ordered by their ID, starting after the specified ID.
+     * <p>
+     * This is used to walk all users page by page, see {@link com.craftfire.bifrost.sql.KeysetIterator}. The
+     * query seeks to the first user of the page by its ID, so a page at the end of the table loads as fast as the
+     * first page.
+     *
+     * @param  userid           the ID of the last object of the previous page, 0 to start at the first object
+     * @param  limit            the maximum number of objects to return
+     * @return                  List with {@link ScriptUser} objects, if none are found it returns an empty List
+     * @throws SQLException     if a SQL exception occurred
+     * @throws ScriptException  if the method is not supported by the script
+     */
+    public List<ScriptUser> getUsersAfter(int userid, int limit) throws SQLException, ScriptException {
+        throw new ScriptException();
+    }
+
+    /**
+     * Returns the {@link ScriptUser} objects of the given usernames.
+     * <p>
+     * Scripts that support it load all users with one query, the others load them one by one.
+     * The handle splits long lists into lists of at most {@link #USER_BATCH_SIZE} names.
+     *
+     * @param  usernames          the usernames to get the {@link ScriptUser} objects from
+     * @return                    a list of {@link ScriptUser} objects in no particular order,
+     *                            users that don't exist are left out
+     * @throws SQLException       if a SQL exception occurred
+     * @throws ScriptException  if the method is not supported by the script
+     * @see                       ScriptUser
+     */
+    public List<ScriptUser> getUsersByName(Collection<String> usernames) throws SQLException, ScriptException {
+        List<ScriptUser> users = new ArrayList<ScriptUser>();
+        for (String username : usernames) {
+            ScriptUser user = getUser(username);
+            if (user != null) {
+                users.add(user);
+            }
+        }
+        return users;
+    }
+
     /**
      * Returns the {@link ScriptUser} object of the latest registered user.
      *
@@ -328,6 +1040,29 @@ public class Script {
         throw new ScriptException();
     }
 
+    /**
+     * Creates many {@link ScriptUser} objects with whatever values set by the user, like
+     * {@link #createUser(ScriptUser)}.
+     * <p>
+     * All users are created in one transaction, so either all or none of them are created. Scripts that can insert
+     * the rows of many users at once override this, by default the users are created one by one.
+     *
+     * @param  users            the {@link ScriptUser} objects, their IDs are set once they are created
+     * @throws SQLException     if a SQL exception occurred
+     * @throws ScriptException  if the method is not supported by the script
+     * @see                     ScriptUser
+     */
+    public void createUsers(final List<ScriptUser> users) throws SQLException, ScriptException {
+        transaction(new Transaction() {
+            @Override
+            public void run() throws SQLException, ScriptException {
+                for (ScriptUser user : users) {
+                    createUser(user);
+                }
+            }
+        });
+    }
+
     /**
      * Returns a List with {@link Group} objects.
      * <p>
@@ -347,6 +1082,24 @@ public class Script {
         throw new ScriptException();
     }
 
+    /**
+     * Returns a List with {@link Group} objects, skipping the first {@code offset} objects.
+     * <p>
+     * This is used by the cache to load only the objects it is missing. Scripts that can skip rows in their
+     * query should override this method, by default the first {@code offset + limit} objects are loaded with
+     * {@link #getGroups(int)} and the first {@code offset} objects are dropped.
+     *
+     * @param  offset           the number of objects to skip
+     * @param  limit            the limit, set to {@code 0} if you want to return all
+     * @return                  List with {@link Group} objects, if none are found it returns an empty List
+     * @throws ScriptException  if the method is not supported by the script
+     * @throws SQLException     if a SQL exception occurred
+     * @see                     #getGroups(int)
+     */
+    public List<Group> getGroups(int offset, int limit) throws SQLException, ScriptException {
+        return CachedList.skip(getGroups((limit == 0) ? 0 : offset + limit), offset);
+    }
+
     /**
      * Returns a {@code Integer} which holds the ID of the group.
      *
@@ -459,6 +1212,24 @@ public class Script {
         throw new ScriptException();
     }
 
+    /**
+     * Returns a List with {@link PrivateMessage} objects, skipping the first {@code offset} objects.
+     * <p>
+     * This is used by the cache to load only the objects it is missing. Scripts that can skip rows in their
+     * query should override this method, by default the first {@code offset + limit} objects are loaded with
+     * {@link #getPMs(int)} and the first {@code offset} objects are dropped.
+     *
+     * @param  offset           the number of objects to skip
+     * @param  limit            the limit, set to {@code 0} if you want to return all
+     * @return                  List with {@link PrivateMessage} objects, if none are found it returns an empty List
+     * @throws ScriptException  if the method is not supported by the script
+     * @throws SQLException     if a SQL exception occurred
+     * @see                     #getPMs(int)
+     */
+    public List<PrivateMessage> getPMs(int offset, int limit) throws ScriptException, SQLException {
+        return CachedList.skip(getPMs((limit == 0) ? 0 : offset + limit), offset);
+    }
+
     /**
      * Returns a List with {@link PrivateMessage} objects replying to specified private message.
      * <p>
@@ -472,12 +1243,33 @@ public class Script {
      * @param  limit              the limit, set to {@code 0} if you want to return all
      * @return                    List with {@link PrivateMessage} objects, if none are found it returns an empty List
      * @throws ScriptException  if the method is not supported by the script
+     * @throws SQLException     if a SQL exception occurred
      * @see                       PrivateMessage
      */
-    public List<PrivateMessage> getPMReplies(int pmid, int limit) throws ScriptException {
+    public List<PrivateMessage> getPMReplies(int pmid, int limit) throws ScriptException, SQLException {
         throw new ScriptException();
     }
 
+    /**
+     * Returns a List with {@link PrivateMessage} objects like {@link #getPMReplies(int, int)}, skipping the first
+     * {@code offset} objects.
+     * <p>
+     * This is used by the cache to load only the objects it is missing. Scripts that can skip rows in their query
+     * should override this method, by default the first {@code offset + limit} objects are loaded with
+     * {@link #getPMReplies(int, int)} and the first {@code offset} objects are dropped.
+     *
+     * @param  pmid             the ID of the private message
+     * @param  offset           the number of objects to skip
+     * @param  limit            the limit, set to {@code 0} if you want to return all
+     * @return                  List with {@link PrivateMessage} objects, if none are found it returns an empty List
+     * @throws ScriptException  if the method is not supported by the script
+     * @throws SQLException     if a SQL exception occurred
+     * @see                     #getPMReplies(int, int)
+     */
+    public List<PrivateMessage> getPMReplies(int pmid, int offset, int limit) throws ScriptException, SQLException {
+        return CachedList.skip(getPMReplies(pmid, (limit == 0) ? 0 : offset + limit), offset);
+    }
+
     /**
      * Returns a List with {@link PrivateMessage} objects that the user has sent.
      * <p>
@@ -498,6 +1290,27 @@ public class Script {
         throw new ScriptException();
     }
 
+    /**
+     * Returns a List with {@link PrivateMessage} objects like {@link #getPMsSent(String, int)}, skipping the first
+     * {@code offset} objects.
+     * <p>
+     * This is used by the cache to load only the objects it is missing. Scripts that can skip rows in their query
+     * should override this method, by default the first {@code offset + limit} objects are loaded with
+     * {@link #getPMsSent(String, int)} and the first {@code offset} objects are dropped.
+     *
+     * @param  username         the username to get the {@link PrivateMessage} objects from
+     * @param  offset           the number of objects to skip
+     * @param  limit            the limit, set to {@code 0} if you want to return all
+     * @return                  List with {@link PrivateMessage} objects, if none are found it returns an empty List
+     * @throws SQLException     if a SQL exception occurred
+     * @throws ScriptException  if the method is not supported by the script
+     * @see                     #getPMsSent(String, int)
+     */
+    public List<PrivateMessage> getPMsSent(String username, int offset, int limit)
+            throws SQLException, ScriptException {
+        return CachedList.skip(getPMsSent(username, (limit == 0) ? 0 : offset + limit), offset);
+    }
+
     /**
      * Returns a List with {@link PrivateMessage} objects that the user has received.
      * <p>
@@ -518,6 +1331,27 @@ public class Script {
         throw new ScriptException();
     }
 
+    /**
+     * Returns a List with {@link PrivateMessage} objects like {@link #getPMsReceived(String, int)}, skipping the first
+     * {@code offset} objects.
+     * <p>
+     * This is used by the cache to load only the objects it is missing. Scripts that can skip rows in their query
+     * should override this method, by default the first {@code offset + limit} objects are loaded with
+     * {@link #getPMsReceived(String, int)} and the first {@code offset} objects are dropped.
+     *
+     * @param  username         the username to get the {@link PrivateMessage} objects from
+     * @param  offset           the number of objects to skip
+     * @param  limit            the limit, set to {@code 0} if you want to return all
+     * @return                  List with {@link PrivateMessage} objects, if none are found it returns an empty List
+     * @throws SQLException     if a SQL exception occurred
+     * @throws ScriptException  if the method is not supported by the script
+     * @see                     #getPMsReceived(String, int)
+     */
+    public List<PrivateMessage> getPMsReceived(String username, int offset, int limit)
+            throws SQLException, ScriptException {
+        return CachedList.skip(getPMsReceived(username, (limit == 0) ? 0 : offset + limit), offset);
+    }
+
     /**
      * Returns a total amount of how many private messages are there.
      * 
@@ -545,9 +1379,10 @@ public class Script {
      * @param  username           the username to get the count from
      * @return                    the amount of how many private messages the {@code username} has sent,
      *                            returns {@code 0} if none
+     * @throws SQLException       if a SQL exception occurred
      * @throws ScriptException  if the method is not supported by the script
      */
-    public int getPMSentCount(String username) throws ScriptException {
+    public int getPMSentCount(String username) throws SQLException, ScriptException {
         throw new ScriptException();
     }
 
@@ -557,9 +1392,10 @@ public class Script {
      * @param  username           the {@code username} to get the count from
      * @return                    the amount of how many private messages the {@code username} has received,
      *                            returns {@code 0} if none
+     * @throws SQLException       if a SQL exception occurred
      * @throws ScriptException  if the method is not supported by the script
      */
-    public int getPMReceivedCount(String username) throws ScriptException {
+    public int getPMReceivedCount(String username) throws SQLException, ScriptException {
         throw new ScriptException();
     }
 
@@ -592,9 +1428,10 @@ public class Script {
      *
      * @param  username                    the username to get the IP addresses from
      * @return                             List with {@code username}'s IP addresses
+     * @throws SQLException       if a SQL exception occurred
      * @throws ScriptException  if the method is not supported by the script
      */
-    public List<String> getIPs(String username) throws ScriptException {
+    public List<String> getIPs(String username) throws SQLException, ScriptException {
         throw new ScriptException();
     }
 
@@ -609,10 +1446,46 @@ public class Script {
      *
      * @param  limit                      the limit, set to 0 if you want to return all
      * @return                             List with {@link Ban} objects, if none are found it returns an empty List
+     * @throws SQLException       if a SQL exception occurred
      * @throws ScriptException  if the method is not supported by the script
      * @see                                Ban
      */
-    public List<Ban> getBans(int limit) throws ScriptException {
+    public List<Ban> getBans(int limit) throws SQLException, ScriptException {
+        throw new ScriptException();
+    }
+
+    /**
+     * Returns a List with {@link Ban} objects, skipping the first {@code offset} objects.
+     * <p>
+     * This is used by the cache to load only the objects it is missing. Scripts that can skip rows in their
+     * query should override this method, by default the first {@code offset + limit} objects are loaded with
+     * {@link #getBans(int)} and the first {@code offset} objects are dropped.
+     *
+     * @param  offset           the number of objects to skip
+     * @param  limit            the limit, set to {@code 0} if you want to return all
+     * @return                  List with {@link Ban} objects, if none are found it returns an empty List
+     * @throws SQLException       if a SQL exception occurred
+     * @throws ScriptException  if the method is not supported by the script
+     * @see                     #getBans(int)
+     */
+    public List<Ban> getBans(int offset, int limit) throws SQLException, ScriptException {
+        return CachedList.skip(getBans((limit == 0) ? 0 : offset + limit), offset);
+    }
+
+    /**
+     * Returns a page of {@link Ban} objects ordered by their ID, starting after the specified ID.
+     * <p>
+     * This is used to walk all bans page by page, see {@link com.craftfire.bifrost.sql.KeysetIterator}.
+     * Unlike {@link #getBans(int, int)} the query doesn't skip the rows before the page, so a page at the end
+     * of the table loads as fast as the first page.
+     *
+     * @param  banid            the ID of the last object of the previous page, 0 to start at the first object
+     * @param  limit            the maximum number of objects to return
+     * @return                  List with {@link Ban} objects, if none are found it returns an empty List
+     * @throws SQLException     if a SQL exception occurred
+     * @throws ScriptException  if the method is not supported by the script
+     */
+    public List<Ban> getBansAfter(int banid, int limit) throws SQLException, ScriptException {
         throw new ScriptException();
     }
 
@@ -644,9 +1517,10 @@ public class Script {
      * Returns the complete count of how many bans that have been made.
      *
      * @return                             the amount of how many bans that have been made, returns {@code 0} if none
+     * @throws SQLException       if a SQL exception occurred
      * @throws ScriptException  if the method is not supported by the script
      */
-    public int getBanCount() throws ScriptException {
+    public int getBanCount() throws SQLException, ScriptException {
         throw new ScriptException();
     }
 
@@ -667,9 +1541,10 @@ public class Script {
      *
      * @param  username                    username to check if is registered
      * @return                             {@code true} if {@code username} is registered, {@code false} if not
+     * @throws SQLException       if a SQL exception occurred
      * @throws ScriptException  if the method is not supported by the script
      */
-    public boolean isRegistered(String username) throws ScriptException {
+    public boolean isRegistered(String username) throws SQLException, ScriptException {
         throw new ScriptException();
     }
 
@@ -677,9 +1552,10 @@ public class Script {
      * Returns the complete count of how many users the script has registered.
      *
      * @return                             the amount of how many users the script has registered, returns {@code 0} if none
+     * @throws SQLException       if a SQL exception occurred
      * @throws ScriptException  if the method is not supported by the script
      */
-    public int getUserCount() throws ScriptException {
+    public int getUserCount() throws SQLException, ScriptException {
         throw new ScriptException();
     }
 
@@ -687,9 +1563,10 @@ public class Script {
      * Returns the complete count of how many groups the script has.
      *
      * @return                             the amount of how how many groups the script has, returns {@code 0} if none
+     * @throws SQLException       if a SQL exception occurred
      * @throws ScriptException  if the method is not supported by the script
      */
-    public int getGroupCount() throws ScriptException {
+    public int getGroupCount() throws SQLException, ScriptException {
         throw new ScriptException();
     }
 
@@ -697,9 +1574,19 @@ public class Script {
      * Returns the script's home URL.
      *
      * @return                             home URL of the script
+     * @throws SQLException       if a SQL exception occurred
      * @throws ScriptException  if the method is not supported by the script
      */
-    public String getHomeURL() throws ScriptException {
+    public String getHomeURL() throws SQLException, ScriptException {
         throw new ScriptException();
     }
+
+    /**
+     * The work of a query on its locked prepared statement.
+     *
+     * @param <T>  the type of the result
+     */
+    private interface StatementWork<T> {
+        T run(PreparedStatement statement) throws SQLException;
+    }
 }
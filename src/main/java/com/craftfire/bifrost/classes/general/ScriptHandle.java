@@ -21,16 +21,35 @@ package com.craftfire.bifrost.classes.general;
 
 import java.net.URI;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import com.craftfire.commons.database.DataManager;
 import com.craftfire.commons.ip.IPAddress;
 import com.craftfire.commons.util.Version;
 import com.craftfire.commons.util.VersionRange;
 
+import com.craftfire.bifrost.cache.CacheEntry;
+import com.craftfire.bifrost.cache.CacheExpiry;
+import com.craftfire.bifrost.cache.CacheLoad;
+import com.craftfire.bifrost.cache.CacheLoader;
+import com.craftfire.bifrost.cache.CacheSegment;
+import com.craftfire.bifrost.cache.CachedList;
+import com.craftfire.bifrost.cache.ChangePoller;
+import com.craftfire.bifrost.cache.IdentityScope;
+import com.craftfire.bifrost.cache.ListLoader;
+import com.craftfire.bifrost.cache.RefreshScheduler;
 import com.craftfire.bifrost.enums.CacheCleanupReason;
 import com.craftfire.bifrost.enums.CacheGroup;
 import com.craftfire.bifrost.exceptions.ScriptException;
+import com.craftfire.bifrost.sql.KeysetIterator;
 
 /**
  * This class contains methods relevant to methods to use for a generic script.
@@ -38,7 +57,26 @@ import com.craftfire.bifrost.exceptions.ScriptException;
  * @see Script Documentation of all the methods
  */
 public class ScriptHandle {
+    /**
+     * The expiry of the total counters, the script itself changes these as well.
+     * <p>
+     * The counters are refreshed after a minute, a stale counter is served for up to ten minutes while it's refreshed.
+     */
+    public static final CacheExpiry COUNT_EXPIRY = new CacheExpiry(60, 0, 600, TimeUnit.SECONDS);
+    /**
+     * How often the total counters are refreshed ahead, in seconds, before they expire with {@link #COUNT_EXPIRY}.
+     */
+    public static final long COUNT_REFRESH_INTERVAL = 45;
+    /**
+     * How often the latest objects, like the last post, are refreshed ahead, in seconds.
+     */
+    public static final long LAST_REFRESH_INTERVAL = 30;
+    /**
+     * How often the URLs of the script are refreshed ahead, in seconds.
+     */
+    public static final long URL_REFRESH_INTERVAL = 600;
     private final int handleID;
+    private final ThreadLocal<IdentityScope> scopes = new ThreadLocal<IdentityScope>();
     private Script script;
 
     /**
@@ -51,6 +89,323 @@ public class ScriptHandle {
         this.handleID = handleID;
         this.script = script;
         this.script.setHandle(this);
+        setupCache();
+    }
+
+    /**
+     * Sets the expiry of the cache groups used by this handle.
+     * <p>
+     * This is called once from the constructor, subclasses that override this method need to call it.
+     */
+    protected void setupCache() {
+        setCountExpiry(CacheGroup.USER_COUNT);
+        setCountExpiry(CacheGroup.GROUP_COUNT);
+        setCountExpiry(CacheGroup.BAN_COUNT);
+        setCountExpiry(CacheGroup.PM_COUNT);
+        setRefreshAhead(CacheGroup.USER_LAST_REG, LAST_REFRESH_INTERVAL, lastRegUserLoader());
+        setRefreshAhead(CacheGroup.URL_HOME, URL_REFRESH_INTERVAL, homeURLLoader());
+    }
+
+    /**
+     * Makes the specified total counter group expire with {@link #COUNT_EXPIRY}.
+     * <p>
+     * The expired counter is refreshed in the background by the loader its getter passes to the cache.
+     *
+     * @param group  the {@link CacheGroup} of the counter
+     */
+    protected void setCountExpiry(CacheGroup group) {
+        getCache().setExpiry(group, COUNT_EXPIRY);
+    }
+
+    /**
+     * Refreshes the object without an ID of the specified group in the background every interval, while it is read.
+     * <p>
+     * The loader becomes the loader of the group, so the getter of the object should pass the same loader.
+     *
+     * @see   RefreshScheduler
+     * @param group     the {@link CacheGroup} of the object
+     * @param interval  the seconds between two refreshes, varied by {@link RefreshScheduler#DEFAULT_JITTER}
+     * @param loader    the {@link CacheLoader} that loads the object
+     */
+    protected void setRefreshAhead(CacheGroup group, long interval, CacheLoader<?> loader) {
+        getCache().setLoader(group, loader);
+        getRefreshScheduler().schedule(group, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Returns the {@link RefreshScheduler} that refreshes the objects of this handle ahead of their expiry.
+     *
+     * @see    Cache#getRefreshScheduler()
+     * @return the {@link RefreshScheduler}
+     */
+    public RefreshScheduler getRefreshScheduler() {
+        return getCache().getRefreshScheduler();
+    }
+
+    /**
+     * Returns the {@link ChangePoller} that finds the rows the script of this handle has written without Bifrost.
+     * <p>
+     * The poller isn't started until {@link ChangePoller#start(long, java.util.concurrent.TimeUnit)} is called.
+     *
+     * @see    Cache#getChangePoller()
+     * @return the {@link ChangePoller}
+     */
+    public ChangePoller getChangePoller() {
+        return getCache().getChangePoller();
+    }
+
+    /**
+     * Opens a new {@link IdentityScope} for the current thread, until it is closed every entity is loaded only once.
+     * <p>
+     * This keeps an operation that reads the same users, posts or boards many times from querying the script
+     * again, also when the cache doesn't keep them:
+     * <pre>
+     * try (IdentityScope scope = handle.openScope()) {
+     *     ...
+     * }
+     * </pre>
+     *
+     * @return the opened {@link IdentityScope}
+     */
+    public IdentityScope openScope() {
+        return new IdentityScope(this.scopes);
+    }
+
+    /**
+     * Returns the {@link IdentityScope} of the current thread.
+     *
+     * @return the current {@link IdentityScope}, or null if no scope is open
+     */
+    public IdentityScope getScope() {
+        return this.scopes.get();
+    }
+
+    /**
+     * Returns the entity from the current {@link IdentityScope}, or from the cache, loading it with the loader
+     * if it is not cached.
+     *
+     * @see    Cache#getInt(CacheGroup, int, CacheLoader)
+     * @param  group   the {@link CacheGroup} of the entity
+     * @param  id      the unique ID of the entity
+     * @param  loader  the {@link CacheLoader} that loads the entity if it's not cached
+     * @return         the remembered, cached or loaded entity
+     * @throws SQLException      if the loader threw a {@link SQLException}
+     * @throws ScriptException   if the loader threw a {@link ScriptException}
+     */
+    @SuppressWarnings("unchecked")
+    protected <V> V getScoped(CacheGroup group, int id, CacheLoader<V> loader) throws SQLException, ScriptException {
+        IdentityScope scope = this.scopes.get();
+        if (scope == null) {
+            return getCache().getInt(group, id, loader);
+        }
+        V entity = (V) scope.get(group, id);
+        if (entity == null) {
+            entity = getCache().getInt(group, id, loader);
+            scope.put(group, id, entity);
+        }
+        return entity;
+    }
+
+    /**
+     * Returns the entity from the current {@link IdentityScope}, or from the cache, loading it with the loader
+     * if it is not cached.
+     * <p>
+     * This is meant for the getters of script methods that don't throw a {@link SQLException}.
+     *
+     * @see    #getScoped(CacheGroup, int, CacheLoader)
+     * @param  group   the {@link CacheGroup} of the entity
+     * @param  id      the unique ID of the entity
+     * @param  loader  the {@link CacheLoader} that loads the entity if it's not cached
+     * @return         the remembered, cached or loaded entity
+     * @throws ScriptException  if the method is not supported by the script
+     */
+    protected <V> V getScopedCached(CacheGroup group, int id, CacheLoader<V> loader) throws ScriptException {
+        try {
+            return getScoped(group, id, loader);
+        } catch (SQLException e) {
+            throw new ScriptException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the object without an ID from the cache, loading it with the loader if it is not cached.
+     *
+     * @see    #getCached(CacheGroup, Object, CacheLoader)
+     * @param  group   the {@link CacheGroup} of the object
+     * @param  loader  the {@link CacheLoader} that loads the object if it's not cached
+     * @return         the cached or loaded object
+     * @throws ScriptException  if the method is not supported by the script
+     */
+    protected <V> V getCached(CacheGroup group, CacheLoader<V> loader) throws ScriptException {
+        try {
+            return getCache().get(group, loader);
+        } catch (SQLException e) {
+            throw new ScriptException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the object from the cache, loading it with the loader if it is not cached, and keeping
+     * "not found" results in the short-lived negative tier of the group.
+     *
+     * @see    Cache#get(CacheGroup, Object, CacheLoader, Object)
+     * @param  group     the {@link CacheGroup} of the object
+     * @param  id        the unique ID of the object
+     * @param  loader    the {@link CacheLoader} that loads the object if it's not cached
+     * @param  notFound  the value the loader returns if the object doesn't exist
+     * @return           the cached or loaded object
+     * @throws ScriptException  if the method is not supported by the script
+     */
+    protected <V> V getCached(CacheGroup group, Object id, CacheLoader<V> loader, V notFound) throws ScriptException {
+        try {
+            return getCache().get(group, id, loader, notFound);
+        } catch (SQLException e) {
+            throw new ScriptException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the object from the cache, loading it with the loader if it is not cached.
+     * <p>
+     * This is meant for the getters of script methods that don't throw a {@link SQLException},
+     * the other getters should use {@link Cache#get(CacheGroup, Object, CacheLoader)} directly.
+     *
+     * @see    Cache#get(CacheGroup, Object, CacheLoader)
+     * @param  group   the {@link CacheGroup} of the object
+     * @param  id      the unique ID of the object
+     * @param  loader  the {@link CacheLoader} that loads the object if it's not cached
+     * @return         the cached or loaded object
+     * @throws ScriptException  if the method is not supported by the script
+     */
+    protected <V> V getCached(CacheGroup group, Object id, CacheLoader<V> loader) throws ScriptException {
+        try {
+            return getCache().get(group, id, loader);
+        } catch (SQLException e) {
+            throw new ScriptException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the first objects of the cached list without an ID, loading only the missing tail of the list.
+     *
+     * @see    #getList(CacheGroup, Object, int, ListLoader)
+     * @param  group   the {@link CacheGroup} of the list
+     * @param  limit   the number of objects, 0 for all objects
+     * @param  loader  the {@link ListLoader} that loads the missing objects
+     * @return         the first objects of the list
+     * @throws SQLException      if the loader threw a {@link SQLException}
+     * @throws ScriptException   if the loader threw a {@link ScriptException}
+     */
+    protected <T> List<T> getList(CacheGroup group, int limit, ListLoader<T> loader)
+            throws SQLException, ScriptException {
+        return getList(group, 1, limit, loader);
+    }
+
+    /**
+     * Returns the first objects of the cached list, loading only the missing tail of the list.
+     * <p>
+     * The list is cached as a {@link CachedList}, which remembers how many objects have been loaded. A limit it
+     * covers is served from memory, otherwise the loader is asked for the objects from the end of the cached list
+     * up to the limit, and they are appended to it.
+     * <p>
+     * Only one thread extends a list at a time, like {@link Cache#get(CacheGroup, Object, CacheLoader)}. The others
+     * wait for it and then read the longer list, they only load themselves if it still doesn't cover their limit.
+     * A list that has been removed while its tail was loading is returned, but not stored.
+     *
+     * @param  group   the {@link CacheGroup} of the list
+     * @param  id      the unique ID of the list
+     * @param  limit   the number of objects, 0 for all objects
+     * @param  loader  the {@link ListLoader} that loads the missing objects
+     * @return         the first objects of the list
+     * @throws SQLException      if the loader threw a {@link SQLException}
+     * @throws ScriptException   if the loader threw a {@link ScriptException}
+     */
+    protected <T> List<T> getList(CacheGroup group, Object id, int limit, ListLoader<T> loader)
+            throws SQLException, ScriptException {
+        CacheSegment segment = getCache().getSegment(group);
+        while (true) {
+            CachedList<T> list = cachedList(group, id);
+            if (list.covers(limit)) {
+                return list.prefix(limit);
+            }
+            CacheLoad load = new CacheLoad();
+            CacheLoad running = segment.startLoad(id, load);
+            if (running != null) {
+                running.await();
+                continue;
+            }
+            try {
+                CacheEntry before = segment.getEntry(id);
+                list = cachedList(group, id);
+                if (!list.covers(limit)) {
+                    int offset = list.size();
+                    int requested = (limit == 0) ? 0 : limit - offset;
+                    list = list.append(loader.load(offset, requested), requested);
+                    if (segment.getEntry(id) == before) {
+                        getCache().put(group, id, list);
+                    }
+                }
+                load.complete(list);
+                return list.prefix(limit);
+            } catch (SQLException e) {
+                load.fail(e);
+                throw e;
+            } catch (ScriptException e) {
+                load.fail(e);
+                throw e;
+            } catch (RuntimeException e) {
+                load.fail(e);
+                throw e;
+            } catch (Error e) {
+                load.fail(e);
+                throw e;
+            } finally {
+                segment.finishLoad(id, load);
+            }
+        }
+    }
+
+    /**
+     * Returns the first objects of the cached list without an ID, loading only the missing tail of the list.
+     * <p>
+     * This is meant for the getters of script methods that don't throw a {@link SQLException}.
+     *
+     * @see    #getList(CacheGroup, Object, int, ListLoader)
+     * @param  group   the {@link CacheGroup} of the list
+     * @param  limit   the number of objects, 0 for all objects
+     * @param  loader  the {@link ListLoader} that loads the missing objects
+     * @return         the first objects of the list
+     * @throws ScriptException  if the method is not supported by the script
+     */
+    protected <T> List<T> getCachedList(CacheGroup group, int limit, ListLoader<T> loader) throws ScriptException {
+        return getCachedList(group, 1, limit, loader);
+    }
+
+    /**
+     * Returns the first objects of the cached list, loading only the missing tail of the list.
+     * <p>
+     * This is meant for the getters of script methods that don't throw a {@link SQLException}.
+     *
+     * @see    #getList(CacheGroup, Object, int, ListLoader)
+     * @param  group   the {@link CacheGroup} of the list
+     * @param  id      the unique ID of the list
+     * @param  limit   the number of objects, 0 for all objects
+     * @param  loader  the {@link ListLoader} that loads the missing objects
+     * @return         the first objects of the list
+     * @throws ScriptException  if the method is not supported by the script
+     */
+    protected <T> List<T> getCachedList(CacheGroup group, Object id, int limit, ListLoader<T> loader) throws ScriptException {
+        try {
+            return getList(group, id, limit, loader);
+        } catch (SQLException e) {
+            throw new ScriptException(e.getMessage(), e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> CachedList<T> cachedList(CacheGroup group, Object id) {
+        Object cached = getCache().get(group, id);
+        return (cached instanceof CachedList) ? (CachedList<T>) cached : new CachedList<T>();
     }
 
     /**
@@ -198,7 +553,11 @@ public class ScriptHandle {
      * @see Script#authenticate(String, String) Doucmentation for this method
      */
     public boolean authenticate(String username, String password) throws ScriptException {
-        return this.script.authenticate(username, password);
+        try {
+            return this.script.authenticate(username, password);
+        } catch (SQLException e) {
+            throw new ScriptException(e.getMessage(), e);
+        }
     }
 
     /**
@@ -212,56 +571,184 @@ public class ScriptHandle {
      * @see Script#getUsername(int) Documentation for this method
      */
     public String getUsername(int userid) throws ScriptException, SQLException {
-        if (this.script.getCache().contains(CacheGroup.USER_USERNAME, userid)) {
-            return (String) this.script.getCache().get(CacheGroup.USER_USERNAME, userid);
-        }
-        String username = this.script.getUsername(userid);
-        this.script.getCache().put(CacheGroup.USER_USERNAME, username, userid);
-        return username;
+        return getCache().getInt(CacheGroup.USER_USERNAME, userid, new CacheLoader<String>() {
+            @Override
+            public String load(Object id) throws ScriptException, SQLException {
+                return getScript().getUsername((Integer) id);
+            }
+        });
     }
 
     /**
      * @see Script#getUserID(String) Documentation for this method
      */
     public int getUserID(String username) throws ScriptException {
-        if (this.script.getCache().contains(CacheGroup.USER_ID, username)) {
-            return (Integer) this.script.getCache().get(CacheGroup.USER_ID, username);
-        }
-        int userID = this.script.getUserID(username);
-        this.script.getCache().put(CacheGroup.USER_ID, userID, username);
-        return userID;
+        return getCached(CacheGroup.USER_ID, username, new CacheLoader<Integer>() {
+            @Override
+            public Integer load(Object id) throws ScriptException, SQLException {
+                return getScript().getUserID((String) id);
+            }
+        }, 0);
     }
 
     /**
      * @see Script#getUser(String) Documentation for this method
      */
     public ScriptUser getUser(String username) throws ScriptException, SQLException {
-        int id = this.script.getUserID(username);
-        return this.getUser(id);
+        return this.getUser(getUserID(username));
     }
 
     /**
      * @see Script#getUser(int) Documentation for this method
      */
     public ScriptUser getUser(int userid) throws ScriptException, SQLException {
-        if (ScriptUser.hasCache(this, userid)) {
-            return ScriptUser.getCache(this, userid);
+        return getScoped(CacheGroup.USER, userid, new CacheLoader<ScriptUser>() {
+            @Override
+            public ScriptUser load(Object id) throws ScriptException, SQLException {
+                ScriptUser user = getScript().getUser((Integer) id);
+                ScriptUser.addCache(ScriptHandle.this, (Integer) id, user);
+                return user;
+            }
+        });
+    }
+
+    /**
+     * Returns the users of the given IDs, reading the cached users first and loading the others with as few
+     * queries as possible, see {@link Script#getUsers(Collection)}.
+     * <p>
+     * IDs that don't exist are kept in the negative tier of {@link CacheGroup#USER}, so they expire like the other
+     * "not found" results and {@link #getUser(int)} still asks the script for them.
+     *
+     * @param  userids          the IDs of the users
+     * @return                  the users in the order of their IDs, users that don't exist are left out
+     * @throws ScriptException  if the method is not supported by the script
+     * @throws SQLException     if a SQL exception occurred
+     */
+    public List<ScriptUser> getUsers(Collection<Integer> userids) throws ScriptException, SQLException {
+        Set<Integer> ids = new LinkedHashSet<Integer>(userids);
+        Map<Integer, Object> found = new HashMap<Integer, Object>();
+        IdentityScope scope = this.scopes.get();
+        if (scope != null) {
+            for (int userid : ids) {
+                Object user = scope.get(CacheGroup.USER, userid);
+                if (user != null) {
+                    found.put(userid, user);
+                }
+            }
+        }
+        List<Integer> missing = new ArrayList<Integer>(ids);
+        missing.removeAll(found.keySet());
+        found.putAll(getCache().getAll(CacheGroup.USER, missing));
+        missing.removeAll(found.keySet());
+        for (int from = 0; from < missing.size(); from += Script.USER_BATCH_SIZE) {
+            List<Integer> chunk = missing.subList(from, Math.min(from + Script.USER_BATCH_SIZE, missing.size()));
+            for (ScriptUser user : getScript().getUsers(chunk)) {
+                ScriptUser.addCache(this, user.getID(), user);
+                found.put(user.getID(), user);
+            }
+            for (int userid : chunk) {
+                if (!found.containsKey(userid)) {
+                    getCache().putNotFound(CacheGroup.USER, userid, null);
+                }
+            }
+        }
+        List<ScriptUser> users = new ArrayList<ScriptUser>();
+        for (int userid : ids) {
+            ScriptUser user = (ScriptUser) found.get(userid);
+            if (user != null) {
+                users.add(user);
+                if (scope != null) {
+                    scope.put(CacheGroup.USER, userid, user);
+                }
+            }
         }
-        ScriptUser user = this.script.getUser(userid);
-        ScriptUser.addCache(this, userid, user);
-        return user;
+        return users;
+    }
+
+    /**
+     * Returns the users of the given usernames, reading the cached users first and loading the others with as few
+     * queries as possible, see {@link Script#getUsersByName(Collection)}.
+     *
+     * @param  usernames        the usernames of the users
+     * @return                  the users in the order of their usernames, users that don't exist are left out
+     * @throws ScriptException  if the method is not supported by the script
+     * @throws SQLException     if a SQL exception occurred
+     */
+    public List<ScriptUser> getUsersByName(Collection<String> usernames) throws ScriptException, SQLException {
+        Set<String> names = new LinkedHashSet<String>(usernames);
+        Map<String, Object> userids = getCache().getAll(CacheGroup.USER_ID, names);
+        List<String> missing = new ArrayList<String>();
+        for (String username : names) {
+            if (!userids.containsKey(username)) {
+                missing.add(username);
+            }
+        }
+        for (int from = 0; from < missing.size(); from += Script.USER_BATCH_SIZE) {
+            List<String> chunk = missing.subList(from, Math.min(from + Script.USER_BATCH_SIZE, missing.size()));
+            // The database compares the names without their case, so the cache does the same.
+            Map<String, ScriptUser> byName = new HashMap<String, ScriptUser>();
+            for (ScriptUser user : getScript().getUsersByName(chunk)) {
+                ScriptUser.addCache(this, user.getID(), user);
+                byName.put(user.getUsername().toLowerCase(), user);
+            }
+            for (String username : chunk) {
+                ScriptUser user = byName.get(username.toLowerCase());
+                if (user != null) {
+                    getCache().put(CacheGroup.USER_ID, username, user.getID());
+                    userids.put(username, user.getID());
+                } else {
+                    getCache().putNotFound(CacheGroup.USER_ID, username, 0);
+                }
+            }
+        }
+        Set<Integer> ids = new LinkedHashSet<Integer>();
+        for (String username : names) {
+            Object userid = userids.get(username);
+            if (userid != null && (Integer) userid != 0) {
+                ids.add((Integer) userid);
+            }
+        }
+        // The loaded users have been cached, so only the users of cached IDs may have to be loaded.
+        return getUsers(ids);
+    }
+
+    /**
+     * Walks all users in the order of their IDs, loading {@code pageSize} users at a time with
+     * {@link Script#getUsersAfter(int, int)}.
+     * <p>
+     * The users bypass the cache, so walking a large table only keeps one page in memory.
+     *
+     * @param  pageSize  the number of users loaded at once
+     * @return           the iterator over the users, see {@link KeysetIterator} for how it reports errors
+     */
+    public Iterator<ScriptUser> iterateUsers(int pageSize) {
+        return new KeysetIterator<ScriptUser>(pageSize) {
+            @Override
+            protected List<ScriptUser> load(int after, int limit) throws SQLException, ScriptException {
+                return getScript().getUsersAfter(after, limit);
+            }
+
+            @Override
+            protected int getKey(ScriptUser user) {
+                return user.getID();
+            }
+        };
     }
 
     /**
      * @see Script#getLastRegUser() Documentation for this method
      */
     public ScriptUser getLastRegUser() throws ScriptException, SQLException {
-        if (this.script.getCache().contains(CacheGroup.USER_LAST_REG)) {
-            return (ScriptUser) this.script.getCache().get(CacheGroup.USER_LAST_REG);
-        }
-        ScriptUser user = this.script.getLastRegUser();
-        this.script.getCache().put(CacheGroup.USER_LAST_REG, user);
-        return user;
+        return getCache().get(CacheGroup.USER_LAST_REG, lastRegUserLoader());
+    }
+
+    private CacheLoader<ScriptUser> lastRegUserLoader() {
+        return new CacheLoader<ScriptUser>() {
+            @Override
+            public ScriptUser load(Object id) throws ScriptException, SQLException {
+                return getScript().getLastRegUser();
+            }
+        };
     }
 
     /**
@@ -282,71 +769,74 @@ public class ScriptHandle {
         ScriptUser.addCache(this, user);
     }
 
+    /**
+     * @see Script#createUsers(List) Documentation for this method
+     */
+    public void createUsers(List<ScriptUser> users) throws SQLException, ScriptException {
+        this.script.createUsers(users);
+        for (ScriptUser user : users) {
+            ScriptUser.cleanupCache(this, user, CacheCleanupReason.CREATE);
+            ScriptUser.addCache(this, user);
+        }
+    }
+
     /**
      * @see Script#getGroups(int) Documentation for this method
      */
-    @SuppressWarnings("unchecked")
     public List<Group> getGroups(int limit) throws SQLException, ScriptException {
-        if (this.script.getCache().contains(CacheGroup.GROUP_LIST)) {
-            List<Group> groups = (List<Group>) this.script.getCache().get(CacheGroup.GROUP_LIST);
-            if (groups.size() == ((limit == 0) ? getGroupCount() : limit)) {
-                return groups;
-            } else if ((groups.size() > limit) && (limit != 0)) {
-                return groups.subList(0, limit);
+        return getList(CacheGroup.GROUP_LIST, limit, new ListLoader<Group>() {
+            @Override
+            public List<Group> load(int offset, int count) throws SQLException, ScriptException {
+                return getScript().getGroups(offset, count);
             }
-        }
-        List<Group> groups = this.script.getGroups(limit);
-        this.script.getCache().put(CacheGroup.GROUP_LIST, groups);
-        return groups;
+        });
     }
 
     /**
      * @see Script#getGroupID(String) Documentation for this method
      */
     public int getGroupID(String group) throws ScriptException {
-        if (this.script.getCache().contains(CacheGroup.GROUP_ID, group)) {
-            return (Integer) this.script.getCache().get(CacheGroup.GROUP_ID, group);
-        }
-        int groupID = this.getGroupID(group);
-        this.script.getCache().put(CacheGroup.GROUP_ID, groupID, group);
-        return groupID;
+        return getCached(CacheGroup.GROUP_ID, group, new CacheLoader<Integer>() {
+            @Override
+            public Integer load(Object id) throws ScriptException, SQLException {
+                return getScript().getGroupID((String) id);
+            }
+        }, 0);
     }
 
     /**
      * @see Script#getGroup(int) Documentation for this method
      */
     public Group getGroup(int groupID) throws ScriptException, SQLException {
-        if (Group.hasCache(this, groupID)) {
-            return Group.getCache(this, groupID);
-        }
-        Group group = this.script.getGroup(groupID);
-        Group.addCache(this, group);
-        return group;
+        return getScoped(CacheGroup.GROUP, groupID, new CacheLoader<Group>() {
+            @Override
+            public Group load(Object id) throws ScriptException, SQLException {
+                Group group = getScript().getGroup((Integer) id);
+                if (group != null) {
+                    Group.addCache(ScriptHandle.this, group);
+                }
+                return group;
+            }
+        });
     }
 
     /**
      * @see Script#getGroup(String) Documentation for this method
      */
     public Group getGroup(String groupString) throws ScriptException, SQLException {
-        if (Group.hasCache(this, groupString)) {
-            return Group.getCache(this, groupString);
-        }
-        Group group = this.script.getGroup(groupString);
-        Group.addCache(this, group);
-        return group;
+        return getGroup(getGroupID(groupString));
     }
 
     /**
      * @see Script#getUserGroups(String) Documentation for this method
      */
-    @SuppressWarnings("unchecked")
     public List<Group> getUserGroups(String username) throws ScriptException, SQLException {
-        if (this.script.getCache().contains(CacheGroup.USER_GROUP, username)) {
-            return (List<Group>) this.script.getCache().get(CacheGroup.USER_GROUP, username);
-        }
-        List<Group> groups = this.script.getUserGroups(username);
-        this.script.getCache().put(CacheGroup.USER_GROUP, username, groups);
-        return groups;
+        return getCache().get(CacheGroup.USER_GROUP, username, new CacheLoader<List<Group>>() {
+            @Override
+            public List<Group> load(Object id) throws ScriptException, SQLException {
+                return getScript().getUserGroups((String) id);
+            }
+        });
     }
 
     /**
@@ -371,132 +861,112 @@ public class ScriptHandle {
      * @see Script#getPM(int) Documentation for this method
      */
     public PrivateMessage getPM(int pmid) throws ScriptException, SQLException {
-        if (PrivateMessage.hasCache(this, pmid)) {
-            return PrivateMessage.getCache(this, pmid);
-        }
-        PrivateMessage pm = this.script.getPM(pmid);
-        PrivateMessage.addCache(this, pm);
-        return pm;
+        return getScoped(CacheGroup.PM, pmid, new CacheLoader<PrivateMessage>() {
+            @Override
+            public PrivateMessage load(Object id) throws ScriptException, SQLException {
+                PrivateMessage pm = getScript().getPM((Integer) id);
+                if (pm != null) {
+                    PrivateMessage.addCache(ScriptHandle.this, pm);
+                }
+                return pm;
+            }
+        });
     }
 
     /**
      * @see Script#getPMs(int) Documentation for this method
      */
-    @SuppressWarnings("unchecked")
     public List<PrivateMessage> getPMs(int limit) throws ScriptException, SQLException {
-        if (getCache().contains(CacheGroup.PM_LIST)) {
-            List<PrivateMessage> pms = (List<PrivateMessage>) getCache().get(CacheGroup.PM_LIST);
-            if (pms.size() == ((limit == 0) ? getPMCount() : limit)) {
-                return pms;
-            } else if ((pms.size() > limit) && (limit != 0)) {
-                return pms.subList(0, limit);
+        return getList(CacheGroup.PM_LIST, limit, new ListLoader<PrivateMessage>() {
+            @Override
+            public List<PrivateMessage> load(int offset, int count) throws ScriptException, SQLException {
+                return getScript().getPMs(offset, count);
             }
-        }
-        List<PrivateMessage> pms = this.script.getPMs(limit);
-        getCache().put(CacheGroup.PM_LIST, pms);
-        return pms;
+        });
     }
 
     /**
      * @see Script#getPMReplies(int, int) Documentation for this method
      */
-    @SuppressWarnings("unchecked")
-    public List<PrivateMessage> getPMReplies(int pmid, int limit) throws ScriptException {
-        if (getCache().contains(CacheGroup.PM_REPLIES, pmid) && (limit != 0)) {
-            List<PrivateMessage> pms = (List<PrivateMessage>) getCache().get(CacheGroup.PM_REPLIES, pmid);
-            if (pms.size() == ((limit == 0) ? getPMReplyCount(pmid) : limit)) {
-                return pms;
-            } else if ((pms.size() > limit) && (limit != 0)) {
-                return pms.subList(0, limit);
+    public List<PrivateMessage> getPMReplies(final int pmid, int limit) throws ScriptException {
+        return getCachedList(CacheGroup.PM_REPLIES, pmid, limit, new ListLoader<PrivateMessage>() {
+            @Override
+            public List<PrivateMessage> load(int offset, int count) throws ScriptException, SQLException {
+                return getScript().getPMReplies(pmid, offset, count);
             }
-        }
-        List<PrivateMessage> pms = this.script.getPMReplies(pmid, limit);
-        getCache().put(CacheGroup.PM_REPLIES, pmid, pms);
-        return pms;
+        });
     }
 
     /**
      * @see Script#getPMsSent(String, int) Documentation for this method
      */
-    @SuppressWarnings("unchecked")
-    public List<PrivateMessage> getPMsSent(String username, int limit) throws ScriptException, SQLException {
-        if (this.script.getCache().contains(CacheGroup.PM_SENT, username)) {
-            List<PrivateMessage> pms = (List<PrivateMessage>) this.script.getCache().get(CacheGroup.PM_RECEIVED, username);
-            if (pms.size() == ((limit == 0) ? getPMSentCount(username) : limit)) {
-                return pms;
-            } else if ((pms.size() > limit) && (limit != 0)) {
-                return pms.subList(0, limit);
+    public List<PrivateMessage> getPMsSent(final String username, int limit) throws ScriptException, SQLException {
+        return getList(CacheGroup.PM_SENT, username, limit, new ListLoader<PrivateMessage>() {
+            @Override
+            public List<PrivateMessage> load(int offset, int count) throws ScriptException, SQLException {
+                return getScript().getPMsSent(username, offset, count);
             }
-        }
-        List<PrivateMessage> pms = this.script.getPMsSent(username, limit);
-        this.script.getCache().put(CacheGroup.PM_SENT, username, pms);
-        return pms;
+        });
     }
 
     /**
      * @see Script#getPMsReceived(String, int) Documentation for this method
      */
-    @SuppressWarnings("unchecked")
-    public List<PrivateMessage> getPMsReceived(String username, int limit) throws ScriptException, SQLException {
-        if (this.script.getCache().contains(CacheGroup.PM_RECEIVED, username)) {
-            List<PrivateMessage> pms = (List<PrivateMessage>) this.script.getCache().get(CacheGroup.PM_RECEIVED, username);
-            if (pms.size() == ((limit == 0) ? getPMReceivedCount(username) : limit)) {
-                return pms;
-            } else if ((pms.size() > limit) && (limit != 0)) {
-                return pms.subList(0, limit);
+    public List<PrivateMessage> getPMsReceived(final String username, int limit) throws ScriptException, SQLException {
+        return getList(CacheGroup.PM_RECEIVED, username, limit, new ListLoader<PrivateMessage>() {
+            @Override
+            public List<PrivateMessage> load(int offset, int count) throws ScriptException, SQLException {
+                return getScript().getPMsReceived(username, offset, count);
             }
-        }
-        List<PrivateMessage> pms = this.script.getPMsSent(username, limit);
-        this.script.getCache().put(CacheGroup.PM_RECEIVED, username, pms);
-        return pms;
+        });
     }
 
     /**
      * @see Script#getPMCount() Documentation for this method
      */
     public int getPMCount() throws ScriptException {
-        if (getCache().contains(CacheGroup.PM_COUNT)) {
-            return (Integer) getCache().get(CacheGroup.PM_COUNT);
-        }
-        int count = this.script.getPMCount();
-        getCache().put(CacheGroup.PM_COUNT, count);
-        return count;
+        return getCached(CacheGroup.PM_COUNT, new CacheLoader<Integer>() {
+            @Override
+            public Integer load(Object id) throws ScriptException {
+                return getScript().getPMCount();
+            }
+        });
     }
 
     /**
      * @see Script#getPMReplyCount(int) Documentation for this method
      */
     public int getPMReplyCount(int pmid) throws ScriptException {
-        if (getCache().contains(CacheGroup.PM_REPLY_COUNT, pmid)) {
-            return (Integer) getCache().get(CacheGroup.PM_REPLY_COUNT, pmid);
-        }
-        int count = this.script.getPMReplyCount(pmid);
-        getCache().put(CacheGroup.PM_REPLY_COUNT, pmid, count);
-        return count;
+        return getCached(CacheGroup.PM_REPLY_COUNT, pmid, new CacheLoader<Integer>() {
+            @Override
+            public Integer load(Object id) throws ScriptException {
+                return getScript().getPMReplyCount((Integer) id);
+            }
+        });
     }
 
     /**
      * @see Script#getPMSentCount(String) Documentation for this method
      */
     public int getPMSentCount(String username) throws ScriptException {
-        if (this.script.getCache().contains(CacheGroup.PM_SENT_COUNT, username)) {
-            return (Integer) this.script.getCache().get(CacheGroup.PM_SENT_COUNT, username);
-        }
-        int count = this.script.getPMSentCount(username);
-        this.script.getCache().put(CacheGroup.PM_SENT_COUNT, username, count);
-        return count;
+        return getCached(CacheGroup.PM_SENT_COUNT, username, new CacheLoader<Integer>() {
+            @Override
+            public Integer load(Object id) throws ScriptException, SQLException {
+                return getScript().getPMSentCount((String) id);
+            }
+        });
     }
 
     /**
      * @see Script#getPMReceivedCount(String) Documentation for this method
      */
     public int getPMReceivedCount(String username) throws ScriptException {
-        if (this.script.getCache().contains(CacheGroup.PM_RECEIVED_COUNT, username)) {
-            return (Integer) this.script.getCache().get(CacheGroup.PM_RECEIVED_COUNT, username);
-        }
-        int count = this.script.getPMReceivedCount(username);
-        this.script.getCache().put(CacheGroup.PM_RECEIVED_COUNT, username, count);
-        return count;
+        return getCached(CacheGroup.PM_RECEIVED_COUNT, username, new CacheLoader<Integer>() {
+            @Override
+            public Integer load(Object id) throws ScriptException, SQLException {
+                return getScript().getPMReceivedCount((String) id);
+            }
+        });
     }
 
     /**
@@ -521,55 +991,71 @@ public class ScriptHandle {
      * @see Script#getUserCount() Documentation for this method
      */
     public int getUserCount() throws ScriptException {
-        if (this.script.getCache().contains(CacheGroup.USER_COUNT)) {
-            return (Integer) this.script.getCache().get(CacheGroup.USER_COUNT);
-        }
-        int count = this.script.getUserCount();
-        this.script.getCache().put(CacheGroup.USER_COUNT, count);
-        return count;
+        return getCached(CacheGroup.USER_COUNT, new CacheLoader<Integer>() {
+            @Override
+            public Integer load(Object id) throws ScriptException, SQLException {
+                return getScript().getUserCount();
+            }
+        });
     }
 
     /**
      * @see Script#getGroupCount() Documentation for this method
      */
     public int getGroupCount() throws ScriptException {
-        if (this.script.getCache().contains(CacheGroup.GROUP_COUNT)) {
-            return (Integer) this.script.getCache().get(CacheGroup.GROUP_COUNT);
-        }
-        int count = this.script.getGroupCount();
-        this.script.getCache().put(CacheGroup.GROUP_COUNT, count);
-        return count;
+        return getCached(CacheGroup.GROUP_COUNT, new CacheLoader<Integer>() {
+            @Override
+            public Integer load(Object id) throws ScriptException, SQLException {
+                return getScript().getGroupCount();
+            }
+        });
     }
 
     /**
      * @see Script#getIPs(String) Documentation for this method
      */
-    @SuppressWarnings("unchecked")
     public List<String> getIPs(String username) throws ScriptException {
-        if (this.script.getCache().contains(CacheGroup.USER_IP, username)) {
-            return (List<String>) this.script.getCache().get(CacheGroup.USER_IP, username);
-        }
-        List<String> ips = this.script.getIPs(username);
-        this.script.getCache().put(CacheGroup.USER_IP, ips, username);
-        return ips;
+        return getCached(CacheGroup.USER_IP, username, new CacheLoader<List<String>>() {
+            @Override
+            public List<String> load(Object id) throws ScriptException, SQLException {
+                return getScript().getIPs((String) id);
+            }
+        });
     }
 
     /**
      * @see Script#getBans(int) Documentation for this method
      */
-    @SuppressWarnings("unchecked")
     public List<Ban> getBans(int limit) throws ScriptException {
-        if (this.script.getCache().contains(CacheGroup.BAN_LIST)) {
-            List<Ban> bans = (List<Ban>) this.script.getCache().get(CacheGroup.BAN_LIST);
-            if (bans.size() == ((limit == 0) ? getBanCount() : limit)) {
-                return bans;
-            } else if ((bans.size() > limit) && (limit != 0)) {
-                return bans.subList(0, limit);
+        return getCachedList(CacheGroup.BAN_LIST, limit, new ListLoader<Ban>() {
+            @Override
+            public List<Ban> load(int offset, int count) throws ScriptException, SQLException {
+                return getScript().getBans(offset, count);
             }
-        }
-        List<Ban> bans = this.script.getBans(limit);
-        this.script.getCache().put(CacheGroup.BAN_LIST, bans);
-        return bans;
+        });
+    }
+
+    /**
+     * Walks all bans in the order of their IDs, loading {@code pageSize} bans at a time with
+     * {@link Script#getBansAfter(int, int)}.
+     * <p>
+     * The bans bypass the cache, so walking a large table only keeps one page in memory.
+     *
+     * @param  pageSize  the number of bans loaded at once
+     * @return           the iterator over the bans, see {@link KeysetIterator} for how it reports errors
+     */
+    public Iterator<Ban> iterateBans(int pageSize) {
+        return new KeysetIterator<Ban>(pageSize) {
+            @Override
+            protected List<Ban> load(int after, int limit) throws SQLException, ScriptException {
+                return getScript().getBansAfter(after, limit);
+            }
+
+            @Override
+            protected int getKey(Ban ban) {
+                return ban.getID();
+            }
+        };
     }
 
     /**
@@ -594,47 +1080,51 @@ public class ScriptHandle {
      * @see Script#getBanCount() Documentation for this method
      */
     public int getBanCount() throws ScriptException {
-        if (this.script.getCache().contains(CacheGroup.BAN_COUNT)) {
-            return (Integer) this.script.getCache().get(CacheGroup.BAN_COUNT);
-        }
-        int count = this.script.getBanCount();
-        this.script.getCache().put(CacheGroup.BAN_COUNT, count);
-        return count;
+        return getCached(CacheGroup.BAN_COUNT, new CacheLoader<Integer>() {
+            @Override
+            public Integer load(Object id) throws ScriptException, SQLException {
+                return getScript().getBanCount();
+            }
+        });
     }
 
     /**
      * @see Script#isBanned(String) Documentation for this method
      */
     public boolean isBanned(String string) throws ScriptException, SQLException {
-        if (this.script.getCache().contains(CacheGroup.IS_BANNED, string)) {
-            return (Boolean) this.script.getCache().get(CacheGroup.IS_BANNED, string);
-        }
-        boolean banned = this.script.isBanned(string);
-        this.script.getCache().put(CacheGroup.IS_BANNED, banned, string);
-        return banned;
+        return getCache().get(CacheGroup.IS_BANNED, string, new CacheLoader<Boolean>() {
+            @Override
+            public Boolean load(Object id) throws ScriptException, SQLException {
+                return getScript().isBanned((String) id);
+            }
+        });
     }
 
     /**
      * @see Script#isRegistered(String) Documentation for this method
      */
     public boolean isRegistered(String username) throws ScriptException {
-        if (this.script.getCache().contains(CacheGroup.IS_REGISTERED, username)) {
-            return (Boolean) this.script.getCache().get(CacheGroup.IS_REGISTERED, username);
-        }
-        boolean registered = this.script.isRegistered(username);
-        this.script.getCache().put(CacheGroup.IS_REGISTERED, registered, username);
-        return registered;
+        return getCached(CacheGroup.IS_REGISTERED, username, new CacheLoader<Boolean>() {
+            @Override
+            public Boolean load(Object id) throws ScriptException, SQLException {
+                return getScript().isRegistered((String) id);
+            }
+        }, false);
     }
 
     /**
      * @see Script#getHomeURL() Documentation for this method
      */
     public String getHomeURL() throws ScriptException {
-        if (this.script.getCache().contains(CacheGroup.URL_HOME)) {
-            return (String) this.script.getCache().get(CacheGroup.URL_HOME);
-        }
-        String url = this.getScript().getHomeURL();
-        this.script.getCache().put(CacheGroup.URL_HOME, url);
-        return url;
+        return getCached(CacheGroup.URL_HOME, homeURLLoader());
+    }
+
+    private CacheLoader<String> homeURLLoader() {
+        return new CacheLoader<String>() {
+            @Override
+            public String load(Object id) throws ScriptException, SQLException {
+                return getScript().getHomeURL();
+            }
+        };
     }
 }
@@ -26,6 +26,8 @@ import java.util.List;
 
 import com.craftfire.commons.CraftCommons;
 
+import com.craftfire.bifrost.cache.CacheTag;
+import com.craftfire.bifrost.cache.SizeEstimator;
 import com.craftfire.bifrost.enums.CacheCleanupReason;
 import com.craftfire.bifrost.enums.CacheGroup;
 import com.craftfire.bifrost.enums.Gender;
@@ -578,6 +580,24 @@ public class ScriptUser extends GenericMethods {
         getHandle().createUser(this);
     }
 
+    /**
+     * Returns the tag of the cached objects that hold this user, or are cached by the username of the user.
+     *
+     * @return the {@link CacheTag} of the user, or null if the user has no username
+     */
+    @Override
+    public CacheTag getCacheTag() {
+        return (getUsername() == null) ? null : new CacheTag(CacheTag.Kind.USER, getUsername());
+    }
+
+    @Override
+    public long estimateSize() {
+        return super.estimateSize() + 80 + SizeEstimator.estimate(this.username, this.title, this.nickname, this.realname,
+                this.firstname, this.lastname, this.email, this.password, this.passwordsalt, this.statusmessage,
+                this.avatarurl, this.profileurl, this.regip, this.lastip) + SizeEstimator.estimate(this.regdate)
+                + SizeEstimator.estimate(this.lastlogin) + SizeEstimator.estimate(this.birthday);
+    }
+
     /**
      * Returns {@code true} if the handle contains a user cache with the given id parameter,
      * {@code false} if not.
@@ -590,6 +610,18 @@ public class ScriptUser extends GenericMethods {
         return handle.getCache().contains(CacheGroup.USER, id);
     }
 
+    /**
+     * Returns {@code true} if the handle contains a user cache with the given numeric id parameter,
+     * {@code false} if not.
+     *
+     * @param  handle  the script handle
+     * @param  id      the id of the object to look for
+     * @return         {@code true} if contains, {@code false} if not
+     */
+    public static boolean hasCache(ScriptHandle handle, int id) {
+        return handle.getCache().containsInt(CacheGroup.USER, id);
+    }
+
     /**
      * Adds a ScriptUser to the cache with the given script handle.
      *
@@ -610,10 +642,11 @@ public class ScriptUser extends GenericMethods {
     public static void addCache(ScriptHandle handle, int id, ScriptUser scriptUser) {
         if (scriptUser == null) {
             if (id != 0) {
-                handle.getCache().putMetadatable(CacheGroup.USER, id, scriptUser);
+                handle.getCache().putMetadatableInt(CacheGroup.USER, id, scriptUser);
             }
             return;
         }
+        handle.getCache().putMetadatableInt(CacheGroup.USER, scriptUser.getID(), scriptUser);
         handle.getCache().setMetadata(CacheGroup.USER, scriptUser.getID(), "bifrost-cache.old-username", scriptUser.getUsername());
     }
 
@@ -631,6 +664,20 @@ public class ScriptUser extends GenericMethods {
         return null;
     }
 
+    /**
+     * Returns the ScriptUser object by the given numeric id if found, returns {@code null} if no cache was found.
+     *
+     * @param  handle  the script handle
+     * @param  id      the id of the user
+     * @return         ScriptUser object if cache was found, {@code null} if no cache was found
+     */
+    public static ScriptUser getCache(ScriptHandle handle, int id) {
+        if (handle.getCache().containsInt(CacheGroup.USER, id)) {
+            return (ScriptUser) handle.getCache().getInt(CacheGroup.USER, id);
+        }
+        return null;
+    }
+
     /**
      * Removes outdated cache elements related to given {@code user} from cache.
      * <p>
@@ -643,10 +690,7 @@ public class ScriptUser extends GenericMethods {
      * @see           Cache
      */
     public static void cleanupCache(ScriptHandle handle, ScriptUser user, CacheCleanupReason reason) {
-        handle.getCache().remove(CacheGroup.USER_ID, user.getUsername());
-        handle.getCache().remove(CacheGroup.USER_USERNAME, user.getID());
-        handle.getCache().remove(CacheGroup.IS_BANNED, user.getUsername());
-        handle.getCache().remove(CacheGroup.IS_REGISTERED, user.getUsername());
+        handle.getCache().invalidate(user.getCacheTag());
         switch (reason) {
         case CREATE:
             handle.getCache().clear(CacheGroup.USER_COUNT);
@@ -655,40 +699,15 @@ public class ScriptUser extends GenericMethods {
             handle.getCache().clear(CacheGroup.USER_COUNT);
             /* Passes through */
         case UPDATE:
+            // The groups of the user may have been changed with it.
+            handle.getCache().invalidate(new CacheTag(CacheTag.Kind.USER_GROUPS, user.getUsername()));
             Object oldUsername = handle.getCache().getMetadata(CacheGroup.USER, user.getID(), "bifrost-cache.old-username");
             if (!user.getUsername().equals(oldUsername)) {
-                handle.getCache().remove(CacheGroup.USER_IP, user.getUsername());
-                handle.getCache().remove(CacheGroup.ARTICLE_COUNT_USER, user.getUsername());
-                handle.getCache().remove(CacheGroup.ARTICLE_LIST_USER, user.getUsername());
-                handle.getCache().remove(CacheGroup.ARTICLE_LAST_USER, user.getUsername());
-                handle.getCache().remove(CacheGroup.COMMENT_COUNT_USER, user.getUsername());
-                handle.getCache().remove(CacheGroup.COMMENT_LIST_USER, user.getUsername());
-                handle.getCache().remove(CacheGroup.COMMENT_LAST_USER, user.getUsername());
-                handle.getCache().remove(CacheGroup.POST_COUNT, user.getUsername());
-                handle.getCache().remove(CacheGroup.POST_LIST_USER, user.getUsername());
-                handle.getCache().remove(CacheGroup.POST_LAST_USER, user.getUsername());
-                handle.getCache().remove(CacheGroup.THREAD_COUNT, user.getUsername());
-                handle.getCache().remove(CacheGroup.THREAD_LIST_USER, user.getUsername());
-                handle.getCache().remove(CacheGroup.THREAD_LAST_USER, user.getUsername());
-
-                handle.getCache().remove(CacheGroup.USER_USERNAME, user.getID());
-                handle.getCache().remove(CacheGroup.IS_BANNED, oldUsername);
-                handle.getCache().remove(CacheGroup.IS_REGISTERED, oldUsername);
-                handle.getCache().remove(CacheGroup.USER_IP, oldUsername);
-                handle.getCache().remove(CacheGroup.ARTICLE_COUNT_USER, oldUsername);
-                handle.getCache().remove(CacheGroup.ARTICLE_LIST_USER, oldUsername);
-                handle.getCache().remove(CacheGroup.ARTICLE_LAST_USER, oldUsername);
-                handle.getCache().remove(CacheGroup.COMMENT_COUNT_USER, oldUsername);
-                handle.getCache().remove(CacheGroup.COMMENT_LIST_USER, oldUsername);
-                handle.getCache().remove(CacheGroup.COMMENT_LAST_USER, oldUsername);
-                handle.getCache().remove(CacheGroup.POST_COUNT, oldUsername);
-                handle.getCache().remove(CacheGroup.POST_LIST_USER, oldUsername);
-                handle.getCache().remove(CacheGroup.POST_LAST_USER, oldUsername);
-                handle.getCache().remove(CacheGroup.THREAD_COUNT, oldUsername);
-                handle.getCache().remove(CacheGroup.THREAD_LIST_USER, oldUsername);
-                handle.getCache().remove(CacheGroup.THREAD_LAST_USER, oldUsername);
+                handle.getCache().invalidate(CacheTag.ofUsername(user.getUsername()));
+                if (oldUsername != null) {
+                    handle.getCache().invalidate(CacheTag.ofUsername((String) oldUsername));
+                }
             }
-
         }
     }
 
@@ -48,6 +48,16 @@ public class ScriptException extends Exception {
         super(message);
     }
 
+    /**
+     * Constructs the exception with the specified {@code message} and the {@code cause} it wraps.
+     *
+     * @param message  the message for the exception
+     * @param cause    the exception that caused this exception
+     */
+    public ScriptException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
     /**
      * Constructs the exception with the specified {@code message}.
      *
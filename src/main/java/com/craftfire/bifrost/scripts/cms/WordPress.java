@@ -19,8 +19,11 @@
  */
 package com.craftfire.bifrost.scripts.cms;
 
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -29,13 +32,12 @@ import java.util.Map;
 
 import com.craftfire.commons.CraftCommons;
 import com.craftfire.commons.database.DataManager;
-import com.craftfire.commons.database.DataRow;
-import com.craftfire.commons.database.Results;
 import com.craftfire.commons.encryption.Encryption;
 import com.craftfire.commons.util.Util;
 import com.craftfire.commons.util.Version;
 import com.craftfire.commons.util.VersionRange;
 
+import com.craftfire.bifrost.cache.HighWaterMarks;
 import com.craftfire.bifrost.classes.cms.CMSArticle;
 import com.craftfire.bifrost.classes.cms.CMSCategory;
 import com.craftfire.bifrost.classes.cms.CMSComment;
@@ -47,11 +49,47 @@ import com.craftfire.bifrost.enums.CacheCleanupReason;
 import com.craftfire.bifrost.enums.Gender;
 import com.craftfire.bifrost.enums.Scripts;
 import com.craftfire.bifrost.exceptions.ScriptException;
+import com.craftfire.bifrost.sql.QueryTemplate;
+import com.craftfire.bifrost.sql.RowMapper;
 
 /**
  * This class contains all the methods for WordPress.
  */
 public class WordPress extends CMSScript {
+    private static final QueryTemplate PASSWORD = new QueryTemplate(
+            "SELECT `user_pass` FROM `{prefix}users` WHERE `user_login` = ?");
+    private static final QueryTemplate USERNAME = new QueryTemplate(
+            "SELECT `user_login` FROM `{prefix}users` WHERE `ID` = ?");
+    private static final QueryTemplate USER_ID = new QueryTemplate(
+            "SELECT `ID` FROM `{prefix}users` WHERE `user_login` = ?");
+    private static final QueryTemplate LAST_REG_USER_ID = new QueryTemplate(
+            "SELECT `ID` FROM `{prefix}users` ORDER BY `user_registered` DESC LIMIT 1");
+    private static final QueryTemplate USER = new QueryTemplate("SELECT * FROM `{prefix}users` WHERE `ID` = ?");
+    private static final String USERS = "SELECT * FROM `{prefix}users` WHERE `ID` IN ({list})";
+    private static final String USERS_BY_NAME = "SELECT * FROM `{prefix}users` WHERE `user_login` IN ({list})";
+    private static final QueryTemplate USERS_AFTER = new QueryTemplate(
+            "SELECT * FROM `{prefix}users` WHERE `ID` > ? ORDER BY `ID` ASC LIMIT ?");
+    private static final String USERS_META =
+            "SELECT `user_id`, `meta_key`, `meta_value` FROM `{prefix}usermeta` WHERE `user_id` IN ({list}) AND " +
+                    "`meta_key` IN ('uae_user_activation_code', 'first_name', 'last_name', 'nickname', " +
+                    "'wp_capabilities', 'last_user_login', 'wp-last-login')";
+    private static final QueryTemplate USER_META = new QueryTemplate(
+            "SELECT `meta_value` FROM `{prefix}usermeta` WHERE `user_id` = ? AND `meta_key` = ?");
+    private static final QueryTemplate USER_META_COUNT = new QueryTemplate(
+            "SELECT COUNT(*) FROM `{prefix}usermeta` WHERE `user_id` = ? AND `meta_key` = ?");
+    private static final QueryTemplate USER_COUNT = new QueryTemplate("SELECT COUNT(*) FROM `{prefix}users`");
+    private static final QueryTemplate CAPABILITIES = new QueryTemplate(
+            "SELECT `meta_value`, `user_id` FROM `{prefix}usermeta` WHERE `meta_key` = 'wp_capabilities'");
+    private static final QueryTemplate SITE_ADMINS = new QueryTemplate(
+            "SELECT `meta_value` FROM `{prefix}sitemeta` WHERE `meta_key` = 'site_admins'");
+    private static final QueryTemplate OPTION = new QueryTemplate(
+            "SELECT `option_value` FROM `{prefix}options` WHERE `option_name` = ?");
+    private final RowMapper<CMSUser> userMapper = new RowMapper<CMSUser>() {
+        @Override
+        public CMSUser map(ResultSet row) throws SQLException {
+            return getUser(row);
+        }
+    };
 
     /**
      * Default constructor for Wordpress.
@@ -75,8 +113,20 @@ public class WordPress extends CMSScript {
     }
 
     @Override
-    public boolean authenticate(String username, String password) {
-        String hash = this.getDataManager().getStringField("users", "user_pass", "`user_login` = '" + username + "'");
+    public int pollChanges(HighWaterMarks marks) throws SQLException {
+        int changes = 0;
+        // The registration date is stored in UTC, so it is compared to the current time in UTC.
+        for (HashMap<String, Object> map : getChangedRows(marks, "users", "UNIX_TIMESTAMP(`user_registered`)", "`ID`",
+                "`ID`, `user_login`", "UNIX_TIMESTAMP(UTC_TIMESTAMP())")) {
+            userChanged(Integer.parseInt(map.get("ID").toString()), map.get("user_login").toString(), true);
+            changes++;
+        }
+        return changes;
+    }
+
+    @Override
+    public boolean authenticate(String username, String password) throws SQLException {
+        String hash = queryString(PASSWORD, username);
         return hash != null && hash.equals(hashPassword(hash, password));
     }
 
@@ -90,18 +140,18 @@ public class WordPress extends CMSScript {
     }
 
     @Override
-    public String getUsername(int userid) {
-        return this.getDataManager().getStringField("users", "user_login", "`ID` = '" + userid + "'");
+    public String getUsername(int userid) throws SQLException {
+        return queryString(USERNAME, userid);
     }
 
     @Override
-    public int getUserID(String username) {
-        return this.getDataManager().getIntegerField("users", "ID", "`user_login` = '" + username + "'");
+    public int getUserID(String username) throws SQLException {
+        return queryInt(USER_ID, username);
     }
 
     @Override
     public CMSUser getLastRegUser() throws ScriptException, SQLException {
-        return this.getHandle().getUser(this.getDataManager().getIntegerField("SELECT `ID` FROM `" + this.getDataManager().getPrefix() + "users` ORDER BY `user_registered` DESC LIMIT 1"));
+        return this.getHandle().getUser(queryInt(LAST_REG_USER_ID));
     }
 
     @Override
@@ -109,52 +159,103 @@ public class WordPress extends CMSScript {
         return this.getHandle().getUser(getUserID(username));
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public CMSUser getUser(int userid) throws SQLException, ScriptException {
-        if (this.getDataManager().exist("users", "ID", userid)) {
-            CMSUser user = new CMSUser(this, userid, null, null);
-            Results res = this.getDataManager().getResults("SELECT * FROM `" + this.getDataManager().getPrefix() + "users` WHERE `ID` = '" + userid + "' LIMIT 1");
-            if (res != null && res.getFirstResult() != null) {
-                DataRow record = res.getFirstResult();
-                String lastlogin;
-                String activation = this.getDataManager().getStringField("usermeta", "meta_value", "`user_id` = '" + userid + "' AND `meta_key` = 'uae_user_activation_code'");
-                user.setActivated(activation == null || activation.equalsIgnoreCase("active"));
-                user.setEmail(record.getStringField("user_email"));
-                user.setGender(Gender.UNKNOWN);
-                user.setRegDate(record.getDateField("user_registered"));
-                user.setPassword(record.getStringField("user_pass"));
-                user.setUsername(record.getStringField("user_login"));
-                user.setAvatarURL("http://www.gravatar.com/avatar/" + CraftCommons.encrypt(Encryption.MD5, record.getStringField("user_email").toLowerCase()));
-                user.setFirstName(this.getDataManager().getStringField("usermeta", "meta_value", "`user_id` = '" + user.getID() + "' AND `meta_key` = 'first_name'"));
-                user.setLastName(this.getDataManager().getStringField("usermeta", "meta_value", "`user_id` = '" + user.getID() + "' AND `meta_key` = 'last_name'"));
-                user.setRealName(user.getFirstName() + user.getLastName());
-                user.setNickname(this.getDataManager().getStringField("usermeta", "meta_value", "`user_id` = '" + user.getID() + "' AND `meta_key` = 'nickname'"));
-                String capabilities = this.getDataManager().getStringField("usermeta", "meta_value", "`meta_key` = 'wp_capabilities' AND `user_id` = '" + userid + "'");
-                Map<Object, Object> capmap = null;
-                if (capabilities != null && !capabilities.isEmpty()) {
-                    try {
-                        Object temp = CraftCommons.phpUnserialize(capabilities);
-                        if (temp instanceof Map<?, ?>) {
-                            capmap = (Map<Object, Object>) temp;
-                        }
-                    } catch (IllegalStateException ignore) {
-                    }
-                }
-                if (capmap != null && !capmap.isEmpty()) {
-                    user.setUserTitle(capmap.keySet().toArray()[0].toString());
-                }
-                lastlogin = this.getDataManager().getStringField("usermeta", "meta_value", "`user_id` = '" + user.getID() + "' AND `meta_key` = 'last_user_login'");
-                if (!Util.isLong(lastlogin)) {
-                    lastlogin = this.getDataManager().getStringField("usermeta", "meta_value", "`user_id` = '" + user.getID() + "' AND `meta_key` = 'wp-last-login'");
-                }
-                if (Util.isLong(lastlogin)) {
-                    user.setLastLogin(new java.util.Date(Long.parseLong(lastlogin)));
+        List<ScriptUser> users = getUsers(query(USER, this.userMapper, userid));
+        return users.isEmpty() ? null : (CMSUser) users.get(0);
+    }
+
+    @Override
+    public List<ScriptUser> getUsers(Collection<Integer> userids) throws SQLException {
+        if (userids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return getUsers(queryList(USERS, this.userMapper, userids));
+    }
+
+    @Override
+    public List<ScriptUser> getUsersAfter(int userid, int limit) throws SQLException {
+        return getUsers(query(USERS_AFTER, this.userMapper, userid, limit));
+    }
+
+    @Override
+    public List<ScriptUser> getUsersByName(Collection<String> usernames) throws SQLException {
+        if (usernames.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return getUsers(queryList(USERS_BY_NAME, this.userMapper, usernames));
+    }
+
+    private List<ScriptUser> getUsers(List<CMSUser> records) throws SQLException {
+        List<ScriptUser> users = new ArrayList<ScriptUser>();
+        if (records.isEmpty()) {
+            return users;
+        }
+        List<Integer> userids = new ArrayList<Integer>();
+        for (CMSUser user : records) {
+            userids.add(user.getID());
+        }
+        // The meta values of all users are read with one query per chunk instead of one query per value and user.
+        Map<Integer, Map<String, String>> meta = new HashMap<Integer, Map<String, String>>();
+        for (HashMap<String, Object> record : queryMapList(USERS_META, userids)) {
+            int userid = Integer.parseInt(record.get("user_id").toString());
+            Map<String, String> values = meta.get(userid);
+            if (values == null) {
+                values = new HashMap<String, String>();
+                meta.put(userid, values);
+            }
+            Object value = record.get("meta_value");
+            values.put(record.get("meta_key").toString(), (value == null) ? null : value.toString());
+        }
+        for (CMSUser user : records) {
+            Map<String, String> values = meta.get(user.getID());
+            setMeta(user, (values == null) ? new HashMap<String, String>() : values);
+            users.add(user);
+        }
+        return users;
+    }
+
+    private CMSUser getUser(ResultSet record) throws SQLException {
+        CMSUser user = new CMSUser(this, record.getInt("ID"), null, null);
+        user.setEmail(record.getString("user_email"));
+        user.setGender(Gender.UNKNOWN);
+        user.setRegDate(record.getTimestamp("user_registered"));
+        user.setPassword(record.getString("user_pass"));
+        user.setUsername(record.getString("user_login"));
+        user.setAvatarURL("http://www.gravatar.com/avatar/" + CraftCommons.encrypt(Encryption.MD5, record.getString("user_email").toLowerCase()));
+        return user;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void setMeta(CMSUser user, Map<String, String> meta) {
+        String lastlogin;
+        String activation = meta.get("uae_user_activation_code");
+        user.setActivated(activation == null || activation.equalsIgnoreCase("active"));
+        user.setFirstName(meta.get("first_name"));
+        user.setLastName(meta.get("last_name"));
+        user.setRealName(user.getFirstName() + user.getLastName());
+        user.setNickname(meta.get("nickname"));
+        String capabilities = meta.get("wp_capabilities");
+        Map<Object, Object> capmap = null;
+        if (capabilities != null && !capabilities.isEmpty()) {
+            try {
+                Object temp = CraftCommons.phpUnserialize(capabilities);
+                if (temp instanceof Map<?, ?>) {
+                    capmap = (Map<Object, Object>) temp;
                 }
-                return user;
+            } catch (IllegalStateException ignore) {
             }
         }
-        return null;
+        if (capmap != null && !capmap.isEmpty()) {
+            user.setUserTitle(capmap.keySet().toArray()[0].toString());
+        }
+        lastlogin = meta.get("last_user_login");
+        if (!Util.isLong(lastlogin)) {
+            lastlogin = meta.get("wp-last-login");
+        }
+        if (Util.isLong(lastlogin)) {
+            user.setLastLogin(new java.util.Date(Long.parseLong(lastlogin)));
+        }
     }
 
     @Override
@@ -169,37 +270,37 @@ public class WordPress extends CMSScript {
             user.setPassword(hashPassword(null, user.getPassword()));
             data.put("user_pass", user.getPassword());
         }
-        this.getDataManager().updateFields(data, "users", "`ID` = '" + user.getID() + "'");
+        updateFields(data, "users", "`ID` = ?", user.getID());
         data.clear();
 
         data.put("meta_value", user.getNickname());
-        if (getDataManager().getCount("usermeta", "`user_id` = '" + user.getID() + "' AND `meta_key` = 'nickname'") > 0) {
-            this.getDataManager().updateFields(data, "usermeta", "`user_id` = '" + user.getID() + "' AND `meta_key` = 'nickname'");
+        if (queryInt(USER_META_COUNT, user.getID(), "nickname") > 0) {
+            updateFields(data, "usermeta", "`user_id` = ? AND `meta_key` = ?", user.getID(), "nickname");
         } else {
             data.put("user_id", user.getID());
             data.put("meta_key", "nickname");
-            getDataManager().insertFields(data, "usermeta");
+            insertFields(data, "usermeta");
         }
         data.put("meta_value", user.getFirstName());
-        if (getDataManager().getCount("usermeta", "`user_id` = '" + user.getID() + "' AND `meta_key` = 'first_name'") > 0) {
-            this.getDataManager().updateFields(data, "usermeta", "`user_id` = '" + user.getID() + "' AND `meta_key` = 'first_name'");
+        if (queryInt(USER_META_COUNT, user.getID(), "first_name") > 0) {
+            updateFields(data, "usermeta", "`user_id` = ? AND `meta_key` = ?", user.getID(), "first_name");
         } else {
             data.put("user_id", user.getID());
             data.put("meta_key", "first_name");
-            getDataManager().insertFields(data, "usermeta");
+            insertFields(data, "usermeta");
         }
         data.put("meta_value", user.getLastName());
-        if (getDataManager().getCount("usermeta", "`user_id` = '" + user.getID() + "' AND `meta_key` = 'last_name'") > 0) {
-            this.getDataManager().updateFields(data, "usermeta", "`user_id` = '" + user.getID() + "' AND `meta_key` = 'last_name'");
+        if (queryInt(USER_META_COUNT, user.getID(), "last_name") > 0) {
+            updateFields(data, "usermeta", "`user_id` = ? AND `meta_key` = ?", user.getID(), "last_name");
         } else {
             data.put("user_id", user.getID());
             data.put("meta_key", "last_name");
-            getDataManager().insertFields(data, "usermeta");
+            insertFields(data, "usermeta");
         }
         if (user.getLastLogin() != null) {
             data.put("meta_value", String.valueOf(user.getLastLogin().getTime()));
-            this.getDataManager().updateFields(data, "usermeta", "`user_id` = '" + user.getID() + "' AND `meta_key` = 'last_user_login'");
-            this.getDataManager().updateFields(data, "usermeta", "`user_id` = '" + user.getID() + "' AND `meta_key` = 'wp-last-login'");
+            updateFields(data, "usermeta", "`user_id` = ? AND `meta_key` = ?", user.getID(), "last_user_login");
+            updateFields(data, "usermeta", "`user_id` = ? AND `meta_key` = ?", user.getID(), "wp-last-login");
         }
         data.clear();
         // TODO: Should we skip setting groups if no groups are cached?
@@ -226,37 +327,36 @@ public class WordPress extends CMSScript {
         data.put("user_registered", user.getRegDate());
         data.put("user_status", 0);
         data.put("display_name", user.getUsername());
-        this.getDataManager().insertFields(data, "users");
+        user.setID(insertFields(data, "users"));
         data.clear();
-        user.setID(this.getDataManager().getLastID("ID", "users"));
         data.put("user_id", user.getID());
         data.put("meta_key", "nickname");
         data.put("meta_value", user.getNickname());
-        this.getDataManager().insertFields(data, "usermeta");
+        insertFields(data, "usermeta");
         data.put("meta_key", "first_name");
         data.put("meta_value", user.getFirstName());
-        this.getDataManager().insertFields(data, "usermeta");
+        insertFields(data, "usermeta");
         data.put("meta_key", "last_name");
         data.put("meta_value", user.getLastName());
-        this.getDataManager().insertFields(data, "usermeta");
+        insertFields(data, "usermeta");
         data.put("meta_key", "rich_editing");
         data.put("meta_value", true);
-        this.getDataManager().insertFields(data, "usermeta");
+        insertFields(data, "usermeta");
         data.put("meta_key", "comment_shortcuts");
         data.put("meta_value", false);
-        this.getDataManager().insertFields(data, "usermeta");
+        insertFields(data, "usermeta");
         data.put("meta_key", "admin_color");
         data.put("meta_value", "fresh");
-        this.getDataManager().insertFields(data, "usermeta");
+        insertFields(data, "usermeta");
         data.put("meta_key", "show_admin_bar_front");
         data.put("meta_value", true);
-        this.getDataManager().insertFields(data, "usermeta");
+        insertFields(data, "usermeta");
         data.put("meta_key", "use_ssl");
         data.put("meta_value", 0);
-        this.getDataManager().insertFields(data, "usermeta");
+        insertFields(data, "usermeta");
         data.put("meta_key", "default_password_nag");
         data.put("meta_value", 0);
-        this.getDataManager().insertFields(data, "usermeta");
+        insertFields(data, "usermeta");
         setUserGroups(user.getUsername(), null);
     }
 
@@ -331,8 +431,8 @@ public class WordPress extends CMSScript {
         }
         List<ScriptUser> userlist = new ArrayList<ScriptUser>();
         if (groupid == 6) {
-            if (this.getDataManager().exist("sitemeta", "meta_key", "site_admins")) {
-                String admins = this.getDataManager().getStringField("sitemeta", "meta_value", "`meta_key` = 'site_admins'");
+            String admins = queryString(SITE_ADMINS);
+            if (admins != null) {
                 Map<Object, String> adminmap = null;
                 try {
                     adminmap = (Map<Object, String>) CraftCommons.phpUnserialize(admins);
@@ -349,13 +449,11 @@ public class WordPress extends CMSScript {
                 return null;
             }
         } else {
-            Results results = this.getDataManager().getResults("SELECT `meta_value`, `user_id` FROM `" + this.getDataManager().getPrefix() + "usermeta` WHERE `meta_key` = 'wp_capabilities'");
-            List<DataRow> records = results.getArray();
-            Iterator<DataRow> iterator = records.iterator();
+            Iterator<HashMap<String, Object>> iterator = queryMaps(CAPABILITIES).iterator();
             while (iterator.hasNext()) {
-                DataRow d = iterator.next();
-                String capabilities = d.getStringField("meta_value");
-                int userid = d.getIntField("user_id");
+                HashMap<String, Object> d = iterator.next();
+                String capabilities = String.valueOf(d.get("meta_value"));
+                int userid = Integer.parseInt(d.get("user_id").toString());
                 Map<String, String> capmap = null;
                 try {
                     capmap = (Map<String, String>) CraftCommons.phpUnserialize(capabilities);
@@ -384,7 +482,7 @@ public class WordPress extends CMSScript {
     @Override
     public List<Group> getUserGroups(String username) throws SQLException, ScriptException {
         int userid = this.getHandle().getUserID(username);
-        String capabilities = this.getDataManager().getStringField("usermeta", "meta_value", "`meta_key` = 'wp_capabilities' AND `user_id` = '" + userid + "'");
+        String capabilities = queryString(USER_META, userid, "wp_capabilities");
         Map<Object, Object> capmap = null;
         if (capabilities != null && !capabilities.isEmpty()) {
             try {
@@ -393,14 +491,14 @@ public class WordPress extends CMSScript {
             } catch (ClassCastException ignore) {
             }
         }
+        String admins = queryString(SITE_ADMINS);
         List<Group> allGroups = this.getHandle().getGroups(0);
         List<Group> uGroups = new ArrayList<Group>();
         Iterator<Group> iterator = allGroups.iterator();
         while (iterator.hasNext()) {
             Group g = iterator.next();
             if (g.getID() == 6) {
-                if (this.getDataManager().exist("sitemeta", "meta_key", "site_admins")) {
-                    String admins = this.getDataManager().getStringField("sitemeta", "meta_value", "`meta_key` = 'site_admins'");
+                if (admins != null) {
                     Map<Object, Object> adminmap = null;
                     Object temp = null;
                     try {
@@ -428,15 +526,15 @@ public class WordPress extends CMSScript {
         List<Group> newGroups = groups;
         if (newGroups == null) {
             newGroups = new ArrayList<Group>();
-            Group defaultGroup = this.getHandle().getGroup(this.getDataManager().getStringField("options", "option_value", "`option_name` = 'default_role'"));
+            Group defaultGroup = this.getHandle().getGroup(queryString(OPTION, "default_role"));
             newGroups.add(defaultGroup);
         }
         int userid = this.getUserID(username);
         Map<String, String> capmap = new HashMap<String, String>();
         int userLevel = 0;
         List<String> adminlist = null;
-        if (this.getDataManager().exist("sitemeta", "meta_key", "site_admins")) {
-            String admins = this.getDataManager().getStringField("sitemeta", "meta_value", "`meta_key` = 'site_admins'");
+        String admins = queryString(SITE_ADMINS);
+        if (admins != null) {
             Object temp = null;
             try {
                 temp = CraftCommons.phpUnserialize(admins);
@@ -489,27 +587,26 @@ public class WordPress extends CMSScript {
         String capabilities = CraftCommons.phpSerialize(capmap);
         HashMap<String, Object> data = new HashMap<String, Object>();
         data.put("meta_value", capabilities);
-        if (this.getDataManager().getCount("usermeta", "`meta_key` = 'wp_capabilities' AND `user_id` = '" + userid + "'") > 0) {
-            this.getDataManager().updateFields(data, "usermeta", "`meta_key` = 'wp_capabilities' AND `user_id` = '" + userid + "'");
+        if (queryInt(USER_META_COUNT, userid, "wp_capabilities") > 0) {
+            updateFields(data, "usermeta", "`meta_key` = ? AND `user_id` = ?", "wp_capabilities", userid);
         } else {
             data.put("meta_key", "wp_capabilities");
             data.put("user_id", userid);
-            this.getDataManager().insertFields(data, "usermeta");
+            insertFields(data, "usermeta");
         }
         data.clear();
         data.put("meta_value", userLevel);
-        if (this.getDataManager().getCount("usermeta", "`meta_key` = 'wp_user_level' AND `user_id` = '" + userid + "'") > 0) {
-            this.getDataManager().updateFields(data, "usermeta", "`meta_key` = 'wp_user_level' AND `user_id` = '" + userid + "'");
+        if (queryInt(USER_META_COUNT, userid, "wp_user_level") > 0) {
+            updateFields(data, "usermeta", "`meta_key` = ? AND `user_id` = ?", "wp_user_level", userid);
         } else {
             data.put("meta_key", "wp_user_level");
             data.put("user_id", userid);
-            this.getDataManager().insertFields(data, "usermeta");
+            insertFields(data, "usermeta");
         }
         data.clear();
         if (adminlist != null) {
-            String admins = CraftCommons.phpSerialize(adminlist);
-            data.put("meta_value", admins);
-            this.getDataManager().updateFields(data, "sitemeta", "`meta_key` = 'site_admins'");
+            data.put("meta_value", CraftCommons.phpSerialize(adminlist));
+            updateFields(data, "sitemeta", "`meta_key` = ?", "site_admins");
         }
         iterator = newGroups.iterator();
         while (iterator.hasNext()) {
@@ -524,7 +621,7 @@ public class WordPress extends CMSScript {
             throw new ScriptException("The script doesn't support changing group names or IDs.");
         }
         if (group.getID() == 6) {
-            if (this.getDataManager().exist("sitemeta", "meta_key", "site_admins")) {
+            if (queryString(SITE_ADMINS) != null) {
                 List<String> adminlist = new ArrayList<String>();
                 Iterator<ScriptUser> iterator = group.getUsers().iterator();
                 while (iterator.hasNext()) {
@@ -533,7 +630,7 @@ public class WordPress extends CMSScript {
                 String admins = CraftCommons.phpSerialize(adminlist);
                 HashMap<String, Object> data = new HashMap<String, Object>();
                 data.put("meta_value", admins);
-                this.getDataManager().updateFields(data, "sitemeta", "`meta_key` = 'site_admins'");
+                updateFields(data, "sitemeta", "`meta_key` = ?", "site_admins");
             }
         } else {
             List<ScriptUser> oldUsers = new ArrayList<ScriptUser>(getGroup(group.getID()).getUsers());
@@ -560,16 +657,16 @@ public class WordPress extends CMSScript {
     }
 
     @Override
-    public int getUserCount() {
-        return this.getDataManager().getCount("users");
+    public int getUserCount() throws SQLException {
+        return queryInt(USER_COUNT);
     }
 
     @Override
-    public int getGroupCount() {
+    public int getGroupCount() throws SQLException {
         /*
          * 6 WordPress roles: Subscriber, Contributor, Author, Editor, Administrator, Super Admin
          */
-        if (this.getDataManager().exist("sitemeta", "meta_key", "site_admins")) {
+        if (queryString(SITE_ADMINS) != null) {
             // Super Admin doesn't always exist.
             return 6;
         } else {
@@ -578,13 +675,13 @@ public class WordPress extends CMSScript {
     }
 
     @Override
-    public String getHomeURL() {
-        return this.getDataManager().getStringField("options", "option_value", "`option_name` = 'siteurl'");
+    public String getHomeURL() throws SQLException {
+        return queryString(OPTION, "siteurl");
     }
 
     @Override
-    public boolean isRegistered(String username) {
-        return this.getDataManager().exist("users", "user_login", username);
+    public boolean isRegistered(String username) throws SQLException {
+        return queryString(USER_ID, username) != null;
     }
 
     //End Generic Script Methods
@@ -19,6 +19,7 @@
  */
 package com.craftfire.bifrost.scripts.forum;
 
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -26,12 +27,11 @@ import java.util.*;
 
 import com.craftfire.commons.CraftCommons;
 import com.craftfire.commons.database.DataManager;
-import com.craftfire.commons.database.DataRow;
-import com.craftfire.commons.database.Results;
 import com.craftfire.commons.encryption.Encryption;
 import com.craftfire.commons.util.Version;
 import com.craftfire.commons.util.VersionRange;
 
+import com.craftfire.bifrost.cache.HighWaterMarks;
 import com.craftfire.bifrost.classes.forum.ForumBoard;
 import com.craftfire.bifrost.classes.forum.ForumPost;
 import com.craftfire.bifrost.classes.forum.ForumScript;
@@ -42,11 +42,42 @@ import com.craftfire.bifrost.classes.general.Group;
 import com.craftfire.bifrost.classes.general.PrivateMessage;
 import com.craftfire.bifrost.classes.general.ScriptUser;
 import com.craftfire.bifrost.enums.Scripts;
+import com.craftfire.bifrost.sql.QueryTemplate;
+import com.craftfire.bifrost.sql.RowMapper;
 
 /**
  * This class contains all the methods for phpBB.
  */
 public class PhpBB extends ForumScript {
+    private static final QueryTemplate PASSWORD = new QueryTemplate(
+            "SELECT `user_password` FROM `{prefix}users` WHERE `username` = ?");
+    private static final QueryTemplate USERNAME = new QueryTemplate(
+            "SELECT `username` FROM `{prefix}users` WHERE `user_id` = ?");
+    private static final QueryTemplate USER_ID = new QueryTemplate(
+            "SELECT `user_id` FROM `{prefix}users` WHERE `username` = ?");
+    private static final QueryTemplate LAST_REG_USER_ID = new QueryTemplate(
+            "SELECT MAX(`user_id`) FROM `{prefix}users`");
+    private static final QueryTemplate USER = new QueryTemplate("SELECT * FROM `{prefix}users` WHERE `user_id` = ?");
+    private static final String USERS = "SELECT * FROM `{prefix}users` WHERE `user_id` IN ({list})";
+    private static final String USERS_BY_NAME = "SELECT * FROM `{prefix}users` WHERE `username` IN ({list})";
+    private static final QueryTemplate USERS_AFTER = new QueryTemplate(
+            "SELECT * FROM `{prefix}users` WHERE `user_id` > ? ORDER BY `user_id` ASC LIMIT ?");
+    private static final QueryTemplate USER_COUNT = new QueryTemplate("SELECT COUNT(*) FROM `{prefix}users`");
+    private static final QueryTemplate GROUPS = new QueryTemplate(
+            "SELECT `group_id` FROM `{prefix}groups` ORDER BY `group_id` ASC LIMIT ?, ?");
+    private static final QueryTemplate GROUP_ID = new QueryTemplate(
+            "SELECT `group_id` FROM `{prefix}groups` WHERE `group_name` = ?");
+    private static final QueryTemplate GROUP_COUNT = new QueryTemplate("SELECT COUNT(*) FROM `{prefix}groups`");
+    private static final QueryTemplate CONFIG = new QueryTemplate(
+            "UPDATE `{prefix}config` SET `config_value` = ? WHERE `config_name` = ?");
+    private static final QueryTemplate CONFIG_INCREASE = new QueryTemplate(
+            "UPDATE `{prefix}config` SET `config_value` = `config_value` + 1 WHERE `config_name` = ?");
+    private final RowMapper<ScriptUser> userMapper = new RowMapper<ScriptUser>() {
+        @Override
+        public ScriptUser map(ResultSet row) throws SQLException {
+            return getUser(row);
+        }
+    };
 
     /**
      * Default constructor for phpBB.
@@ -70,9 +101,18 @@ public class PhpBB extends ForumScript {
     }
 
     @Override
-    public boolean authenticate(String username, String password) {
-        String passwordHash = getDataManager().getStringField("users",
-                "user_password", "`username` = '" + username + "'");
+    public int pollChanges(HighWaterMarks marks) throws SQLException {
+        int changes = 0;
+        for (HashMap<String, Object> map : getChangedRows(marks, "users", "`user_id`", null, "`username`", null)) {
+            userChanged(Integer.parseInt(map.get("bifrost_mark").toString()), map.get("username").toString(), true);
+            changes++;
+        }
+        return changes;
+    }
+
+    @Override
+    public boolean authenticate(String username, String password) throws SQLException {
+        String passwordHash = queryString(PASSWORD, username);
         return hashPassword(username, password).equals(passwordHash);
     }
 
@@ -82,13 +122,13 @@ public class PhpBB extends ForumScript {
     }
 
     @Override
-    public String getUsername(int userid) {
-        return getDataManager().getStringField("users", "username", "`user_id` = '" + userid + "'");
+    public String getUsername(int userid) throws SQLException {
+        return queryString(USERNAME, userid);
     }
 
     @Override
-    public int getUserID(String username) {
-        return getDataManager().getIntegerField("users", "user_id", "`username` = '" + username + "'");
+    public int getUserID(String username) throws SQLException {
+        return queryInt(USER_ID, username);
     }
 
     @Override
@@ -98,32 +138,55 @@ public class PhpBB extends ForumScript {
 
     @Override
     public ForumUser getUser(int userid) throws SQLException {
-        Results results = getDataManager().getResults("SELECT * FROM `" + getDataManager().getPrefix() +
-                                                      "users` WHERE `user_id` = " + userid);
-        DataRow row = results.getFirstResult();
+        return (ForumUser) queryFirst(USER, this.userMapper, userid);
+    }
+
+    @Override
+    public List<ScriptUser> getUsers(Collection<Integer> userids) throws SQLException {
+        if (userids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return queryList(USERS, this.userMapper, userids);
+    }
+
+    @Override
+    public List<ScriptUser> getUsersAfter(int userid, int limit) throws SQLException {
+        return query(USERS_AFTER, this.userMapper, userid, limit);
+    }
+
+    @Override
+    public List<ScriptUser> getUsersByName(Collection<String> usernames) throws SQLException {
+        if (usernames.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return queryList(USERS_BY_NAME, this.userMapper, usernames);
+    }
+
+    private ForumUser getUser(ResultSet row) throws SQLException {
         ForumUser user = new ForumUser(this,
-                                       row.getIntField("user_id"),
-                                       row.getStringField("username"),
-                                       row.getStringField("user_password"));
-        user.setActivated(row.getIntField("user_type") == 0);
-        if (!row.getStringField("user_birthday").isEmpty()) {
+                                       row.getInt("user_id"),
+                                       row.getString("username"),
+                                       row.getString("user_password"));
+        user.setActivated(row.getInt("user_type") == 0);
+        String birthday = row.getString("user_birthday");
+        if (!birthday.isEmpty()) {
             try {
-                user.setBirthday(new SimpleDateFormat("dd-MM-yyyy").parse(row.getStringField("user_birthday")));
+                user.setBirthday(new SimpleDateFormat("dd-MM-yyyy").parse(birthday));
             } catch (ParseException e) {
                 getLoggingManager().stackTrace(e);
             }
         }
-        user.setEmail(row.getStringField("user_email"));
-        user.setLastLogin(new Date(row.getLongField("user_lastvisit") * 1000));
-        user.setRegDate(new Date(row.getLongField("user_regdate") * 1000));
-        user.setRegIP(row.getStringField("user_ip"));
+        user.setEmail(row.getString("user_email"));
+        user.setLastLogin(new Date(row.getLong("user_lastvisit") * 1000));
+        user.setRegDate(new Date(row.getLong("user_regdate") * 1000));
+        user.setRegIP(row.getString("user_ip"));
 
         return user;
     }
 
     @Override
     public ForumUser getLastRegUser() throws SQLException {
-        return getUser(getDataManager().getLastID("user_id", "users"));
+        return getUser(queryInt(LAST_REG_USER_ID));
     }
 
     @Override
@@ -151,7 +214,7 @@ public class PhpBB extends ForumScript {
             user.setPassword(hashPassword(user.getUsername(), user.getPassword()));
             data.put("user_password", user.getPassword());
         }
-        getDataManager().updateFields(data, "users", "`user_id` = '" + user.getID() + "'");
+        updateFields(data, "users", "`user_id` = ?", user.getID());
     }
 
     @Override
@@ -185,44 +248,37 @@ public class PhpBB extends ForumScript {
         data.put("user_ip", user.getRegIP());
         data.put("user_passchg", timestamp);
         data.put("user_lang", "en");
-        getDataManager().insertFields(data, "users");
-        user.setID(this.getDataManager().getLastID("user_id", "users"));
+        user.setID(insertFields(data, "users"));
 
         data = new HashMap<String, Object>();
         data.put("group_id", 2);
         data.put("user_id", user.getID());
         data.put("user_pending", 0);
-        getDataManager().insertFields(data, "user_group");
+        insertFields(data, "user_group");
 
         data = new HashMap<String, Object>();
         data.put("group_id", 7);
         data.put("user_id", user.getID());
         data.put("user_pending", 0);
-        getDataManager().insertFields(data, "user_group");
+        insertFields(data, "user_group");
 
-        getDataManager().updateField("config", "config_value", user.getID(), "`config_name` = 'newest_user_id'");
-        getDataManager().updateField("config", "config_value", user.getUsername(), "`config_name` = 'newest_username'");
-        getDataManager().increaseField("config", "config_value", "`config_name` = 'num_users'");
+        update(CONFIG, user.getID(), "newest_user_id");
+        update(CONFIG, user.getUsername(), "newest_username");
+        update(CONFIG_INCREASE, "num_users");
     }
 
     @Override
     public List<Group> getGroups(int limit) throws SQLException {
-        String limitstring = "";
-        if (limit > 0) {
-            limitstring = " LIMIT 0 , " + limit;
-        }
         List<Group> groups = new ArrayList<Group>();
-        Results results = getDataManager().getResults("SELECT `group_id` FROM `" +
-                          getDataManager().getPrefix() + "groups` ORDER BY `group_id` ASC" + limitstring);
-        for (DataRow row : results.getArray()) {
-            groups.add(getGroup(row.getIntField("group_id")));
+        for (HashMap<String, Object> row : queryMaps(GROUPS, 0, rowCount(limit))) {
+            groups.add(getGroup(Integer.parseInt(row.get("group_id").toString())));
         }
         return groups;
     }
 
     @Override
-    public int getGroupID(String group) {
-        return this.getDataManager().getIntegerField("groups", "group_id", "`group_name` = '" + group + "'");
+    public int getGroupID(String group) throws SQLException {
+        return queryInt(GROUP_ID, group);
     }
 
     @Override
@@ -352,18 +408,18 @@ public class PhpBB extends ForumScript {
     }
 
     @Override
-    public boolean isRegistered(String username) {
-        return this.getDataManager().exist("users", "username", username);
+    public boolean isRegistered(String username) throws SQLException {
+        return queryString(USER_ID, username) != null;
     }
 
     @Override
-    public int getUserCount() {
-        return this.getDataManager().getCount("users");
+    public int getUserCount() throws SQLException {
+        return queryInt(USER_COUNT);
     }
 
     @Override
-    public int getGroupCount() {
-        return this.getDataManager().getCount("groups");
+    public int getGroupCount() throws SQLException {
+        return queryInt(GROUP_COUNT);
     }
 
     @Override
@@ -20,17 +20,20 @@
 package com.craftfire.bifrost.scripts.forum;
 
 import java.net.URI;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
-
-import javax.swing.JTable;
+import java.util.Set;
 
 import com.craftfire.commons.CraftCommons;
 import com.craftfire.commons.database.DataManager;
@@ -41,25 +44,217 @@ import com.craftfire.commons.util.Util;
 import com.craftfire.commons.util.Version;
 import com.craftfire.commons.util.VersionRange;
 
+import com.craftfire.bifrost.cache.HighWaterMarks;
 import com.craftfire.bifrost.classes.forum.ForumPost;
 import com.craftfire.bifrost.classes.forum.ForumScript;
 import com.craftfire.bifrost.classes.forum.ForumThread;
 import com.craftfire.bifrost.classes.forum.ForumUser;
 import com.craftfire.bifrost.classes.general.Ban;
 import com.craftfire.bifrost.classes.general.Group;
+import com.craftfire.bifrost.classes.general.Message;
 import com.craftfire.bifrost.classes.general.PrivateMessage;
 import com.craftfire.bifrost.classes.general.ScriptUser;
+import com.craftfire.bifrost.enums.CacheCleanupReason;
 import com.craftfire.bifrost.enums.Gender;
 import com.craftfire.bifrost.enums.Scripts;
 import com.craftfire.bifrost.exceptions.ScriptException;
+import com.craftfire.bifrost.sql.QueryTemplate;
+import com.craftfire.bifrost.sql.RowDecoder;
+import com.craftfire.bifrost.sql.RowMapper;
+import com.craftfire.bifrost.sql.Schema;
+import com.craftfire.bifrost.sql.Transaction;
 
 //TODO: Convert arrays to use Result class
 /**
  * This class contains all the methods for SMF.
  */
 public class SMF extends ForumScript {
+    // The columns of the tables that differ between the versions are tokens of the schema descriptors, see resolve.
+    private static final QueryTemplate CACHE_VERSION = new QueryTemplate(
+            "SELECT GROUP_CONCAT(`value` ORDER BY `variable` SEPARATOR ':') FROM `{prefix}settings` WHERE `variable` IN " +
+                    "('latestMember', 'maxMsgID', 'memberlist_updated', 'settings_updated', 'totalMembers', " +
+                    "'totalMessages', 'totalTopics')");
+    private static final QueryTemplate SETTING = new QueryTemplate(
+            "UPDATE `{prefix}settings` SET `value` = ? WHERE `variable` = ?");
+    private static final QueryTemplate SETTING_INCREASE = new QueryTemplate(
+            "UPDATE `{prefix}settings` SET `value` = `value` + 1 WHERE `variable` = ?");
+    private static final QueryTemplate SETTING_ADD = new QueryTemplate(
+            "UPDATE `{prefix}settings` SET `value` = `value` + ? WHERE `variable` = ?");
+    private static final QueryTemplate USER_INSERT = new QueryTemplate(
+            "INSERT INTO `{prefix}members` (`{members.name}`, `{members.password}`, `{members.reg_date}`, " +
+                    "`{members.nickname}`, `{members.email}`, `{members.reg_ip}`, `{members.last_ip}`, `{members.salt}`) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+    private static final QueryTemplate PASSWORD = new QueryTemplate(
+            "SELECT `passwd` FROM `{prefix}members` WHERE `{members.name}` = ?");
+    private static final QueryTemplate USER = new QueryTemplate(
+            "SELECT {members.*} FROM `{prefix}members` WHERE `id_member` = ? LIMIT 1");
+    private static final String USERS = "SELECT {members.*} FROM `{prefix}members` WHERE `id_member` IN ({list})";
+    private static final String USERS_BY_NAME =
+            "SELECT {members.*} FROM `{prefix}members` WHERE `{members.name}` IN ({list})";
+    private static final QueryTemplate USERS_AFTER = new QueryTemplate(
+            "SELECT {members.*} FROM `{prefix}members` WHERE `id_member` > ? ORDER BY `id_member` ASC LIMIT ?");
+    private static final QueryTemplate LAST_REG_USER_ID = new QueryTemplate(
+            "SELECT `id_member` FROM `{prefix}members` ORDER BY `id_member` ASC LIMIT 1");
+    private static final QueryTemplate USERNAME = new QueryTemplate(
+            "SELECT `{members.name}` FROM `{prefix}members` WHERE `id_member` = ?");
+    private static final QueryTemplate USER_ID = new QueryTemplate(
+            "SELECT `id_member` FROM `{prefix}members` WHERE `{members.name}` = ?");
+    private static final QueryTemplate USER_COUNT = new QueryTemplate("SELECT COUNT(*) FROM `{prefix}members`");
+    private static final QueryTemplate GROUPS = new QueryTemplate(
+            "SELECT {membergroups.*}, (SELECT COUNT(*) FROM `{prefix}members` m WHERE m.`id_group` = g.`id_group`) " +
+                    "AS `user_count` FROM `{prefix}membergroups` g ORDER BY g.`id_group` ASC LIMIT ?, ?");
+    private static final QueryTemplate GROUP = new QueryTemplate(
+            "SELECT {membergroups.*} FROM `{prefix}membergroups` WHERE `id_group` = ? LIMIT 1");
+    private static final QueryTemplate GROUP_USERNAMES = new QueryTemplate(
+            "SELECT `{members.name}` FROM `{prefix}members` WHERE `id_group` = ? ORDER BY `id_member` ASC");
+    private static final QueryTemplate GROUP_USER_COUNT = new QueryTemplate(
+            "SELECT COUNT(*) FROM `{prefix}members` WHERE `id_group` = ?");
+    private static final QueryTemplate GROUP_COUNT = new QueryTemplate("SELECT COUNT(*) FROM `{prefix}membergroups`");
+    private static final QueryTemplate USER_GROUPS = new QueryTemplate(
+            "SELECT `id_group`, `{members.groups}` FROM `{prefix}members` WHERE `{members.name}` = ? ORDER BY `id_member` ASC " +
+                    "LIMIT 1");
+    private static final QueryTemplate PM = new QueryTemplate(
+            "SELECT {personal_messages.*} FROM `{prefix}personal_messages` WHERE `id_pm` = ? LIMIT 1");
+    private static final QueryTemplate PM_RECIPIENTS = new QueryTemplate(
+            "SELECT {pm_recipients.*} FROM `{prefix}pm_recipients` WHERE `id_pm` = ?");
+    private static final QueryTemplate PMS_SENT = new QueryTemplate(
+            "SELECT `id_pm` FROM `{prefix}personal_messages` WHERE `id_member_from` = ? ORDER BY `id_pm` ASC LIMIT ?, ?");
+    private static final QueryTemplate PMS_RECEIVED = new QueryTemplate(
+            "SELECT `id_pm` FROM `{prefix}pm_recipients` WHERE `id_member` = ? ORDER BY `id_pm` ASC LIMIT ?, ?");
+    private static final QueryTemplate PM_SENT_COUNT = new QueryTemplate(
+            "SELECT COUNT(*) FROM `{prefix}personal_messages` WHERE `id_member_from` = ?");
+    private static final QueryTemplate PM_RECEIVED_COUNT = new QueryTemplate(
+            "SELECT COUNT(*) FROM `{prefix}pm_recipients` WHERE `id_member` = ?");
+    private static final QueryTemplate POST = new QueryTemplate(
+            "SELECT {messages.*} FROM `{prefix}messages` WHERE `id_msg` = ? LIMIT 1");
+    private static final QueryTemplate POSTS = new QueryTemplate(
+            "SELECT {messages.*} FROM `{prefix}messages` ORDER BY `id_msg` ASC LIMIT ?, ?");
+    private static final QueryTemplate POSTS_AFTER = new QueryTemplate(
+            "SELECT {messages.*} FROM `{prefix}messages` WHERE `id_msg` > ? ORDER BY `id_msg` ASC LIMIT ?");
+    private static final QueryTemplate THREAD_POSTS = new QueryTemplate(
+            "SELECT {messages.*} FROM `{prefix}messages` WHERE `id_topic` = ? ORDER BY `id_msg` ASC LIMIT ?, ?");
+    private static final String POSTS_BY_ID = "SELECT {messages.*} FROM `{prefix}messages` WHERE `id_msg` IN ({list})";
+    private static final QueryTemplate LAST_POST_ID = new QueryTemplate(
+            "SELECT `id_msg` FROM `{prefix}messages` ORDER BY `id_msg` ASC LIMIT 1");
+    private static final QueryTemplate LAST_USER_POST_ID = new QueryTemplate(
+            "SELECT `id_msg` FROM `{prefix}messages` WHERE `id_member` = ? ORDER BY `id_msg` ASC LIMIT 1");
+    private static final QueryTemplate POST_COUNT = new QueryTemplate("SELECT COUNT(*) FROM `{prefix}messages`");
+    private static final QueryTemplate USER_POST_COUNT = new QueryTemplate(
+            "SELECT `posts` FROM `{prefix}members` WHERE `{members.name}` = ?");
+    private static final QueryTemplate USER_POSTS_INCREASE = new QueryTemplate(
+            "UPDATE `{prefix}members` SET `posts` = `posts` + 1 WHERE `id_member` = ?");
+    private static final QueryTemplate POST_INSERT = new QueryTemplate(
+            "INSERT INTO `{prefix}messages` (`id_topic`, `id_board`, `id_member`, `subject`, `body`, `{messages.time}`, " +
+                    "`{messages.poster_name}`, `{messages.poster_email}`, `{messages.poster_ip}`) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)");
+    private static final QueryTemplate POST_MODIFIED = new QueryTemplate(
+            "UPDATE `{prefix}messages` SET `id_msg_modified` = ? WHERE `id_msg` = ?");
+    private static final QueryTemplate THREAD_LAST_POST = new QueryTemplate(
+            "UPDATE `{prefix}topics` SET `id_last_msg` = ?, `id_member_updated` = ? WHERE `id_topic` = ?");
+    private static final QueryTemplate LAST_MESSAGE = new QueryTemplate(
+            "UPDATE `{prefix}settings` SET `value` = ? WHERE `variable` = 'maxMsgID'");
+    private static final QueryTemplate BOARD_LAST_POST = new QueryTemplate(
+            "UPDATE `{prefix}boards` SET `id_last_msg` = ?, `id_msg_updated` = ? WHERE `id_board` = ?");
+    private static final QueryTemplate BOARD_POSTS_INCREASE = new QueryTemplate(
+            "UPDATE `{prefix}boards` SET `{boards.posts}` = `{boards.posts}` + 1 WHERE `id_board` = ?");
+    private static final QueryTemplate BOARD_THREADS_INCREASE = new QueryTemplate(
+            "UPDATE `{prefix}boards` SET `{boards.threads}` = `{boards.threads}` + 1 WHERE `id_board` = ?");
+    private static final QueryTemplate THREAD_REPLIES_INCREASE = new QueryTemplate(
+            "UPDATE `{prefix}topics` SET `{topics.replies}` = `{topics.replies}` + 1 WHERE `id_topic` = ?");
+    private static final QueryTemplate THREAD_REPLIES_RESET = new QueryTemplate(
+            "UPDATE `{prefix}topics` SET `{topics.replies}` = 0 WHERE `id_topic` = ?");
+    private static final QueryTemplate THREAD_INSERT = new QueryTemplate(
+            "INSERT INTO `{prefix}topics` (`id_board`, `id_member_started`, `id_member_updated`, `locked`, " +
+                    "`{topics.sticky}`) VALUES (?, ?, ?, ?, ?)");
+    private static final QueryTemplate THREAD_POSTS_SET = new QueryTemplate(
+            "UPDATE `{prefix}topics` SET `id_first_msg` = ?, `id_last_msg` = ? WHERE `id_topic` = ?");
+    private static final QueryTemplate THREAD = new QueryTemplate(
+            "SELECT {topics.*} FROM `{prefix}topics` WHERE `id_topic` = ? LIMIT 1");
+    private static final QueryTemplate THREADS = new QueryTemplate(
+            "SELECT {topics.*} FROM `{prefix}topics` ORDER BY `id_topic` ASC LIMIT ?, ?");
+    private static final QueryTemplate THREADS_AFTER = new QueryTemplate(
+            "SELECT {topics.*} FROM `{prefix}topics` WHERE `id_topic` > ? ORDER BY `id_topic` ASC LIMIT ?");
+    private static final QueryTemplate LAST_THREAD_ID = new QueryTemplate(
+            "SELECT `id_topic` FROM `{prefix}topics` ORDER BY `id_topic` ASC LIMIT 1");
+    private static final QueryTemplate LAST_USER_THREAD_ID = new QueryTemplate(
+            "SELECT `id_topic` FROM `{prefix}topics` WHERE `id_member_started` = ? ORDER BY `id_topic` ASC LIMIT 1");
+    private static final QueryTemplate THREAD_COUNT = new QueryTemplate("SELECT COUNT(*) FROM `{prefix}topics`");
+    private static final QueryTemplate USER_THREAD_COUNT = new QueryTemplate(
+            "SELECT COUNT(*) FROM `{prefix}topics` WHERE `id_member_started` = ?");
+    private static final QueryTemplate BANS = new QueryTemplate(
+            "SELECT `id_ban_group`, `name`, `ban_time`, `expire_time`, `reason`, `notes` FROM `{prefix}ban_groups` ORDER " +
+                    "BY `id_ban_group` ASC LIMIT ?, ?");
+    private static final QueryTemplate BANS_AFTER = new QueryTemplate(
+            "SELECT `id_ban_group`, `name`, `ban_time`, `expire_time`, `reason`, `notes` FROM `{prefix}ban_groups` WHERE " +
+                    "`id_ban_group` > ? ORDER BY `id_ban_group` ASC LIMIT ?");
+    private static final String BAN_ITEMS =
+            "SELECT `id_ban_group`, `email_address`, `ip_low1`, `ip_high1`, `ip_low2`, `ip_high2`, `ip_low3`, `ip_high3`, " +
+                    "`ip_low4`, `ip_high4`, `id_member` FROM `{prefix}ban_items` WHERE `id_ban_group` IN ({list}) ORDER BY " +
+                    "`id_ban` ASC";
+    private static final QueryTemplate BAN_COUNT = new QueryTemplate("SELECT COUNT(*) FROM `{prefix}ban_groups`");
+    private static final QueryTemplate BANNED_EMAIL = new QueryTemplate(
+            "SELECT `id_ban` FROM `{prefix}ban_items` WHERE `email_address` = ?");
+    private static final QueryTemplate BANNED_IP = new QueryTemplate(
+            "SELECT `id_ban` FROM `{prefix}ban_items` WHERE `ip_low1` = ? AND `ip_high1` = ? AND `ip_low2` = ? AND " +
+                    "`ip_high2` = ? AND `ip_low3` = ? AND `ip_high3` = ? AND `ip_low4` = ? AND `ip_high4` = ?");
+    private static final QueryTemplate BANNED_NAME = new QueryTemplate(
+            "SELECT `id_ban_group` FROM `{prefix}ban_groups` WHERE `name` = ?");
+    private static final Schema<Members> MEMBERS_1_1 = new Schema<Members>("members", Members.class,
+            "ID_MEMBER", "memberName", "dateRegistered", "lastLogin", "realName", "passwd", "emailAddress", "gender",
+            "birthdate", "avatar", "usertitle", "memberIP", "memberIP2", "is_activated", "additionalGroups",
+            "passwordSalt");
+    private static final Schema<Members> MEMBERS_2_0 = new Schema<Members>("members", Members.class,
+            "id_member", "member_name", "date_registered", "last_login", "real_name", "passwd", "email_address",
+            "gender", "birthdate", "avatar", "usertitle", "member_ip", "member_ip2", "is_activated", "additional_groups",
+            "password_salt");
+    private static final Schema<MemberGroups> MEMBERGROUPS_1_1 = new Schema<MemberGroups>("membergroups",
+            MemberGroups.class, "ID_GROUP", "groupName", null);
+    private static final Schema<MemberGroups> MEMBERGROUPS_2_0 = new Schema<MemberGroups>("membergroups",
+            MemberGroups.class, "id_group", "group_name", "description");
+    private static final Schema<PersonalMessages> PERSONAL_MESSAGES_1_1 = new Schema<PersonalMessages>(
+            "personal_messages", PersonalMessages.class, "ID_PM", "ID_MEMBER_FROM", "fromName", "deletedBySender",
+            "msgtime", "subject", "body", null);
+    private static final Schema<PersonalMessages> PERSONAL_MESSAGES_2_0 = new Schema<PersonalMessages>(
+            "personal_messages", PersonalMessages.class, "id_pm", "id_member_from", "from_name", "deleted_by_sender",
+            "msgtime", "subject", "body", "id_pm_head");
+    private static final Schema<PMRecipients> PM_RECIPIENTS_1_1 = new Schema<PMRecipients>("pm_recipients",
+            PMRecipients.class, "ID_PM", "ID_MEMBER", "is_read", "deleted", null);
+    private static final Schema<PMRecipients> PM_RECIPIENTS_2_0 = new Schema<PMRecipients>("pm_recipients",
+            PMRecipients.class, "id_pm", "id_member", "is_read", "deleted", "is_new");
+    private static final Schema<Messages> MESSAGES_1_1 = new Schema<Messages>("messages", Messages.class,
+            "ID_MSG", "ID_TOPIC", "ID_BOARD", "posterTime", "ID_MEMBER", "subject", "body", "posterName", "posterEmail",
+            "posterIP");
+    private static final Schema<Messages> MESSAGES_2_0 = new Schema<Messages>("messages", Messages.class,
+            "id_msg", "id_topic", "id_board", "poster_time", "id_member", "subject", "body", "poster_name",
+            "poster_email", "poster_ip");
+    private static final Schema<Topics> TOPICS_1_1 = new Schema<Topics>("topics", Topics.class,
+            "ID_TOPIC", "ID_BOARD", "ID_FIRST_MSG", "ID_LAST_MSG", "ID_MEMBER_STARTED", "isSticky", "ID_POLL",
+            "numReplies", "numViews", "locked");
+    private static final Schema<Topics> TOPICS_2_0 = new Schema<Topics>("topics", Topics.class,
+            "id_topic", "id_board", "id_first_msg", "id_last_msg", "id_member_started", "is_sticky", "id_poll",
+            "num_replies", "num_views", "locked");
+    private static final Schema<Boards> BOARDS_1_1 = new Schema<Boards>("boards", Boards.class,
+            "ID_BOARD", "numPosts", "numTopics");
+    private static final Schema<Boards> BOARDS_2_0 = new Schema<Boards>("boards", Boards.class,
+            "id_board", "num_posts", "num_topics");
+    private final Schema<Members> members;
+    private final Schema<MemberGroups> membergroups;
+    private final Schema<PersonalMessages> personalMessages;
+    private final Schema<PMRecipients> pmRecipients;
+    private final Schema<Messages> messages;
+    private final Schema<Topics> topics;
+    private final Schema<Boards> boards;
+    private final RowMapper<ScriptUser> userMapper;
+    private final RowMapper<Group> groupMapper;
+    private final RowMapper<ForumPost> postMapper;
+    private final RowMapper<ForumThread> threadMapper;
     private String currentUsername = null;
-    private String membernamefield = "member_name", groupfield = "additional_groups";
+    private final RowMapper<Ban> banMapper = new RowMapper<Ban>() {
+        @Override
+        public Ban map(ResultSet row) throws SQLException {
+            return getBan(row);
+        }
+    };
 
     /**
      * Default constructor for SMF.
@@ -73,10 +268,82 @@ public class SMF extends ForumScript {
         this.setScriptName("simplemachines");
         this.setShortName("smf");
         this.setVersionRanges(new VersionRange[] { new VersionRange("1.1.1", "1.1.16"), new VersionRange("2.0.0", "2.0.2") });
+        // The columns are looked up once here, every other version than 1.1 has the columns of 2.0.
         if (this.getVersionRanges()[0].inVersionRange(this.getVersion())) {
-            this.membernamefield = this.membernamefield.replace("_", "");
-            this.groupfield = this.groupfield.replace("_", "");
+            this.members = MEMBERS_1_1;
+            this.membergroups = MEMBERGROUPS_1_1;
+            this.personalMessages = PERSONAL_MESSAGES_1_1;
+            this.pmRecipients = PM_RECIPIENTS_1_1;
+            this.messages = MESSAGES_1_1;
+            this.topics = TOPICS_1_1;
+            this.boards = BOARDS_1_1;
+        } else {
+            this.members = MEMBERS_2_0;
+            this.membergroups = MEMBERGROUPS_2_0;
+            this.personalMessages = PERSONAL_MESSAGES_2_0;
+            this.pmRecipients = PM_RECIPIENTS_2_0;
+            this.messages = MESSAGES_2_0;
+            this.topics = TOPICS_2_0;
+            this.boards = BOARDS_2_0;
+        }
+        // The decoders set the plain columns, the rest is read where the entities are created.
+        this.userMapper = RowDecoder.builder(ScriptUser.class, this.members)
+                .set(Members.NICKNAME, "setNickname")
+                .set(Members.REG_DATE, "setRegDate")
+                .set(Members.LAST_LOGIN, "setLastLogin")
+                .set(Members.EMAIL, "setEmail")
+                .set(Members.TITLE, "setUserTitle")
+                .set(Members.PASSWORD, "setPassword")
+                .set(Members.AVATAR, "setAvatarURL")
+                .set(Members.REG_IP, "setRegIP")
+                .set(Members.LAST_IP, "setLastIP")
+                .set(Members.SALT, "setPasswordSalt")
+                .build(new RowMapper<ScriptUser>() {
+                    @Override
+                    public ScriptUser map(ResultSet row) throws SQLException {
+                        return getUser(row);
+                    }
+                });
+        this.groupMapper = RowDecoder.builder(Group.class, this.membergroups)
+                .set(MemberGroups.DESCRIPTION, "setDescription")
+                .build(new RowMapper<Group>() {
+                    @Override
+                    public Group map(ResultSet row) throws SQLException {
+                        return getGroup(row);
+                    }
+                });
+        this.postMapper = RowDecoder.builder(ForumPost.class, this.messages)
+                .set(Messages.TIME, "setPostDate")
+                .set(Messages.SUBJECT, "setSubject")
+                .set(Messages.BODY, "setBody")
+                .build(new RowMapper<ForumPost>() {
+                    @Override
+                    public ForumPost map(ResultSet row) throws SQLException {
+                        return getPost(row);
+                    }
+                });
+        this.threadMapper = RowDecoder.builder(ForumThread.class, this.topics)
+                .set(Topics.VIEWS, "setViewsCount")
+                .set(Topics.REPLIES, "setRepliesCount")
+                .set(Topics.LOCKED, "setLocked")
+                .set(Topics.STICKY, "setSticky")
+                .set(Topics.POLL, "setPoll")
+                .build(new RowMapper<ForumThread>() {
+                    @Override
+                    public ForumThread map(ResultSet row) throws SQLException {
+                        return getThread(row);
+                    }
+                });
+    }
+
+    @Override
+    protected String resolve(String sql) {
+        String resolved = super.resolve(sql);
+        for (Schema<?> schema : new Schema<?>[] { this.members, this.membergroups, this.personalMessages,
+                                                  this.pmRecipients, this.messages, this.topics, this.boards }) {
+            resolved = schema.resolve(resolved);
         }
+        return resolved;
     }
 
     @Override
@@ -85,10 +352,52 @@ public class SMF extends ForumScript {
     }
 
     @Override
-    public boolean authenticate(String username, String password) {
-        String passwordHash = this.getDataManager().getStringField(
-                "SELECT `passwd` FROM `" + this.getDataManager().getPrefix() + "members` WHERE `" + this.membernamefield +
-                        "` = '" + username + "'");
+    public String getCacheVersion() throws SQLException {
+        // These settings change with every registration, post, topic and settings change.
+        return queryString(CACHE_VERSION);
+    }
+
+    @Override
+    public int pollChanges(HighWaterMarks marks) throws SQLException {
+        int changes = 0;
+        // SMF raises the modified ID of a message to a new message ID whenever it is edited, so new messages are the
+        // ones that still have their own ID.
+        for (HashMap<String, Object> map : getChangedRows(marks, "messages", "`id_msg_modified`", "`id_msg`",
+                "`id_msg`, `id_topic`, `id_board`, `id_member`, `{messages.poster_name}` AS `poster_name`", null)) {
+            int postid = Integer.parseInt(map.get("id_msg").toString());
+            postChanged(postid, Integer.parseInt(map.get("id_topic").toString()),
+                        Integer.parseInt(map.get("id_board").toString()), Integer.parseInt(map.get("id_member").toString()),
+                        (String) map.get("poster_name"), postid == Long.parseLong(map.get("bifrost_mark").toString()));
+            changes++;
+        }
+        for (HashMap<String, Object> map : getChangedRows(marks, "topics", "`id_topic`", null,
+                "`id_board`, `id_first_msg`, `id_last_msg`, `id_member_started`, (SELECT `{members.name}` FROM " +
+                        "`{prefix}members` WHERE `id_member` = `id_member_started`) AS `username`", null)) {
+            threadChanged(Integer.parseInt(map.get("bifrost_mark").toString()), Integer.parseInt(map.get("id_board").toString()),
+                          Integer.parseInt(map.get("id_first_msg").toString()),
+                          Integer.parseInt(map.get("id_last_msg").toString()),
+                          Integer.parseInt(map.get("id_member_started").toString()), (String) map.get("username"), true);
+            changes++;
+        }
+        for (HashMap<String, Object> map : getChangedRows(marks, "members", "`id_member`", null,
+                "`{members.name}` AS `username`", null)) {
+            userChanged(Integer.parseInt(map.get("bifrost_mark").toString()), map.get("username").toString(), true);
+            changes++;
+        }
+        List<HashMap<String, Object>> bans = getChangedRows(marks, "ban_groups", "`id_ban_group`", null, "`name`",
+                                                            null);
+        if (!bans.isEmpty()) {
+            if (this.getHandle() != null) {
+                Ban.cleanupCache(this.getHandle(), new Ban(this, 0, null, null, null), CacheCleanupReason.CREATE);
+            }
+            changes += bans.size();
+        }
+        return changes;
+    }
+
+    @Override
+    public boolean authenticate(String username, String password) throws SQLException {
+        String passwordHash = queryString(PASSWORD, username);
         return hashPassword(username, password).equals(passwordHash);
     }
 
@@ -98,220 +407,182 @@ public class SMF extends ForumScript {
     }
 
     @Override
-    public ForumUser getLastRegUser() {
-        return getUser(this.getDataManager().getIntegerField("SELECT `id_member` FROM `" +
-                this.getDataManager().getPrefix() + "members` ORDER BY `id_member` ASC LIMIT 1"));
+    public ForumUser getLastRegUser() throws SQLException {
+        return getUser(queryInt(LAST_REG_USER_ID));
     }
 
     @Override
-    public ForumUser getUser(String username) {
+    public ForumUser getUser(String username) throws SQLException {
         return getUser(getUserID(username));
     }
 
     @Override
-    public ForumUser getUser(int userid) {
-        int newUserid = userid;
-        JTable userTable = new JTable(this.getDataManager().resultSetToTableModel(
-                "SELECT * FROM `" + this.getDataManager().getPrefix() + "members` WHERE `id_member` = '" + newUserid +
-                        "' LIMIT 1"));
-        String title = null, savedusername = null, nickname = null, email = null, password = null, passwordsalt = null,
-                avatarurl = null, regip = null, lastip = null;
-        Date regdate = null, lastlogin = null, birthday = null;
-        Gender gender = null;
-        boolean activated = false;
-        if (userTable.getRowCount() == 1) {
-            newUserid = Integer.parseInt(userTable.getModel().getValueAt(0, 0).toString());
-            savedusername = userTable.getModel().getValueAt(0, 1).toString();
-            nickname = userTable.getModel().getValueAt(0, 7).toString();
-            regdate = new Date(Long.parseLong(userTable.getModel().getValueAt(0, 2).toString()) * 1000);
-            lastlogin = new Date(Long.parseLong(userTable.getModel().getValueAt(0, 6).toString()) * 1000);
-            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
-            if (this.getVersionRanges()[0].inVersionRange(this.getVersion())) {
-                email = userTable.getModel().getValueAt(0, 14).toString();
-                title = userTable.getModel().getValueAt(0, 34).toString();
-                password = userTable.getModel().getValueAt(0, 13).toString();
-                avatarurl = userTable.getModel().getValueAt(0, 30).toString();
-                regip = userTable.getModel().getValueAt(0, 39).toString();
-                lastip = userTable.getModel().getValueAt(0, 40).toString();
-                passwordsalt = userTable.getModel().getValueAt(0, 51).toString();
-                try {
-                    birthday = format.parse(userTable.getModel().getValueAt(0, 17).toString());
-                } catch (ParseException e) {
-                    birthday = null;
-                }
-                int genderid = Integer.parseInt(userTable.getModel().getValueAt(0, 16).toString());
-                if (genderid == 0) {
-                    gender = Gender.MALE;
-                } else if (genderid == 1) {
-                    gender = Gender.FEMALE;
-                } else {
-                    gender = Gender.UNKNOWN;
-                }
-                int activatedid = Integer.parseInt(userTable.getModel().getValueAt(0, 44).toString());
-                if (activatedid == 1) {
-                    activated = true;
-                }
-            } else if (this.getVersionRanges()[1].inVersionRange(this.getVersion())) {
-                email = userTable.getModel().getValueAt(0, 18).toString();
-                title = userTable.getModel().getValueAt(0, 38).toString();
-                password = userTable.getModel().getValueAt(0, 16).toString();
-                avatarurl = userTable.getModel().getValueAt(0, 34).toString();
-                regip = userTable.getModel().getValueAt(0, 43).toString();
-                lastip = userTable.getModel().getValueAt(0, 44).toString();
-                passwordsalt = userTable.getModel().getValueAt(0, 55).toString();
-                try {
-                    birthday = format.parse(userTable.getModel().getValueAt(0, 21).toString());
-                } catch (ParseException e) {
-                    birthday = null;
-                }
-                int genderid = Integer.parseInt(userTable.getModel().getValueAt(0, 20).toString());
-                if (genderid == 0) {
-                    gender = Gender.MALE;
-                } else if (genderid == 1) {
-                    gender = Gender.FEMALE;
-                } else {
-                    gender = Gender.UNKNOWN;
-                }
-                int activatedid = Integer.parseInt(userTable.getModel().getValueAt(0, 48).toString());
-                if (activatedid == 1) {
-                    activated = true;
-                }
+    public ForumUser getUser(int userid) throws SQLException {
+        ForumUser user = (ForumUser) queryFirst(USER, this.userMapper, userid);
+        if (user == null) {
+            return new ForumUser(this, userid, null, null);
+        }
+        return user;
+    }
+
+    @Override
+    public List<ScriptUser> getUsers(Collection<Integer> userids) throws SQLException {
+        if (userids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return queryList(USERS, this.userMapper, userids);
+    }
+
+    @Override
+    public List<ScriptUser> getUsersAfter(int userid, int limit) throws SQLException {
+        return query(USERS_AFTER, this.userMapper, userid, limit);
+    }
+
+    @Override
+    public List<ScriptUser> getUsersByName(Collection<String> usernames) throws SQLException {
+        if (usernames.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return queryList(USERS_BY_NAME, this.userMapper, usernames);
+    }
+
+    /**
+     * Creates the user of a row of {@link #userMapper}, which sets the other columns.
+     */
+    private ForumUser getUser(ResultSet row) throws SQLException {
+        Schema<Members> columns = this.members;
+        ForumUser user = new ForumUser(this, row.getInt(columns.getIndex(Members.ID)),
+                                       row.getString(columns.getIndex(Members.NAME)), null);
+        String birthdate = row.getString(columns.getIndex(Members.BIRTHDAY));
+        if (birthdate != null) {
+            try {
+                user.setBirthday(new SimpleDateFormat("yyyy-MM-dd").parse(birthdate));
+            } catch (ParseException e) {
+                user.setBirthday(null);
             }
         }
-        ForumUser user = new ForumUser(this, newUserid, savedusername, password);
-        user.setPasswordSalt(passwordsalt);
-        user.setUserTitle(title);
-        user.setNickname(nickname);
-        user.setEmail(email);
-        user.setAvatarURL(avatarurl);
-        user.setRegIP(regip);
-        user.setLastIP(lastip);
-        user.setRegDate(regdate);
-        user.setLastLogin(lastlogin);
-        user.setBirthday(birthday);
-        user.setGender(gender);
-        user.setActivated(activated);
+        int genderid = row.getInt(columns.getIndex(Members.GENDER));
+        if (genderid == 0) {
+            user.setGender(Gender.MALE);
+        } else if (genderid == 1) {
+            user.setGender(Gender.FEMALE);
+        } else {
+            user.setGender(Gender.UNKNOWN);
+        }
+        user.setActivated(row.getInt(columns.getIndex(Members.ACTIVATED)) == 1);
         return user;
     }
 
     @Override
     public void updateUser(ScriptUser user) throws SQLException {
+        Schema<Members> columns = this.members;
         HashMap<String, Object> data = new HashMap<String, Object>();
-        if (this.getVersionRanges()[0].inVersionRange(this.getVersion())) {
-            data.put("membername", user.getUsername());
-            data.put("realname", user.getNickname());
-            data.put("emailaddress", user.getEmail());
-            data.put("memberip", user.getRegIP());
-            data.put("memberip2", user.getLastIP());
-            data.put("dateregistered", user.getRegDate().getTime() / 1000);
-            data.put("lastlogin", user.getLastLogin().getTime() / 1000);
-        } else if (this.getVersionRanges()[1].inVersionRange(this.getVersion())) {
-            data.put("member_name", user.getUsername());
-            data.put("real_name", user.getNickname());
-            data.put("email_address", user.getEmail());
-            data.put("member_ip", user.getRegIP());
-            data.put("member_ip2", user.getLastIP());
-            data.put("date_registered", user.getRegDate().getTime() / 1000);
-            data.put("last_login", user.getLastLogin().getTime() / 1000);
-        }
-        data.put("avatar", user.getAvatarURL());
+        data.put(columns.getColumn(Members.NAME), user.getUsername());
+        data.put(columns.getColumn(Members.NICKNAME), user.getNickname());
+        data.put(columns.getColumn(Members.EMAIL), user.getEmail());
+        data.put(columns.getColumn(Members.REG_IP), user.getRegIP());
+        data.put(columns.getColumn(Members.LAST_IP), user.getLastIP());
+        data.put(columns.getColumn(Members.REG_DATE), user.getRegDate().getTime() / 1000);
+        data.put(columns.getColumn(Members.LAST_LOGIN), user.getLastLogin().getTime() / 1000);
+        data.put(columns.getColumn(Members.AVATAR), user.getAvatarURL());
         if (user.getPassword().length() != 40) {
-            data.put("passwd", hashPassword(user.getUsername(), user.getPassword()));
+            data.put(columns.getColumn(Members.PASSWORD), hashPassword(user.getUsername(), user.getPassword()));
         }
-        data.put("usertitle", user.getUserTitle());
+        data.put(columns.getColumn(Members.TITLE), user.getUserTitle());
         SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
-        data.put("birthdate", format.format(user.getBirthday()));
+        data.put(columns.getColumn(Members.BIRTHDAY), format.format(user.getBirthday()));
         int genderID = 0;
         if (user.getGender() != null && user.getGender() == Gender.FEMALE) {
             genderID = 1;
         }
-        data.put("gender", genderID);
+        data.put(columns.getColumn(Members.GENDER), genderID);
         int activated = 0;
         if (user.isActivated()) {
             activated = 1;
         }
-        data.put("is_activated", activated);
-        this.getDataManager().updateFields(data, "members", "`" + this.membernamefield + "` = '" + user.getUsername() +
-                "'");
+        data.put(columns.getColumn(Members.ACTIVATED), activated);
+        updateFields(data, "members", "`" + columns.getColumn(Members.NAME) + "` = ?", user.getUsername());
         data.clear();
     }
 
     @Override
-    public void createUser(ScriptUser user) throws SQLException {
-        if (isRegistered(user.getUsername())) {
-            return;
+    public void createUser(ScriptUser user) throws SQLException, ScriptException {
+        createUsers(Collections.singletonList(user));
+    }
+
+    @Override
+    public void createUsers(List<ScriptUser> users) throws SQLException, ScriptException {
+        // Users that are registered already, or listed twice, are skipped like in createUser.
+        Set<String> registered = new HashSet<String>();
+        List<String> usernames = new ArrayList<String>();
+        for (ScriptUser user : users) {
+            usernames.add(user.getUsername());
         }
+        for (ScriptUser user : getUsersByName(usernames)) {
+            registered.add(user.getUsername().toLowerCase());
+        }
+        final List<ScriptUser> created = new ArrayList<ScriptUser>();
+        final List<Object[]> rows = new ArrayList<Object[]>();
         Random r = new Random();
-        int rand = r.nextInt(1000000);
-        String salt = CraftCommons.encrypt(Encryption.MD5, rand).substring(0, 4);
-        HashMap<String, Object> data = new HashMap<String, Object>();
-        user.setPasswordSalt(salt);
-        user.setRegDate(new Date());
-        user.setLastLogin(new Date());
-        data.put(this.membernamefield, user.getUsername());
-        data.put("passwd", user.getPassword());
-        if (this.getVersionRanges()[0].inVersionRange(this.getVersion())) {
-            data.put("dateregistered", user.getRegDate().getTime() / 1000);
-            data.put("realname", user.getUsername());
-            data.put("emailaddress", user.getEmail());
-            data.put("memberip", user.getRegIP());
-            data.put("memberip2", user.getLastIP());
-            data.put("passwordsalt", user.getPasswordSalt());
-        } else if (this.getVersionRanges()[1].inVersionRange(this.getVersion())) {
-            data.put("date_registered", user.getRegDate().getTime() / 1000);
-            data.put("real_name", user.getUsername());
-            data.put("email_address", user.getEmail());
-            data.put("member_ip", user.getRegIP());
-            data.put("member_ip2", user.getLastIP());
-            data.put("password_salt", user.getPasswordSalt());
+        for (ScriptUser user : users) {
+            if (!registered.add(user.getUsername().toLowerCase())) {
+                continue;
+            }
+            int rand = r.nextInt(1000000);
+            user.setPasswordSalt(CraftCommons.encrypt(Encryption.MD5, rand).substring(0, 4));
+            user.setRegDate(new Date());
+            user.setLastLogin(new Date());
+            created.add(user);
+            rows.add(new Object[] { user.getUsername(), user.getPassword(), user.getRegDate().getTime() / 1000,
+                                    user.getUsername(), user.getEmail(), user.getRegIP(), user.getLastIP(),
+                                    user.getPasswordSalt() });
         }
-        this.getDataManager().insertFields(data, "members");
-
-        user.setID(getUserID(user.getUsername()));
-
-        this.getDataManager().executeQueryVoid("UPDATE `" + this.getDataManager().getPrefix() + "settings" + "` SET `value` =" +
-                " '" + user.getUsername() + "' WHERE `variable` = 'latestRealName'");
-
-        this.getDataManager().executeQueryVoid("UPDATE `" + this.getDataManager().getPrefix() + "settings" + "` SET `value` =" +
-                " '" + user.getID() + "' WHERE `variable` = 'latestMember'");
-
-        this.getDataManager().executeQueryVoid("UPDATE `" + this.getDataManager().getPrefix() + "settings" + "` SET `value` =" +
-                " '" + (user.getRegDate().getTime() / 1000) +
-                "' WHERE `variable` = 'memberlist_updated'");
+        if (created.isEmpty()) {
+            return;
+        }
+        transaction(new Transaction() {
+            @Override
+            public void run() throws SQLException {
+                int[] userids = insertBatch(USER_INSERT, rows);
+                for (int i = 0; i < userids.length; i++) {
+                    created.get(i).setID(userids[i]);
+                }
+                ScriptUser latest = created.get(created.size() - 1);
+                update(SETTING, latest.getUsername(), "latestRealName");
+                update(SETTING, latest.getID(), "latestMember");
+                update(SETTING, latest.getRegDate().getTime() / 1000, "memberlist_updated");
+                update(SETTING_ADD, created.size(), "totalMembers");
+            }
+        });
+    }
 
-        this.getDataManager().executeQueryVoid("UPDATE `" + this.getDataManager().getPrefix() + "settings" + "` SET `value` =" +
-                " value + 1 WHERE `variable` = 'totalMembers'");
+    @Override
+    public String getUsername(int userid) throws SQLException {
+        return queryString(USERNAME, userid);
     }
 
     @Override
-    public String getUsername(int userid) {
-        return this.getDataManager().getStringField(
-                "SELECT `" + this.membernamefield + "` FROM `" + this.getDataManager().getPrefix() +
-                        "members` WHERE `id_member` = '" + userid + "'");
+    public int getUserID(String username) throws SQLException {
+        return queryInt(USER_ID, username);
     }
 
     @Override
-    public int getUserID(String username) {
-        return this.getDataManager().getIntegerField(
-                "SELECT `id_member` FROM `" + this.getDataManager().getPrefix() + "members` WHERE `" + this
-                        .membernamefield +
-                        "` = '" + username + "'");
+    public List<Group> getGroups(int limit) throws SQLException {
+        return getGroups(0, limit);
     }
 
     @Override
-    public List<Group> getGroups(int limit) {
-        String limitstring = "";
-        if (limit > 0) {
-            limitstring = " LIMIT 0 , " + limit;
-        }
-        JTable groupTable = new JTable(this.getDataManager().resultSetToTableModel(
-                "SELECT `id_group` FROM `" + this.getDataManager().getPrefix() + "membergroups` ORDER BY `id_group` ASC" +
-                        limitstring));
-        List<Group> groups = new ArrayList<Group>();
-        for (int i = 0; groupTable.getRowCount() > i; i++) {
-            groups.add(getGroup(Integer.parseInt(groupTable.getModel().getValueAt(0, 0).toString())));
-        }
-        return groups;
+    public List<Group> getGroups(int offset, int limit) throws SQLException {
+        // The groups and their member counts are read with one query, the members aren't listed like in getGroup.
+        return query(GROUPS, new RowMapper<Group>() {
+            @Override
+            public Group map(ResultSet row) throws SQLException {
+                Group group = SMF.this.groupMapper.map(row);
+                group.setUserCount(row.getInt("user_count"));
+                group.setUsers(new ArrayList<ScriptUser>());
+                return group;
+            }
+        }, offset, rowCount(limit));
     }
 
     @Override
@@ -321,39 +592,42 @@ public class SMF extends ForumScript {
     }
 
     @Override
-    public Group getGroup(int groupid) {
-        JTable groupTable = new JTable(this.getDataManager().resultSetToTableModel(
-                "SELECT * FROM `" + this.getDataManager().getPrefix() + "membergroups` WHERE `id_group` = '" + groupid +
-                        "' ORDER BY `id_group` ASC LIMIT 1"));
-        String groupname = null, groupdescription = null;
+    public Group getGroup(int groupid) throws SQLException {
+        Group group = queryFirst(GROUP, this.groupMapper, groupid);
         List<ScriptUser> users = new ArrayList<ScriptUser>();
-        int newGroupid = groupid;
-        if (groupTable.getRowCount() == 1) {
-            newGroupid = Integer.parseInt(groupTable.getModel().getValueAt(0, 0).toString());
-            groupname = groupTable.getModel().getValueAt(0, 1).toString();
-            if (!this.getVersionRanges()[0].inVersionRange(this.getVersion())) {
-                groupdescription = groupTable.getModel().getValueAt(0, 2).toString();
-            }
-            JTable userTable = new JTable(this.getDataManager().resultSetToTableModel(
-                    "SELECT `" + this.membernamefield + "` FROM `" + this.getDataManager().getPrefix() +
-                            "members` WHERE `id_group` = '" + newGroupid + "' ORDER BY `id_member` ASC"));
-            for (int a = 0; groupTable.getRowCount() > a; a++) {
-                String username = userTable.getModel().getValueAt(a, 0).toString();
+        if (group == null) {
+            group = new Group(this, groupid, null);
+        } else {
+            List<String> usernames = new ArrayList<String>();
+            for (String username : query(GROUP_USERNAMES, new RowMapper<String>() {
+                @Override
+                public String map(ResultSet row) throws SQLException {
+                    return row.getString(1);
+                }
+            }, group.getID())) {
                 if (this.currentUsername != null && ! this.currentUsername.equalsIgnoreCase(username)) {
-                    users.add(getUser(username));
+                    usernames.add(username);
                 }
             }
+            if (!usernames.isEmpty()) {
+                users.addAll(getUsersByName(usernames));
+            }
         }
         this.currentUsername = null;
-        Group group = new Group(this, newGroupid, groupname);
-        group.setDescription(groupdescription);
-        group.setUserCount(this.getDataManager().getIntegerField(
-                "SELECT COUNT(*) FROM `" + this.getDataManager().getPrefix() + "members` WHERE `id_group` = '" + newGroupid +
-                        "'"));
+        group.setUserCount(queryInt(GROUP_USER_COUNT, group.getID()));
         group.setUsers(users);
         return group;
     }
 
+    /**
+     * Creates the group of a row of {@link #groupMapper}, which sets the other columns.
+     */
+    private Group getGroup(ResultSet row) throws SQLException {
+        Schema<MemberGroups> columns = this.membergroups;
+        return new Group(this, row.getInt(columns.getIndex(MemberGroups.ID)),
+                         row.getString(columns.getIndex(MemberGroups.NAME)));
+    }
+
     @Override
     public Group getGroup(String group) {
         /* TODO */
@@ -361,26 +635,26 @@ public class SMF extends ForumScript {
     }
 
     @Override
-    public List<Group> getUserGroups(String username) {
-        this.currentUsername = username;
-        JTable userTable = new JTable(this.getDataManager().resultSetToTableModel(
-                "SELECT `id_group`, `" + this.groupfield + "`  FROM `" + this.getDataManager().getPrefix() +
-                        "members` WHERE `" + this.membernamefield + "` = '" + username + "' ORDER BY `id_member` ASC LIMIT " +
-                        "1"));
-        List<Group> groups = new ArrayList<Group>();
-        if (userTable.getRowCount() == 1) {
-            groups.add(getGroup(Integer.parseInt(userTable.getModel().getValueAt(0, 0).toString())));
-            String additional = userTable.getModel().getValueAt(0, 1).toString();
-            if (! additional.isEmpty()) {
-                if (additional.contains(",")) {
-                    String[] split = userTable.getModel().getValueAt(0, 1).toString().split("\\,");
-                    for (int i = 0; split.length > i; i++) {
-                        this.currentUsername = username;
-                        groups.add(getGroup(Integer.parseInt(split[i])));
+    public List<Group> getUserGroups(String username) throws SQLException {
+        List<Integer> groupids = queryFirst(USER_GROUPS, new RowMapper<List<Integer>>() {
+            @Override
+            public List<Integer> map(ResultSet row) throws SQLException {
+                List<Integer> groupids = new ArrayList<Integer>();
+                groupids.add(row.getInt(1));
+                String additional = row.getString(2);
+                if (additional != null && ! additional.isEmpty()) {
+                    for (String groupid : additional.split("\\,")) {
+                        groupids.add(Integer.parseInt(groupid));
                     }
-                } else {
-                    groups.add(getGroup(Integer.parseInt(userTable.getModel().getValueAt(0, 1).toString())));
                 }
+                return groupids;
+            }
+        }, username);
+        List<Group> groups = new ArrayList<Group>();
+        if (groupids != null) {
+            for (int groupid : groupids) {
+                this.currentUsername = username;
+                groups.add(getGroup(groupid));
             }
         }
         return groups;
@@ -388,127 +662,112 @@ public class SMF extends ForumScript {
 
     @Override
     public void updateGroup(Group group) throws SQLException {
-        HashMap<String, Object> data = new HashMap<String, Object>();
-        if (this.getVersionRanges()[0].inVersionRange(this.getVersion())) {
-            data.put("groupname", group.getName());
-        } else if (this.getVersionRanges()[1].inVersionRange(this.getVersion())) {
-            data.put("group_name", group.getName());
-            data.put("description", group.getDescription());
-        }
-        this.getDataManager().updateFields(data, "membergroups", "`id_group` = '" + group.getID() + "'");
+        HashMap<String, Object> data = getGroupData(group);
+        updateFields(data, "membergroups", "`id_group` = ?", group.getID());
     }
 
     @Override
     public void createGroup(Group group) throws SQLException {
+        HashMap<String, Object> data = getGroupData(group);
+        group.setID(insertFields(data, "membergroups"));
+    }
+
+    private HashMap<String, Object> getGroupData(Group group) {
         HashMap<String, Object> data = new HashMap<String, Object>();
-        if (this.getVersionRanges()[0].inVersionRange(this.getVersion())) {
-            data.put("groupName", group.getName());
-        } else if (this.getVersionRanges()[1].inVersionRange(this.getVersion())) {
-            data.put("group_name", group.getName());
-            data.put("description", group.getDescription());
+        data.put(this.membergroups.getColumn(MemberGroups.NAME), group.getName());
+        if (this.membergroups.has(MemberGroups.DESCRIPTION)) {
+            data.put(this.membergroups.getColumn(MemberGroups.DESCRIPTION), group.getDescription());
         }
-        this.getDataManager().insertFields(data, "membergroups");
-        group.setID(this.getDataManager().getLastID("id_group", "membergroups"));
-    }
-
-    @Override
-    public PrivateMessage getPM(int pmid) {
-        PrivateMessage pm = new PrivateMessage(this, pmid);
-        Map<String, Object> array = this.getDataManager().getArray(
-                "SELECT * FROM `" + this.getDataManager().getPrefix() + "personal_messages` WHERE `id_pm` = '" +
-                        pmid + "' LIMIT 1");
-        for (int i = 0; array.size() > i; i++) {
-            pm.setDate(new Date(Long.parseLong(array.get("msgtime").toString()) * 1000));
-            pm.setBody(array.get("body").toString());
-            pm.setSubject(array.get("subject").toString());
-            pm.setSender(getUser(Integer.parseInt(array.get("id_member_from").toString())));
-            if (this.getVersionRanges()[0].inVersionRange(this.getVersion())) {
-                if (array.get("deleted_by_sender").toString().equalsIgnoreCase("0")) {
-                    pm.setDeletedBySender(false);
-                } else {
-                    pm.setDeletedBySender(true);
-                }
-            } else if (this.getVersionRanges()[1].inVersionRange(this.getVersion())) {
-                if (array.get("deletedbysender").toString().equalsIgnoreCase("0")) {
-                    pm.setDeletedBySender(false);
-                } else {
-                    pm.setDeletedBySender(true);
-                }
+        return data;
+    }
+
+    @Override
+    public PrivateMessage getPM(int pmid) throws SQLException {
+        final PrivateMessage pm = new PrivateMessage(this, pmid);
+        Integer senderid = queryFirst(PM, new RowMapper<Integer>() {
+            @Override
+            public Integer map(ResultSet row) throws SQLException {
+                Schema<PersonalMessages> columns = SMF.this.personalMessages;
+                pm.setDate(new Date(row.getLong(columns.getIndex(PersonalMessages.TIME)) * 1000));
+                pm.setBody(row.getString(columns.getIndex(PersonalMessages.BODY)));
+                pm.setSubject(row.getString(columns.getIndex(PersonalMessages.SUBJECT)));
+                pm.setDeletedBySender(row.getInt(columns.getIndex(PersonalMessages.DELETED_BY_SENDER)) != 0);
+                return row.getInt(columns.getIndex(PersonalMessages.SENDER));
             }
-            List<ScriptUser> recipients = new ArrayList<ScriptUser>();
-            List<HashMap<String, Object>> recipientsArray =
-                    this.getDataManager().getArrayList("SELECT * FROM `" + this.getDataManager().getPrefix() +
-                            "pm_recipients` WHERE `id_pm` = '" + pm.getID() + "'");
-            for (HashMap<String, Object> map : recipientsArray) {
-                ScriptUser recipient = getUser(Integer.parseInt(map.get("id_member").toString()));
-                recipients.add(recipient);
-                if (map.get("is_read").toString().equalsIgnoreCase("0")) {
-                    pm.setRead(recipient, false);
-                } else {
-                    pm.setRead(recipient, true);
-                }
-                if (map.get("deleted").toString().equalsIgnoreCase("0")) {
-                    pm.setDeleted(recipient, false);
-                } else {
-                    pm.setRead(recipient, true);
-                }
-                if (!this.getVersionRanges()[1].inVersionRange(this.getVersion())) {
-                    if (map.get("is_new").toString().equalsIgnoreCase("0")) {
-                        pm.setNew(recipient, false);
-                    } else {
-                        pm.setNew(recipient, true);
-                    }
+        }, pmid);
+        if (senderid == null) {
+            return pm;
+        }
+        pm.setSender(getUser(senderid));
+        // Every recipient is read as its ID and the is_read, deleted and is_new flags.
+        List<int[]> recipientRows = query(PM_RECIPIENTS, new RowMapper<int[]>() {
+            @Override
+            public int[] map(ResultSet row) throws SQLException {
+                Schema<PMRecipients> columns = SMF.this.pmRecipients;
+                int isNew = 0;
+                if (columns.has(PMRecipients.NEW)) {
+                    isNew = row.getInt(columns.getIndex(PMRecipients.NEW));
                 }
+                return new int[] { row.getInt(columns.getIndex(PMRecipients.MEMBER)),
+                                   row.getInt(columns.getIndex(PMRecipients.READ)),
+                                   row.getInt(columns.getIndex(PMRecipients.DELETED)), isNew };
+            }
+        }, pmid);
+        List<ScriptUser> recipients = new ArrayList<ScriptUser>();
+        for (int[] recipientRow : recipientRows) {
+            ScriptUser recipient = getUser(recipientRow[0]);
+            recipients.add(recipient);
+            pm.setRead(recipient, recipientRow[1] != 0);
+            pm.setDeleted(recipient, recipientRow[2] != 0);
+            if (this.pmRecipients.has(PMRecipients.NEW)) {
+                pm.setNew(recipient, recipientRow[3] != 0);
             }
-            pm.setRecipients(recipients);
         }
+        pm.setRecipients(recipients);
         return pm;
     }
 
     @Override
-    public List<PrivateMessage> getPMsSent(String username, int limit) {
-        String limitstring = "";
-        if (limit > 0) {
-            limitstring = " LIMIT 0 , " + limit;
-        }
-        JTable pmTable = new JTable(this.getDataManager().resultSetToTableModel(
-                "SELECT * FROM `" + this.getDataManager().getPrefix() + "personal_messages` WHERE `id_member_from` = '" +
-                        getUserID(username) + "' ORDER BY `id_pm` ASC" + limitstring));
-        List<PrivateMessage> pms = new ArrayList<PrivateMessage>();
-        for (int i = 0; pmTable.getRowCount() > i; i++) {
-            pms.add(getPM(Integer.parseInt(pmTable.getModel().getValueAt(0, 1).toString())));
-        }
-        return pms;
+    public List<PrivateMessage> getPMsSent(String username, int limit) throws SQLException {
+        return getPMsSent(username, 0, limit);
     }
 
     @Override
-    public List<PrivateMessage> getPMsReceived(String username, int limit) {
-        String limitstring = "";
-        if (limit > 0) {
-            limitstring = " LIMIT 0 , " + limit;
-        }
-        JTable pmTable = new JTable(this.getDataManager().resultSetToTableModel(
-                "SELECT * FROM `" + this.getDataManager().getPrefix() + "pm_recipients` WHERE `id_member` = '" +
-                        getUserID(username) + "' ORDER BY `id_pm` ASC" + limitstring));
+    public List<PrivateMessage> getPMsSent(String username, int offset, int limit) throws SQLException {
+        return getPMs(PMS_SENT, getUserID(username), offset, limit);
+    }
+
+    @Override
+    public List<PrivateMessage> getPMsReceived(String username, int limit) throws SQLException {
+        return getPMsReceived(username, 0, limit);
+    }
+
+    @Override
+    public List<PrivateMessage> getPMsReceived(String username, int offset, int limit) throws SQLException {
+        return getPMs(PMS_RECEIVED, getUserID(username), offset, limit);
+    }
+
+    private List<PrivateMessage> getPMs(QueryTemplate template, int userid, int offset, int limit) throws SQLException {
         List<PrivateMessage> pms = new ArrayList<PrivateMessage>();
-        for (int i = 0; pmTable.getRowCount() > i; i++) {
-            pms.add(getPM(Integer.parseInt(pmTable.getModel().getValueAt(0, 1).toString())));
+        for (int pmid : query(template, new RowMapper<Integer>() {
+            @Override
+            public Integer map(ResultSet row) throws SQLException {
+                return row.getInt(1);
+            }
+        }, userid, offset, rowCount(limit))) {
+            pms.add(getPM(pmid));
         }
         return pms;
     }
 
     @Override
-    public int getPMSentCount(String username) {
-        return this.getDataManager().getIntegerField("SELECT COUNT(*) FROM `" + this.getDataManager().getPrefix() +
-                "personal_messages` WHERE `id_member_from` = '" + getUserID(username) +
-                "'");
+    public int getPMSentCount(String username) throws SQLException {
+        return queryInt(PM_SENT_COUNT, getUserID(username));
     }
 
     @Override
-    public int getPMReceivedCount(String username) {
-        return this.getDataManager().getIntegerField(
-                "SELECT COUNT(*) FROM `" + this.getDataManager().getPrefix() + "pm_recipients` WHERE `id_member` = '" +
-                        getUserID(username) + "'");
+    public int getPMReceivedCount(String username) throws SQLException {
+        return queryInt(PM_RECEIVED_COUNT, getUserID(username));
     }
 
     @Override
@@ -521,17 +780,12 @@ public class SMF extends ForumScript {
         } else {
             temp = "0";
         }
-        if (this.getVersionRanges()[0].inVersionRange(this.getVersion())) {
-            data.put("deletedbysender", temp);
-            data.put("fromname", pm.getSender().getUsername());
-        } else if (this.getVersionRanges()[1].inVersionRange(this.getVersion())) {
-            data.put("deleted_by_sender", temp);
-            data.put("from_name", pm.getSender().getUsername());
-        }
+        data.put(this.personalMessages.getColumn(PersonalMessages.DELETED_BY_SENDER), temp);
+        data.put(this.personalMessages.getColumn(PersonalMessages.SENDER_NAME), pm.getSender().getUsername());
         data.put("msgtime", pm.getDate().getTime() / 1000);
         data.put("subject", pm.getSubject());
         data.put("body", pm.getBody());
-        this.getDataManager().updateFields(data, "personal_messages", "`id_pm` = '" + pm.getID() + "'");
+        updateFields(data, "personal_messages", "`id_pm` = ?", pm.getID());
 
         for (ScriptUser recipient : pm.getRecipients()) {
             data = new HashMap<String, Object>();
@@ -548,17 +802,15 @@ public class SMF extends ForumScript {
                 temp = "0";
             }
             data.put("deleted", temp);
-            if (!this.getVersionRanges()[0].inVersionRange(this.getVersion())) {
+            if (this.pmRecipients.has(PMRecipients.NEW)) {
                 if (pm.isNew(recipient)) {
                     temp = "1";
                 } else {
                     temp = "0";
                 }
-                data.put("is_new", temp);
+                data.put(this.pmRecipients.getColumn(PMRecipients.NEW), temp);
             }
-            this.getDataManager().updateFields(data, "pm_recipients",
-                    "`id_pm` = '" + pm.getID() + "' AND `id_member` = '" + recipient.getID() +
-                            "'");
+            updateFields(data, "pm_recipients", "`id_pm` = ? AND `id_member` = ?", pm.getID(), recipient.getID());
         }
         data.clear();
     }
@@ -572,25 +824,16 @@ public class SMF extends ForumScript {
         data.put("msgtime", pm.getDate().getTime() / 1000);
         data.put("subject", pm.getSubject());
         data.put("body", pm.getBody());
-        if (this.getVersionRanges()[0].inVersionRange(this.getVersion())) {
-            if (! pm.isDeletedBySender()) {
-                temp = 0;
-            }
-            data.put("deletedbysender", temp);
-            data.put("fromname", pm.getSender().getUsername());
-        } else if (this.getVersionRanges()[1].inVersionRange(this.getVersion())) {
-            if (! pm.isDeletedBySender()) {
-                temp = 0;
-            }
-            data.put("deleted_by_sender", temp);
-            data.put("from_name", pm.getSender().getUsername());
+        if (! pm.isDeletedBySender()) {
+            temp = 0;
         }
-        this.getDataManager().insertFields(data, "personal_messages");
-        pm.setID(this.getDataManager().getLastID("id_pm", "personal_messages"));
-        if (!this.getVersionRanges()[0].inVersionRange(this.getVersion())) {
+        data.put(this.personalMessages.getColumn(PersonalMessages.DELETED_BY_SENDER), temp);
+        data.put(this.personalMessages.getColumn(PersonalMessages.SENDER_NAME), pm.getSender().getUsername());
+        pm.setID(insertFields(data, "personal_messages"));
+        if (this.personalMessages.has(PersonalMessages.HEAD)) {
             data = new HashMap<String, Object>();
-            data.put("id_pm_head", pm.getID());
-            this.getDataManager().updateFields(data, "personal_messages", "`id_pm` = '" + pm.getID() + "'");
+            data.put(this.personalMessages.getColumn(PersonalMessages.HEAD), pm.getID());
+            updateFields(data, "personal_messages", "`id_pm` = ?", pm.getID());
         }
         for (ScriptUser recipient : pm.getRecipients()) {
             data = new HashMap<String, Object>();
@@ -606,100 +849,118 @@ public class SMF extends ForumScript {
                 temp = 1;
             }
             data.put("deleted", temp);
-            if (!this.getVersionRanges()[0].inVersionRange(this.getVersion())) {
+            if (this.pmRecipients.has(PMRecipients.NEW)) {
                 temp = 0;
                 if (pm.isNew(recipient)) {
                     temp = 1;
                 }
-                data.put("is_new", temp);
+                data.put(this.pmRecipients.getColumn(PMRecipients.NEW), temp);
             }
-            this.getDataManager().insertFields(data, "pm_recipients");
+            insertFields(data, "pm_recipients");
         }
         data.clear();
     }
 
     @Override
-    public int getTotalPostCount() {
-        return this.getDataManager().getIntegerField("SELECT COUNT(*) FROM `" + this.getDataManager().getPrefix() + "messages`");
+    public int getTotalPostCount() throws SQLException {
+        return queryInt(POST_COUNT);
     }
 
     @Override
-    public int getPostCount(String username) {
-        return this.getDataManager().getIntegerField(
-                "SELECT `posts` FROM `" + this.getDataManager().getPrefix() + "members` WHERE `" + this.membernamefield +
-                        "` = '" + username + "'");
+    public int getPostCount(String username) throws SQLException {
+        return queryInt(USER_POST_COUNT, username);
     }
 
     @Override
-    public ForumPost getPost(int postid) {
-        JTable postTable = new JTable(this.getDataManager().resultSetToTableModel(
-                "SELECT * FROM `" + this.getDataManager().getPrefix() + "messages` WHERE `id_msg` = '" + postid +
-                        "' LIMIT 1"));
-        //TODO: Figure out how to use boardid
-        //boardid = 0,
-        int threadid = 0, authorid = 0;
-        Date postdate = null;
-        String subject = null, body = null;
-        if (postTable.getRowCount() == 1) {
-            threadid = Integer.parseInt(postTable.getModel().getValueAt(0, 1).toString());
-            //TODO: boardid = Integer.parseInt(postTable.getModel().getValueAt(0, 2).toString());
-            postdate = new Date(Long.parseLong(postTable.getModel().getValueAt(0, 3).toString()) * 1000);
-            authorid = Integer.parseInt(postTable.getModel().getValueAt(0, 4).toString());
-            subject = postTable.getModel().getValueAt(0, 6).toString();
-            body = postTable.getModel().getValueAt(0, 13).toString();
+    public ForumPost getPost(int postid) throws SQLException {
+        List<ForumPost> posts = getPosts(POST, postid);
+        if (posts.isEmpty()) {
+            ForumPost post = new ForumPost(this, postid, 0);
+            post.setAuthor(getUser(0));
+            return post;
         }
-        ForumPost post = new ForumPost(this, postid, threadid);
-        post.setPostDate(postdate);
-        post.setAuthor(getUser(authorid));
-        post.setSubject(subject);
-        post.setBody(body);
+        return posts.get(0);
+    }
+
+    private List<ForumPost> getPosts(QueryTemplate template, Object... parameters) throws SQLException {
+        List<ForumPost> posts = query(template, this.postMapper, parameters);
+        setAuthors(posts);
+        return posts;
+    }
+
+    /**
+     * Creates the post of a row of {@link #postMapper}, which sets the other columns.
+     */
+    private ForumPost getPost(ResultSet row) throws SQLException {
+        Schema<Messages> columns = this.messages;
+        //TODO: Figure out how to use boardid
+        //boardid = row.getInt(columns.getIndex(Messages.BOARD));
+        ForumPost post = new ForumPost(this, row.getInt(columns.getIndex(Messages.ID)),
+                                       row.getInt(columns.getIndex(Messages.THREAD)));
+        // Only the ID of the author is known here, see setAuthors.
+        post.setAuthor(new ForumUser(this, row.getInt(columns.getIndex(Messages.AUTHOR)), null, null));
         return post;
     }
 
+    /**
+     * Replaces the authors of a list of posts or threads, which only hold their IDs, with the users; they are loaded
+     * with one query per {@link #USER_BATCH_SIZE} authors.
+     * <p>
+     * Authors that don't exist any longer, like guests, are kept as empty users, see {@link #getUser(int)}.
+     */
+    private void setAuthors(List<? extends Message> messages) throws SQLException {
+        if (messages.isEmpty()) {
+            return;
+        }
+        Set<Integer> authorids = new HashSet<Integer>();
+        for (Message message : messages) {
+            authorids.add(message.getAuthor().getID());
+        }
+        Map<Integer, ScriptUser> authors = new HashMap<Integer, ScriptUser>();
+        for (ScriptUser user : getUsers(authorids)) {
+            authors.put(user.getID(), user);
+        }
+        for (Message message : messages) {
+            ScriptUser author = authors.get(message.getAuthor().getID());
+            if (author != null) {
+                message.setAuthor(author);
+            }
+        }
+    }
+
     @Override
-    public ForumPost getLastUserPost(String username) {
-        int userid = getUserID(username);
-        return getPost(this.getDataManager().getIntegerField(
-                "SELECT `id_msg` FROM `" + this.getDataManager().getPrefix() + "messages` WHERE `id_member` = '" + userid +
-                        "' ORDER BY `id_msg` ASC LIMIT 1"));
+    public ForumPost getLastUserPost(String username) throws SQLException {
+        return getPost(queryInt(LAST_USER_POST_ID, getUserID(username)));
     }
 
     @Override
-    public ForumPost getLastPost() {
-        return getPost(this.getDataManager().getIntegerField(
-                "SELECT `id_msg` FROM `" + this.getDataManager().getPrefix() + "messages` ORDER BY `id_msg` ASC LIMIT 1"));
+    public ForumPost getLastPost() throws SQLException {
+        return getPost(queryInt(LAST_POST_ID));
     }
 
     @Override
-    public List<ForumPost> getPosts(int limit) {
-        String limitstring = "";
-        if (limit > 0) {
-            limitstring = " LIMIT 0 , " + limit;
-        }
-        JTable postTable = new JTable(this.getDataManager().resultSetToTableModel(
-                "SELECT `id_msg` FROM `" + this.getDataManager().getPrefix() + "messages` ORDER BY `id_msg` ASC" +
-                        limitstring));
-        List<ForumPost> posts = new ArrayList<ForumPost>();
-        for (int i = 0; postTable.getRowCount() > i; i++) {
-            posts.add(getPost(Integer.parseInt(postTable.getModel().getValueAt(0, 0).toString())));
-        }
-        return posts;
+    public List<ForumPost> getPosts(int limit) throws SQLException {
+        return getPosts(0, limit);
     }
 
     @Override
-    public List<ForumPost> getPostsFromThread(int threadid, int limit) {
-        String limitstring = "";
-        if (limit > 0) {
-            limitstring = " LIMIT 0 , " + limit;
-        }
-        JTable postTable = new JTable(this.getDataManager().resultSetToTableModel(
-                "SELECT `id_msg` FROM `" + this.getDataManager().getPrefix() + "messages` WHERE `id_topic` = '" + threadid +
-                        "' ORDER BY `id_msg` ASC" + limitstring));
-        List<ForumPost> posts = new ArrayList<ForumPost>();
-        for (int i = 0; postTable.getRowCount() > i; i++) {
-            posts.add(getPost(Integer.parseInt(postTable.getModel().getValueAt(0, 0).toString())));
-        }
-        return posts;
+    public List<ForumPost> getPosts(int offset, int limit) throws SQLException {
+        return getPosts(POSTS, offset, rowCount(limit));
+    }
+
+    @Override
+    public List<ForumPost> getPostsAfter(int postid, int limit) throws SQLException {
+        return getPosts(POSTS_AFTER, postid, limit);
+    }
+
+    @Override
+    public List<ForumPost> getPostsFromThread(int threadid, int limit) throws SQLException {
+        return getPostsFromThread(threadid, 0, limit);
+    }
+
+    @Override
+    public List<ForumPost> getPostsFromThread(int threadid, int offset, int limit) throws SQLException {
+        return getPosts(THREAD_POSTS, threadid, offset, rowCount(limit));
     }
 
     @Override
@@ -710,183 +971,162 @@ public class SMF extends ForumScript {
         data.put("id_member", post.getAuthor().getID());
         data.put("subject", post.getSubject());
         data.put("body", post.getBody());
-        if (this.getVersionRanges()[0].inVersionRange(this.getVersion())) {
-            data.put("postertime", post.getPostDate().getTime() / 1000);
-            data.put("postername", post.getAuthor().getUsername());
-            data.put("posteremail", post.getAuthor().getEmail());
-            data.put("posterip", post.getAuthor().getLastIP());
-        } else if (this.getVersionRanges()[1].inVersionRange(this.getVersion())) {
-            data.put("poster_time", post.getPostDate().getTime() / 1000);
-            data.put("poster_name", post.getAuthor().getUsername());
-            data.put("poster_email", post.getAuthor().getEmail());
-            data.put("poster_ip", post.getAuthor().getLastIP());
-        }
-        this.getDataManager().updateFields(data, "messages", "`id_msg` = '" + post.getID() + "'");
+        putPoster(data, post);
+        updateFields(data, "messages", "`id_msg` = ?", post.getID());
+    }
+
+    private void putPoster(HashMap<String, Object> data, ForumPost post) {
+        data.put(this.messages.getColumn(Messages.TIME), post.getPostDate().getTime() / 1000);
+        data.put(this.messages.getColumn(Messages.POSTER_NAME), post.getAuthor().getUsername());
+        data.put(this.messages.getColumn(Messages.POSTER_EMAIL), post.getAuthor().getEmail());
+        data.put(this.messages.getColumn(Messages.POSTER_IP), post.getAuthor().getLastIP());
     }
 
     @Override
     public void createPost(ForumPost post) throws SQLException, ScriptException {
-        HashMap<String, Object> data = new HashMap<String, Object>();
-        post.setPostDate(new Date());
-        data.put("id_topic", post.getThreadID());
-        data.put("id_board", post.getBoardID());
-        data.put("id_member", post.getAuthor().getID());
-        data.put("subject", post.getSubject());
-        data.put("body", post.getBody());
+        createPosts(Collections.singletonList(post));
+    }
 
-        if (this.getVersionRanges()[0].inVersionRange(this.getVersion())) {
-            data.put("postertime", post.getPostDate().getTime() / 1000);
-            data.put("postername", post.getAuthor().getUsername());
-            data.put("posteremail", post.getAuthor().getEmail());
-            data.put("posterip", post.getAuthor().getLastIP());
-        } else if (this.getVersionRanges()[1].inVersionRange(this.getVersion())) {
-            data.put("poster_time", post.getPostDate().getTime() / 1000);
-            data.put("poster_name", post.getAuthor().getUsername());
-            data.put("poster_email", post.getAuthor().getEmail());
-            data.put("poster_ip", post.getAuthor().getLastIP());
+    @Override
+    public void createPosts(List<ForumPost> posts) throws SQLException, ScriptException {
+        int[] boardids = new int[posts.size()];
+        for (int i = 0; i < boardids.length; i++) {
+            boardids[i] = posts.get(i).getBoardID();
         }
+        createPosts(posts, boardids);
+    }
 
-        this.getDataManager().insertFields(data, "messages");
-        post.setID(this.getDataManager().getLastID("id_msg", "messages"));
-
-        data = new HashMap<String, Object>();
-        data.put("id_msg_modified", post.getID());
-        this.getDataManager().updateFields(data, "messages", "`id_msg` = '" + post.getID() + "'");
-        this.getDataManager().executeQueryVoid("UPDATE `" + this.getDataManager().getPrefix() + "settings" + "` SET `value` =" +
-                " value + 1, `value` = '" + post.getID() + "' WHERE `variable` = 'maxMsgID'");
-        data = new HashMap<String, Object>();
-        data.put("id_last_msg", post.getID());
-        data.put("id_member_updated", post.getAuthor().getID());
-        this.getDataManager().updateFields(data, "topics", "`id_topic` = '" + post.getThreadID() + "'");
-        if (this.getVersionRanges()[0].inVersionRange(this.getVersion())) {
-            this.getDataManager().executeQueryVoid(
-                    "UPDATE `" + this.getDataManager().getPrefix() + "topics" + "` SET `numreplies` =" +
-                            " numreplies + 1 WHERE `id_topic` = '" + post.getThreadID() + "'");
-        } else if (this.getVersionRanges()[1].inVersionRange(this.getVersion())) {
-            this.getDataManager().executeQueryVoid(
-                    "UPDATE `" + this.getDataManager().getPrefix() + "topics" + "` SET `num_replies` =" +
-                            " num_replies + 1 WHERE `id_topic` = '" + post.getThreadID() + "'");
+    /**
+     * Inserts the posts with one batch per table in one transaction, the boards are passed along because the threads
+     * of the posts of new threads can't be loaded yet.
+     */
+    private void createPosts(final List<ForumPost> posts, final int[] boardids) throws SQLException, ScriptException {
+        if (posts.isEmpty()) {
+            return;
         }
-        this.getDataManager().executeQueryVoid("UPDATE `" + this.getDataManager().getPrefix() + "members" + "` SET `posts` =" +
-                " posts + 1 WHERE `id_member` = '" + post.getAuthor().getID() + "'");
-        this.getDataManager().executeQueryVoid(
-                "UPDATE `" + this.getDataManager().getPrefix() + "boards" + "` SET `id_last_msg` =" +
-                        " '" + post.getID() + "', `id_msg_updated` = '" + post.getID() + "' WHERE `id_board` = '" +
-                        post.getBoardID() + "'");
-        if (this.getVersionRanges()[0].inVersionRange(this.getVersion())) {
-            this.getDataManager().executeQueryVoid(
-                    "UPDATE `" + this.getDataManager().getPrefix() + "boards" + "` SET `numposts` =" +
-                            " numposts + 1 WHERE `id_board` = '" + post.getBoardID() + "'");
-        } else if (this.getVersionRanges()[1].inVersionRange(this.getVersion())) {
-            this.getDataManager().executeQueryVoid(
-                    "UPDATE `" + this.getDataManager().getPrefix() + "boards" + "` SET `num_posts` =" +
-                            " num_posts + 1 WHERE `id_board` = '" + post.getBoardID() + "'");
+        final List<Object[]> rows = new ArrayList<Object[]>();
+        for (int i = 0; i < posts.size(); i++) {
+            ForumPost post = posts.get(i);
+            post.setPostDate(new Date());
+            rows.add(new Object[] { post.getThreadID(), boardids[i], post.getAuthor().getID(), post.getSubject(),
+                                    post.getBody(), post.getPostDate().getTime() / 1000,
+                                    post.getAuthor().getUsername(), post.getAuthor().getEmail(),
+                                    post.getAuthor().getLastIP() });
         }
+        transaction(new Transaction() {
+            @Override
+            public void run() throws SQLException {
+                int[] postids = insertBatch(POST_INSERT, rows);
+                List<Object[]> modified = new ArrayList<Object[]>(), threads = new ArrayList<Object[]>(),
+                        replies = new ArrayList<Object[]>(), users = new ArrayList<Object[]>(),
+                        boards = new ArrayList<Object[]>(), boardPosts = new ArrayList<Object[]>();
+                for (int i = 0; i < postids.length; i++) {
+                    ForumPost post = posts.get(i);
+                    post.setID(postids[i]);
+                    modified.add(new Object[] { post.getID(), post.getID() });
+                    threads.add(new Object[] { post.getID(), post.getAuthor().getID(), post.getThreadID() });
+                    replies.add(new Object[] { post.getThreadID() });
+                    users.add(new Object[] { post.getAuthor().getID() });
+                    boards.add(new Object[] { post.getID(), post.getID(), boardids[i] });
+                    boardPosts.add(new Object[] { boardids[i] });
+                }
+                updateBatch(POST_MODIFIED, modified);
+                update(LAST_MESSAGE, postids[postids.length - 1]);
+                updateBatch(THREAD_LAST_POST, threads);
+                updateBatch(THREAD_REPLIES_INCREASE, replies);
+                updateBatch(USER_POSTS_INCREASE, users);
+                updateBatch(BOARD_LAST_POST, boards);
+                updateBatch(BOARD_POSTS_INCREASE, boardPosts);
+            }
+        });
     }
 
     @Override
-    public int getTotalThreadCount() {
-        return this.getDataManager().getIntegerField("SELECT COUNT(*) FROM `" + this.getDataManager().getPrefix() + "topics`");
+    public int getTotalThreadCount() throws SQLException {
+        return queryInt(THREAD_COUNT);
     }
 
     @Override
-    public int getThreadCount(String username) {
-        int userid = getUserID(username);
-        return this.getDataManager().getIntegerField(
-                "SELECT COUNT(*) FROM `" + this.getDataManager().getPrefix() + "topics` WHERE `id_member_started` = '" +
-                        userid + "'");
+    public int getThreadCount(String username) throws SQLException {
+        return queryInt(USER_THREAD_COUNT, getUserID(username));
     }
 
     @Override
-    public ForumThread getLastThread() {
-        return getThread(this.getDataManager().getIntegerField(
-                "SELECT `id_topic` FROM `" + this.getDataManager().getPrefix() + "topics` ORDER BY `id_topic` ASC LIMIT " +
-                        "1"));
+    public ForumThread getLastThread() throws SQLException {
+        return getThread(queryInt(LAST_THREAD_ID));
     }
 
     @Override
-    public ForumThread getLastUserThread(String username) {
-        int userid = getUserID(username);
-        return getThread(this.getDataManager().getIntegerField(
-                "SELECT `id_topic` FROM `" + this.getDataManager().getPrefix() + "topics` WHERE `id_member_started` = '" +
-                        userid + "' ORDER BY `id_topic` ASC LIMIT 1"));
+    public ForumThread getLastUserThread(String username) throws SQLException {
+        return getThread(queryInt(LAST_USER_THREAD_ID, getUserID(username)));
     }
 
     @Override
-    public ForumThread getThread(int threadid) {
-        JTable threadTable = new JTable(this.getDataManager().resultSetToTableModel(
-                "SELECT * FROM `" + this.getDataManager().getPrefix() + "topics` WHERE `id_topic` = '" + threadid +
-                        "' LIMIT 1"));
-        int firstpostid = 0, lastpostid = 0, boardid = 0, authorid = 0, numreplies = 0, numviews = 0;
-        Date threaddate = null;
-        String subject = null, body = null;
-        boolean sticky = false, locked = false, poll = false;
-        if (threadTable.getRowCount() == 1) {
-            int temp = Integer.parseInt(threadTable.getModel().getValueAt(0, 1).toString());
-            if (temp > 0) {
-                sticky = true;
-            }
-            boardid = Integer.parseInt(threadTable.getModel().getValueAt(0, 2).toString());
-            firstpostid = Integer.parseInt(threadTable.getModel().getValueAt(0, 3).toString());
-            lastpostid = Integer.parseInt(threadTable.getModel().getValueAt(0, 4).toString());
-            authorid = Integer.parseInt(threadTable.getModel().getValueAt(0, 5).toString());
-            temp = Integer.parseInt(threadTable.getModel().getValueAt(0, 7).toString());
-            if (temp > 0) {
-                poll = true;
-            }
-            if (this.getVersionRanges()[0].inVersionRange(this.getVersion())) {
-                numreplies = Integer.parseInt(threadTable.getModel().getValueAt(0, 8).toString());
-                numviews = Integer.parseInt(threadTable.getModel().getValueAt(0, 9).toString());
-                temp = Integer.parseInt(threadTable.getModel().getValueAt(0, 10).toString());
-                if (temp > 0) {
-                    locked = true;
-                }
-            } else if (this.getVersionRanges()[1].inVersionRange(this.getVersion())) {
-                numreplies = Integer.parseInt(threadTable.getModel().getValueAt(0, 10).toString());
-                numviews = Integer.parseInt(threadTable.getModel().getValueAt(0, 11).toString());
-                temp = Integer.parseInt(threadTable.getModel().getValueAt(0, 12).toString());
-                if (temp > 0) {
-                    locked = true;
-                }
-            }
-            JTable postTable = new JTable(this.getDataManager().resultSetToTableModel(
-                    "SELECT * FROM `" + this.getDataManager().getPrefix() + "messages` WHERE `id_msg` = '" + firstpostid +
-                            "' LIMIT 1"));
-            if (postTable.getRowCount() == 1) {
-                threaddate = new Date(Long.parseLong(postTable.getModel().getValueAt(0, 3).toString()) * 1000);
-                subject = postTable.getModel().getValueAt(0, 6).toString();
-                body = postTable.getModel().getValueAt(0, 13).toString();
-            }
+    public ForumThread getThread(int threadid) throws SQLException {
+        List<ForumThread> threads = getThreads(THREAD, threadid);
+        if (threads.isEmpty()) {
+            ForumThread thread = new ForumThread(this, 0, 0, threadid, 0);
+            thread.setAuthor(getUser(0));
+            return thread;
         }
-        ForumThread thread = new ForumThread(this, firstpostid, lastpostid, threadid, boardid);
-        thread.setViewsCount(numviews);
-        thread.setRepliesCount(numreplies);
-        thread.setLocked(locked);
-        thread.setSticky(sticky);
-        thread.setPoll(poll);
-        thread.setAuthor(getUser(authorid));
-        thread.setThreadDate(threaddate);
-        thread.setBody(body);
-        thread.setSubject(subject);
-        return thread;
+        return threads.get(0);
     }
 
-    @Override
-    public List<ForumThread> getThreads(int limit) {
-        String limitstring = "";
-        if (limit > 0) {
-            limitstring = " LIMIT 0 , " + limit;
+    private List<ForumThread> getThreads(QueryTemplate template, Object... parameters) throws SQLException {
+        List<ForumThread> threads = query(template, this.threadMapper, parameters);
+        if (threads.isEmpty()) {
+            return threads;
         }
-        JTable postTable = new JTable(this.getDataManager().resultSetToTableModel(
-                "SELECT `id_topic` FROM `" + this.getDataManager().getPrefix() + "topics` ORDER BY `id_topic` ASC" +
-                        limitstring));
-        List<ForumThread> threads = new ArrayList<ForumThread>();
-        for (int i = 0; postTable.getRowCount() > i; i++) {
-            threads.add(getThread(Integer.parseInt(postTable.getModel().getValueAt(0, 0).toString())));
+        setAuthors(threads);
+        // The first posts of all threads are read with a second query.
+        List<Integer> firstpostids = new ArrayList<Integer>();
+        for (ForumThread thread : threads) {
+            firstpostids.add(thread.getFirstPostID());
+        }
+        Map<Integer, ForumPost> firstposts = new HashMap<Integer, ForumPost>();
+        for (ForumPost post : queryList(POSTS_BY_ID, this.postMapper, firstpostids)) {
+            firstposts.put(post.getID(), post);
+        }
+        for (ForumThread thread : threads) {
+            ForumPost post = firstposts.get(thread.getFirstPostID());
+            if (post != null) {
+                thread.setThreadDate(post.getPostDate());
+                thread.setBody(post.getBody());
+                thread.setSubject(post.getSubject());
+            }
         }
         return threads;
     }
 
+    /**
+     * Creates the thread of a row of {@link #threadMapper}, which sets the other columns.
+     */
+    private ForumThread getThread(ResultSet row) throws SQLException {
+        Schema<Topics> columns = this.topics;
+        ForumThread thread = new ForumThread(this, row.getInt(columns.getIndex(Topics.FIRST_POST)),
+                                             row.getInt(columns.getIndex(Topics.LAST_POST)),
+                                             row.getInt(columns.getIndex(Topics.ID)),
+                                             row.getInt(columns.getIndex(Topics.BOARD)));
+        // Only the ID of the author is known here, see setAuthors.
+        thread.setAuthor(new ForumUser(this, row.getInt(columns.getIndex(Topics.AUTHOR)), null, null));
+        return thread;
+    }
+
+    @Override
+    public List<ForumThread> getThreads(int limit) throws SQLException {
+        return getThreads(0, limit);
+    }
+
+    @Override
+    public List<ForumThread> getThreads(int offset, int limit) throws SQLException {
+        return getThreads(THREADS, offset, rowCount(limit));
+    }
+
+    @Override
+    public List<ForumThread> getThreadsAfter(int threadid, int limit) throws SQLException {
+        return getThreads(THREADS_AFTER, threadid, limit);
+    }
+
     @Override
     public void updateThread(ForumThread thread) throws SQLException, ScriptException {
         String temp;
@@ -901,93 +1141,87 @@ public class SMF extends ForumScript {
             temp = "0";
         }
         data.put("id_poll", temp);
-        if (this.getVersionRanges()[0].inVersionRange(this.getVersion())) {
-            if (thread.isSticky()) {
-                temp = "1";
-            } else {
-                temp = "0";
-            }
-            data.put("issticky", temp);
-            data.put("numreplies", thread.getRepliesCount());
-            data.put("numviews", thread.getViewsCount());
-        } else if (this.getVersionRanges()[1].inVersionRange(this.getVersion())) {
-            if (thread.isSticky()) {
-                temp = "1";
-            } else {
-                temp = "0";
-            }
-            data.put("is_sticky", temp);
-            data.put("num_replies", thread.getRepliesCount());
-            data.put("num_views", thread.getViewsCount());
+        if (thread.isSticky()) {
+            temp = "1";
+        } else {
+            temp = "0";
         }
+        data.put(this.topics.getColumn(Topics.STICKY), temp);
+        data.put(this.topics.getColumn(Topics.REPLIES), thread.getRepliesCount());
+        data.put(this.topics.getColumn(Topics.VIEWS), thread.getViewsCount());
         if (thread.isLocked()) {
             temp = "1";
         } else {
             temp = "0";
         }
         data.put("locked", temp);
-        this.getDataManager().updateFields(data, "topics", "`id_topic` = '" + thread.getID() + "'");
+        updateFields(data, "topics", "`id_topic` = ?", thread.getID());
     }
 
     @Override
     public void createThread(ForumThread thread) throws SQLException, ScriptException {
-        HashMap<String, Object> data = new HashMap<String, Object>();
-        thread.setThreadDate(new Date());
-        data.put("id_board", thread.getBoardID());
-        data.put("id_member_started", thread.getAuthor().getID());
-        data.put("id_member_updated", thread.getAuthor().getID());
-        if (thread.isLocked()) {
-            data.put("locked", "1");
+        createThreads(Collections.singletonList(thread));
+    }
+
+    @Override
+    public void createThreads(final List<ForumThread> threads) throws SQLException, ScriptException {
+        if (threads.isEmpty()) {
+            return;
         }
-        if (this.getVersionRanges()[0].inVersionRange(this.getVersion()) && thread.isSticky()) {
-            data.put("issticky", "1");
-        } else if (this.getVersionRanges()[1].inVersionRange(this.getVersion()) && thread.isSticky()) {
-            data.put("is_sticky", "1");
+        final List<Object[]> rows = new ArrayList<Object[]>();
+        for (ForumThread thread : threads) {
+            thread.setThreadDate(new Date());
+            rows.add(new Object[] { thread.getBoardID(), thread.getAuthor().getID(), thread.getAuthor().getID(),
+                                    thread.isLocked() ? 1 : 0, thread.isSticky() ? 1 : 0 });
         }
-        this.getDataManager().insertFields(data, "topics");
-        thread.setID(this.getDataManager().getLastID("id_topic", "topics"));
-
-        ForumPost post = new ForumPost(this, thread.getID(), thread.getBoardID());
-        post.setAuthor(thread.getAuthor());
-        post.setBody(thread.getBody());
-        post.setSubject(thread.getSubject());
-        post.create();
-
-        data = new HashMap<String, Object>();
-        data.put("id_first_msg", post.getID());
-        data.put("id_last_msg", post.getID());
-        this.getDataManager().updateFields(data, "topics", "`id_topic` = '" + thread.getID() + "'");
-
-        if (this.getVersionRanges()[0].inVersionRange(this.getVersion())) {
-            this.getDataManager().executeQueryVoid(
-                    "UPDATE `" + this.getDataManager().getPrefix() + "boards" + "` SET `numtopics` =" +
-                            " numtopics + 1 WHERE `id_board` = '" + post.getBoardID() + "'");
-            this.getDataManager().executeQueryVoid(
-                    "UPDATE `" + this.getDataManager().getPrefix() + "topics" + "` SET `numreplies` =" +
-                            " '0' WHERE `id_topic` = '" + post.getThreadID() + "'");
-        } else if (this.getVersionRanges()[1].inVersionRange(this.getVersion())) {
-            this.getDataManager().executeQueryVoid(
-                    "UPDATE `" + this.getDataManager().getPrefix() + "boards" + "` SET `num_topics` =" +
-                            " num_topics + 1 WHERE `id_board` = '" + post.getBoardID() + "'");
-            this.getDataManager().executeQueryVoid(
-                    "UPDATE `" + this.getDataManager().getPrefix() + "topics" + "` SET `num_replies` =" +
-                            " '0' WHERE `id_topic` = '" + post.getThreadID() + "'");
+        final List<ForumPost> posts = new ArrayList<ForumPost>();
+        transaction(new Transaction() {
+            @Override
+            public void run() throws SQLException, ScriptException {
+                int[] threadids = insertBatch(THREAD_INSERT, rows);
+                int[] boardids = new int[threadids.length];
+                for (int i = 0; i < threadids.length; i++) {
+                    ForumThread thread = threads.get(i);
+                    thread.setID(threadids[i]);
+                    boardids[i] = thread.getBoardID();
+                    ForumPost post = new ForumPost(SMF.this, 0, thread.getID());
+                    post.setAuthor(thread.getAuthor());
+                    post.setBody(thread.getBody());
+                    post.setSubject(thread.getSubject());
+                    posts.add(post);
+                }
+                createPosts(posts, boardids);
+                List<Object[]> firstPosts = new ArrayList<Object[]>(), boards = new ArrayList<Object[]>(),
+                        replies = new ArrayList<Object[]>();
+                for (int i = 0; i < threadids.length; i++) {
+                    ForumPost post = posts.get(i);
+                    firstPosts.add(new Object[] { post.getID(), post.getID(), threadids[i] });
+                    boards.add(new Object[] { boardids[i] });
+                    replies.add(new Object[] { threadids[i] });
+                }
+                updateBatch(THREAD_POSTS_SET, firstPosts);
+                updateBatch(BOARD_THREADS_INCREASE, boards);
+                updateBatch(THREAD_REPLIES_RESET, replies);
+            }
+        });
+        for (ForumPost post : posts) {
+            ForumPost.cleanupCache(getHandle(), post, CacheCleanupReason.CREATE);
+            ForumPost.addCache(getHandle(), post);
         }
     }
 
     @Override
-    public int getUserCount() {
-        return this.getDataManager().getIntegerField("SELECT COUNT(*) FROM `" + this.getDataManager().getPrefix() + "members`");
+    public int getUserCount() throws SQLException {
+        return queryInt(USER_COUNT);
     }
 
     @Override
-    public int getGroupCount() {
-        return this.getDataManager().getIntegerField(
-                "SELECT COUNT(*) FROM `" + this.getDataManager().getPrefix() + "membergroups`");
+    public int getGroupCount() throws SQLException {
+        return queryInt(GROUP_COUNT);
     }
 
     @Override
-    public List<String> getIPs(String username) {
+    public List<String> getIPs(String username) throws SQLException {
         List<String> ips = new ArrayList<String>();
         ScriptUser user = getUser(username);
         ips.add(user.getLastIP());
@@ -996,64 +1230,65 @@ public class SMF extends ForumScript {
     }
 
     @Override
-    public List<Ban> getBans(int limit) {
-        String limitstring = "";
-        if (limit > 0) {
-            limitstring = " LIMIT 0 , " + limit;
+    public List<Ban> getBans(int limit) throws SQLException {
+        return getBans(0, limit);
+    }
+
+    @Override
+    public List<Ban> getBans(int offset, int limit) throws SQLException {
+        return getBans(BANS, offset, rowCount(limit));
+    }
+
+    @Override
+    public List<Ban> getBansAfter(int banid, int limit) throws SQLException {
+        return getBans(BANS_AFTER, banid, limit);
+    }
+
+    private List<Ban> getBans(QueryTemplate template, Object... parameters) throws SQLException {
+        List<Ban> bans = query(template, this.banMapper, parameters);
+        if (bans.isEmpty()) {
+            return bans;
         }
-        JTable banTable = new JTable(this.getDataManager().resultSetToTableModel(
-                "SELECT * FROM `" + this.getDataManager().getPrefix() + "ban_groups`" + limitstring));
-        List<Ban> bans = new ArrayList<Ban>();
-        for (int i = 0; banTable.getRowCount() > i; i++) {
-            int banid = Integer.parseInt(banTable.getModel().getValueAt(i, 0).toString());
-            String username = banTable.getModel().getValueAt(i, 1).toString();
-            String email =
-                    this.getDataManager().getStringField("SELECT `email_address` FROM `" + this.getDataManager().getPrefix() +
-                            "ban_items` WHERE `id_ban_group` = '" + banid +
-                            "' AND `email_address` != '' ORDER BY `id_ban` ASC LIMIT 1");
-            JTable banIPtable = new JTable(this.getDataManager().resultSetToTableModel(
-                    "SELECT `ip_low1`, `ip_high1`, `ip_low2`, `ip_high2`, `ip_low3`, `ip_high3`, `ip_low4`, " +
-                            "`ip_high4` FROM `" +
-                            this.getDataManager().getPrefix() + "ban_items` WHERE `id_ban_group` = '" + banid +
-                            "' AND `ip_low1` != '0' ORDER BY `id_ban` ASC LIMIT 1"));
-            String ip = null;
-            if (banIPtable.getRowCount() == 1) {
-                String ip1 =
-                        banIPtable.getModel().getValueAt(0, 0) + "." + banIPtable.getModel().getValueAt(0, 2) + "." +
-                                banIPtable.getModel().getValueAt(0, 4) + "." + banIPtable.getModel().getValueAt(0, 6);
-                String ip2 =
-                        banIPtable.getModel().getValueAt(0, 1) + "." + banIPtable.getModel().getValueAt(0, 3) + "." +
-                                banIPtable.getModel().getValueAt(0, 5) + "." + banIPtable.getModel().getValueAt(0, 7);
-                if (ip1.equalsIgnoreCase(ip2)) {
-                    ip = ip1;
-                } else {
-                    ip = valuesToIP(ip1, ip2);
+        // The items of all bans of the page are read with one query, every ban takes its first email, IP and user.
+        final Map<Integer, Ban> byID = new HashMap<Integer, Ban>();
+        for (Ban ban : bans) {
+            byID.put(ban.getID(), ban);
+        }
+        final Set<Integer> emails = new HashSet<Integer>();
+        queryList(BAN_ITEMS, new RowMapper<Ban>() {
+            @Override
+            public Ban map(ResultSet row) throws SQLException {
+                Ban ban = byID.get(row.getInt(1));
+                String email = row.getString(2);
+                if (email != null && !email.isEmpty() && emails.add(ban.getID())) {
+                    ban.setEmail(URI.create(email));
                 }
+                if (ban.getIP() == null && row.getInt(3) != 0) {
+                    String ip1 = row.getInt(3) + "." + row.getInt(5) + "." + row.getInt(7) + "." + row.getInt(9);
+                    String ip2 = row.getInt(4) + "." + row.getInt(6) + "." + row.getInt(8) + "." + row.getInt(10);
+                    ban.setIP(IPAddress.valueOf(ip1.equalsIgnoreCase(ip2) ? ip1 : valuesToIP(ip1, ip2)));
+                }
+                if (ban.getUserID() == 0) {
+                    ban.setUserID(row.getInt(11));
+                }
+                return ban;
             }
-            String reason = banTable.getModel().getValueAt(i, 8).toString();
-            String notes = banTable.getModel().getValueAt(i, 9).toString();
-            int userid = this.getDataManager().getIntegerField(
-                    "SELECT `id_member` FROM `" + this.getDataManager().getPrefix() + "ban_items` WHERE `id_ban_group` = " +
-                            "'" +
-                            banid + "' AND `id_member` != '0' ORDER BY `id_ban` ASC LIMIT 1");
-            Date startdate = new Date(Long.parseLong(banTable.getModel().getValueAt(i, 2).toString()) * 1000);
-            Date enddate;
-            if (banTable.getModel().getValueAt(i, 3) == null) {
-                enddate = null;
-            } else {
-                enddate = new Date(Long.parseLong(banTable.getModel().getValueAt(i, 3).toString()) * 1000);
-            }
-            Ban ban = new Ban(this, banid, username, URI.create(email), IPAddress.valueOf(ip));
-            ban.setReason(reason);
-            ban.setNotes(notes);
-            ban.setUserID(userid);
-            ban.setStartDate(startdate);
-            ban.setEndDate(enddate);
-            bans.add(ban);
-        }
+        }, byID.keySet());
         return bans;
     }
 
+    private Ban getBan(ResultSet row) throws SQLException {
+        Ban ban = new Ban(this, row.getInt(1), row.getString(2), null, null);
+        ban.setReason(row.getString(5));
+        ban.setNotes(row.getString(6));
+        ban.setStartDate(new Date(row.getLong(3) * 1000));
+        long expiretime = row.getLong(4);
+        if (!row.wasNull()) {
+            ban.setEndDate(new Date(expiretime * 1000));
+        }
+        return ban;
+    }
+
     @Override
     public void updateBan(Ban ban) throws SQLException {
         HashMap<String, Object> data = new HashMap<String, Object>();
@@ -1064,7 +1299,7 @@ public class SMF extends ForumScript {
         }
         data.put("reason", ban.getReason());
         data.put("notes", ban.getNotes());
-        this.getDataManager().updateFields(data, "ban_groups", "`id_ban_group` = '" + ban.getID() + "'");
+        updateFields(data, "ban_groups", "`id_ban_group` = ?", ban.getID());
         if (ban.getIP() != null) {
             data = new HashMap<String, Object>();
             String[] values = ipValues(ban.getIP().toIPv4().toString());
@@ -1076,20 +1311,17 @@ public class SMF extends ForumScript {
             data.put("ip_high3", values[5]);
             data.put("ip_low4", values[6]);
             data.put("ip_high4", values[7]);
-            this.getDataManager().updateFields(data, "ban_items",
-                    "`id_ban_group` = '" + ban.getID() + "' AND `ip_low1` != '0'");
+            updateFields(data, "ban_items", "`id_ban_group` = ? AND `ip_low1` != '0'", ban.getID());
         }
         if (ban.getEmail() != null) {
             data = new HashMap<String, Object>();
             data.put("email_address", ban.getEmail());
-            this.getDataManager().updateFields(data, "ban_items",
-                    "`id_ban_group` = '" + ban.getID() + "' AND `email_address` != ''");
+            updateFields(data, "ban_items", "`id_ban_group` = ? AND `email_address` != ''", ban.getID());
         }
         if (ban.getUserID() > 0) {
             data = new HashMap<String, Object>();
             data.put("id_member", ban.getUserID());
-            this.getDataManager().updateFields(data, "ban_items",
-                    "`id_ban_group` = '" + ban.getID() + "' AND `id_member` != '0'");
+            updateFields(data, "ban_items", "`id_ban_group` = ? AND `id_member` != '0'", ban.getID());
         }
     }
 
@@ -1105,8 +1337,7 @@ public class SMF extends ForumScript {
         data.put("reason", ban.getReason());
         data.put("notes", ban.getNotes());
         data.put("cannot_access", "1");
-        this.getDataManager().insertFields(data, "ban_groups");
-        ban.setID(this.getDataManager().getLastID("id_ban_group", "ban_groups"));
+        ban.setID(insertFields(data, "ban_groups"));
         if (ban.getIP() != null) {
             data = new HashMap<String, Object>();
             String[] values = ipValues(ban.getIP().toIPv4().toString());
@@ -1119,68 +1350,42 @@ public class SMF extends ForumScript {
             data.put("ip_high3", values[5]);
             data.put("ip_low4", values[6]);
             data.put("ip_high4", values[7]);
-            this.getDataManager().insertFields(data, "ban_items");
+            insertFields(data, "ban_items");
         }
         if (ban.getEmail() != null) {
             data = new HashMap<String, Object>();
             data.put("id_ban_group", ban.getID());
             data.put("email_address", ban.getEmail());
-            this.getDataManager().insertFields(data, "ban_items");
+            insertFields(data, "ban_items");
         }
         if (ban.getUserID() > 0) {
             data = new HashMap<String, Object>();
             data.put("id_ban_group", ban.getID());
             data.put("id_member", ban.getUserID());
-            this.getDataManager().insertFields(data, "ban_items");
+            insertFields(data, "ban_items");
         }
 
-        this.getDataManager().executeQueryVoid("UPDATE `" + this.getDataManager().getPrefix() + "settings" + "` SET `value` =" +
-                " '" + (ban.getStartDate().getTime() / 1000) +
-                "' WHERE `variable` = 'banLastUpdated'");
+        update(SETTING, ban.getStartDate().getTime() / 1000, "banLastUpdated");
     }
 
     @Override
-    public int getBanCount() {
-        return this.getDataManager().getIntegerField(
-                "SELECT COUNT(*) FROM `" + this.getDataManager().getPrefix() + "ban_groups`");
+    public int getBanCount() throws SQLException {
+        return queryInt(BAN_COUNT);
     }
 
     @Override
-    public boolean isBanned(String string) {
+    public boolean isBanned(String string) throws SQLException {
         if (Util.isEmail(string)) {
-            if (this.getDataManager().getStringField(
-                    "SELECT `id_ban` FROM `" + this.getDataManager().getPrefix() + "ban_items` WHERE `email_address` = '" +
-                            string + "'") != null) {
-                return true;
-            }
+            return queryString(BANNED_EMAIL, string) != null;
         } else if (Util.isIP(string)) {
-            String[] values = ipValues(string);
-            if (this.getDataManager().getStringField(
-                    "SELECT `id_ban` FROM `" + this.getDataManager().getPrefix() + "ban_items` WHERE `ip_low1` = '" +
-                            values[0] + "' AND `ip_high1` = '" + values[1] + "' AND `ip_low2` = '" + values[2] +
-                            "' AND `ip_high2` = '" + values[3] + "' AND `ip_low3` = '" + values[4] + "' AND `ip_high3` = '" +
-                            values[5] + "' AND `ip_low4` = '" + values[6] + "' AND `ip_high4` = '" + values[7] + "'") !=
-                    null) {
-                return true;
-            }
-        } else {
-            if (this.getDataManager().getStringField(
-                    "SELECT `id_ban_group` FROM `" + this.getDataManager().getPrefix() + "ban_groups` WHERE `name` = '" +
-                            string + "'") != null) {
-                return true;
-            }
+            return queryString(BANNED_IP, (Object[]) ipValues(string)) != null;
         }
-        return false;
+        return queryString(BANNED_NAME, string) != null;
     }
 
     @Override
-    public boolean isRegistered(String username) {
-        if (this.getDataManager().getStringField(
-                "SELECT `" + this.membernamefield + "` FROM `" + this.getDataManager().getPrefix() + "members` WHERE `" +
-                        this.membernamefield + "` = '" + username + "'") == null) {
-            return true;
-        }
-        return false;
+    public boolean isRegistered(String username) throws SQLException {
+        return queryString(USER_ID, username) != null;
     }
 
     private String[] ipValues(String string) {
@@ -1215,4 +1420,35 @@ public class SMF extends ForumScript {
         }
         return newIP.toString();
     }
-}
\ No newline at end of file
+
+    // The fields of the tables whose columns differ between the versions, in the order of the schema descriptors.
+
+    private enum Members {
+        ID, NAME, REG_DATE, LAST_LOGIN, NICKNAME, PASSWORD, EMAIL, GENDER, BIRTHDAY, AVATAR, TITLE, REG_IP, LAST_IP,
+        ACTIVATED, GROUPS, SALT
+    }
+
+    private enum MemberGroups {
+        ID, NAME, DESCRIPTION
+    }
+
+    private enum PersonalMessages {
+        ID, SENDER, SENDER_NAME, DELETED_BY_SENDER, TIME, SUBJECT, BODY, HEAD
+    }
+
+    private enum PMRecipients {
+        PM, MEMBER, READ, DELETED, NEW
+    }
+
+    private enum Messages {
+        ID, THREAD, BOARD, TIME, AUTHOR, SUBJECT, BODY, POSTER_NAME, POSTER_EMAIL, POSTER_IP
+    }
+
+    private enum Topics {
+        ID, BOARD, FIRST_POST, LAST_POST, AUTHOR, STICKY, POLL, REPLIES, VIEWS, LOCKED
+    }
+
+    private enum Boards {
+        ID, POSTS, THREADS
+    }
+}
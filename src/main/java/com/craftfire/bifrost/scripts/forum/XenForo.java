@@ -24,26 +24,27 @@ import java.io.InputStreamReader;
 import java.io.Reader;
 import java.net.URI;
 import java.sql.Blob;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Random;
 
 import com.craftfire.commons.CraftCommons;
 import com.craftfire.commons.database.DataManager;
-import com.craftfire.commons.database.DataRow;
-import com.craftfire.commons.database.Results;
 import com.craftfire.commons.encryption.Encryption;
 import com.craftfire.commons.ip.IPAddress;
 import com.craftfire.commons.util.Util;
 import com.craftfire.commons.util.Version;
 import com.craftfire.commons.util.VersionRange;
 
+import com.craftfire.bifrost.cache.HighWaterMarks;
 import com.craftfire.bifrost.classes.forum.ForumPost;
 import com.craftfire.bifrost.classes.forum.ForumScript;
 import com.craftfire.bifrost.classes.forum.ForumThread;
@@ -52,15 +53,174 @@ import com.craftfire.bifrost.classes.general.Ban;
 import com.craftfire.bifrost.classes.general.Group;
 import com.craftfire.bifrost.classes.general.PrivateMessage;
 import com.craftfire.bifrost.classes.general.ScriptUser;
+import com.craftfire.bifrost.enums.CacheGroup;
 import com.craftfire.bifrost.enums.Gender;
 import com.craftfire.bifrost.enums.Scripts;
 import com.craftfire.bifrost.exceptions.ScriptException;
+import com.craftfire.bifrost.sql.QueryTemplate;
+import com.craftfire.bifrost.sql.RowMapper;
+import com.craftfire.bifrost.sql.Transaction;
 
 //TODO: Convert arrays to use Result class
 /**
  * This class contains all the methods for XenForo.
  */
 public class XenForo extends ForumScript {
+    private static final String USER_SELECT =
+            "SELECT u.*, a.`data` AS `auth_data`, p.`user_id` AS `profile_id`, p.`dob_day`, p.`dob_month`, p.`dob_year`, " +
+                    "p.`status`, (SELECT `ip` FROM `{prefix}ip` WHERE `user_id` = u.`user_id` LIMIT 1) AS `last_ip`, " +
+                    "(SELECT `ip` FROM `{prefix}ip` WHERE `user_id` = u.`user_id` AND `action` = 'register' LIMIT 1) " +
+                    "AS `reg_ip` FROM `{prefix}user` u LEFT JOIN `{prefix}user_authenticate` a ON " +
+                    "a.`user_id` = u.`user_id` LEFT JOIN `{prefix}user_profile` p ON p.`user_id` = u.`user_id` WHERE ";
+    private static final String GROUP_SELECT =
+            "SELECT g.`user_group_id`, g.`title`, (SELECT COUNT(*) FROM `{prefix}user` u WHERE " +
+                    "u.`user_group_id` = g.`user_group_id`) AS `user_count` FROM `{prefix}user_group` g ";
+    private static final QueryTemplate AUTHENTICATION = new QueryTemplate(
+            "SELECT a.`data` FROM `{prefix}user_authenticate` a JOIN `{prefix}user` u ON u.`user_id` = a.`user_id` " +
+                    "WHERE u.`username` = ?");
+    private static final QueryTemplate USERNAME = new QueryTemplate(
+            "SELECT `username` FROM `{prefix}user` WHERE `user_id` = ?");
+    private static final QueryTemplate USER_ID = new QueryTemplate(
+            "SELECT `user_id` FROM `{prefix}user` WHERE `username` = ?");
+    private static final QueryTemplate LAST_REG_USER_ID = new QueryTemplate(
+            "SELECT `user_id` FROM `{prefix}user` ORDER BY `user_id` ASC LIMIT 1");
+    private static final QueryTemplate USER = new QueryTemplate(USER_SELECT + "u.`user_id` = ?");
+    private static final String USERS = USER_SELECT + "u.`user_id` IN ({list})";
+    private static final String USERS_BY_NAME = USER_SELECT + "u.`username` IN ({list})";
+    private static final QueryTemplate USERS_AFTER = new QueryTemplate(
+            USER_SELECT + "u.`user_id` > ? ORDER BY u.`user_id` ASC LIMIT ?");
+    private static final QueryTemplate USER_STATUS = new QueryTemplate(
+            "SELECT `status` FROM `{prefix}user_profile` WHERE `user_id` = ?");
+    private static final QueryTemplate USER_COUNT = new QueryTemplate("SELECT COUNT(*) FROM `{prefix}user`");
+    private static final QueryTemplate USER_MESSAGES_INCREASE = new QueryTemplate(
+            "UPDATE `{prefix}user` SET `message_count` = `message_count` + 1 WHERE `user_id` = ?");
+    private static final QueryTemplate GROUPS = new QueryTemplate(
+            GROUP_SELECT + "ORDER BY g.`user_group_id` ASC LIMIT ?, ?");
+    private static final QueryTemplate GROUP = new QueryTemplate(GROUP_SELECT + "WHERE g.`user_group_id` = ?");
+    private static final QueryTemplate GROUP_ID = new QueryTemplate(
+            "SELECT `user_group_id` FROM `{prefix}user_group` WHERE `title` = ?");
+    private static final QueryTemplate GROUP_COUNT = new QueryTemplate("SELECT COUNT(*) FROM `{prefix}user_group`");
+    private static final QueryTemplate USER_GROUPS = new QueryTemplate(
+            "SELECT `user_group_id`, `secondary_group_ids` FROM `{prefix}user` WHERE `username` = ? LIMIT 1");
+    private static final QueryTemplate PM = new QueryTemplate(
+            "SELECT * FROM `{prefix}conversation_message` WHERE `message_id` = ? LIMIT 1");
+    private static final QueryTemplate PM_SUBJECT = new QueryTemplate(
+            "SELECT `title` FROM `{prefix}conversation_master` WHERE `conversation_id` = ?");
+    private static final QueryTemplate PM_CONVERSATION = new QueryTemplate(
+            "SELECT `conversation_id` FROM `{prefix}conversation_message` WHERE `message_id` = ?");
+    private static final QueryTemplate PM_RECIPIENTS = new QueryTemplate(
+            "SELECT `user_id`, `recipient_state`, `last_read_date` FROM `{prefix}conversation_recipient` WHERE " +
+                    "`conversation_id` = ? AND `user_id` != ?");
+    private static final QueryTemplate PM_READ_DATE = new QueryTemplate(
+            "SELECT `last_read_date` FROM `{prefix}conversation_recipient` WHERE `user_id` = ? AND " +
+                    "`conversation_id` = ?");
+    private static final QueryTemplate PMS_SENT = new QueryTemplate(
+            "SELECT `message_id` FROM `{prefix}conversation_message` WHERE `user_id` = ? ORDER BY `message_id` ASC " +
+                    "LIMIT ?, ?");
+    private static final QueryTemplate PMS_RECEIVED = new QueryTemplate(
+            "SELECT r.`conversation_id`, m.`user_id` FROM `{prefix}conversation_recipient` r JOIN " +
+                    "`{prefix}conversation_master` m ON m.`conversation_id` = r.`conversation_id` WHERE " +
+                    "r.`user_id` = ? ORDER BY r.`conversation_id` ASC LIMIT ?, ?");
+    private static final QueryTemplate CONVERSATION_PMS = new QueryTemplate(
+            "SELECT `message_id` FROM `{prefix}conversation_message` WHERE `conversation_id` = ? AND `user_id` != ?");
+    private static final QueryTemplate PM_SENT_COUNT = new QueryTemplate(
+            "SELECT COUNT(*) FROM `{prefix}conversation_message` m JOIN `{prefix}user` u ON " +
+                    "u.`user_id` = m.`user_id` WHERE u.`username` = ?");
+    private static final QueryTemplate PM_RECEIVED_COUNT = new QueryTemplate(
+            "SELECT COUNT(*) FROM `{prefix}conversation_recipient` r JOIN `{prefix}user` u ON " +
+                    "u.`user_id` = r.`user_id` WHERE u.`username` = ?");
+    private static final QueryTemplate POST = new QueryTemplate(
+            "SELECT * FROM `{prefix}post` WHERE `post_id` = ? LIMIT 1");
+    private static final QueryTemplate POSTS = new QueryTemplate(
+            "SELECT `post_id` FROM `{prefix}post` ORDER BY `post_id` ASC LIMIT ?, ?");
+    private static final QueryTemplate POSTS_AFTER = new QueryTemplate(
+            "SELECT `post_id` FROM `{prefix}post` WHERE `post_id` > ? ORDER BY `post_id` ASC LIMIT ?");
+    private static final QueryTemplate THREAD_POSTS = new QueryTemplate(
+            "SELECT `post_id` FROM `{prefix}post` WHERE `thread_id` = ? ORDER BY `post_id` ASC LIMIT ?, ?");
+    private static final QueryTemplate LAST_POST_ID = new QueryTemplate(
+            "SELECT `post_id` FROM `{prefix}post` ORDER BY `post_id` ASC LIMIT 1");
+    private static final QueryTemplate LAST_USER_POST_ID = new QueryTemplate(
+            "SELECT `post_id` FROM `{prefix}post` WHERE `user_id` = ? AND `position` != 0 ORDER BY `post_id` ASC " +
+                    "LIMIT 1");
+    private static final QueryTemplate LAST_POST_POSITION = new QueryTemplate(
+            "SELECT MAX(`position`) FROM `{prefix}post` WHERE `thread_id` = ?");
+    private static final QueryTemplate POST_COUNT = new QueryTemplate(
+            "SELECT COUNT(*) FROM `{prefix}post` WHERE `position` != 0");
+    private static final QueryTemplate USER_POST_COUNT = new QueryTemplate(
+            "SELECT COUNT(*) FROM `{prefix}post` p JOIN `{prefix}user` u ON u.`user_id` = p.`user_id` WHERE " +
+                    "u.`username` = ? AND p.`position` != 0");
+    private static final QueryTemplate THREAD_USER_POSTS = new QueryTemplate(
+            "SELECT `post_count` FROM `{prefix}thread_user_post` WHERE `thread_id` = ? AND `user_id` = ?");
+    private static final QueryTemplate THREAD = new QueryTemplate(
+            "SELECT * FROM `{prefix}thread` WHERE `thread_id` = ? LIMIT 1");
+    private static final QueryTemplate THREADS = new QueryTemplate(
+            "SELECT `thread_id` FROM `{prefix}thread` ORDER BY `thread_id` ASC LIMIT ?, ?");
+    private static final QueryTemplate THREADS_AFTER = new QueryTemplate(
+            "SELECT `thread_id` FROM `{prefix}thread` WHERE `thread_id` > ? ORDER BY `thread_id` ASC LIMIT ?");
+    private static final QueryTemplate THREAD_REPLIES = new QueryTemplate(
+            "SELECT `reply_count` FROM `{prefix}thread` WHERE `thread_id` = ?");
+    private static final QueryTemplate LAST_THREAD_ID = new QueryTemplate(
+            "SELECT `thread_id` FROM `{prefix}thread` ORDER BY `thread_id` ASC LIMIT 1");
+    private static final QueryTemplate LAST_USER_THREAD_ID = new QueryTemplate(
+            "SELECT `thread_id` FROM `{prefix}thread` WHERE `user_id` = ? ORDER BY `thread_id` ASC LIMIT 1");
+    private static final QueryTemplate THREAD_COUNT = new QueryTemplate("SELECT COUNT(*) FROM `{prefix}thread`");
+    private static final QueryTemplate USER_THREAD_COUNT = new QueryTemplate(
+            "SELECT COUNT(*) FROM `{prefix}thread` t JOIN `{prefix}user` u ON u.`user_id` = t.`user_id` WHERE " +
+                    "u.`username` = ?");
+    private static final QueryTemplate IPS = new QueryTemplate(
+            "SELECT i.`ip` FROM `{prefix}ip` i JOIN `{prefix}user` u ON u.`user_id` = i.`user_id` WHERE " +
+                    "u.`username` = ? GROUP BY i.`ip`");
+    private static final QueryTemplate EMAIL_BANS = new QueryTemplate(
+            "SELECT `banned_email` FROM `{prefix}ban_email` LIMIT ?, ?");
+    private static final QueryTemplate IP_BANS = new QueryTemplate("SELECT `ip` FROM `{prefix}ip_match` LIMIT ?, ?");
+    private static final QueryTemplate USER_BANS = new QueryTemplate(
+            "SELECT `user_id`, `user_reason`, `ban_date`, `end_date` FROM `{prefix}user_ban` LIMIT ?, ?");
+    private static final QueryTemplate BAN_COUNT = new QueryTemplate(
+            "SELECT (SELECT COUNT(*) FROM `{prefix}ip_match`) + (SELECT COUNT(*) FROM `{prefix}user_ban`) + " +
+                    "(SELECT COUNT(*) FROM `{prefix}ban_email`)");
+    private static final QueryTemplate BANNED_EMAIL = new QueryTemplate(
+            "SELECT `banned_email` FROM `{prefix}ban_email` WHERE `banned_email` = ?");
+    private static final QueryTemplate BANNED_IP = new QueryTemplate(
+            "SELECT `ip` FROM `{prefix}ip_match` WHERE `ip` = ?");
+    private static final QueryTemplate BANNED_USER = new QueryTemplate(
+            "SELECT b.`user_id` FROM `{prefix}user_ban` b JOIN `{prefix}user` u ON u.`user_id` = b.`user_id` WHERE " +
+                    "u.`username` = ?");
+    private static final QueryTemplate LAST_IP_CONTENT = new QueryTemplate(
+            "SELECT MAX(`content_id`) FROM `{prefix}ip` WHERE `content_type` = ? AND `action` = ?");
+    private static final QueryTemplate LAST_CONTENT = new QueryTemplate(
+            "SELECT MAX(`content_id`) FROM `{prefix}ip` WHERE `content_type` = ?");
+    private static final QueryTemplate USER_INSERT = new QueryTemplate(
+            "INSERT INTO `{prefix}user` (`username`, `email`, `gender`, `custom_title`, `register_date`, " +
+                    "`last_activity`, `language_id`, `style_id`, `timezone`, `user_group_id`, " +
+                    "`display_style_group_id`, `permission_combination_id`) VALUES (?, ?, ?, ?, ?, ?, 1, 0, " +
+                    "'Europe/London', 2, 2, 2)");
+    private static final QueryTemplate USER_PRIVACY_INSERT = new QueryTemplate(
+            "INSERT INTO `{prefix}user_privacy` (`user_id`, `allow_post_profile`, " +
+                    "`allow_send_personal_conversation`) VALUES (?, 'members', 'members')");
+    private static final QueryTemplate USER_OPTION_INSERT = new QueryTemplate(
+            "INSERT INTO `{prefix}user_option` (`user_id`, `default_watch_state`) VALUES (?, 'watch_email')");
+    private static final QueryTemplate USER_PROFILE_INSERT = new QueryTemplate(
+            "INSERT INTO `{prefix}user_profile` (`user_id`, `dob_day`, `dob_month`, `dob_year`) VALUES (?, ?, ?, ?)");
+    private static final QueryTemplate USER_PROFILE_INSERT_IDENTITIES = new QueryTemplate(
+            "INSERT INTO `{prefix}user_profile` (`user_id`, `dob_day`, `dob_month`, `dob_year`, `identities`) " +
+                    "VALUES (?, ?, ?, ?, ?)");
+    private static final QueryTemplate USER_PROFILE_INSERT_CUSTOM_FIELDS = new QueryTemplate(
+            "INSERT INTO `{prefix}user_profile` (`user_id`, `dob_day`, `dob_month`, `dob_year`, `custom_fields`) " +
+                    "VALUES (?, ?, ?, ?, ?)");
+    private static final QueryTemplate USER_AUTHENTICATE_INSERT = new QueryTemplate(
+            "INSERT INTO `{prefix}user_authenticate` (`user_id`, `scheme_class`, `data`) VALUES (?, " +
+                    "'XenForo_Authentication_Core', ?)");
+    private static final QueryTemplate USER_GROUP_RELATION_INSERT = new QueryTemplate(
+            "INSERT INTO `{prefix}user_group_relation` (`user_id`, `user_group_id`, `is_primary`) VALUES (?, 2, 1)");
+    private static final QueryTemplate IP_INSERT = new QueryTemplate(
+            "INSERT INTO `{prefix}ip` (`user_id`, `content_type`, `content_id`, `action`, `ip`, `log_date`) " +
+                    "VALUES (?, ?, ?, ?, ?, ?)");
+    private final RowMapper<ScriptUser> userMapper = new RowMapper<ScriptUser>() {
+        @Override
+        public ScriptUser map(ResultSet row) throws SQLException {
+            return getUser(row);
+        }
+    };
     //TODO: Remove? private String currentUsername = null;
 
     /**
@@ -83,31 +243,47 @@ public class XenForo extends ForumScript {
     }
 
     @Override
-    public boolean authenticate(String username, String password) {
-        Blob hashBlob =
-                this.getDataManager().getBlobField("user_authenticate", "data", "`user_id` = '" + getUserID(username) +
-                        "'");
-        String hash = "", salt = "";
-        if (hashBlob != null) {
-            int offset = - 1;
-            int chunkSize = 1024;
-            StringBuilder stringBuffer = new StringBuilder();
-            try {
-                long blobLength = hashBlob.length();
-                if (chunkSize > blobLength) {
-                    chunkSize = (int) blobLength;
-                }
-                char buffer[] = new char[chunkSize];
-                Reader reader = new InputStreamReader(hashBlob.getBinaryStream());
-                while ((offset = reader.read(buffer)) != - 1) {
-                    stringBuffer.append(buffer, 0, offset);
-                }
-            } catch (IOException e) {
-                this.getLoggingManager().stackTrace(e);
-            } catch (SQLException e) {
-                this.getLoggingManager().stackTrace(e);
+    public int pollChanges(HighWaterMarks marks) throws SQLException {
+        int changes = 0;
+        for (HashMap<String, Object> map : getChangedRows(marks, "post", "`post_id`", null,
+                "`thread_id`, `user_id`, `username`, IFNULL((SELECT `node_id` FROM `{prefix}thread` WHERE " +
+                        "`thread_id` = `{prefix}post`.`thread_id`), 0) AS `node_id`", null)) {
+            postChanged(Integer.parseInt(map.get("bifrost_mark").toString()),
+                        Integer.parseInt(map.get("thread_id").toString()), Integer.parseInt(map.get("node_id").toString()),
+                        Integer.parseInt(map.get("user_id").toString()), (String) map.get("username"), true);
+            changes++;
+        }
+        for (HashMap<String, Object> map : getChangedRows(marks, "thread", "`thread_id`", null,
+                "`node_id`, `first_post_id`, `last_post_id`, `user_id`, `username`", null)) {
+            threadChanged(Integer.parseInt(map.get("bifrost_mark").toString()), Integer.parseInt(map.get("node_id").toString()),
+                          Integer.parseInt(map.get("first_post_id").toString()),
+                          Integer.parseInt(map.get("last_post_id").toString()),
+                          Integer.parseInt(map.get("user_id").toString()), (String) map.get("username"), true);
+            changes++;
+        }
+        for (HashMap<String, Object> map : getChangedRows(marks, "user", "`user_id`", null, "`username`", null)) {
+            userChanged(Integer.parseInt(map.get("bifrost_mark").toString()), map.get("username").toString(), true);
+            changes++;
+        }
+        // Only the last login of an active user has changed, the objects that depend on the user are still valid.
+        for (HashMap<String, Object> map : getChangedRows(marks, "user", "`last_activity`", "`user_id`", "`user_id`",
+                "UNIX_TIMESTAMP()")) {
+            this.getCache().removeInt(CacheGroup.USER, Integer.parseInt(map.get("user_id").toString()));
+            changes++;
+        }
+        return changes;
+    }
+
+    @Override
+    public boolean authenticate(String username, String password) throws SQLException {
+        String cache = queryFirst(AUTHENTICATION, new RowMapper<String>() {
+            @Override
+            public String map(ResultSet row) throws SQLException {
+                return readAuthenticationData(row.getObject(1));
             }
-            String cache = stringBuffer.toString();
+        }, username);
+        String hash = "", salt = "";
+        if (cache != null) {
             hash = CraftCommons.forumCacheValue(cache, "hash");
             salt = CraftCommons.forumCacheValue(cache, "salt");
         }
@@ -120,19 +296,18 @@ public class XenForo extends ForumScript {
     }
 
     @Override
-    public String getUsername(int userid) {
-        return this.getDataManager().getStringField("user", "username", "`user_id` = '" + userid + "'");
+    public String getUsername(int userid) throws SQLException {
+        return queryString(USERNAME, userid);
     }
 
     @Override
-    public int getUserID(String username) {
-        return this.getDataManager().getIntegerField("user", "user_id", "`username` = '" + username + "'");
+    public int getUserID(String username) throws SQLException {
+        return queryInt(USER_ID, username);
     }
 
     @Override
     public ForumUser getLastRegUser() throws SQLException {
-        return getUser(this.getDataManager().getIntegerField("SELECT `user_id` FROM `" + this.getDataManager().getPrefix() +
-                "user` ORDER BY `user_id` ASC LIMIT 1"));
+        return getUser(queryInt(LAST_REG_USER_ID));
     }
 
     @Override
@@ -142,90 +317,112 @@ public class XenForo extends ForumScript {
 
     @Override
     public ForumUser getUser(int userid) throws SQLException {
-        ForumUser user = new ForumUser(this, userid, null, null);
-        Results results = this.getDataManager().getResults(
-                "SELECT * FROM `" + this.getDataManager().getPrefix() + "user` WHERE `user_id` = '" +
-                        userid + "' LIMIT 1");
-        DataRow row = results.getFirstResult();
-        if (results.getRowsCount() > 0) {
-            if (row.getStringField("user_state").equalsIgnoreCase("valid")) {
-                user.setActivated(true);
-            } else {
-                user.setActivated(false);
-            }
-            if (!row.getStringField("gravatar").isEmpty()) {
-                user.setAvatarURL("http://www.gravatar.com/avatar/" +
-                        CraftCommons.encrypt(Encryption.MD5, row.getStringField("gravatar").toLowerCase()));
-            }
-            user.setEmail(row.getStringField("email"));
-            if (row.getStringField("gender").equalsIgnoreCase("male")) {
-                user.setGender(Gender.MALE);
-            } else if (row.getStringField("gender").equalsIgnoreCase("female")) {
-                user.setGender(Gender.FEMALE);
-            } else {
-                user.setGender(Gender.UNKNOWN);
-            }
-            user.setLastLogin(new Date(row.getLongField("last_activity") * 1000));
-            user.setRegDate(new Date(row.getLongField("register_date") * 1000));
-            Blob hashBlob =
-                    this.getDataManager().getBlobField("user_authenticate", "data", "`user_id` = '" + userid + "'");
-            if (hashBlob != null) {
-                int offset = - 1;
-                int chunkSize = 1024;
-                StringBuilder stringBuffer = new StringBuilder();
-                try {
-                    long blobLength = hashBlob.length();
-                    if (chunkSize > blobLength) {
-                        chunkSize = (int) blobLength;
-                    }
-                    char buffer[] = new char[chunkSize];
-                    Reader reader = new InputStreamReader(hashBlob.getBinaryStream());
-                    while ((offset = reader.read(buffer)) != - 1) {
-                        stringBuffer.append(buffer, 0, offset);
-                    }
-                } catch (IOException e) {
-                    this.getLoggingManager().stackTrace(e);
-                } catch (SQLException e) {
-                    this.getLoggingManager().stackTrace(e);
-                }
-                String cache = stringBuffer.toString();
-                //TODO: php deserializer
-                user.setPassword(CraftCommons.forumCacheValue(cache, "hash"));
-                user.setPasswordSalt(CraftCommons.forumCacheValue(cache, "salt"));
-            }
-            user.setUsername(row.getStringField("username"));
-            user.setUserTitle(row.getStringField("custom_title"));
-            user.setLastIP(CraftCommons.long2ip((long)this.getDataManager().getIntegerField(
-                    "ip",
-                    "ip",
-                    "`user_id` = '" + user.getID() + "'")));
-            user.setRegIP(CraftCommons.long2ip((long) this.getDataManager().getIntegerField("ip", "ip",
-                    "`user_id` = '" +
-                            user.getID() +
-                            "' AND `action` = 'register'")));
+        ScriptUser user = queryFirst(USER, this.userMapper, userid);
+        return (user == null) ? new ForumUser(this, userid, null, null) : (ForumUser) user;
+    }
+
+    @Override
+    public List<ScriptUser> getUsers(Collection<Integer> userids) throws SQLException {
+        if (userids.isEmpty()) {
+            return Collections.emptyList();
         }
+        // The authentication, the profile and the IPs of all users are read with the same query.
+        return queryList(USERS, this.userMapper, userids);
+    }
 
-        results = this.getDataManager().getResults(
-                "SELECT * FROM `" + this.getDataManager().getPrefix() + "user_profile` WHERE `user_id` = '" +
-                        userid + "' LIMIT 1");
-        row = results.getFirstResult();
-        if (results.getRowsCount() > 0) {
-            String bdate = row.getStringField("dob_day") + " " + row.getStringField("dob_month") + " " +
-                    row.getStringField("dob_year");
+    @Override
+    public List<ScriptUser> getUsersAfter(int userid, int limit) throws SQLException {
+        return query(USERS_AFTER, this.userMapper, userid, limit);
+    }
+
+    @Override
+    public List<ScriptUser> getUsersByName(Collection<String> usernames) throws SQLException {
+        if (usernames.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return queryList(USERS_BY_NAME, this.userMapper, usernames);
+    }
+
+    private ForumUser getUser(ResultSet row) throws SQLException {
+        ForumUser user = new ForumUser(this, row.getInt("user_id"), null, null);
+        if (row.getString("user_state").equalsIgnoreCase("valid")) {
+            user.setActivated(true);
+        } else {
+            user.setActivated(false);
+        }
+        String gravatar = row.getString("gravatar");
+        if (!gravatar.isEmpty()) {
+            user.setAvatarURL("http://www.gravatar.com/avatar/" + CraftCommons.encrypt(Encryption.MD5, gravatar.toLowerCase()));
+        }
+        user.setEmail(row.getString("email"));
+        String gender = row.getString("gender");
+        if (gender.equalsIgnoreCase("male")) {
+            user.setGender(Gender.MALE);
+        } else if (gender.equalsIgnoreCase("female")) {
+            user.setGender(Gender.FEMALE);
+        } else {
+            user.setGender(Gender.UNKNOWN);
+        }
+        user.setLastLogin(new Date(row.getLong("last_activity") * 1000));
+        user.setRegDate(new Date(row.getLong("register_date") * 1000));
+        String cache = readAuthenticationData(row.getObject("auth_data"));
+        if (cache != null) {
+            //TODO: php deserializer
+            user.setPassword(CraftCommons.forumCacheValue(cache, "hash"));
+            user.setPasswordSalt(CraftCommons.forumCacheValue(cache, "salt"));
+        }
+        user.setUsername(row.getString("username"));
+        user.setUserTitle(row.getString("custom_title"));
+        user.setLastIP(CraftCommons.long2ip(row.getLong("last_ip")));
+        user.setRegIP(CraftCommons.long2ip(row.getLong("reg_ip")));
+        if (row.getObject("profile_id") != null) {
+            String bdate = row.getString("dob_day") + " " + row.getString("dob_month") + " " + row.getString("dob_year");
             try {
                 SimpleDateFormat format = new SimpleDateFormat("d M yyyy");
                 user.setBirthday(format.parse(bdate));
             } catch (ParseException e) {
                 this.getLoggingManager().stackTrace(e);
             }
-            if (!row.getStringField("status").isEmpty()) {
-                user.setStatusMessage(row.getStringField("status"));
+            String status = row.getString("status");
+            if (status != null && !status.isEmpty()) {
+                user.setStatusMessage(status);
             }
         }
-
         return user;
     }
 
+    private String readAuthenticationData(Object data) {
+        if (data == null) {
+            return null;
+        }
+        if (data instanceof byte[]) {
+            return new String((byte[]) data);
+        }
+        if (!(data instanceof Blob)) {
+            return data.toString();
+        }
+        Blob hashBlob = (Blob) data;
+        int offset = - 1;
+        int chunkSize = 1024;
+        StringBuilder stringBuffer = new StringBuilder();
+        try {
+            long blobLength = hashBlob.length();
+            if (chunkSize > blobLength) {
+                chunkSize = (int) blobLength;
+            }
+            char buffer[] = new char[chunkSize];
+            Reader reader = new InputStreamReader(hashBlob.getBinaryStream());
+            while ((offset = reader.read(buffer)) != - 1) {
+                stringBuffer.append(buffer, 0, offset);
+            }
+        } catch (IOException e) {
+            this.getLoggingManager().stackTrace(e);
+        } catch (SQLException e) {
+            this.getLoggingManager().stackTrace(e);
+        }
+        return stringBuffer.toString();
+    }
+
     @Override
     public void updateUser(ScriptUser user) throws SQLException {
         long timestamp = new Date().getTime() / 1000;
@@ -249,7 +446,7 @@ public class XenForo extends ForumScript {
         data.put("custom_title", user.getUserTitle());
         data.put("register_date", user.getRegDate().getTime() / 1000);
         data.put("last_activity", user.getLastLogin().getTime() / 1000);
-        this.getDataManager().updateFields(data, "user", "`user_id` = '" + user.getID() + "'");
+        updateFields(data, "user", "`user_id` = ?", user.getID());
 
         if (user.getBirthday() != null) {
             data = new HashMap<String, Object>();
@@ -259,13 +456,12 @@ public class XenForo extends ForumScript {
             data.put("dob_month", format.format(user.getBirthday()));
             format = new SimpleDateFormat("yyyy");
             data.put("dob_year", format.format(user.getBirthday()));
-            this.getDataManager().updateFields(data, "user_profile", "`user_id` = '" + user.getID() + "'");
+            updateFields(data, "user_profile", "`user_id` = ?", user.getID());
         }
 
         if (user.getStatusMessage() != null && ! user.getStatusMessage().isEmpty()) {
-            String temp =
-                    this.getDataManager().getStringField("user_profile", "status", "`user_id` = '" + user.getID() + "'");
-            if (! temp.equalsIgnoreCase(user.getStatusMessage())) {
+            String temp = queryString(USER_STATUS, user.getID());
+            if (! user.getStatusMessage().equalsIgnoreCase(temp)) {
                 int ipID = this.insertIP(user, "profile_post", "insert");
                 data = new HashMap<String, Object>();
                 data.put("profile_user_id", user.getID());
@@ -274,25 +470,22 @@ public class XenForo extends ForumScript {
                 data.put("post_date", timestamp);
                 data.put("message", user.getStatusMessage());
                 data.put("ip_id", ipID);
-                this.getDataManager().insertFields(data, "profile_post");
-
-                int profilePostID = this.getDataManager().getLastID("profile_post_id", "profile_post");
+                data.put("like_users", "a:0:{}");
+                int profilePostID = insertFields(data, "profile_post");
 
                 this.addSearch(user, "profile_post", 0, profilePostID, null, user.getStatusMessage());
 
-                this.getDataManager().updateBlob("profile_post", "like_users", "`profile_post_id` = '" + profilePostID + "'", "a:0:{}");
-
                 data = new HashMap<String, Object>();
                 data.put("profile_post_id", profilePostID);
                 data.put("user_id", user.getID());
                 data.put("post_date", timestamp);
-                this.getDataManager().insertFields(data, "user_status");
+                insertFields(data, "user_status");
 
                 data = new HashMap<String, Object>();
                 data.put("status", user.getStatusMessage());
                 data.put("status_date", timestamp);
                 data.put("status_profile_post_id", profilePostID);
-                this.getDataManager().updateFields(data, "user_profile", "`user_id` = '" + user.getID() + "'");
+                updateFields(data, "user_profile", "`user_id` = ?", user.getID());
             }
         }
 
@@ -303,156 +496,148 @@ public class XenForo extends ForumScript {
             String stringdata =
                     "a:3:{s:4:\"hash\";s:64:\"" + user.getPassword() + "\";s:4:\"salt\";s:64:\"" + user.getPasswordSalt() +
                             "\";s:8:\"hashFunc\";s:6:\"sha256\";}";
-            this.getDataManager().updateBlob("user_authenticate", "data", "`user_id` = '" + user.getID() + "'", stringdata);
+            updateFields(Collections.<String, Object>singletonMap("data", stringdata), "user_authenticate",
+                    "`user_id` = ?", user.getID());
         }
         data.clear();
     }
 
     @Override
-    public void createUser(ScriptUser user) throws SQLException {
-        long timestamp = new Date().getTime() / 1000;
-        Random r = new Random();
-        user.setPasswordSalt(CraftCommons.encrypt(Encryption.SHA256, CraftCommons.encrypt(Encryption.MD5, r.nextInt(1000000)).substring(0, 10)));
-        user.setPassword(hashPassword(user.getPasswordSalt(), user.getPassword()));
-        user.setRegDate(new Date());
-        user.setLastLogin(new Date());
-        HashMap<String, Object> data = new HashMap<String, Object>();
-        data.put("username", user.getUsername());
-        data.put("email", user.getEmail());
-        if (user.getGender() != null && user.getGender().equals(Gender.MALE)) {
-            data.put("gender", "male");
-        } else if (user.getGender() != null && user.getGender().equals(Gender.FEMALE)) {
-            data.put("gender", "female");
-        } else {
-            data.put("gender", "");
-        }
-        data.put("custom_title", user.getUserTitle());
-        data.put("register_date", timestamp);
-        data.put("last_activity", timestamp);
-        data.put("language_id", 1);
-        data.put("style_id", 0);
-        data.put("timezone", "Europe/London");
-        data.put("user_group_id", 2);
-        data.put("display_style_group_id", 2);
-        data.put("permission_combination_id", 2);
-        this.getDataManager().insertFields(data, "user");
-        user.setID(this.getDataManager().getLastID("user_id", "user"));
-
-        data = new HashMap<String, Object>();
-        data.put("user_id", user.getID());
-        data.put("allow_post_profile", "members");
-        data.put("allow_send_personal_conversation", "members");
-        this.getDataManager().insertFields(data, "user_privacy");
-
-        data = new HashMap<String, Object>();
-        data.put("user_id", user.getID());
-        data.put("default_watch_state", "watch_email");
-        this.getDataManager().insertFields(data, "user_option");
+    public void createUser(ScriptUser user) throws SQLException, ScriptException {
+        createUsers(Collections.singletonList(user));
+    }
 
-        data = new HashMap<String, Object>();
-        data.put("user_id", user.getID());
-        if (user.getBirthday() != null) {
-            SimpleDateFormat format = new SimpleDateFormat("d");
-            data.put("dob_day", format.format(user.getBirthday()));
-            format = new SimpleDateFormat("M");
-            data.put("dob_month", format.format(user.getBirthday()));
-            format = new SimpleDateFormat("yyyy");
-            data.put("dob_year", format.format(user.getBirthday()));
+    @Override
+    public void createUsers(final List<ScriptUser> users) throws SQLException, ScriptException {
+        if (users.isEmpty()) {
+            return;
+        }
+        final long timestamp = new Date().getTime() / 1000;
+        final List<Object[]> rows = new ArrayList<Object[]>();
+        Random r = new Random();
+        for (ScriptUser user : users) {
+            user.setPasswordSalt(CraftCommons.encrypt(Encryption.SHA256, CraftCommons.encrypt(Encryption.MD5,
+                    r.nextInt(1000000)).substring(0, 10)));
+            user.setPassword(hashPassword(user.getPasswordSalt(), user.getPassword()));
+            user.setRegDate(new Date());
+            user.setLastLogin(new Date());
+            String gender = "";
+            if (user.getGender() != null && user.getGender().equals(Gender.MALE)) {
+                gender = "male";
+            } else if (user.getGender() != null && user.getGender().equals(Gender.FEMALE)) {
+                gender = "female";
+            }
+            rows.add(new Object[] { user.getUsername(), user.getEmail(), gender, user.getUserTitle(), timestamp,
+                                    timestamp });
         }
-        this.getDataManager().insertFields(data, "user_profile");
+        // The profile of 1.0 lists the identities of the user, 1.1 has custom fields instead.
+        QueryTemplate profileInsert = USER_PROFILE_INSERT;
         if (this.getVersionRanges()[0].inVersionRange(this.getVersion())) {
-            this.getDataManager().updateBlob("user_profile", "identities", "`user_id` = '" + user.getID() + "'", "a:0:{}");
+            profileInsert = USER_PROFILE_INSERT_IDENTITIES;
         } else if (this.getVersionRanges()[1].inVersionRange(this.getVersion())) {
-            this.getDataManager().updateBlob("user_profile", "custom_fields", "`user_id` = '" + user.getID() + "'", "a:0:{}");
+            profileInsert = USER_PROFILE_INSERT_CUSTOM_FIELDS;
         }
-        if (user.getStatusMessage() != null && ! user.getStatusMessage().isEmpty()) {
-            int ipID = insertIP(user, "profile_post", "insert");
-            data = new HashMap<String, Object>();
-            data.put("profile_user_id", user.getID());
-            data.put("user_id", user.getID());
-            data.put("username", user.getUsername());
-            data.put("post_date", timestamp);
-            data.put("message", user.getStatusMessage());
-            data.put("ip_id", ipID);
-            this.getDataManager().insertFields(data, "profile_post");
-
-            int profilePostID = this.getDataManager().getLastID("profile_post_id", "profile_post");
-
-            this.getDataManager().updateBlob("profile_post", "like_users", "`profile_post_id` = '" + profilePostID + "'", "a:0:{}");
-
-            data = new HashMap<String, Object>();
-            data.put("profile_post_id", profilePostID);
-            data.put("user_id", user.getID());
-            data.put("post_date", timestamp);
-            this.getDataManager().insertFields(data, "user_status");
+        final QueryTemplate profile = profileInsert;
+        transaction(new Transaction() {
+            @Override
+            public void run() throws SQLException {
+                int[] userids = insertBatch(USER_INSERT, rows);
+                List<Object[]> ids = new ArrayList<Object[]>();
+                List<Object[]> profiles = new ArrayList<Object[]>();
+                List<Object[]> authentications = new ArrayList<Object[]>();
+                List<Object[]> ips = new ArrayList<Object[]>();
+                int content = queryInt(LAST_IP_CONTENT, "user", "register");
+                for (int i = 0; i < userids.length; i++) {
+                    ScriptUser user = users.get(i);
+                    user.setID(userids[i]);
+                    ids.add(new Object[] { user.getID() });
+                    Object[] birthday = { 0, 0, 0 };
+                    if (user.getBirthday() != null) {
+                        birthday[0] = new SimpleDateFormat("d").format(user.getBirthday());
+                        birthday[1] = new SimpleDateFormat("M").format(user.getBirthday());
+                        birthday[2] = new SimpleDateFormat("yyyy").format(user.getBirthday());
+                    }
+                    if (profile == USER_PROFILE_INSERT) {
+                        profiles.add(new Object[] { user.getID(), birthday[0], birthday[1], birthday[2] });
+                    } else {
+                        profiles.add(new Object[] { user.getID(), birthday[0], birthday[1], birthday[2], "a:0:{}" });
+                    }
+                    //TODO: PHP deserialize?
+                    String stringdata =
+                            "a:3:{s:4:\"hash\";s:64:\"" + user.getPassword() + "\";s:4:\"salt\";s:64:\"" +
+                                    user.getPasswordSalt() + "\";s:8:\"hashFunc\";s:6:\"sha256\";}";
+                    authentications.add(new Object[] { user.getID(), stringdata });
+                    ips.add(new Object[] { user.getID(), "user", ++content, "register",
+                                           CraftCommons.ip2long(user.getLastIP()), timestamp });
+                }
+                updateBatch(USER_PRIVACY_INSERT, ids);
+                updateBatch(USER_OPTION_INSERT, ids);
+                updateBatch(profile, profiles);
+                for (ScriptUser user : users) {
+                    if (user.getStatusMessage() != null && ! user.getStatusMessage().isEmpty()) {
+                        createStatus(user, timestamp);
+                    }
+                }
+                updateBatch(USER_AUTHENTICATE_INSERT, authentications);
+                updateBatch(USER_GROUP_RELATION_INSERT, ids);
+                updateBatch(IP_INSERT, ips);
+            }
+        });
+    }
 
-            data = new HashMap<String, Object>();
-            data.put("status", user.getStatusMessage());
-            data.put("status_date", timestamp);
-            data.put("status_profile_post_id", profilePostID);
-            this.getDataManager().updateFields(data, "user_profile", "`user_id` = '" + user.getID() + "'");
-        }
+    private void createStatus(ScriptUser user, long timestamp) throws SQLException {
+        int ipID = insertIP(user, "profile_post", "insert");
+        HashMap<String, Object> data = new HashMap<String, Object>();
+        data.put("profile_user_id", user.getID());
+        data.put("user_id", user.getID());
+        data.put("username", user.getUsername());
+        data.put("post_date", timestamp);
+        data.put("message", user.getStatusMessage());
+        data.put("ip_id", ipID);
+        data.put("like_users", "a:0:{}");
+        int profilePostID = insertFields(data, "profile_post");
 
-        //TODO: PHP deserialize?
-        String stringdata =
-                "a:3:{s:4:\"hash\";s:64:\"" + user.getPassword() + "\";s:4:\"salt\";s:64:\"" + user.getPasswordSalt() +
-                        "\";s:8:\"hashFunc\";s:6:\"sha256\";}";
         data = new HashMap<String, Object>();
+        data.put("profile_post_id", profilePostID);
         data.put("user_id", user.getID());
-        data.put("scheme_class", "XenForo_Authentication_Core");
-        this.getDataManager().insertFields(data, "user_authenticate");
-        this.getDataManager().updateBlob("user_authenticate", "data", "`user_id` = '" + user.getID() + "'", stringdata);
+        data.put("post_date", timestamp);
+        insertFields(data, "user_status");
 
         data = new HashMap<String, Object>();
-        data.put("user_id", user.getID());
-        data.put("user_group_id", 2);
-        data.put("is_primary", 1);
-        this.getDataManager().insertFields(data, "user_group_relation");
+        data.put("status", user.getStatusMessage());
+        data.put("status_date", timestamp);
+        data.put("status_profile_post_id", profilePostID);
+        updateFields(data, "user_profile", "`user_id` = ?", user.getID());
+    }
 
-        insertIP(user, "user", "register");
-        data.clear();
+    @Override
+    public List<Group> getGroups(int limit) throws SQLException {
+        return getGroups(0, limit);
     }
 
     @Override
-    public List<Group> getGroups(int limit) {
-        String limitstring = "";
-        if (limit > 0) {
-            limitstring = " LIMIT 0 , " + limit;
-        }
-        List<Group> groups = new ArrayList<Group>();
-        List<HashMap<String, Object>> array =
-                this.getDataManager().getArrayList("SELECT `user_group_id` FROM `" + this.getDataManager().getPrefix() +
-                        "user_group` ORDER BY `user_group_id` ASC" + limitstring);
-        for (HashMap<String, Object> map : array) {
-            groups.add(getGroup(Integer.parseInt(map.get("user_group_id").toString())));
-        }
-        return groups;
+    public List<Group> getGroups(int offset, int limit) throws SQLException {
+        return getGroups(GROUPS, offset, rowCount(limit));
     }
 
     @Override
-    public Group getGroup(int groupid) {
-        Map<String, Object> array = this.getDataManager().getArray(
-                "SELECT * FROM `" + this.getDataManager().getPrefix() + "user_group` WHERE `user_group_id` = '" + groupid +
-                        "'");
-        List<ScriptUser> users = new ArrayList<ScriptUser>();
-        /*List<HashMap<String, Object>> arrayList = this.getDataManager().getArrayList(
-                "SELECT `username` FROM `" + this.getDataManager().getPrefix() + "user` WHERE `user_group_id` = '" +
-                        groupid + "' ORDER BY `user_id` ASC");
-        TODO: Fix loop
-        for (HashMap<String, Object> map : arrayList) {
-            String username = map.get("username").toString();
-            if (this.currentUsername != null && ! this.currentUsername.equalsIgnoreCase(username)) {
-                //System.out.println("user: " + this.currentUsername + " - " + username);
-                //users.add(getUser(username));
+    public Group getGroup(int groupid) throws SQLException {
+        List<Group> groups = getGroups(GROUP, groupid);
+        return groups.isEmpty() ? null : groups.get(0);
+    }
+
+    private List<Group> getGroups(QueryTemplate template, Object... parameters) throws SQLException {
+        // The groups and their user counts are read with one query.
+        return query(template, new RowMapper<Group>() {
+            @Override
+            public Group map(ResultSet row) throws SQLException {
+                //TODO: List the users of the group
+                Group group = new Group(XenForo.this, row.getInt("user_group_id"), row.getString("title"));
+                group.setUserCount(row.getInt("user_count"));
+                group.setUsers(new ArrayList<ScriptUser>());
+                return group;
             }
-        }
-        this.currentUsername = null;*/
-        Group group =
-                new Group(this, Integer.parseInt(array.get("user_group_id").toString()),
-                        array.get("title").toString());
-        group.setUserCount(this.getDataManager().getCount("user", "`user_group_id` = '" + groupid + "'"));
-        group.setUsers(users);
-        return group;
+        }, parameters);
     }
 
     @Override
@@ -462,22 +647,26 @@ public class XenForo extends ForumScript {
     }
 
     @Override
-    public Group getGroup(String group) {
-        Map<String, Object> array = this.getDataManager().getArray(
-                "SELECT `user_group_id` FROM `" + this.getDataManager().getPrefix() +
-                        "user_group` WHERE `title` = '" + group + "'");
-        return getGroup(Integer.parseInt(array.get("user_group_id").toString()));
+    public Group getGroup(String group) throws SQLException {
+        return getGroup(queryInt(GROUP_ID, group));
     }
 
     @Override
-    public List<Group> getUserGroups(String username) {
+    public List<Group> getUserGroups(String username) throws SQLException {
         //TODO: Finish this: this.currentUsername = username;
         List<Group> groups = new ArrayList<Group>();
-        Map<String, Object> array = this.getDataManager().getArray(
-                "SELECT `user_group_id`, `secondary_group_ids` FROM `" + this.getDataManager().getPrefix() +
-                        "user` WHERE `user_id` = '" + getUserID(username) + "' LIMIT 1");
+        HashMap<String, Object> array = queryMap(USER_GROUPS, username);
+        if (array == null) {
+            return groups;
+        }
         groups.add(getGroup(Integer.parseInt(array.get("user_group_id").toString())));
-        String additional = this.getDataManager().getBinaryField("user", "secondary_group_ids", "`user_id` = '" + getUserID(username) + "'");
+        Object secondary = array.get("secondary_group_ids");
+        String additional = "";
+        if (secondary instanceof byte[]) {
+            additional = new String((byte[]) secondary);
+        } else if (secondary != null) {
+            additional = secondary.toString();
+        }
         if (! additional.isEmpty()) {
             if (additional.contains(",")) {
                 String[] split = additional.split("\\,");
@@ -496,7 +685,7 @@ public class XenForo extends ForumScript {
     public void updateGroup(Group group) throws SQLException {
         HashMap<String, Object> data = new HashMap<String, Object>();
         data.put("title", group.getName());
-        this.getDataManager().updateFields(data, "user_group", "`user_group_id` = '" + group.getID() + "'");
+        updateFields(data, "user_group", "`user_group_id` = ?", group.getID());
         data.clear();
     }
 
@@ -504,30 +693,22 @@ public class XenForo extends ForumScript {
     public void createGroup(Group group) throws SQLException {
         HashMap<String, Object> data = new HashMap<String, Object>();
         data.put("title", group.getName());
-        this.getDataManager().insertFields(data, "user_group");
-        group.setID(this.getDataManager().getLastID("user_group_id", "user_group"));
+        group.setID(insertFields(data, "user_group"));
         data.clear();
     }
 
     @Override
     public PrivateMessage getPM(int pmid) throws SQLException {
         PrivateMessage pm = new PrivateMessage(this, pmid);
-        Map<String, Object> array = this.getDataManager().getArray(
-                "SELECT * FROM `" + this.getDataManager().getPrefix() + "conversation_message` WHERE `message_id` = '" +
-                        pmid + "' LIMIT 1");
-        for (int i = 0; array.size() > i; i++) {
+        HashMap<String, Object> array = queryMap(PM, pmid);
+        if (array != null) {
             pm.setDate(new Date(Long.parseLong(array.get("message_date").toString()) * 1000));
             pm.setBody(array.get("message").toString());
             pm.setSender(getUser(Integer.parseInt(array.get("user_id").toString())));
             int conversationID = Integer.parseInt(array.get("conversation_id").toString());
-            pm.setSubject(this.getDataManager().getStringField("conversation_master", "title",
-                    "`conversation_id` = '" + conversationID + "'"));
+            pm.setSubject(queryString(PM_SUBJECT, conversationID));
             List<ScriptUser> recipients = new ArrayList<ScriptUser>();
-            List<HashMap<String, Object>> recipientsArray = this.getDataManager().getArrayList(
-                    "SELECT `user_id`, `recipient_state`, `last_read_date` FROM `" + this.getDataManager().getPrefix() +
-                            "conversation_recipient` WHERE `conversation_id` = '" + conversationID +
-                            "' AND `user_id` != '" + pm.getSender().getID() + "'");
-            for (HashMap<String, Object> map : recipientsArray) {
+            for (HashMap<String, Object> map : queryMaps(PM_RECIPIENTS, conversationID, pm.getSender().getID())) {
                 ScriptUser recipient = getUser(Integer.parseInt(map.get("user_id").toString()));
                 recipients.add(recipient);
                 if (map.get("last_read_date").toString().equalsIgnoreCase("0")) {
@@ -548,17 +729,13 @@ public class XenForo extends ForumScript {
 
     @Override
     public List<PrivateMessage> getPMsSent(String username, int limit) throws SQLException {
-        String limitstring = "";
-        if (limit > 0) {
-            limitstring = " LIMIT 0 , " + limit;
-        }
+        return getPMsSent(username, 0, limit);
+    }
+
+    @Override
+    public List<PrivateMessage> getPMsSent(String username, int offset, int limit) throws SQLException {
         List<PrivateMessage> pms = new ArrayList<PrivateMessage>();
-        List<HashMap<String, Object>> array =
-                this.getDataManager().getArrayList("SELECT `message_id` FROM `" + this.getDataManager().getPrefix() +
-                        "conversation_message` WHERE `user_id` = '" + getUserID(username) +
-                        "' ORDER BY `message_id` ASC" +
-                        limitstring);
-        for (HashMap<String, Object> map : array) {
+        for (HashMap<String, Object> map : queryMaps(PMS_SENT, getUserID(username), offset, rowCount(limit))) {
             pms.add(getPM(Integer.parseInt(map.get("message_id").toString())));
         }
         return pms;
@@ -567,28 +744,12 @@ public class XenForo extends ForumScript {
     @Override
     public List<PrivateMessage> getPMsReceived(String username, int limit) throws SQLException {
         int userID = getUserID(username);
-        String limitstring = "";
-        if (limit > 0) {
-            limitstring = " LIMIT 0 , " + limit;
-        }
         List<PrivateMessage> pms = new ArrayList<PrivateMessage>();
-        List<HashMap<String, Object>> array =
-                this.getDataManager().getArrayList("SELECT `conversation_id` FROM `" + this.getDataManager().getPrefix() +
-                        "conversation_recipient` WHERE `user_id` = '" + userID +
-                        "' ORDER BY `conversation_id` ASC" +
-                        limitstring);
-        for (HashMap<String, Object> map : array) {
+        // The starter of every conversation is read with the conversation.
+        for (HashMap<String, Object> map : queryMaps(PMS_RECEIVED, userID, 0, rowCount(limit))) {
             int conversationID = Integer.parseInt(map.get("conversation_id").toString());
-            List<HashMap<String, Object>> pmsArray =
-                    this.getDataManager().getArrayList("SELECT `message_id` FROM `" + this.getDataManager().getPrefix() +
-                            "conversation_message` WHERE `conversation_id` = '" +
-                            conversationID +
-                            "' AND `user_id` != '" + userID + "'");
-            for (HashMap<String, Object> pm : pmsArray) {
-                int conversationStarterID =
-                        this.getDataManager().getIntegerField("SELECT `user_id` FROM `" + this.getDataManager().getPrefix() +
-                                "conversation_master` WHERE `conversation_id` = '" +
-                                conversationID + "'");
+            int conversationStarterID = Integer.parseInt(map.get("user_id").toString());
+            for (HashMap<String, Object> pm : queryMaps(CONVERSATION_PMS, conversationID, userID)) {
                 if (userID != conversationStarterID) {
                     pms.add(getPM(Integer.parseInt(pm.get("message_id").toString())));
                 }
@@ -598,18 +759,14 @@ public class XenForo extends ForumScript {
     }
 
     @Override
-    public int getPMSentCount(String username) {
-        return this.getDataManager().getIntegerField("SELECT COUNT(*) FROM `" + this.getDataManager().getPrefix() +
-                "conversation_message` WHERE `user_id` = '" + getUserID(username) +
-                "'");
+    public int getPMSentCount(String username) throws SQLException {
+        return queryInt(PM_SENT_COUNT, username);
     }
 
     @Override
-    public int getPMReceivedCount(String username) {
+    public int getPMReceivedCount(String username) throws SQLException {
         /*TODO*/
-        return this.getDataManager().getIntegerField("SELECT COUNT(*) FROM `" + this.getDataManager().getPrefix() +
-                "conversation_recipient` WHERE `user_id` = '" + getUserID(username) +
-                "'");
+        return queryInt(PM_RECEIVED_COUNT, username);
     }
 
     @Override
@@ -617,10 +774,9 @@ public class XenForo extends ForumScript {
         HashMap<String, Object> data = new HashMap<String, Object>();
         data.put("message", pm.getBody());
         data.put("message_date", pm.getDate().getTime() / 1000);
-        this.getDataManager().updateFields(data, "conversation_message", "`message_id` = '" + pm.getID() + "'");
+        updateFields(data, "conversation_message", "`message_id` = ?", pm.getID());
         List<ScriptUser> recipients = pm.getRecipients();
-        int conversationID = this.getDataManager().getIntegerField("conversation_message", "conversation_id",
-                "`message_id` = '" + pm.getID() + "'");
+        int conversationID = queryInt(PM_CONVERSATION, pm.getID());
         for (ScriptUser rec : recipients) {
             data = new HashMap<String, Object>();
             if (pm.isDeleted(rec)) {
@@ -629,18 +785,15 @@ public class XenForo extends ForumScript {
                 data.put("recipient_state", "active");
             }
             if (pm.isRead(rec)) {
-                int read = this.getDataManager().getIntegerField("conversation_recipient", "last_read_date",
-                        "`user_id` = '" + rec.getID() +
-                                "' AND `conversation_id` = '" + conversationID + "'");
+                int read = queryInt(PM_READ_DATE, rec.getID(), conversationID);
                 if (read == 0) {
                     data.put("last_read_date", new Date().getTime() / 1000);
                 }
             } else {
                 data.put("last_read_date", "0");
             }
-            this.getDataManager().updateFields(data, "conversation_recipient",
-                    "`user_id` = '" + rec.getID() + "' AND `conversation_id` = '" +
-                            conversationID + "'");
+            updateFields(data, "conversation_recipient", "`user_id` = ? AND `conversation_id` = ?", rec.getID(),
+                    conversationID);
         }
         data.clear();
     }
@@ -657,8 +810,7 @@ public class XenForo extends ForumScript {
         data.put("last_message_date", timestamp);
         data.put("last_message_user_id", pm.getSender().getID());
         data.put("last_message_username", pm.getSender().getUsername());
-        this.getDataManager().insertFields(data, "conversation_master");
-        int conversationID = this.getDataManager().getLastID("conversation_id", "conversation_master");
+        int conversationID = insertFields(data, "conversation_master");
         int ipID = this.insertIP(pm.getSender(), "conversation_message", "insert");
         data = new HashMap<String, Object>();
         data.put("conversation_id", conversationID);
@@ -669,18 +821,17 @@ public class XenForo extends ForumScript {
         if (!this.getVersionRanges()[0].inVersionRange(this.getVersion())) {
             data.put("ip_id", ipID);
         }
-        this.getDataManager().insertFields(data, "conversation_message");
-        int messageID = this.getDataManager().getLastID("message_id", "conversation_message");
+        int messageID = insertFields(data, "conversation_message");
         data = new HashMap<String, Object>();
         data.put("first_message_id", messageID);
         data.put("last_message_id", messageID);
-        this.getDataManager().updateFields(data, "conversation_master", "`conversation_id` = '" + conversationID + "'");
+        updateFields(data, "conversation_master", "`conversation_id` = ?", conversationID);
         data = new HashMap<String, Object>();
         data.put("conversation_id", conversationID);
         data.put("user_id", pm.getSender().getID());
         data.put("recipient_state", "active");
         data.put("last_read_date", timestamp);
-        this.getDataManager().insertFields(data, "conversation_recipient");
+        insertFields(data, "conversation_recipient");
         data = new HashMap<String, Object>();
         data.put("conversation_id", conversationID);
         data.put("owner_user_id", pm.getSender().getID());
@@ -690,14 +841,14 @@ public class XenForo extends ForumScript {
         data.put("last_message_id", messageID);
         data.put("last_message_user_id", pm.getSender().getID());
         data.put("last_message_username", pm.getSender().getUsername());
-        this.getDataManager().insertFields(data, "conversation_user");
+        insertFields(data, "conversation_user");
         for (ScriptUser recipient : pm.getRecipients()) {
             data = new HashMap<String, Object>();
             data.put("conversation_id", conversationID);
             data.put("user_id", recipient.getID());
             data.put("recipient_state", "active");
             data.put("last_read_date", 0);
-            this.getDataManager().insertFields(data, "conversation_recipient");
+            insertFields(data, "conversation_recipient");
             data = new HashMap<String, Object>();
             data.put("conversation_id", conversationID);
             data.put("owner_user_id", recipient.getID());
@@ -707,62 +858,59 @@ public class XenForo extends ForumScript {
             data.put("last_message_id", messageID);
             data.put("last_message_user_id", pm.getSender().getID());
             data.put("last_message_username", pm.getSender().getUsername());
-            this.getDataManager().insertFields(data, "conversation_user");
+            insertFields(data, "conversation_user");
         }
         data.clear();
     }
 
     @Override
-    public int getPostCount(String username) {
-        return this.getDataManager().getCount("post", "`user_id` = '" + getUserID(username) + "' AND `position` != '0'");
+    public int getPostCount(String username) throws SQLException {
+        return queryInt(USER_POST_COUNT, username);
     }
 
     @Override
-    public int getTotalPostCount() {
-        return this.getDataManager().getCount("post", "`position` != '0'");
+    public int getTotalPostCount() throws SQLException {
+        return queryInt(POST_COUNT);
     }
 
     @Override
     public ForumPost getLastPost() throws SQLException {
-        return getPost(this.getDataManager().getIntegerField(
-                "SELECT `post_id` FROM `" + this.getDataManager().getPrefix() + "post` ORDER BY `post_id` ASC LIMIT 1"));
+        return getPost(queryInt(LAST_POST_ID));
     }
 
     @Override
     public ForumPost getLastUserPost(String username) throws SQLException {
-        return getPost(this.getDataManager().getIntegerField(
-                "SELECT `post_id` FROM `" + this.getDataManager().getPrefix() + "post` WHERE `user_id` = '" +
-                        getUserID(username) + "' AND `position` != '0' ORDER BY `post_id` ASC LIMIT 1"));
+        return getPost(queryInt(LAST_USER_POST_ID, getUserID(username)));
     }
 
     @Override
     public List<ForumPost> getPosts(int limit) throws SQLException {
-        String limitstring = "";
-        if (limit > 0) {
-            limitstring = " LIMIT 0 , " + limit;
-        }
-        List<HashMap<String, Object>> array =
-                this.getDataManager().getArrayList("SELECT `post_id` FROM `" + this.getDataManager().getPrefix() +
-                        "post` ORDER BY `post_id` ASC" + limitstring);
-        List<ForumPost> posts = new ArrayList<ForumPost>();
-        for (HashMap<String, Object> map : array) {
-            posts.add(getPost(Integer.parseInt(map.get("post_id").toString())));
-        }
-        return posts;
+        return getPosts(0, limit);
+    }
+
+    @Override
+    public List<ForumPost> getPosts(int offset, int limit) throws SQLException {
+        return getPosts(POSTS, offset, rowCount(limit));
+    }
+
+    @Override
+    public List<ForumPost> getPostsAfter(int postid, int limit) throws SQLException {
+        return getPosts(POSTS_AFTER, postid, limit);
     }
 
     @Override
     public List<ForumPost> getPostsFromThread(int threadid, int limit) throws SQLException {
-        String limitstring = "";
-        if (limit > 0) {
-            limitstring = " LIMIT 0 , " + limit;
-        }
-        List<HashMap<String, Object>> array =
-                this.getDataManager().getArrayList("SELECT `post_id` FROM `" + this.getDataManager().getPrefix() +
-                        "post` WHERE `thread_id` = '" + threadid + "' ORDER BY `post_id` ASC" +
-                        limitstring);
+        return getPostsFromThread(threadid, 0, limit);
+    }
+
+    @Override
+    public List<ForumPost> getPostsFromThread(int threadid, int offset, int limit) throws SQLException {
+        return getPosts(THREAD_POSTS, threadid, offset, rowCount(limit));
+    }
+
+    private List<ForumPost> getPosts(QueryTemplate template, Object... parameters) throws SQLException {
         List<ForumPost> posts = new ArrayList<ForumPost>();
-        for (HashMap<String, Object> map : array) {
+        for (HashMap<String, Object> map : queryMaps(template, parameters)) {
             posts.add(getPost(Integer.parseInt(map.get("post_id").toString())));
         }
         return posts;
@@ -770,8 +918,7 @@ public class XenForo extends ForumScript {
 
     @Override
     public ForumPost getPost(int postid) throws SQLException {
-        Map<String, Object> array = this.getDataManager().getArray(
-                "SELECT * FROM `" + this.getDataManager().getPrefix() + "post` WHERE `post_id` = '" + postid + "' LIMIT 1");
+        HashMap<String, Object> array = queryMap(POST, postid);
         //TODO: figure out how to use nodeID
        /* int nodeID = this.getDataManager().getIntegerField("thread", "node_id", "`thread_id` = '" +
                 Integer.parseInt(array.get("thread_id")
@@ -794,10 +941,10 @@ public class XenForo extends ForumScript {
         data.put("username", post.getAuthor().getUsername());
         data.put("post_date", post.getPostDate().getTime() / 1000);
         data.put("message", post.getBody());
-        this.getDataManager().updateFields(data, "post", "`post_id` = '" + post.getID() + "'");
+        updateFields(data, "post", "`post_id` = ?", post.getID());
         data = new HashMap<String, Object>();
         data.put("node_id", post.getBoardID());
-        this.getDataManager().updateFields(data, "thread", "`thread_id` = '" + post.getThreadID() + "'");
+        updateFields(data, "thread", "`thread_id` = ?", post.getThreadID());
         data.clear();
     }
 
@@ -811,19 +958,17 @@ public class XenForo extends ForumScript {
         data.put("post_date", new Date().getTime() / 1000);
         data.put("message", post.getBody());
         data.put("ip_id", ipID);
-        if (this.getDataManager().exist("post", "thread_id", post.getThreadID())) {
-            data.put("position", this.getDataManager().getLastID("position",
-                    "post",
-                    "`thread_id` = '" + post.getThreadID() + "'") + 1);
+        String position = queryString(LAST_POST_POSITION, post.getThreadID());
+        if (position != null) {
+            data.put("position", Integer.parseInt(position) + 1);
         } else {
             data.put("position", 0);
         }
-        int postID = this.getDataManager().getLastID("post_id", "post");
+        data.put("like_users", "a:0:{}");
+        int postID = insertFields(data, "post");
         post.setID(postID);
-        int replyCount = this.getDataManager().getIntegerField("thread", "reply_count",
-                "`thread_id` = '" + post.getThreadID() + "'");
+        int replyCount = queryInt(THREAD_REPLIES, post.getThreadID());
         this.addSearch(post.getAuthor(), "post", post.getBoardID(), post.getID(), post.getSubject(), post.getBody());
-        this.getDataManager().updateBlob("post", "like_users", "`post_id` = '" + postID + "'", "a:0:{}");
         data = new HashMap<String, Object>();
         data.put("node_id", post.getBoardID());
         data.put("reply_count", replyCount + 1);
@@ -831,56 +976,47 @@ public class XenForo extends ForumScript {
         data.put("last_post_id", postID);
         data.put("last_post_user_id", post.getAuthor().getID());
         data.put("last_post_username", post.getAuthor().getUsername());
-        this.getDataManager().updateFields(data, "thread", "`thread_id` = '" + post.getThreadID() + "'");
-        if (this.getDataManager().exist("thread_user_post", "user_id", post.getAuthor().getID()) &&
-                this.getDataManager().exist("thread_user_post", "thread_id", post.getID())) {
+        updateFields(data, "thread", "`thread_id` = ?", post.getThreadID());
+        String postCount = queryString(THREAD_USER_POSTS, post.getThreadID(), post.getAuthor().getID());
+        if (postCount != null) {
             data = new HashMap<String, Object>();
-            int postCount = this.getDataManager().getIntegerField("thread_user_post", "post_count",
-                    "`thread_id` = '" + post.getThreadID() +
-                            "' AND `user_id` = '" + post.getAuthor().getID() + "'");
-            data.put("post_count", postCount + 1);
-            this.getDataManager().updateFields(data, "thread_user_post", "`thread_id` = '" +
-                    post.getThreadID() + "' AND `user_id` = '" +
-                    post.getAuthor().getID() + "'");
+            data.put("post_count", Integer.parseInt(postCount) + 1);
+            updateFields(data, "thread_user_post", "`thread_id` = ? AND `user_id` = ?", post.getThreadID(),
+                    post.getAuthor().getID());
         } else {
             data = new HashMap<String, Object>();
             data.put("thread_id", post.getThreadID());
             data.put("user_id", post.getAuthor().getID());
             data.put("post_count", 1);
-            this.getDataManager().insertFields(data, "thread_user_post");
+            insertFields(data, "thread_user_post");
         }
-        this.getDataManager().increaseField("user", "message_count", "`user_id` = '" + post.getAuthor().getID() + "'");
+        update(USER_MESSAGES_INCREASE, post.getAuthor().getID());
         data.clear();
     }
 
     @Override
-    public int getThreadCount(String username) {
-        return this.getDataManager().getCount("thread", "`user_id` = '" + getUserID(username) + "'");
+    public int getThreadCount(String username) throws SQLException {
+        return queryInt(USER_THREAD_COUNT, username);
     }
 
     @Override
-    public int getTotalThreadCount() {
-        return this.getDataManager().getCount("thread");
+    public int getTotalThreadCount() throws SQLException {
+        return queryInt(THREAD_COUNT);
     }
 
     @Override
     public ForumThread getLastThread() throws SQLException {
-        return getThread(this.getDataManager().getIntegerField("SELECT `thread_id` FROM `" + this.getDataManager().getPrefix() +
-                "thread` ORDER BY `thread_id` ASC LIMIT 1"));
+        return getThread(queryInt(LAST_THREAD_ID));
     }
 
     @Override
     public ForumThread getLastUserThread(String username) throws SQLException {
-        return getThread(this.getDataManager().getIntegerField(
-                "SELECT `thread_id` FROM `" + this.getDataManager().getPrefix() + "thread` WHERE `user_id` = '" +
-                        getUserID(username) + "' ORDER BY `thread_id` ASC LIMIT 1"));
+        return getThread(queryInt(LAST_USER_THREAD_ID, getUserID(username)));
     }
 
     @Override
     public ForumThread getThread(int threadid) throws SQLException {
-        Map<String, Object> array = this.getDataManager().getArray(
-                "SELECT * FROM `" + this.getDataManager().getPrefix() + "thread` WHERE `thread_id` = '" + threadid +
-                        "' LIMIT 1");
+        HashMap<String, Object> array = queryMap(THREAD, threadid);
         ForumThread thread =
                 new ForumThread(this, Integer.parseInt(array.get("first_post_id").toString()),
                         Integer.parseInt(array.get("last_post_id").toString()),
@@ -907,15 +1043,22 @@ public class XenForo extends ForumScript {
 
     @Override
     public List<ForumThread> getThreads(int limit) throws SQLException {
-        String limitstring = "";
-        if (limit > 0) {
-            limitstring = " LIMIT 0 , " + limit;
-        }
-        List<HashMap<String, Object>> array =
-                this.getDataManager().getArrayList("SELECT `thread_id` FROM `" + this.getDataManager().getPrefix() +
-                        "thread` ORDER BY `thread_id` ASC" + limitstring);
+        return getThreads(0, limit);
+    }
+
+    @Override
+    public List<ForumThread> getThreads(int offset, int limit) throws SQLException {
+        return getThreads(THREADS, offset, rowCount(limit));
+    }
+
+    @Override
+    public List<ForumThread> getThreadsAfter(int threadid, int limit) throws SQLException {
+        return getThreads(THREADS_AFTER, threadid, limit);
+    }
+
+    private List<ForumThread> getThreads(QueryTemplate template, Object... parameters) throws SQLException {
         List<ForumThread> threads = new ArrayList<ForumThread>();
-        for (HashMap<String, Object> map : array) {
+        for (HashMap<String, Object> map : queryMaps(template, parameters)) {
             threads.add(getThread(Integer.parseInt(map.get("thread_id").toString())));
         }
         return threads;
@@ -946,7 +1089,7 @@ public class XenForo extends ForumScript {
         data.put("last_post_id", thread.getLastPost().getID());
         data.put("last_post_user_id", thread.getLastPost().getAuthor().getID());
         data.put("last_post_username", thread.getLastPost().getAuthor().getUsername());
-        this.getDataManager().updateFields(data, "thread", "`thread_id` = '" + thread.getID() + "'");
+        updateFields(data, "thread", "`thread_id` = ?", thread.getID());
     }
 
     @Override
@@ -972,8 +1115,7 @@ public class XenForo extends ForumScript {
         data.put("last_post_date", timestamp);
         data.put("last_post_user_id", thread.getAuthor().getID());
         data.put("last_post_username", thread.getAuthor().getUsername());
-        this.getDataManager().insertFields(data, "thread");
-        int threadID = this.getDataManager().getLastID("thread_id", "thread");
+        int threadID = insertFields(data, "thread");
         thread.setID(threadID);
         this.addSearch(thread.getAuthor(), "thread", thread.getBoardID(), thread.getID(),
                 thread.getSubject(), thread.getBody());
@@ -985,61 +1127,48 @@ public class XenForo extends ForumScript {
         data = new HashMap<String, Object>();
         data.put("first_post_id", post.getID());
         data.put("last_post_id", post.getID());
-        this.getDataManager().updateFields(data, "thread", "`thread_id` = '" + thread.getID() + "'");
+        updateFields(data, "thread", "`thread_id` = ?", thread.getID());
         data.clear();
     }
 
     @Override
-    public int getUserCount() {
-        return this.getDataManager().getCount("user");
+    public int getUserCount() throws SQLException {
+        return queryInt(USER_COUNT);
     }
 
     @Override
-    public int getGroupCount() {
-        return this.getDataManager().getCount("user_group");
+    public int getGroupCount() throws SQLException {
+        return queryInt(GROUP_COUNT);
     }
 
     @Override
-    public List<String> getIPs(String username) {
+    public List<String> getIPs(String username) throws SQLException {
         List<String> ips = new ArrayList<String>();
-        List<HashMap<String, Object>> array =
-                this.getDataManager().getArrayList("SELECT `ip` FROM `" + this.getDataManager().getPrefix() +
-                        "ip` WHERE `user_id` = '" + getUserID(username) + "' GROUP BY `ip`");
-        for (HashMap<String, Object> map : array) {
+        for (HashMap<String, Object> map : queryMaps(IPS, username)) {
             ips.add(CraftCommons.long2ip(Long.parseLong(map.get("ip").toString())));
         }
         return ips;
     }
 
     @Override
-    public List<Ban> getBans(int limit) {
-        String limitstring = "";
-        if (limit > 0) {
-            limitstring = " LIMIT 0 , " + limit;
-        }
+    public List<Ban> getBans(int limit) throws SQLException {
+        long rows = rowCount(limit);
         List<Ban> bans = new ArrayList<Ban>();
-        List<HashMap<String, Object>> array =
-                this.getDataManager().getArrayList("SELECT * FROM `" + this.getDataManager().getPrefix() +
-                        "ban_email` " + limitstring);
-        for (HashMap<String, Object> map : array) {
+        for (HashMap<String, Object> map : queryMaps(EMAIL_BANS, 0, rows)) {
             bans.add(new Ban(this.getHandle(), URI.create(map.get("banned_email").toString())));
         }
-        array = this.getDataManager().getArrayList("SELECT * FROM `" + this.getDataManager().getPrefix() +
-                "ip_match` " + limitstring);
-        for (HashMap<String, Object> map : array) {
+        for (HashMap<String, Object> map : queryMaps(IP_BANS, 0, rows)) {
             bans.add(new Ban(this.getHandle(), IPAddress.valueOf(map.get("ip").toString())));
         }
-        array = this.getDataManager().getArrayList("SELECT * FROM `" + this.getDataManager().getPrefix() +
-                "user_ban` " + limitstring);
-        for (HashMap<String, Object> map : array) {
+        for (HashMap<String, Object> map : queryMaps(USER_BANS, 0, rows)) {
             Ban ban = new Ban(this.getHandle(), null, null, null);
-            ban.setUserID(Integer.parseInt(map.get("ban_user_id").toString()));
+            ban.setUserID(Integer.parseInt(map.get("user_id").toString()));
             ban.setReason(map.get("user_reason").toString());
             ban.setStartDate(new Date(Long.parseLong(map.get("ban_date").toString()) * 1000));
             if (map.get("end_date").toString().equalsIgnoreCase("0")) {
                 ban.setEndDate(null);
             } else {
-                ban.setStartDate(new Date(Long.parseLong(map.get("end_date").toString()) * 1000));
+                ban.setEndDate(new Date(Long.parseLong(map.get("end_date").toString()) * 1000));
             }
             bans.add(ban);
         }
@@ -1057,38 +1186,27 @@ public class XenForo extends ForumScript {
     }
 
     @Override
-    public int getBanCount() {
-        return this.getDataManager().getCount("ip_match") + this.getDataManager().getCount("user_ban") +
-                this.getDataManager().getCount("ban_email");
+    public int getBanCount() throws SQLException {
+        return queryInt(BAN_COUNT);
     }
 
     @Override
     public boolean isBanned(String string) throws SQLException {
         if (Util.isEmail(string)) {
-            if (this.getDataManager().exist("ban_email", "banned_email", string)) {
-                return true;
-            }
+            return queryString(BANNED_EMAIL, string) != null;
         } else if (Util.isIP(string)) {
-            if (this.getDataManager().exist("ip_match", "ip", string)) {
-                return true;
-            }
-        } else {
-            if (isRegistered(string)) {
-                ScriptUser user = getUser(string);
-                return this.getDataManager().exist("user_ban", "user_id", user.getID());
-            }
+            return queryString(BANNED_IP, string) != null;
         }
-        return false;
+        return queryString(BANNED_USER, string) != null;
     }
 
     @Override
-    public boolean isRegistered(String username) {
-        return this.getDataManager().exist("user", "username", username);
+    public boolean isRegistered(String username) throws SQLException {
+        return queryString(USER_ID, username) != null;
     }
 
     private int insertIP(ScriptUser user, String content, String action) throws SQLException {
-        int lastIPID = this.getDataManager().getLastID("content_id", "ip",
-                "`content_type` = '" + content + "' AND `action` = '" + action + "'");
+        int lastIPID = queryInt(LAST_IP_CONTENT, content, action);
         HashMap<String, Object> data = new HashMap<String, Object>();
         data.put("user_id", user.getID());
         data.put("content_type", content);
@@ -1096,13 +1214,12 @@ public class XenForo extends ForumScript {
         data.put("action", action);
         data.put("ip", CraftCommons.ip2long(user.getLastIP()));
         data.put("log_date", new Date().getTime() / 1000);
-        this.getDataManager().insertFields(data, "ip");
-        return this.getDataManager().getLastID("ip_id", "ip");
+        return insertFields(data, "ip");
     }
 
     private void addSearch(ScriptUser user, String type, int node, int discussionID, String title, String message)
             throws SQLException {
-        int contentID = this.getDataManager().getLastID("content_id", "ip", "`content_type` = '" + type + "'");
+        int contentID = queryInt(LAST_CONTENT, type);
         if (contentID == 0) {
             contentID = 1;
         }
@@ -1124,6 +1241,6 @@ public class XenForo extends ForumScript {
         data.put("user_id", user.getID());
         data.put("item_date", new Date().getTime() / 1000);
         data.put("discussion_id", discussionID);
-        this.getDataManager().insertFields(data, "search_index");
+        insertFields(data, "search_index");
     }
 }
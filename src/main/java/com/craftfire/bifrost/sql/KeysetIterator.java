@@ -0,0 +1,115 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.sql;
+
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import com.craftfire.bifrost.exceptions.ScriptException;
+
+/**
+ * Walks a table by its primary key, one page of rows at a time.
+ * <p>
+ * Every page is loaded with the key of the last row of the previous page, like
+ * {@code WHERE `id` > ? ORDER BY `id` ASC LIMIT ?}, so the database seeks to the start of the page instead of
+ * skipping all rows before it, and only the current page is held in memory. Rows that are inserted or deleted while
+ * the table is walked don't shift the pages.
+ * <p>
+ * The pages are loaded when the iterator runs out of rows, exceptions of the script are thrown as
+ * {@link IllegalStateException}s with the exception as their cause.
+ *
+ * @param <T>  the type of the rows
+ */
+public abstract class KeysetIterator<T> implements Iterator<T> {
+    private final int pageSize;
+    private List<T> page;
+    private int position, lastKey;
+    private boolean exhausted;
+
+    /**
+     * Creates an iterator that starts at the first row of the table.
+     *
+     * @param  pageSize  the number of rows loaded at once
+     * @throws IllegalArgumentException  if the page size isn't positive
+     */
+    protected KeysetIterator(int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("The page size must be positive, not " + pageSize + ".");
+        }
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Loads the rows whose keys are greater than the specified key, in the order of their keys.
+     *
+     * @param  after             the key of the last row of the previous page, 0 for the first page
+     * @param  limit             the maximum number of rows to load
+     * @return                   the rows, less than {@code limit} if these are the last rows of the table
+     * @throws SQLException      if a MySQL exception occurred
+     * @throws ScriptException   if any other exception occurred
+     */
+    protected abstract List<T> load(int after, int limit) throws SQLException, ScriptException;
+
+    /**
+     * Returns the primary key of a row.
+     *
+     * @param  row  the row
+     * @return      the key of the row
+     */
+    protected abstract int getKey(T row);
+
+    @Override
+    public boolean hasNext() {
+        if (this.page != null && this.position < this.page.size()) {
+            return true;
+        }
+        if (this.exhausted) {
+            return false;
+        }
+        if (this.page != null) {
+            this.lastKey = getKey(this.page.get(this.page.size() - 1));
+        }
+        try {
+            this.page = load(this.lastKey, this.pageSize);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not load the rows after " + this.lastKey + ".", e);
+        } catch (ScriptException e) {
+            throw new IllegalStateException("Could not load the rows after " + this.lastKey + ".", e);
+        }
+        this.position = 0;
+        this.exhausted = this.page.size() < this.pageSize;
+        return ! this.page.isEmpty();
+    }
+
+    @Override
+    public T next() {
+        if (! hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return this.page.get(this.position++);
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Rows can't be removed while the table is walked.");
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.sql;
+
+/**
+ * The text of a query of a script, with the parameters as {@code ?} and the table prefix as {@code {prefix}}.
+ * <p>
+ * A template is compiled once per script, which resolves the prefix and the other tokens of the script, see
+ * {@link com.craftfire.bifrost.classes.general.Script#compile(QueryTemplate)}. The compiled query is executed as a
+ * prepared statement from the {@link StatementCache} of the script, with the values bound instead of spliced into the
+ * text.
+ * <p>
+ * Templates are usually constants of the script:
+ * <pre>
+ * private static final QueryTemplate USER = new QueryTemplate("SELECT * FROM `{prefix}users` WHERE `id` = ?");
+ * </pre>
+ */
+public final class QueryTemplate {
+    /**
+     * The token that is replaced by the table prefix of the script.
+     */
+    public static final String PREFIX = "{prefix}";
+    private final String sql;
+
+    /**
+     * Creates a template from the text of the query.
+     *
+     * @param sql  the query, with {@code ?} for the parameters and {@link #PREFIX} before the table names
+     */
+    public QueryTemplate(String sql) {
+        if (sql == null) {
+            throw new IllegalArgumentException("The query can't be null.");
+        }
+        this.sql = sql;
+    }
+
+    /**
+     * Returns a template with {@code count} parameters in a list, for a SQL {@code IN} clause.
+     * <p>
+     * The list replaces the {@code {list}} token of the query, like
+     * {@code QueryTemplate.list("SELECT * FROM `{prefix}users` WHERE `id` IN ({list})", ids.size())}. Every length
+     * is a query of its own, so the lists should be split in chunks of the same size where possible, like
+     * {@link com.craftfire.bifrost.classes.general.Script#queryList(String, RowMapper, java.util.Collection)} does.
+     *
+     * @param  sql    the query with a {@code {list}} token
+     * @param  count  the amount of parameters in the list, at least 1
+     * @return        the template
+     */
+    public static QueryTemplate list(String sql, int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("The list needs at least one parameter.");
+        }
+        StringBuilder list = new StringBuilder("?");
+        for (int i = 1; i < count; i++) {
+            list.append(", ?");
+        }
+        return new QueryTemplate(sql.replace("{list}", list.toString()));
+    }
+
+    /**
+     * Returns the text of the query, before it has been compiled.
+     *
+     * @return the text of the query
+     */
+    public String getSQL() {
+        return this.sql;
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        return object instanceof QueryTemplate && ((QueryTemplate) object).sql.equals(this.sql);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.sql.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return this.sql;
+    }
+}
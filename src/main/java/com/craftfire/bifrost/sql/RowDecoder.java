@@ -0,0 +1,206 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.sql;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * A {@link RowMapper} that is generated from a {@link Schema} and the setters of an entity.
+ * <p>
+ * The entity is created by a hand-written factory, which reads the columns of the constructor and anything that
+ * needs more than a plain conversion. The decoder then calls one setter for every other field, the setters are
+ * joined into a single {@link MethodHandle} when the decoder is built, so decoding a row is one call that the JIT can
+ * inline instead of a lookup of the version and the column for every field.
+ * <p>
+ * The column is read by the type of the parameter of the setter:
+ * <ul>
+ *     <li>{@code String}, {@code int} and {@code long}: read as they are.</li>
+ *     <li>{@code boolean}: an integer column, {@code true} if it is greater than 0.</li>
+ *     <li>{@link Date}: an integer column holding a UNIX timestamp in seconds.</li>
+ * </ul>
+ * Fields the version of the schema lacks are skipped.
+ *
+ * @param <T>  the type of the decoded entities
+ */
+public final class RowDecoder<T> implements RowMapper<T> {
+    private static final MethodType SETTER = MethodType.methodType(void.class, Object.class, ResultSet.class);
+    private static final MethodHandle NONE, FLAG, SECONDS;
+    private static final MethodHandle GET_STRING, GET_INT, GET_LONG;
+    private final RowMapper<? extends T> factory;
+    private final MethodHandle setters;
+
+    static {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            NONE = lookup.findStatic(RowDecoder.class, "none", SETTER);
+            FLAG = lookup.findStatic(RowDecoder.class, "flag", MethodType.methodType(boolean.class, int.class));
+            SECONDS = lookup.findStatic(RowDecoder.class, "seconds", MethodType.methodType(Date.class, long.class));
+            GET_STRING = lookup.findVirtual(ResultSet.class, "getString",
+                                            MethodType.methodType(String.class, int.class));
+            GET_INT = lookup.findVirtual(ResultSet.class, "getInt", MethodType.methodType(int.class, int.class));
+            GET_LONG = lookup.findVirtual(ResultSet.class, "getLong", MethodType.methodType(long.class, int.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private RowDecoder(RowMapper<? extends T> factory, MethodHandle setters) {
+        this.factory = factory;
+        this.setters = setters;
+    }
+
+    /**
+     * Starts a decoder for the entities of a type whose fields are columns of the table of a schema.
+     *
+     * @param  type    the class that declares or inherits the setters
+     * @param  schema  the columns of the table in the version of the script
+     * @param  <T>     the type of the entities
+     * @param  <F>     the enum of the fields of the table
+     * @return         the builder of the decoder
+     */
+    public static <T, F extends Enum<F>> Builder<T, F> builder(Class<T> type, Schema<F> schema) {
+        return new Builder<T, F>(type, schema);
+    }
+
+    @Override
+    public T map(ResultSet row) throws SQLException {
+        T entity = this.factory.map(row);
+        try {
+            this.setters.invokeExact((Object) entity, row);
+        } catch (SQLException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new SQLException(e);
+        }
+        return entity;
+    }
+
+    @SuppressWarnings("unused")
+    private static void none(Object entity, ResultSet row) {
+    }
+
+    @SuppressWarnings("unused")
+    private static boolean flag(int value) {
+        return value > 0;
+    }
+
+    @SuppressWarnings("unused")
+    private static Date seconds(long value) {
+        return new Date(value * 1000);
+    }
+
+    /**
+     * Collects the setters of a {@link RowDecoder}.
+     *
+     * @param <T>  the type of the decoded entities
+     * @param <F>  the enum of the fields of the table
+     */
+    public static final class Builder<T, F extends Enum<F>> {
+        private final Class<T> type;
+        private final Schema<F> schema;
+        private final List<MethodHandle> setters = new ArrayList<MethodHandle>();
+
+        private Builder(Class<T> type, Schema<F> schema) {
+            this.type = type;
+            this.schema = schema;
+        }
+
+        /**
+         * Sets a field of the entity with the column of a field of the table.
+         *
+         * @param  field   the field of the table, skipped if the version of the schema lacks its column
+         * @param  setter  the name of the public setter, which takes one parameter
+         * @return         this builder
+         * @throws IllegalArgumentException  if the setter doesn't exist or its parameter has an unsupported type
+         */
+        public Builder<T, F> set(F field, String setter) {
+            int index = this.schema.getIndex(field);
+            if (index == 0) {
+                return this;
+            }
+            Method method = findSetter(setter);
+            MethodHandle reader = reader(method.getParameterTypes()[0]);
+            MethodHandle handle;
+            try {
+                handle = MethodHandles.publicLookup().unreflect(method);
+            } catch (IllegalAccessException e) {
+                throw new IllegalArgumentException("The setter " + setter + " of " + this.type.getName() +
+                        " is not accessible.", e);
+            }
+            // (entity, row) -> entity.setter(reader(row, index))
+            handle = MethodHandles.filterArguments(handle, 1, MethodHandles.insertArguments(reader, 1, index));
+            this.setters.add(handle.asType(SETTER));
+            return this;
+        }
+
+        /**
+         * Builds the decoder.
+         *
+         * @param  factory  creates the entity of a row, before the setters are called
+         * @return          the decoder
+         */
+        public RowDecoder<T> build(RowMapper<? extends T> factory) {
+            // Folded from the last setter to the first, so that they are called in the order they were added.
+            MethodHandle handle = NONE;
+            for (int i = this.setters.size() - 1; i >= 0; i--) {
+                handle = MethodHandles.foldArguments(handle, this.setters.get(i));
+            }
+            return new RowDecoder<T>(factory, handle);
+        }
+
+        private Method findSetter(String name) {
+            for (Method method : this.type.getMethods()) {
+                if (method.getName().equals(name) && method.getParameterTypes().length == 1 &&
+                        ! Modifier.isStatic(method.getModifiers())) {
+                    return method;
+                }
+            }
+            throw new IllegalArgumentException("The class " + this.type.getName() + " has no setter " + name + ".");
+        }
+
+        private MethodHandle reader(Class<?> parameter) {
+            if (parameter == String.class) {
+                return GET_STRING;
+            } else if (parameter == int.class) {
+                return GET_INT;
+            } else if (parameter == long.class) {
+                return GET_LONG;
+            } else if (parameter == boolean.class) {
+                return MethodHandles.filterReturnValue(GET_INT, FLAG);
+            } else if (parameter == Date.class) {
+                return MethodHandles.filterReturnValue(GET_LONG, SECONDS);
+            }
+            throw new IllegalArgumentException("Columns can't be read as " + parameter.getName() + ".");
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.sql;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Turns the current row of a {@link ResultSet} into an object, see
+ * {@link com.craftfire.bifrost.classes.general.Script#query(QueryTemplate, RowMapper, Object...)}.
+ * <p>
+ * The mapper reads the typed columns of the row it is called for, it must not move the cursor or close the result.
+ *
+ * @param <T>  the type of the mapped objects
+ */
+public interface RowMapper<T> {
+    /**
+     * Returns the object of the current row.
+     *
+     * @param  row           the result, positioned on the row to map
+     * @return               the mapped object
+     * @throws SQLException  if a column can't be read
+     */
+    T map(ResultSet row) throws SQLException;
+}
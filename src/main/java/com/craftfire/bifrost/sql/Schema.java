@@ -0,0 +1,148 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.sql;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The columns of a table of a script for one version of its schema.
+ * <p>
+ * The fields of the table are the constants of an enum, every version of the script maps them to its own column
+ * names, or to none if the version lacks the column. The script picks the descriptors of its version once, its row
+ * decoders then read the columns by the indices of the descriptor instead of branching on the version for every row.
+ * <p>
+ * The descriptor resolves these tokens of a {@link QueryTemplate}, see {@link #resolve(String)}:
+ * <ul>
+ *     <li>{@code {table.*}}: the columns of the descriptor in the order of the fields, like
+ *     {@code `id_member`, `member_name`}. Rows selected with it are read with {@link #getIndex(Enum)}.</li>
+ *     <li>{@code {table.field}}: the name of the column of a field, the field being the lower case name of the enum
+ *     constant, like {@code {members.reg_date}}.</li>
+ * </ul>
+ *
+ * @param <F>  the enum of the fields of the table
+ */
+public final class Schema<F extends Enum<F>> {
+    private final String table;
+    private final String[] columns;
+    private final int[] indices;
+    private final String select;
+    private final Map<String, String> tokens = new LinkedHashMap<String, String>();
+
+    /**
+     * Creates the descriptor of a table.
+     *
+     * @param table    the name of the table, without the prefix
+     * @param fields   the enum of the fields
+     * @param columns  the column of every field in the order of the enum constants, null if the version lacks it
+     */
+    public Schema(String table, Class<F> fields, String... columns) {
+        F[] constants = fields.getEnumConstants();
+        if (columns.length != constants.length) {
+            throw new IllegalArgumentException("The table " + table + " needs " + constants.length + " columns, not " +
+                    columns.length + ".");
+        }
+        this.table = table;
+        this.columns = columns.clone();
+        this.indices = new int[columns.length];
+        StringBuilder select = new StringBuilder();
+        int index = 0;
+        for (F field : constants) {
+            String column = columns[field.ordinal()];
+            if (column == null) {
+                continue;
+            }
+            this.indices[field.ordinal()] = ++index;
+            if (select.length() > 0) {
+                select.append(", ");
+            }
+            select.append('`').append(column).append('`');
+            this.tokens.put("{" + table + "." + field.name().toLowerCase() + "}", column);
+        }
+        this.select = select.toString();
+    }
+
+    /**
+     * Returns the name of the table, without the prefix.
+     *
+     * @return the name of the table
+     */
+    public String getTable() {
+        return this.table;
+    }
+
+    /**
+     * Returns whether this version of the table has a column for the field.
+     *
+     * @param  field  the field
+     * @return        {@code true} if the column exists, {@code false} if not
+     */
+    public boolean has(F field) {
+        return this.columns[field.ordinal()] != null;
+    }
+
+    /**
+     * Returns the name of the column of the field.
+     *
+     * @param  field  the field
+     * @return        the name of the column, or null if this version of the table lacks it
+     */
+    public String getColumn(F field) {
+        return this.columns[field.ordinal()];
+    }
+
+    /**
+     * Returns the index of the column of the field in a row selected with {@link #getColumns()}.
+     *
+     * @param  field  the field
+     * @return        the index of the column, starting at 1, or 0 if this version of the table lacks it
+     */
+    public int getIndex(F field) {
+        return this.indices[field.ordinal()];
+    }
+
+    /**
+     * Returns the list of the columns for a SELECT query, in the order of the fields.
+     *
+     * @return the quoted and comma separated columns
+     */
+    public String getColumns() {
+        return this.select;
+    }
+
+    /**
+     * Replaces the tokens of the table in the text of a template.
+     *
+     * @param  sql  the text of the template
+     * @return      the text with the column names and the column list of this table
+     */
+    public String resolve(String sql) {
+        String resolved = sql.replace("{" + this.table + ".*}", this.select);
+        for (Map.Entry<String, String> token : this.tokens.entrySet()) {
+            resolved = resolved.replace(token.getKey(), token.getValue());
+        }
+        return resolved;
+    }
+
+    @Override
+    public String toString() {
+        return this.table + "(" + this.select + ")";
+    }
+}
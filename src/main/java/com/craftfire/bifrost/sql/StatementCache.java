@@ -0,0 +1,212 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.sql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.craftfire.commons.database.DataManager;
+
+/**
+ * The prepared statements of a script, kept open for the connection they have been prepared on.
+ * <p>
+ * Statements are looked up by their compiled query, the least recently used one is closed when the cache is full.
+ * When the {@link DataManager} opens a new connection, all statements of the old one are dropped. INSERT queries are
+ * prepared to return the keys the database generates.
+ * <p>
+ * A prepared statement can only run one query at a time, so the script holds the lock of the statement itself while
+ * it binds and executes it and reads its result, see {@link com.craftfire.bifrost.classes.general.Script#query(
+ * QueryTemplate, RowMapper, Object...)}. The cache only holds its own lock to look statements up. Statements that are
+ * dropped are closed under their lock after that, so a query that is still running on one finishes first.
+ */
+public class StatementCache {
+    /**
+     * The default amount of statements kept open.
+     */
+    public static final int DEFAULT_SIZE = 64;
+    private final DataManager dataManager;
+    private final int size;
+    private final Map<String, PreparedStatement> statements;
+    private Connection connection;
+    private long hits, misses;
+
+    /**
+     * Creates a cache of {@link #DEFAULT_SIZE} statements.
+     *
+     * @param dataManager  the {@link DataManager} whose connection the statements are prepared on
+     */
+    public StatementCache(DataManager dataManager) {
+        this(dataManager, DEFAULT_SIZE);
+    }
+
+    /**
+     * Creates a cache of the given size.
+     *
+     * @param dataManager  the {@link DataManager} whose connection the statements are prepared on
+     * @param size         the maximum amount of open statements
+     */
+    public StatementCache(DataManager dataManager, int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("The size must be positive.");
+        }
+        this.dataManager = dataManager;
+        this.size = size;
+        this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true);
+    }
+
+    /**
+     * Returns the prepared statement of the query, preparing it if it isn't cached for the current connection.
+     * <p>
+     * The statement may be shared with other threads and closed when it is dropped from the cache. The caller must
+     * hold the lock of the statement until it is done with it and its result, and prepare it again if it has been
+     * closed before the caller got the lock.
+     *
+     * @param  sql           the compiled query
+     * @return               the prepared statement
+     * @throws SQLException  if the query couldn't be prepared
+     */
+    public PreparedStatement prepare(String sql) throws SQLException {
+        List<PreparedStatement> dropped = new ArrayList<PreparedStatement>();
+        PreparedStatement statement;
+        try {
+            synchronized (this) {
+                Connection current = getConnection();
+                if (current != this.connection) {
+                    dropped.addAll(this.statements.values());
+                    this.statements.clear();
+                    this.connection = current;
+                }
+                statement = this.statements.get(sql);
+                if (statement != null && !statement.isClosed()) {
+                    this.hits++;
+                    return statement;
+                }
+                this.misses++;
+                if (sql.trim().regionMatches(true, 0, "INSERT", 0, 6)) {
+                    statement = current.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+                } else {
+                    statement = current.prepareStatement(sql);
+                }
+                this.statements.put(sql, statement);
+                if (this.statements.size() > this.size) {
+                    Iterator<PreparedStatement> eldest = this.statements.values().iterator();
+                    dropped.add(eldest.next());
+                    eldest.remove();
+                }
+            }
+        } finally {
+            close(dropped);
+        }
+        return statement;
+    }
+
+    /**
+     * Closes all statements, the next query prepares its statement again.
+     * <p>
+     * Statements that are running a query are closed when it is done.
+     */
+    public void clear() {
+        List<PreparedStatement> dropped;
+        synchronized (this) {
+            dropped = new ArrayList<PreparedStatement>(this.statements.values());
+            this.statements.clear();
+            this.connection = null;
+        }
+        close(dropped);
+    }
+
+    /**
+     * Returns the compiled queries of the open statements, from the least to the most recently used.
+     *
+     * @return the queries of the cached statements
+     */
+    public synchronized List<String> getQueries() {
+        return new ArrayList<String>(this.statements.keySet());
+    }
+
+    /**
+     * Returns the maximum amount of open statements.
+     *
+     * @return the size of the cache
+     */
+    public int getSize() {
+        return this.size;
+    }
+
+    /**
+     * Returns how many times an open statement has been reused.
+     *
+     * @return the amount of hits
+     */
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    /**
+     * Returns how many times a statement had to be prepared.
+     *
+     * @return the amount of misses
+     */
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    /**
+     * Returns the connection of the {@link DataManager}, connecting it if needed.
+     * <p>
+     * The statements are prepared on this connection, scripts use it to prepare statements the cache can't hold and
+     * to run transactions.
+     *
+     * @return               the open connection
+     * @throws SQLException  if the data manager can't connect
+     */
+    public Connection getConnection() throws SQLException {
+        if (this.dataManager == null) {
+            throw new SQLException("The script has no data manager.");
+        }
+        if (!this.dataManager.isConnected()) {
+            this.dataManager.connect();
+        }
+        Connection current = this.dataManager.getConnection();
+        if (current == null || current.isClosed()) {
+            throw new SQLException("The data manager isn't connected.");
+        }
+        return current;
+    }
+
+    private static void close(List<PreparedStatement> statements) {
+        for (PreparedStatement statement : statements) {
+            synchronized (statement) {
+                try {
+                    statement.close();
+                } catch (SQLException e) {
+                    // The statement is dropped anyway, its connection may be gone already.
+                }
+            }
+        }
+    }
+}
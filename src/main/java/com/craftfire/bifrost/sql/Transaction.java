@@ -0,0 +1,38 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.sql;
+
+import java.sql.SQLException;
+
+import com.craftfire.bifrost.exceptions.ScriptException;
+
+/**
+ * The work of a database transaction, see
+ * {@link com.craftfire.bifrost.classes.general.Script#transaction(Transaction)}.
+ */
+public interface Transaction {
+    /**
+     * Runs the queries of the transaction, they are rolled back if this throws an exception.
+     *
+     * @throws SQLException     if a MySQL exception occurred
+     * @throws ScriptException  if any other exception occurred
+     */
+    void run() throws SQLException, ScriptException;
+}
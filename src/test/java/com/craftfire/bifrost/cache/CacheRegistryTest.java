@@ -0,0 +1,61 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.craftfire.bifrost.classes.general.Cache;
+
+public class CacheRegistryTest {
+    private static final String KEY = CacheRegistry.getKey("smf", "localhost", "forum", "smf_");
+
+    @Test
+    public void testShared() {
+        CacheRegistry registry = new CacheRegistry();
+        Cache first = new Cache();
+        assertSame(first, registry.acquire(KEY, first));
+        assertSame(first, registry.acquire(KEY, new Cache()));
+        assertEquals(2, registry.getReferences(KEY));
+        // Another prefix is another database.
+        Cache other = new Cache();
+        assertSame(other, registry.acquire(CacheRegistry.getKey("smf", "localhost", "forum", "other_"), other));
+    }
+
+    @Test
+    public void testRelease() {
+        CacheRegistry registry = new CacheRegistry();
+        Cache cache = new Cache();
+        registry.acquire(KEY, cache);
+        registry.acquire(KEY, cache);
+        assertFalse(registry.release(KEY));
+        assertEquals(1, registry.getReferences(KEY));
+        assertTrue(registry.release(KEY));
+        assertEquals(0, registry.getReferences(KEY));
+        assertFalse(registry.release(KEY));
+        // A released key registers the next cache.
+        Cache next = new Cache();
+        assertSame(next, registry.acquire(KEY, next));
+    }
+}
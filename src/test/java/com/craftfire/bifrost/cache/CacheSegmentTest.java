@@ -0,0 +1,119 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.craftfire.bifrost.enums.CacheGroup;
+
+public class CacheSegmentTest {
+    private static CacheSegment segment(int maximumSize) {
+        return new CacheSegment(CacheGroup.POST, maximumSize, new CacheTagIndex(), new CacheBudget(0));
+    }
+
+    @Test
+    public void testPutAndGet() {
+        CacheSegment segment = segment(0);
+        segment.put("key", "value", false);
+        segment.put(5, "five", false);
+        segment.put(null, "null", false);
+        assertEquals("value", segment.getEntry("key").getValue());
+        assertEquals("five", segment.getEntry(5).getValue());
+        assertEquals("null", segment.getEntry(null).getValue());
+        // Integer IDs are stored in the primitive maps, however they are passed.
+        assertSame(segment.getEntry(5), segment.getEntry(Integer.valueOf(5)));
+        segment.put(Integer.valueOf(5), "FIVE", false);
+        assertEquals("FIVE", segment.getEntry(5).getValue());
+        assertEquals(3, segment.size());
+        assertEquals(5, segment.getId(segment.getEntry(5)));
+        assertNull(segment.getId(segment.getEntry(null)));
+    }
+
+    @Test
+    public void testRemove() {
+        CacheSegment segment = segment(0);
+        segment.put("key", "value", false);
+        segment.put(5, "five", false);
+        assertEquals("value", segment.remove("key").getValue());
+        assertNull(segment.remove("key"));
+        assertEquals("five", segment.remove(Integer.valueOf(5)).getValue());
+        assertEquals(0, segment.size());
+        assertEquals(0, segment.getBytes());
+    }
+
+    @Test
+    public void testRemoveEntryOnlyIfStored() {
+        CacheSegment segment = segment(0);
+        CacheEntry old = segment.put(5, "old", false);
+        CacheEntry current = segment.put(5, "new", false);
+        assertFalse(segment.remove(old));
+        assertSame(current, segment.getEntry(5));
+        assertTrue(segment.remove(current));
+        assertNull(segment.getEntry(5));
+    }
+
+    @Test
+    public void testMaximumSize() {
+        CacheSegment segment = segment(100);
+        for (int id = 0; id < 1000; id++) {
+            segment.put(id, "value", false);
+        }
+        assertEquals(100, segment.size());
+        segment.setMaximumSize(10);
+        assertEquals(10, segment.size());
+        segment.setMaximumSize(0);
+        for (int id = 1000; id < 2000; id++) {
+            segment.put(id, "value", false);
+        }
+        assertEquals(1010, segment.size());
+    }
+
+    @Test
+    public void testClear() {
+        CacheSegment segment = segment(100);
+        segment.put("key", "value", false);
+        segment.put(5, "five", false);
+        assertTrue(segment.getBytes() > 0);
+        segment.clear();
+        assertEquals(0, segment.size());
+        assertEquals(0, segment.getBytes());
+        assertTrue(segment.entries().isEmpty());
+    }
+
+    @Test
+    public void testLoads() {
+        CacheSegment segment = segment(0);
+        CacheLoad first = new CacheLoad();
+        CacheLoad second = new CacheLoad();
+        assertNull(segment.startLoad(5, first));
+        assertSame(first, segment.startLoad(5, second));
+        // Only the registered load can be finished.
+        segment.finishLoad(5, second);
+        assertSame(first, segment.startLoad(5, second));
+        segment.finishLoad(5, first);
+        assertNull(segment.startLoad(5, second));
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import com.craftfire.bifrost.enums.CacheGroup;
+
+public class CacheTagIndexTest {
+    private static final CacheTag ALICE_POSTS = new CacheTag(CacheTag.Kind.USER_POSTS, "alice");
+    private static final CacheTag BOB_POSTS = new CacheTag(CacheTag.Kind.USER_POSTS, "bob");
+
+    @Test
+    public void testStoredEntriesAreTagged() {
+        CacheTagIndex index = new CacheTagIndex();
+        CacheSegment counts = new CacheSegment(CacheGroup.POST_COUNT, 0, index, new CacheBudget(0));
+        CacheSegment lasts = new CacheSegment(CacheGroup.POST_LAST_USER, 0, index, new CacheBudget(0));
+        counts.put("alice", 3, false);
+        lasts.put("alice", "post", false);
+        counts.put("bob", 1, false);
+        assertEquals(2, index.size());
+        // Invalidating a tag removes its entries from every segment, and only those.
+        assertEquals(2, index.invalidate(ALICE_POSTS));
+        assertNull(counts.getEntry("alice"));
+        assertNull(lasts.getEntry("alice"));
+        assertNotNull(counts.getEntry("bob"));
+        assertEquals(1, index.size());
+        assertEquals(0, index.invalidate(ALICE_POSTS));
+    }
+
+    @Test
+    public void testRemovedEntriesAreUntagged() {
+        CacheTagIndex index = new CacheTagIndex();
+        CacheSegment counts = new CacheSegment(CacheGroup.POST_COUNT, 0, index, new CacheBudget(0));
+        counts.put("alice", 3, false);
+        counts.put("bob", 1, false);
+        counts.remove("bob");
+        assertEquals(1, index.size());
+        // A replaced entry is untagged, the new one keeps the tag.
+        counts.put("alice", 4, false);
+        assertEquals(1, index.size());
+        assertEquals(0, index.invalidate(BOB_POSTS));
+        assertEquals(1, index.invalidate(ALICE_POSTS));
+        assertEquals(0, counts.size());
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void testTagAndUntag() {
+        CacheTagIndex index = new CacheTagIndex();
+        CacheSegment segment = new CacheSegment(CacheGroup.POST, 0, index, new CacheBudget(0));
+        CacheEntry entry = segment.put(5, "post", false);
+        index.tag(segment, entry, new CacheTag[] {ALICE_POSTS, BOB_POSTS});
+        assertEquals(2, index.size());
+        index.untag(entry);
+        assertEquals(0, index.size());
+        assertEquals(0, index.invalidate(ALICE_POSTS));
+        assertNotNull(segment.getEntry(5));
+        index.tag(segment, entry, new CacheTag[] {BOB_POSTS});
+        assertEquals(1, index.invalidate(BOB_POSTS));
+        assertNull(segment.getEntry(5));
+    }
+}
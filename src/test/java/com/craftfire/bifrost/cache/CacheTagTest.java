@@ -0,0 +1,106 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.craftfire.bifrost.enums.CacheGroup;
+
+public class CacheTagTest {
+    private static CacheTag tag(CacheTag.Kind kind, Object id) {
+        return new CacheTag(kind, id);
+    }
+
+    @Test
+    public void testKeyedByUsername() {
+        assertArrayEquals(new CacheTag[] {tag(CacheTag.Kind.USER, "alice")}, CacheTag.of(CacheGroup.USER_ID, "alice", 5));
+        assertArrayEquals(new CacheTag[] {tag(CacheTag.Kind.USER, "alice")},
+                          CacheTag.of(CacheGroup.IS_REGISTERED, "alice", true));
+        assertArrayEquals(new CacheTag[] {tag(CacheTag.Kind.USER_POSTS, "alice")},
+                          CacheTag.of(CacheGroup.POST_COUNT, "alice", 3));
+        assertArrayEquals(new CacheTag[] {tag(CacheTag.Kind.USER_THREADS, "alice")},
+                          CacheTag.of(CacheGroup.THREAD_COUNT, "alice", 1));
+        assertArrayEquals(new CacheTag[] {tag(CacheTag.Kind.PMS_SENT, "alice")},
+                          CacheTag.of(CacheGroup.PM_SENT_COUNT, "alice", 2));
+        assertArrayEquals(new CacheTag[] {tag(CacheTag.Kind.USER_GROUPS, "alice")},
+                          CacheTag.of(CacheGroup.USER_GROUP, "alice", Arrays.asList()));
+    }
+
+    @Test
+    public void testKeyedByParent() {
+        assertArrayEquals(new CacheTag[] {tag(CacheTag.Kind.THREAD_POSTS, 7)},
+                          CacheTag.of(CacheGroup.POST_COUNT_THREAD, 7, 12));
+        assertArrayEquals(new CacheTag[] {tag(CacheTag.Kind.BOARD_THREADS, 2)},
+                          CacheTag.of(CacheGroup.BOARD_THREADS, 2, Arrays.asList()));
+        assertArrayEquals(new CacheTag[] {tag(CacheTag.Kind.ARTICLE_COMMENTS, 4)},
+                          CacheTag.of(CacheGroup.COMMENT_COUNT, 4, 9));
+    }
+
+    @Test
+    public void testKeyedByValue() {
+        // The username of a user ID and the ID of a group name are tagged with the entity they name.
+        assertArrayEquals(new CacheTag[] {tag(CacheTag.Kind.USER, "alice")},
+                          CacheTag.of(CacheGroup.USER_USERNAME, 5, "alice"));
+        assertArrayEquals(new CacheTag[] {tag(CacheTag.Kind.GROUP, 3)}, CacheTag.of(CacheGroup.GROUP_ID, "admins", 3));
+        assertNull(CacheTag.of(CacheGroup.GROUP_ID, "nobody", 0));
+    }
+
+    @Test
+    public void testUntagged() {
+        // Entities are removed by their own ID, and totals don't depend on a single entity.
+        assertNull(CacheTag.of(CacheGroup.USER, 5, "user"));
+        assertNull(CacheTag.of(CacheGroup.POST, 5, "post"));
+        assertNull(CacheTag.of(CacheGroup.USER_COUNT, null, 10));
+        assertNull(CacheTag.of(CacheGroup.USER_ID, "alice", null));
+        // Without an ID, a keyed group has nothing to be tagged with.
+        assertNull(CacheTag.of(CacheGroup.POST_COUNT, null, 3));
+    }
+
+    @Test
+    public void testOfUsername() {
+        CacheTag[] tags = CacheTag.ofUsername("alice");
+        int usernameKinds = 0;
+        for (CacheTag.Kind kind : CacheTag.Kind.values()) {
+            if (kind.isUsername()) {
+                assertTrue(Arrays.asList(tags).contains(tag(kind, "alice")));
+                usernameKinds++;
+            }
+        }
+        assertEquals(usernameKinds, tags.length);
+        assertFalse(Arrays.asList(tags).contains(tag(CacheTag.Kind.POST, "alice")));
+    }
+
+    @Test
+    public void testEquality() {
+        assertEquals(tag(CacheTag.Kind.USER_POSTS, "alice"), tag(CacheTag.Kind.USER_POSTS, "alice"));
+        assertEquals(tag(CacheTag.Kind.USER_POSTS, "alice").hashCode(), tag(CacheTag.Kind.USER_POSTS, "alice").hashCode());
+        assertFalse(tag(CacheTag.Kind.USER_POSTS, "alice").equals(tag(CacheTag.Kind.USER_THREADS, "alice")));
+        assertFalse(tag(CacheTag.Kind.POST, 7).equals(tag(CacheTag.Kind.POST, 8)));
+        assertEquals("user_posts:alice", tag(CacheTag.Kind.USER_POSTS, "alice").toString());
+    }
+}
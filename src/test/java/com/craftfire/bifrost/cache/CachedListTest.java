@@ -0,0 +1,102 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class CachedListTest {
+    private static List<Integer> range(int from, int to) {
+        List<Integer> rows = new ArrayList<Integer>();
+        for (int i = from; i < to; i++) {
+            rows.add(i);
+        }
+        return rows;
+    }
+
+    @Test
+    public void testEmpty() {
+        CachedList<Integer> list = new CachedList<Integer>();
+        assertEquals(0, list.size());
+        assertFalse(list.isComplete());
+        assertFalse(list.covers(1));
+        assertFalse(list.covers(0));
+        assertTrue(list.prefix(10).isEmpty());
+    }
+
+    @Test
+    public void testAppendFullTail() {
+        CachedList<Integer> list = new CachedList<Integer>().append(range(0, 10), 10);
+        // A full tail may be followed by more rows.
+        assertFalse(list.isComplete());
+        assertTrue(list.covers(5));
+        assertTrue(list.covers(10));
+        assertFalse(list.covers(11));
+        assertFalse(list.covers(0));
+        assertEquals(range(0, 5), list.prefix(5));
+        assertEquals(range(0, 10), list.prefix(20));
+        list = list.append(range(10, 20), 10);
+        assertEquals(20, list.size());
+        assertEquals(range(0, 20), list.prefix(0));
+    }
+
+    @Test
+    public void testAppendShortTail() {
+        CachedList<Integer> list = new CachedList<Integer>().append(range(0, 10), 10).append(range(10, 13), 10);
+        assertTrue(list.isComplete());
+        assertTrue(list.covers(100));
+        assertTrue(list.covers(0));
+        assertEquals(range(0, 13), list.prefix(100));
+    }
+
+    @Test
+    public void testAppendAll() {
+        CachedList<Integer> list = new CachedList<Integer>().append(range(0, 3), 0);
+        assertTrue(list.isComplete());
+        assertEquals(range(0, 3), list.prefix(0));
+        // An empty or missing tail completes the list.
+        assertTrue(new CachedList<Integer>().append(range(0, 5), 5).append(null, 5).isComplete());
+        assertTrue(new CachedList<Integer>().append(new ArrayList<Integer>(), 5).isComplete());
+    }
+
+    @Test
+    public void testAppendKeepsOriginal() {
+        CachedList<Integer> list = new CachedList<Integer>().append(range(0, 5), 5);
+        CachedList<Integer> longer = list.append(range(5, 10), 5);
+        assertEquals(5, list.size());
+        assertEquals(10, longer.size());
+    }
+
+    @Test
+    public void testSkip() {
+        assertEquals(Arrays.asList(3, 4), CachedList.skip(range(0, 5), 3));
+        assertEquals(range(0, 5), CachedList.skip(range(0, 5), 0));
+        assertTrue(CachedList.skip(range(0, 5), 10).isEmpty());
+        assertNull(CachedList.skip(null, 3));
+    }
+}
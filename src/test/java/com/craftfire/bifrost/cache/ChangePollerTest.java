@@ -0,0 +1,265 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.craftfire.bifrost.classes.general.Script;
+import com.craftfire.bifrost.enums.Scripts;
+import com.craftfire.bifrost.sql.StubConnection;
+
+public class ChangePollerTest {
+    /**
+     * One table of rows with a mark and an ID, which answers the queries of
+     * {@link Script#getChangedRows(HighWaterMarks, String, String, String, String, String)}.
+     */
+    private static class LogTable implements StubConnection.Responder {
+        private final StubConnection connection = new StubConnection();
+        private final List<long[]> rows = new ArrayList<long[]>();
+        private final List<String> queries = new ArrayList<String>();
+        private long now = Long.MAX_VALUE;
+        private boolean broken;
+
+        LogTable() {
+            this.connection.setResponder(this);
+        }
+
+        private void add(long mark, long id) {
+            this.rows.add(new long[] {mark, id});
+        }
+
+        @Override
+        public ResultSet query(String sql, List<Object> parameters) throws SQLException {
+            if (this.broken) {
+                throw new SQLException("The connection is gone.");
+            }
+            this.queries.add(sql);
+            List<long[]> visible = new ArrayList<long[]>();
+            for (long[] row : this.rows) {
+                // Rows written in the current second are hidden by the "before" expression of time-based marks.
+                if (!sql.contains("< UNIX_TIMESTAMP()") || row[0] < this.now) {
+                    visible.add(row);
+                }
+            }
+            List<Object[]> result = new ArrayList<Object[]>();
+            if (sql.startsWith("SELECT MAX(`time`)")) {
+                Long max = null;
+                for (long[] row : visible) {
+                    max = (max == null || row[0] > max) ? row[0] : max;
+                }
+                result.add(new Object[] {max});
+                return StubConnection.result(new String[] {"max"}, result);
+            } else if (sql.startsWith("SELECT MAX(`id`)")) {
+                long mark = (Long) parameters.get(0);
+                Long max = null;
+                for (long[] row : visible) {
+                    if (row[0] == mark) {
+                        max = (max == null || row[1] > max) ? row[1] : max;
+                    }
+                }
+                result.add(new Object[] {max});
+                return StubConnection.result(new String[] {"max"}, result);
+            }
+            long mark = (Long) parameters.get(0), id = (Long) parameters.get(2);
+            Collections.sort(visible, new Comparator<long[]>() {
+                @Override
+                public int compare(long[] a, long[] b) {
+                    return (a[0] != b[0]) ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]);
+                }
+            });
+            for (long[] row : visible) {
+                if ((row[0] > mark || (row[0] == mark && row[1] > id)) && result.size() < Script.CHANGE_BATCH_SIZE) {
+                    result.add(new Object[] {row[0], row[1], row[1]});
+                }
+            }
+            return StubConnection.result(new String[] {"bifrost_mark", "bifrost_id", "id"}, result);
+        }
+    }
+
+    /**
+     * A script with one table, `log`, whose rows are marked by the time they have been written.
+     */
+    private static class StubScript extends Script {
+        private final List<Long> changed = new ArrayList<Long>();
+
+        StubScript(LogTable table) {
+            super(Scripts.SMF, "2.0", table.connection.getDataManager("smf_"));
+        }
+
+        @Override
+        public int pollChanges(HighWaterMarks marks) throws SQLException {
+            List<HashMap<String, Object>> rows = getChangedRows(marks, "log", "`time`", "`id`", "`id`",
+                                                                "UNIX_TIMESTAMP()");
+            for (HashMap<String, Object> row : rows) {
+                this.changed.add((Long) row.get("id"));
+            }
+            return rows.size();
+        }
+    }
+
+    @Test
+    public void testFirstPollRecordsMarks() throws Exception {
+        LogTable table = new LogTable();
+        table.add(10, 1);
+        table.add(10, 2);
+        table.add(5, 3);
+        StubScript script = new StubScript(table);
+        ChangePoller poller = new ChangePoller(script);
+        assertEquals(0, poller.poll());
+        assertTrue(script.changed.isEmpty());
+        HighWaterMarks marks = poller.getMarks();
+        assertTrue(marks.has("log.`time`"));
+        assertEquals(10, marks.get("log.`time`"));
+        assertEquals(2, marks.get("log.`time`.`id`"));
+
+        table.add(10, 4);
+        table.add(11, 5);
+        assertEquals(2, poller.poll());
+        assertEquals(Arrays.asList(4L, 5L), script.changed);
+        assertEquals(0, poller.poll());
+        assertEquals(3, poller.getPolls());
+        assertEquals(2, poller.getChanges());
+    }
+
+    @Test
+    public void testFirstPollOfEmptyTable() throws Exception {
+        LogTable table = new LogTable();
+        StubScript script = new StubScript(table);
+        ChangePoller poller = new ChangePoller(script);
+        assertEquals(0, poller.poll());
+        assertEquals(0, poller.getMarks().get("log.`time`"));
+        table.add(1, 1);
+        assertEquals(1, poller.poll());
+    }
+
+    @Test
+    public void testBatchesSplitRowsOfTheSameMark() throws Exception {
+        LogTable table = new LogTable();
+        StubScript script = new StubScript(table);
+        ChangePoller poller = new ChangePoller(script);
+        poller.poll();
+        int count = Script.CHANGE_BATCH_SIZE + 100;
+        for (int i = 1; i <= count; i++) {
+            table.add(20, i);
+        }
+        assertEquals(Script.CHANGE_BATCH_SIZE, poller.poll());
+        assertEquals(20, poller.getMarks().get("log.`time`"));
+        assertEquals(Script.CHANGE_BATCH_SIZE, poller.getMarks().get("log.`time`.`id`"));
+        assertEquals(100, poller.poll());
+        assertEquals(0, poller.poll());
+
+        // Every row has been returned once, none has been skipped between the batches.
+        Set<Long> ids = new HashSet<Long>(script.changed);
+        assertEquals(count, script.changed.size());
+        assertEquals(count, ids.size());
+    }
+
+    @Test
+    public void testRowsOfTheCurrentSecondWaitForTheNextPoll() throws Exception {
+        LogTable table = new LogTable();
+        table.now = 100;
+        table.add(99, 1);
+        table.add(100, 2);
+        StubScript script = new StubScript(table);
+        ChangePoller poller = new ChangePoller(script);
+        poller.poll();
+        // The row of the current second isn't part of the baseline.
+        assertEquals(99, poller.getMarks().get("log.`time`"));
+        for (String query : table.queries) {
+            assertTrue(query, query.contains("`time` < UNIX_TIMESTAMP()"));
+        }
+
+        table.add(100, 3);
+        assertEquals(0, poller.poll());
+        table.now = 101;
+        assertEquals(2, poller.poll());
+        assertEquals(Arrays.asList(2L, 3L), script.changed);
+    }
+
+    @Test
+    public void testClearedMarksAreRecordedAgain() throws Exception {
+        LogTable table = new LogTable();
+        table.add(1, 1);
+        StubScript script = new StubScript(table);
+        ChangePoller poller = new ChangePoller(script);
+        poller.poll();
+        table.add(2, 2);
+        poller.getMarks().clear();
+        assertFalse(poller.getMarks().has("log.`time`"));
+        assertTrue(poller.getMarks().toMap().isEmpty());
+        assertEquals(0, poller.poll());
+        assertEquals(2, poller.getMarks().get("log.`time`"));
+        assertEquals(2, poller.getMarks().toMap().size());
+    }
+
+    @Test
+    public void testFailedPoll() throws Exception {
+        LogTable table = new LogTable();
+        table.broken = true;
+        ChangePoller poller = new ChangePoller(new StubScript(table));
+        try {
+            poller.poll();
+            fail("The failure of the poll has been swallowed.");
+        } catch (SQLException e) {
+            assertSame(e, poller.getLastFailure());
+        }
+        assertEquals(1, poller.getPolls());
+        assertEquals(1, poller.getFailures());
+        assertFalse(poller.getMarks().has("log.`time`"));
+    }
+
+    @Test
+    public void testStart() throws Exception {
+        LogTable table = new LogTable();
+        ChangePoller poller = new ChangePoller(new StubScript(table));
+        poller.start(10, TimeUnit.MILLISECONDS);
+        try {
+            assertTrue(poller.isRunning());
+            assertEquals(10, poller.getInterval(TimeUnit.MILLISECONDS));
+            long end = System.currentTimeMillis() + 2000;
+            while (poller.getPolls() < 2 && System.currentTimeMillis() < end) {
+                Thread.sleep(5);
+            }
+            assertTrue(poller.getPolls() >= 2);
+        } finally {
+            poller.stop();
+        }
+        assertFalse(poller.isRunning());
+        assertEquals(0, poller.getInterval(TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class EvictionPolicyTest {
+    private final Map<Integer, CacheEntry> cached = new HashMap<Integer, CacheEntry>();
+
+    private void write(EvictionPolicy policy, int key) {
+        CacheEntry entry = new CacheEntry(key, "value", false);
+        evict(policy.recordWrite(entry, this.cached.put(key, entry)));
+    }
+
+    private void read(EvictionPolicy policy, int key) {
+        if (this.cached.containsKey(key)) {
+            policy.recordRead(this.cached.get(key));
+        } else {
+            write(policy, key);
+        }
+    }
+
+    private void evict(Iterable<EvictionPolicy.Node> evicted) {
+        for (EvictionPolicy.Node node : evicted) {
+            this.cached.remove(((CacheEntry) node).getIntKey());
+        }
+    }
+
+    @Test
+    public void testBounded() {
+        EvictionPolicy policy = new EvictionPolicy(50);
+        for (int i = 0; i < 1000; i++) {
+            write(policy, i);
+        }
+        assertEquals(50, policy.size());
+        assertEquals(50, this.cached.size());
+    }
+
+    @Test
+    public void testScanResistance() {
+        EvictionPolicy policy = new EvictionPolicy(100);
+        for (int i = 0; i < 100000; i++) {
+            read(policy, i % 50);
+            write(policy, 1000 + i);
+        }
+        for (int i = 0; i < 50; i++) {
+            assertTrue("Hot key " + i + " was evicted by the scan.", this.cached.containsKey(i));
+        }
+    }
+
+    @Test
+    public void testReplace() {
+        EvictionPolicy policy = new EvictionPolicy(10);
+        for (int i = 0; i < 10; i++) {
+            write(policy, i);
+            write(policy, i);
+        }
+        assertEquals(10, policy.size());
+        assertEquals(10, this.cached.size());
+    }
+
+    @Test
+    public void testShrink() {
+        EvictionPolicy policy = new EvictionPolicy(100);
+        for (int i = 0; i < 100; i++) {
+            write(policy, i);
+        }
+        evict(policy.setMaximumSize(10));
+        assertEquals(10, policy.size());
+        assertEquals(10, this.cached.size());
+        policy.clear();
+        assertEquals(0, policy.size());
+    }
+
+    @Test
+    public void testBufferedReads() {
+        EvictionPolicy policy = new EvictionPolicy(100);
+        for (int i = 0; i < 100; i++) {
+            write(policy, i);
+        }
+        // More reads than fit in the read buffer, the full buffer is drained by the reader.
+        for (int i = 0; i < 1000; i++) {
+            read(policy, 5);
+        }
+        for (int i = 1000; i < 1200; i++) {
+            write(policy, i);
+        }
+        assertTrue(this.cached.containsKey(5));
+        assertEquals(100, policy.size());
+    }
+}
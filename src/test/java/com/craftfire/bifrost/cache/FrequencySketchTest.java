@@ -0,0 +1,81 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FrequencySketchTest {
+    private static final int HOT = 42;
+
+    private FrequencySketch warm(int maximumSize) {
+        FrequencySketch sketch = new FrequencySketch(maximumSize);
+        for (int i = 0; i < 10; i++) {
+            sketch.increment(HOT);
+        }
+        for (int i = 1000; i < 1000 + maximumSize; i++) {
+            sketch.increment(i);
+        }
+        return sketch;
+    }
+
+    @Test
+    public void testFrequency() {
+        FrequencySketch sketch = warm(64);
+        assertTrue(sketch.frequency(HOT) >= 10);
+        assertEquals(0, sketch.frequency(-1));
+    }
+
+    @Test
+    public void testGrowKeepsCounts() {
+        FrequencySketch sketch = warm(64);
+        int before = sketch.frequency(HOT);
+        for (int capacity = 128; capacity <= 4096; capacity *= 2) {
+            sketch.ensureCapacity(capacity);
+            assertEquals(before, sketch.frequency(HOT));
+        }
+        sketch.increment(HOT);
+        assertEquals(Math.min(before + 1, 15), sketch.frequency(HOT));
+    }
+
+    @Test
+    public void testShrinkKeepsCounts() {
+        FrequencySketch sketch = warm(1024);
+        int before = sketch.frequency(HOT);
+        sketch.ensureCapacity(256);
+        assertTrue("The hot key lost its count when the sketch shrank.", sketch.frequency(HOT) >= before);
+    }
+
+    @Test
+    public void testAging() {
+        FrequencySketch sketch = new FrequencySketch(8);
+        for (int i = 0; i < 15; i++) {
+            sketch.increment(HOT);
+        }
+        assertEquals(15, sketch.frequency(HOT));
+        // Ten increments per entry halve all counters.
+        for (int i = 1000; i < 1080; i++) {
+            sketch.increment(i);
+        }
+        assertTrue(sketch.frequency(HOT) < 15);
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.craftfire.bifrost.enums.CacheGroup;
+
+public class IdentityScopeTest {
+    private final ThreadLocal<IdentityScope> binding = new ThreadLocal<IdentityScope>();
+
+    @Test
+    public void testPut() {
+        IdentityScope scope = new IdentityScope(this.binding);
+        assertSame(scope, this.binding.get());
+        Object user = new Object();
+        scope.put(CacheGroup.USER, 1, user);
+        scope.put(CacheGroup.USER, 1, user);
+        scope.put(CacheGroup.USER, 2, null);
+        assertSame(user, scope.get(CacheGroup.USER, 1));
+        assertNull(scope.get(CacheGroup.USER, 2));
+        assertNull(scope.get(CacheGroup.POST, 1));
+        assertEquals(1, scope.size());
+
+        scope.remove(CacheGroup.USER, 1);
+        assertNull(scope.get(CacheGroup.USER, 1));
+        assertEquals(0, scope.size());
+        scope.close();
+    }
+
+    @Test
+    public void testNested() {
+        IdentityScope outer = new IdentityScope(this.binding);
+        Object user = new Object();
+        outer.put(CacheGroup.USER, 1, user);
+        IdentityScope inner = new IdentityScope(this.binding);
+        assertSame(outer, inner.getParent());
+        assertSame(inner, this.binding.get());
+        assertSame(user, inner.get(CacheGroup.USER, 1));
+        Object post = new Object();
+        inner.put(CacheGroup.POST, 1, post);
+        assertNull(outer.get(CacheGroup.POST, 1));
+        assertEquals(1, inner.size());
+
+        // Removing from the inner scope also forgets the entity of the scope around it.
+        inner.remove(CacheGroup.USER, 1);
+        assertNull(outer.get(CacheGroup.USER, 1));
+
+        inner.close();
+        assertSame(outer, this.binding.get());
+        outer.close();
+        assertNull(this.binding.get());
+    }
+
+    @Test
+    public void testClose() {
+        IdentityScope scope = new IdentityScope(this.binding);
+        scope.put(CacheGroup.USER, 1, new Object());
+        assertFalse(scope.isClosed());
+        scope.close();
+        assertTrue(scope.isClosed());
+        assertEquals(0, scope.size());
+        assertNull(this.binding.get());
+
+        scope.put(CacheGroup.USER, 1, new Object());
+        assertNull(scope.get(CacheGroup.USER, 1));
+        scope.close();
+        assertNull(this.binding.get());
+    }
+
+    @Test
+    public void testCloseOutOfOrder() {
+        IdentityScope outer = new IdentityScope(this.binding);
+        IdentityScope inner = new IdentityScope(this.binding);
+        try {
+            outer.close();
+            fail("The outer scope has been closed while the inner scope was open.");
+        } catch (IllegalStateException expected) {
+        }
+        assertFalse(outer.isClosed());
+        inner.close();
+        outer.close();
+        assertNull(this.binding.get());
+    }
+
+    @Test
+    public void testCloseOtherThread() throws InterruptedException {
+        final IdentityScope scope = new IdentityScope(this.binding);
+        final AtomicReference<Throwable> thrown = new AtomicReference<Throwable>();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    scope.close();
+                } catch (Throwable t) {
+                    thrown.set(t);
+                }
+            }
+        });
+        thread.start();
+        thread.join();
+        assertTrue(thrown.get() instanceof IllegalStateException);
+        assertFalse(scope.isClosed());
+        scope.close();
+    }
+}
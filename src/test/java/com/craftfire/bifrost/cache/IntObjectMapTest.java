@@ -0,0 +1,138 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class IntObjectMapTest {
+    @Test
+    public void testPutGetRemove() {
+        IntObjectMap<String> map = new IntObjectMap<String>();
+        assertTrue(map.isEmpty());
+        assertNull(map.put(1, "one"));
+        assertNull(map.put(0, "zero"));
+        assertNull(map.put(-1, "minus one"));
+        assertNull(map.put(Integer.MIN_VALUE, "min"));
+        assertEquals("one", map.put(1, "uno"));
+        assertEquals(4, map.size());
+        assertEquals("uno", map.get(1));
+        assertEquals("zero", map.get(0));
+        assertEquals("min", map.get(Integer.MIN_VALUE));
+        assertNull(map.get(2));
+        assertEquals("minus one", map.remove(-1));
+        assertNull(map.remove(-1));
+        assertFalse(map.containsKey(-1));
+        assertEquals(3, map.size());
+    }
+
+    @Test
+    public void testRemoveByValue() {
+        IntObjectMap<String> map = new IntObjectMap<String>();
+        String value = new String("value");
+        map.put(7, value);
+        // Values are compared by identity.
+        assertFalse(map.remove(7, new String("value")));
+        assertTrue(map.containsKey(7));
+        assertTrue(map.remove(7, value));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void testResize() {
+        IntObjectMap<Integer> map = new IntObjectMap<Integer>(4);
+        for (int key = 0; key < 10000; key++) {
+            map.put(key * 31, key);
+        }
+        assertEquals(10000, map.size());
+        for (int key = 0; key < 10000; key++) {
+            assertEquals(key, map.get(key * 31).intValue());
+        }
+        Set<Integer> keys = new HashSet<Integer>();
+        for (int key : map.keys()) {
+            keys.add(key);
+        }
+        assertEquals(10000, keys.size());
+        assertEquals(10000, map.values().size());
+    }
+
+    @Test
+    public void testRemoveKeepsProbeSequence() {
+        IntObjectMap<Integer> map = new IntObjectMap<Integer>(16);
+        // Remove from the middle of collision chains, the keys after the removed ones have to stay reachable.
+        for (int key = 0; key < 18; key++) {
+            map.put(key, key);
+        }
+        for (int key = 0; key < 18; key += 3) {
+            map.remove(key);
+        }
+        for (int key = 0; key < 18; key++) {
+            if (key % 3 == 0) {
+                assertFalse(map.containsKey(key));
+            } else {
+                assertEquals(key, map.get(key).intValue());
+            }
+        }
+        assertEquals(12, map.size());
+    }
+
+    @Test
+    public void testMatchesHashMap() {
+        IntObjectMap<Integer> map = new IntObjectMap<Integer>();
+        Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            // A small key range makes puts and removes of the same keys collide often.
+            int key = random.nextInt(512) - 256;
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                assertEquals(expected.put(key, i), map.put(key, i));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (int key = -256; key < 256; key++) {
+            assertEquals(expected.get(key), map.get(key));
+        }
+    }
+
+    @Test
+    public void testClear() {
+        IntObjectMap<String> map = new IntObjectMap<String>();
+        for (int key = 0; key < 100; key++) {
+            map.put(key, "value");
+        }
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(1));
+        map.put(1, "again");
+        assertEquals("again", map.get(1));
+    }
+}
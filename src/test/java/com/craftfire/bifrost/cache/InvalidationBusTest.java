@@ -0,0 +1,226 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.craftfire.bifrost.classes.general.Cache;
+import com.craftfire.bifrost.enums.CacheGroup;
+
+public class InvalidationBusTest {
+    private static final String CHANNEL = "test";
+
+    private static class RecordingTransport implements InvalidationTransport {
+        private final List<byte[]> messages = new ArrayList<byte[]>();
+        private final int maximumMessageSize;
+
+        RecordingTransport(int maximumMessageSize) {
+            this.maximumMessageSize = maximumMessageSize;
+        }
+
+        @Override
+        public void open(Receiver receiver) {
+        }
+
+        @Override
+        public void send(byte[] message) {
+            assertTrue("The message is larger than the transport allows.", message.length <= this.maximumMessageSize);
+            this.messages.add(message);
+        }
+
+        @Override
+        public int getMaximumMessageSize() {
+            return this.maximumMessageSize;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private InvalidationBus start(Cache cache, String channel, InvalidationTransport transport) throws IOException {
+        InvalidationBus bus = new InvalidationBus(cache, channel, transport);
+        // The tests flush by hand.
+        bus.setFlushDelay(60000);
+        bus.start();
+        return bus;
+    }
+
+    private static int count(byte[] message) {
+        ByteBuffer in = ByteBuffer.wrap(message);
+        in.position(2 + 1 + 8);
+        in.position(in.position() + 4 + in.getInt());
+        return in.getShort() & 0xFFFF;
+    }
+
+    @Test
+    public void testRemoveReachesOtherNode() throws IOException {
+        LoopbackTransport.Hub hub = new LoopbackTransport.Hub();
+        Cache local = new Cache();
+        Cache remote = new Cache();
+        InvalidationBus localBus = start(local, CHANNEL, new LoopbackTransport(hub));
+        InvalidationBus remoteBus = start(remote, CHANNEL, new LoopbackTransport(hub));
+        remote.put(CacheGroup.USER_ID, "alice", 1);
+        remote.put(CacheGroup.USER_ID, "bob", 2);
+        local.remove(CacheGroup.USER_ID, "alice");
+        localBus.flush();
+        assertFalse(remote.contains(CacheGroup.USER_ID, "alice"));
+        assertTrue(remote.contains(CacheGroup.USER_ID, "bob"));
+        assertEquals(1, localBus.getSent());
+        assertEquals(1, remoteBus.getReceived());
+        // Applied invalidations are not sent on.
+        remoteBus.flush();
+        assertEquals(0, remoteBus.getSent());
+        localBus.close();
+        remoteBus.close();
+    }
+
+    @Test
+    public void testOwnMessagesAreIgnored() throws IOException {
+        RecordingTransport transport = new RecordingTransport(LoopbackTransport.MAXIMUM_MESSAGE_SIZE);
+        Cache cache = new Cache();
+        InvalidationBus bus = start(cache, CHANNEL, transport);
+        cache.remove(CacheGroup.USER_ID, "alice");
+        bus.flush();
+        assertEquals(1, transport.messages.size());
+        cache.put(CacheGroup.USER_ID, "alice", 1);
+        bus.receive(transport.messages.get(0));
+        assertTrue(cache.contains(CacheGroup.USER_ID, "alice"));
+        assertEquals(0, bus.getReceived());
+        bus.close();
+    }
+
+    @Test
+    public void testOtherChannelsAreIgnored() throws IOException {
+        RecordingTransport transport = new RecordingTransport(LoopbackTransport.MAXIMUM_MESSAGE_SIZE);
+        Cache local = new Cache();
+        Cache remote = new Cache();
+        InvalidationBus localBus = start(local, CHANNEL, transport);
+        RecordingTransport other = new RecordingTransport(LoopbackTransport.MAXIMUM_MESSAGE_SIZE);
+        InvalidationBus remoteBus = start(remote, "other", other);
+        remote.put(CacheGroup.USER_ID, "alice", 1);
+        local.remove(CacheGroup.USER_ID, "alice");
+        localBus.flush();
+        remoteBus.receive(transport.messages.get(0));
+        assertTrue(remote.contains(CacheGroup.USER_ID, "alice"));
+        assertEquals(0, remoteBus.getReceived());
+        localBus.close();
+        remoteBus.close();
+    }
+
+    @Test
+    public void testBatchIsSplitBySize() throws IOException {
+        RecordingTransport transport = new RecordingTransport(256);
+        Cache local = new Cache();
+        Cache remote = new Cache();
+        InvalidationBus localBus = start(local, CHANNEL, transport);
+        InvalidationBus remoteBus = start(remote, CHANNEL, new RecordingTransport(256));
+        for (int id = 1; id <= 200; id++) {
+            remote.put(CacheGroup.USER_ID, "user" + id, id);
+            local.remove(CacheGroup.USER_ID, "user" + id);
+        }
+        localBus.flush();
+        assertTrue(transport.messages.size() > 1);
+        int records = 0;
+        for (byte[] message : transport.messages) {
+            records += count(message);
+            remoteBus.receive(message);
+        }
+        assertEquals(200, records);
+        for (int id = 1; id <= 200; id++) {
+            assertFalse(remote.contains(CacheGroup.USER_ID, "user" + id));
+        }
+        localBus.close();
+        remoteBus.close();
+    }
+
+    @Test
+    public void testBatchIsSplitByCount() throws IOException {
+        RecordingTransport transport = new RecordingTransport(Integer.MAX_VALUE);
+        Cache cache = new Cache();
+        InvalidationBus bus = start(cache, CHANNEL, transport);
+        for (int id = 1; id <= 0xFFFF + 10; id++) {
+            cache.remove(CacheGroup.POST, id);
+        }
+        bus.flush();
+        assertEquals(2, transport.messages.size());
+        assertEquals(0xFFFF, count(transport.messages.get(0)));
+        assertEquals(10, count(transport.messages.get(1)));
+        bus.close();
+    }
+
+    @Test
+    public void testOversizedRecordClearsGroup() throws IOException {
+        RecordingTransport transport = new RecordingTransport(128);
+        Cache local = new Cache();
+        Cache remote = new Cache();
+        InvalidationBus localBus = start(local, CHANNEL, transport);
+        InvalidationBus remoteBus = start(remote, CHANNEL, new RecordingTransport(128));
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            name.append('x');
+        }
+        remote.put(CacheGroup.USER_ID, "alice", 1);
+        remote.put(CacheGroup.POST, 1, "post");
+        local.remove(CacheGroup.USER_ID, name.toString());
+        localBus.flush();
+        assertEquals(1, transport.messages.size());
+        remoteBus.receive(transport.messages.get(0));
+        assertFalse(remote.contains(CacheGroup.USER_ID, "alice"));
+        assertTrue(remote.containsInt(CacheGroup.POST, 1));
+        localBus.close();
+        remoteBus.close();
+    }
+
+    @Test
+    public void testBrokenMessageIsNotApplied() throws IOException {
+        Cache cache = new Cache();
+        InvalidationBus bus = start(cache, CHANNEL, new RecordingTransport(LoopbackTransport.MAXIMUM_MESSAGE_SIZE));
+        cache.put(CacheGroup.USER_ID, "alice", 1);
+        ByteArrayOutputStream message = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(message);
+        out.writeShort(0x4249);
+        out.writeByte(1);
+        out.writeLong(7);
+        SnapshotCodec.writeString(out, CHANNEL);
+        out.writeShort(2);
+        // A valid clear, followed by the clear of a group that doesn't exist.
+        out.writeByte(2);
+        out.writeShort(CacheGroup.USER_ID.ordinal());
+        out.writeByte(2);
+        out.writeShort(0xFFFF);
+        out.flush();
+        bus.receive(message.toByteArray());
+        assertTrue(cache.contains(CacheGroup.USER_ID, "alice"));
+        assertEquals(0, bus.getReceived());
+        bus.close();
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.craftfire.bifrost.enums.CacheGroup;
+
+public class OffHeapStoreTest {
+    private static String noise(Random random, int length) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            // Random characters don't compress, so the size of the stored entries is predictable.
+            text.append((char) (0x100 + random.nextInt(0x700)));
+        }
+        return text.toString();
+    }
+
+    @Test
+    public void testRoundTrip() {
+        OffHeapStore store = new OffHeapStore(null, OffHeapStore.SLAB_SIZE);
+        CacheEntry entry = new CacheEntry(7, "the body of a post", true);
+        entry.setMetadata("bifrost-cache.old-username", "alice");
+        assertTrue(store.store(CacheGroup.POST, 7, entry));
+        assertTrue(store.contains(CacheGroup.POST, 7));
+        assertFalse(store.contains(CacheGroup.THREAD, 7));
+        assertEquals(1, store.size());
+        OffHeapStore.Stored stored = store.take(CacheGroup.POST, 7);
+        assertEquals("the body of a post", stored.getValue());
+        assertTrue(stored.isMetadatable());
+        assertEquals("alice", stored.getMetadata().get("bifrost-cache.old-username"));
+        // Taking an entry removes it from the store.
+        assertNull(store.take(CacheGroup.POST, 7));
+        assertEquals(0, store.getBytes());
+        assertEquals(1, store.getDemotions());
+        assertEquals(1, store.getPromotions());
+    }
+
+    @Test
+    public void testReplaceAndRemove() {
+        OffHeapStore store = new OffHeapStore(null, OffHeapStore.SLAB_SIZE);
+        store.store(CacheGroup.POST, 1, new CacheEntry(1, "first", false));
+        store.store(CacheGroup.POST, 1, new CacheEntry(1, "second", false));
+        store.store(CacheGroup.POST, 2, new CacheEntry(2, "other", false));
+        store.store(CacheGroup.THREAD, 1, new CacheEntry(1, "thread", false));
+        assertEquals(3, store.size());
+        store.remove(CacheGroup.POST, 2);
+        assertFalse(store.contains(CacheGroup.POST, 2));
+        store.clear(CacheGroup.THREAD);
+        assertFalse(store.contains(CacheGroup.THREAD, 1));
+        assertEquals("second", store.take(CacheGroup.POST, 1).getValue());
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void testUnsupportedAndTooLarge() {
+        OffHeapStore store = new OffHeapStore(null, 4096);
+        assertFalse(store.store(CacheGroup.POST, 1, new CacheEntry(1, new Object(), false)));
+        assertFalse(store.store(CacheGroup.POST, 2, new CacheEntry(2, null, false)));
+        assertFalse(store.store(CacheGroup.POST, 3, new CacheEntry(3, noise(new Random(1), 8192), false)));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void testSlabReuseDropsOldest() {
+        OffHeapStore store = new OffHeapStore(null, 2 * OffHeapStore.SLAB_SIZE);
+        Random random = new Random(42);
+        int id = 0;
+        while (store.getDrops() == 0) {
+            assertTrue(store.store(CacheGroup.POST, id, new CacheEntry(id, noise(random, 50000), false)));
+            id++;
+            assertTrue(store.getBytes() <= store.getCapacity());
+        }
+        // The first slab has been reused, so its entries are gone and the newest ones are still there.
+        assertFalse(store.contains(CacheGroup.POST, 0));
+        assertTrue(store.contains(CacheGroup.POST, id - 1));
+        assertEquals(id - store.getDrops(), store.size());
+        assertEquals(id, store.getDemotions());
+        // The slabs keep being reused in turn.
+        long drops = store.getDrops();
+        for (int i = 0; i < 100; i++) {
+            store.store(CacheGroup.POST, id + i, new CacheEntry(id + i, noise(random, 50000), false));
+        }
+        assertTrue(store.getDrops() > drops);
+        assertTrue(store.getBytes() <= store.getCapacity());
+    }
+}
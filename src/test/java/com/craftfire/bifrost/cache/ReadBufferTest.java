@@ -0,0 +1,62 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ReadBufferTest {
+    @Test
+    public void testDrain() {
+        ReadBuffer<Integer> buffer = new ReadBuffer<Integer>();
+        int offered = 0;
+        while (buffer.offer(offered)) {
+            offered++;
+        }
+        assertTrue(offered > 0);
+        List<Integer> drained = new ArrayList<Integer>();
+        buffer.drainTo(drained);
+        assertEquals(offered, drained.size());
+        for (int i = 0; i < offered; i++) {
+            assertEquals(Integer.valueOf(i), drained.get(i));
+        }
+        drained.clear();
+        buffer.drainTo(drained);
+        assertTrue(drained.isEmpty());
+        assertTrue(buffer.offer(offered));
+        buffer.drainTo(drained);
+        assertEquals(Integer.valueOf(offered), drained.get(0));
+    }
+
+    @Test
+    public void testFull() {
+        ReadBuffer<String> buffer = new ReadBuffer<String>();
+        for (int i = 0; i < 16; i++) {
+            assertTrue(buffer.offer("read"));
+        }
+        assertFalse(buffer.offer("read"));
+    }
+}
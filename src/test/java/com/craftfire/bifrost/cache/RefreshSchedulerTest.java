@@ -0,0 +1,138 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.SQLException;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.craftfire.bifrost.classes.general.Cache;
+import com.craftfire.bifrost.enums.CacheGroup;
+import com.craftfire.bifrost.exceptions.ScriptException;
+
+public class RefreshSchedulerTest {
+    private final AtomicInteger loads = new AtomicInteger();
+    private final CacheLoader<Integer> loader = new CacheLoader<Integer>() {
+        @Override
+        public Integer load(Object id) throws SQLException, ScriptException {
+            return RefreshSchedulerTest.this.loads.incrementAndGet();
+        }
+    };
+    private Cache cache;
+    private RefreshScheduler scheduler;
+
+    @Before
+    public void setUp() throws SQLException, ScriptException {
+        this.cache = new Cache();
+        this.cache.setLoader(CacheGroup.USER_COUNT, this.loader);
+        this.cache.get(CacheGroup.USER_COUNT, 1, this.loader);
+        this.scheduler = new RefreshScheduler(this.cache, "RefreshSchedulerTest");
+    }
+
+    @After
+    public void tearDown() {
+        this.scheduler.shutdown();
+    }
+
+    private void read(long millis) throws Exception {
+        long end = System.currentTimeMillis() + millis;
+        while (System.currentTimeMillis() < end) {
+            this.cache.get(CacheGroup.USER_COUNT, 1, this.loader);
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void testSchedule() {
+        this.scheduler.schedule(CacheGroup.USER_COUNT, 2, TimeUnit.SECONDS);
+        this.scheduler.schedule(CacheGroup.POST_COUNT_TOTAL, 1, TimeUnit.MINUTES, 0);
+        assertEquals(EnumSet.of(CacheGroup.USER_COUNT, CacheGroup.POST_COUNT_TOTAL), this.scheduler.getGroups());
+        assertEquals(2000, this.scheduler.getInterval(CacheGroup.USER_COUNT, TimeUnit.MILLISECONDS));
+        assertEquals(0, this.scheduler.getInterval(CacheGroup.THREAD_COUNT_TOTAL, TimeUnit.MILLISECONDS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidJitter() {
+        this.scheduler.schedule(CacheGroup.USER_COUNT, 1, TimeUnit.SECONDS, 1);
+    }
+
+    @Test
+    public void testRefresh() throws Exception {
+        this.scheduler.schedule(CacheGroup.USER_COUNT, 20, TimeUnit.MILLISECONDS, 0);
+        read(300);
+        assertTrue(this.loads.get() > 2);
+    }
+
+    @Test
+    public void testUnreadNotRefreshed() throws Exception {
+        this.scheduler.schedule(CacheGroup.USER_COUNT, 10, TimeUnit.MILLISECONDS, 0);
+        Thread.sleep(200);
+        assertEquals(1, this.loads.get());
+    }
+
+    @Test
+    public void testReschedule() throws Exception {
+        this.scheduler.schedule(CacheGroup.USER_COUNT, 1, TimeUnit.HOURS);
+        this.scheduler.schedule(CacheGroup.USER_COUNT, 20, TimeUnit.MILLISECONDS, 0);
+        assertEquals(20, this.scheduler.getInterval(CacheGroup.USER_COUNT, TimeUnit.MILLISECONDS));
+        assertEquals(EnumSet.of(CacheGroup.USER_COUNT), this.scheduler.getGroups());
+        read(300);
+        assertTrue(this.loads.get() > 2);
+
+        // The replaced task stops at its next run, a slower schedule refreshes less often.
+        this.scheduler.schedule(CacheGroup.USER_COUNT, 1, TimeUnit.HOURS);
+        Thread.sleep(50);
+        int loaded = this.loads.get();
+        read(200);
+        assertEquals(loaded, this.loads.get());
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        this.scheduler.schedule(CacheGroup.USER_COUNT, 20, TimeUnit.MILLISECONDS, 0);
+        this.scheduler.cancel(CacheGroup.USER_COUNT);
+        assertTrue(this.scheduler.getGroups().isEmpty());
+        assertEquals(0, this.scheduler.getInterval(CacheGroup.USER_COUNT, TimeUnit.MILLISECONDS));
+        read(200);
+        assertEquals(1, this.loads.get());
+    }
+
+    @Test
+    public void testShutdown() throws Exception {
+        this.scheduler.schedule(CacheGroup.USER_COUNT, 20, TimeUnit.MILLISECONDS, 0);
+        this.scheduler.shutdown();
+        assertTrue(this.scheduler.getGroups().isEmpty());
+        read(100);
+        assertEquals(1, this.loads.get());
+
+        // A group that is scheduled after the shutdown starts a new thread.
+        this.scheduler.schedule(CacheGroup.USER_COUNT, 20, TimeUnit.MILLISECONDS, 0);
+        read(300);
+        assertTrue(this.loads.get() > 2);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+public class SnapshotCodecTest {
+    private static ByteBuffer write(Object... objects) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (Object object : objects) {
+            assertTrue(SnapshotCodec.isSupported(object));
+            SnapshotCodec.write(out, object);
+        }
+        out.flush();
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Date date = new Date(1234567890123L);
+        List<Object> list = new ArrayList<Object>(Arrays.<Object>asList(1, "two", null, Arrays.asList(3L, false)));
+        ByteBuffer in = write(null, 42, -7L, true, "caf\u00e9 \u2603", "", date, list);
+        assertNull(SnapshotCodec.read(in, null));
+        assertEquals(42, SnapshotCodec.read(in, null));
+        assertEquals(-7L, SnapshotCodec.read(in, null));
+        assertEquals(true, SnapshotCodec.read(in, null));
+        assertEquals("caf\u00e9 \u2603", SnapshotCodec.read(in, null));
+        assertEquals("", SnapshotCodec.read(in, null));
+        assertEquals(date, SnapshotCodec.read(in, null));
+        assertEquals(list, SnapshotCodec.read(in, null));
+        assertFalse(in.hasRemaining());
+    }
+
+    @Test
+    public void testNullString() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        SnapshotCodec.writeString(out, null);
+        out.flush();
+        assertNull(SnapshotCodec.readString(ByteBuffer.wrap(bytes.toByteArray())));
+    }
+
+    @Test
+    public void testUnsupported() throws IOException {
+        assertFalse(SnapshotCodec.isSupported(new Object()));
+        assertFalse(SnapshotCodec.isSupported(Arrays.asList(1, new Object())));
+        try {
+            SnapshotCodec.write(new DataOutputStream(new ByteArrayOutputStream()), new Object());
+            fail("An unsupported object has been written.");
+        } catch (IOException expected) {
+            // The object can't be written.
+        }
+    }
+
+    @Test
+    public void testBrokenInput() {
+        try {
+            SnapshotCodec.read(ByteBuffer.wrap(new byte[] {99}), null);
+            fail("An unknown type has been read.");
+        } catch (IOException expected) {
+            // The type is unknown.
+        }
+        try {
+            // A string that claims to be longer than the buffer.
+            SnapshotCodec.readString(ByteBuffer.wrap(new byte[] {0, 0, 1, 0, 'a'}));
+            fail("A truncated string has been read.");
+        } catch (IOException expected) {
+            // The length is invalid.
+        }
+    }
+}
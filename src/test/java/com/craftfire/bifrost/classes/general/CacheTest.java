@@ -0,0 +1,314 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.classes.general;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.craftfire.bifrost.cache.CacheExpiry;
+import com.craftfire.bifrost.cache.CacheLoader;
+import com.craftfire.bifrost.cache.CacheStats;
+import com.craftfire.bifrost.enums.CacheGroup;
+import com.craftfire.bifrost.exceptions.ScriptException;
+
+public class CacheTest {
+    private static final int THREADS = 8;
+
+    private static class CountingLoader implements CacheLoader<String> {
+        private final AtomicInteger loads = new AtomicInteger();
+        private final long delay;
+
+        CountingLoader(long delay) {
+            this.delay = delay;
+        }
+
+        @Override
+        public String load(Object id) throws SQLException, ScriptException {
+            int load = this.loads.incrementAndGet();
+            try {
+                Thread.sleep(this.delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return id + "#" + load;
+        }
+    }
+
+    private static List<Future<String>> getConcurrently(final Cache cache, final CacheGroup group, final Object id,
+                                                        final CacheLoader<String> loader) {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<String>> results = new ArrayList<Future<String>>();
+        for (int i = 0; i < THREADS; i++) {
+            results.add(executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    start.await();
+                    return cache.get(group, id, loader);
+                }
+            }));
+        }
+        start.countDown();
+        executor.shutdown();
+        return results;
+    }
+
+    @Test
+    public void testSingleFlightLoad() throws Exception {
+        Cache cache = new Cache();
+        CountingLoader loader = new CountingLoader(100);
+        for (Future<String> result : getConcurrently(cache, CacheGroup.USER_ID, "alice", loader)) {
+            assertEquals("alice#1", result.get());
+        }
+        assertEquals(1, loader.loads.get());
+        assertEquals("alice#1", cache.get(CacheGroup.USER_ID, "alice"));
+    }
+
+    @Test
+    public void testSingleFlightFailure() throws Exception {
+        Cache cache = new Cache();
+        final AtomicInteger loads = new AtomicInteger();
+        CacheLoader<String> loader = new CacheLoader<String>() {
+            @Override
+            public String load(Object id) throws SQLException, ScriptException {
+                loads.incrementAndGet();
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new SQLException("broken");
+            }
+        };
+        int failures = 0;
+        for (Future<String> result : getConcurrently(cache, CacheGroup.USER_ID, "alice", loader)) {
+            try {
+                result.get();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof SQLException);
+                failures++;
+            }
+        }
+        assertEquals(THREADS, failures);
+        assertTrue("Every caller loaded the object itself.", loads.get() < THREADS);
+        assertFalse(cache.contains(CacheGroup.USER_ID, "alice"));
+    }
+
+    @Test
+    public void testExpireAfterWrite() throws Exception {
+        Cache cache = new Cache();
+        cache.setExpiry(CacheGroup.USER_ID, new CacheExpiry(50, 0, 0, TimeUnit.MILLISECONDS));
+        CountingLoader loader = new CountingLoader(0);
+        assertEquals("alice#1", cache.get(CacheGroup.USER_ID, "alice", loader));
+        assertEquals("alice#1", cache.get(CacheGroup.USER_ID, "alice", loader));
+        Thread.sleep(100);
+        assertFalse(cache.contains(CacheGroup.USER_ID, "alice"));
+        assertEquals("alice#2", cache.get(CacheGroup.USER_ID, "alice", loader));
+    }
+
+    @Test
+    public void testStaleWhileRevalidate() throws Exception {
+        Cache cache = new Cache();
+        cache.setExpiry(CacheGroup.USER_ID, new CacheExpiry(50, 0, 10000, TimeUnit.MILLISECONDS));
+        CountingLoader loader = new CountingLoader(0);
+        assertEquals("alice#1", cache.get(CacheGroup.USER_ID, "alice", loader));
+        Thread.sleep(100);
+        // The stale object is returned right away, and refreshed in the background.
+        assertEquals("alice#1", cache.get(CacheGroup.USER_ID, "alice", loader));
+        long deadline = System.currentTimeMillis() + 5000;
+        // Reading without a loader would drop the stale object, so the entry is checked directly.
+        while (!"alice#2".equals(cache.getSegment(CacheGroup.USER_ID).getEntry("alice").getValue())
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals("alice#2", cache.get(CacheGroup.USER_ID, "alice", loader));
+        assertEquals(2, loader.loads.get());
+        cache.shutdown();
+    }
+
+    @Test
+    public void testNegativeTier() throws Exception {
+        Cache cache = new Cache();
+        cache.setNegativeExpiry(CacheGroup.USER_ID, new CacheExpiry(50, 0, 0, TimeUnit.MILLISECONDS));
+        final AtomicInteger loads = new AtomicInteger();
+        CacheLoader<Integer> loader = new CacheLoader<Integer>() {
+            @Override
+            public Integer load(Object id) {
+                loads.incrementAndGet();
+                return 0;
+            }
+        };
+        assertEquals(0, cache.get(CacheGroup.USER_ID, "nobody", loader, 0).intValue());
+        assertEquals(0, cache.get(CacheGroup.USER_ID, "nobody", loader, 0).intValue());
+        assertEquals(1, loads.get());
+        // "Not found" results are kept apart from the objects of the group.
+        assertFalse(cache.contains(CacheGroup.USER_ID, "nobody"));
+        Thread.sleep(100);
+        assertEquals(0, cache.get(CacheGroup.USER_ID, "nobody", loader, 0).intValue());
+        assertEquals(2, loads.get());
+        // Removing the object removes its "not found" result as well.
+        cache.remove(CacheGroup.USER_ID, "nobody");
+        assertEquals(0, cache.get(CacheGroup.USER_ID, "nobody", loader, 0).intValue());
+        assertEquals(3, loads.get());
+    }
+
+    private static String text(int length) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append('x');
+        }
+        return text.toString();
+    }
+
+    @Test
+    public void testByteBudget() {
+        Cache cache = new Cache();
+        cache.setMaximumBytes(20000);
+        String value = text(200);
+        for (int id = 0; id < 1000; id++) {
+            cache.putInt(CacheGroup.POST, id, value);
+        }
+        assertTrue(cache.getBytes() <= 20000);
+        assertTrue(cache.getSegment(CacheGroup.POST).size() > 0);
+        assertTrue(cache.getSegment(CacheGroup.POST).size() < 1000);
+        assertEquals(cache.getBytes(), cache.getBytes(CacheGroup.POST));
+    }
+
+    @Test
+    public void testByteBudgetKeepsUnboundedGroups() {
+        Cache cache = new Cache();
+        cache.setMaximumSize(CacheGroup.ARTICLE, 0);
+        String value = text(200);
+        for (int id = 0; id < 200; id++) {
+            cache.putInt(CacheGroup.ARTICLE, id, value);
+        }
+        long bytes = cache.getBytes();
+        // Shrinking the budget evicts right away, but only from bounded groups.
+        cache.setMaximumBytes(bytes / 2);
+        assertEquals(200, cache.getSegment(CacheGroup.ARTICLE).size());
+        assertEquals(bytes, cache.getBytes());
+    }
+
+    @Test
+    public void testGetAll() {
+        Cache cache = new Cache();
+        cache.putInt(CacheGroup.USER, 1, "alice");
+        cache.putInt(CacheGroup.USER, 2, null);
+        cache.putNotFound(CacheGroup.USER, 3, null);
+        Map<Integer, Object> cached = cache.getAll(CacheGroup.USER, Arrays.asList(1, 2, 3, 4));
+        // Cached nulls and "not found" results are returned, so only the missing IDs have to be loaded.
+        assertEquals("alice", cached.get(1));
+        assertTrue(cached.containsKey(2));
+        assertTrue(cached.containsKey(3));
+        assertFalse(cached.containsKey(4));
+        // Without the negative tier, only the objects of the group are returned.
+        Map<Integer, Object> objects = cache.getAllInt(CacheGroup.USER, Arrays.asList(1, 2, 3, 4));
+        assertEquals(2, objects.size());
+        assertFalse(objects.containsKey(3));
+        // The negative tier is kept apart from the objects of the group, so getUser(int) still loads the user.
+        assertFalse(cache.containsInt(CacheGroup.USER, 3));
+    }
+
+    @Test
+    public void testStats() throws Exception {
+        Cache cache = new Cache();
+        cache.setMaximumSize(CacheGroup.USER_ID, 10);
+        CountingLoader loader = new CountingLoader(0);
+        assertEquals("alice#1", cache.get(CacheGroup.USER_ID, "alice", loader));
+        assertEquals("alice#1", cache.get(CacheGroup.USER_ID, "alice", loader));
+        try {
+            cache.get(CacheGroup.USER_ID, "bob", new CacheLoader<String>() {
+                @Override
+                public String load(Object id) throws SQLException, ScriptException {
+                    throw new SQLException("broken");
+                }
+            });
+        } catch (SQLException e) {
+            // The failed load is counted.
+        }
+        CacheStats before = cache.getStats(CacheGroup.USER_ID);
+        assertEquals(CacheGroup.USER_ID, before.getGroup());
+        assertEquals(1, before.getHitCount());
+        assertEquals(2, before.getMissCount());
+        assertEquals(3, before.getRequestCount());
+        assertEquals(1.0 / 3, before.getHitRate(), 0.0001);
+        assertEquals(1, before.getLoadSuccessCount());
+        assertEquals(1, before.getLoadFailureCount());
+        assertEquals(2, before.getLoadCount());
+        assertEquals(0, before.getEvictionCount());
+        assertEquals(1, before.getSize());
+        for (int i = 0; i < 20; i++) {
+            cache.put(CacheGroup.USER_ID, "user" + i, "value");
+        }
+        cache.get(CacheGroup.USER_ID, "user19", loader);
+        // A snapshot doesn't change, the counters are read again for the next one.
+        assertEquals(1, before.getHitCount());
+        CacheStats after = cache.getStats().get(CacheGroup.USER_ID);
+        assertEquals(2, after.getHitCount());
+        assertEquals(2, after.getMissCount());
+        assertEquals(11, after.getEvictionCount());
+        assertEquals(10, after.getSize());
+        assertEquals(1, loader.loads.get());
+    }
+
+    @Test
+    public void testStatsCountConcurrentReads() throws Exception {
+        final Cache cache = new Cache();
+        cache.put(CacheGroup.USER_ID, "alice", "alice#0");
+        final CountingLoader loader = new CountingLoader(0);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<String>> results = new ArrayList<Future<String>>();
+        for (int i = 0; i < THREADS; i++) {
+            results.add(executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    for (int j = 0; j < 999; j++) {
+                        cache.get(CacheGroup.USER_ID, "alice", loader);
+                    }
+                    return cache.get(CacheGroup.USER_ID, "alice", loader);
+                }
+            }));
+        }
+        for (Future<String> result : results) {
+            assertEquals("alice#0", result.get());
+        }
+        executor.shutdown();
+        // Every thread counts into its own cell of the striped counter, none of the hits are lost.
+        assertEquals(THREADS * 1000, cache.getStats(CacheGroup.USER_ID).getHitCount());
+        assertEquals(0, cache.getStats(CacheGroup.USER_ID).getMissCount());
+    }
+}
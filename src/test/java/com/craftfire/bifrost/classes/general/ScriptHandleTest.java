@@ -0,0 +1,132 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.classes.general;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.craftfire.commons.database.DataManager;
+
+import com.craftfire.bifrost.cache.CacheLoader;
+import com.craftfire.bifrost.cache.IdentityScope;
+import com.craftfire.bifrost.enums.CacheGroup;
+import com.craftfire.bifrost.enums.Scripts;
+import com.craftfire.bifrost.exceptions.ScriptException;
+
+public class ScriptHandleTest {
+    private final AtomicInteger loads = new AtomicInteger();
+    private final CacheLoader<Object> loader = new CacheLoader<Object>() {
+        @Override
+        public Object load(Object id) throws SQLException, ScriptException {
+            ScriptHandleTest.this.loads.incrementAndGet();
+            return new Object();
+        }
+    };
+    private ScriptHandle handle;
+
+    @Before
+    public void setUp() {
+        Script script = new Script(Scripts.SMF, "2.0", new DataManager(null, "user", "password"));
+        this.handle = new ScriptHandle(1, script);
+    }
+
+    @Test
+    public void testGetScopedWithoutScope() throws SQLException, ScriptException {
+        assertNull(this.handle.getScope());
+        Object user = this.handle.getScoped(CacheGroup.USER, 1, this.loader);
+        assertSame(user, this.handle.getScoped(CacheGroup.USER, 1, this.loader));
+        assertEquals(1, this.loads.get());
+
+        // Without a scope an entity the cache dropped is loaded again.
+        this.handle.getCache().clear(CacheGroup.USER);
+        assertNotSame(user, this.handle.getScoped(CacheGroup.USER, 1, this.loader));
+        assertEquals(2, this.loads.get());
+    }
+
+    @Test
+    public void testGetScoped() throws SQLException, ScriptException {
+        IdentityScope scope = this.handle.openScope();
+        Object user;
+        try {
+            assertSame(scope, this.handle.getScope());
+            user = this.handle.getScoped(CacheGroup.USER, 1, this.loader);
+            this.handle.getCache().clear(CacheGroup.USER);
+            assertSame(user, this.handle.getScoped(CacheGroup.USER, 1, this.loader));
+            assertSame(user, this.handle.getScopedCached(CacheGroup.USER, 1, this.loader));
+            assertEquals(1, this.loads.get());
+            assertEquals(1, scope.size());
+        } finally {
+            scope.close();
+        }
+        assertNull(this.handle.getScope());
+
+        this.handle.getCache().clear(CacheGroup.USER);
+        assertNotSame(user, this.handle.getScoped(CacheGroup.USER, 1, this.loader));
+        assertEquals(2, this.loads.get());
+    }
+
+    @Test
+    public void testGetScopedNotFound() throws SQLException, ScriptException {
+        CacheLoader<Object> missing = new CacheLoader<Object>() {
+            @Override
+            public Object load(Object id) throws SQLException, ScriptException {
+                ScriptHandleTest.this.loads.incrementAndGet();
+                return null;
+            }
+        };
+        IdentityScope scope = this.handle.openScope();
+        try {
+            assertNull(this.handle.getScoped(CacheGroup.USER, 1, missing));
+            assertEquals(0, scope.size());
+        } finally {
+            scope.close();
+        }
+    }
+
+    @Test
+    public void testGetScopedCached() {
+        final SQLException exception = new SQLException("Connection lost.");
+        CacheLoader<Object> failing = new CacheLoader<Object>() {
+            @Override
+            public Object load(Object id) throws SQLException, ScriptException {
+                throw exception;
+            }
+        };
+        IdentityScope scope = this.handle.openScope();
+        try {
+            this.handle.getScopedCached(CacheGroup.USER, 1, failing);
+            fail("The SQLException of the loader has been swallowed.");
+        } catch (ScriptException e) {
+            assertSame(exception, e.getCause());
+        } finally {
+            scope.close();
+        }
+        assertNull(this.handle.getScope());
+    }
+}
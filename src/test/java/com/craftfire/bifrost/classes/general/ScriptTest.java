@@ -0,0 +1,201 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.classes.general;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.craftfire.bifrost.enums.Scripts;
+import com.craftfire.bifrost.exceptions.ScriptException;
+import com.craftfire.bifrost.sql.QueryTemplate;
+import com.craftfire.bifrost.sql.RowMapper;
+import com.craftfire.bifrost.sql.StubConnection;
+import com.craftfire.bifrost.sql.Transaction;
+
+public class ScriptTest {
+    private static final QueryTemplate INSERT = new QueryTemplate(
+            "INSERT INTO `" + QueryTemplate.PREFIX + "members` (`member_name`) VALUES (?)");
+
+    private static class StubScript extends Script {
+        StubScript(StubConnection connection) {
+            super(Scripts.SMF, "2.0", connection.getDataManager("smf_"));
+        }
+    }
+
+    private static List<Object[]> names(String... names) {
+        List<Object[]> rows = new ArrayList<Object[]>();
+        for (String name : names) {
+            rows.add(new Object[] {name});
+        }
+        return rows;
+    }
+
+    @Test
+    public void testInsertBatch() throws SQLException {
+        StubConnection connection = new StubConnection();
+        int[] keys = new StubScript(connection).insertBatch(INSERT, names("alice", "bob", "carol"));
+        assertTrue(Arrays.equals(new int[] {100, 101, 102}, keys));
+        assertEquals(Arrays.asList("addBatch", "addBatch", "addBatch", "executeBatch"), connection.getCalls());
+        assertEquals(0, new StubScript(connection).insertBatch(INSERT, names()).length);
+    }
+
+    @Test
+    public void testInsertBatchWithoutAllKeys() {
+        StubConnection connection = new StubConnection();
+        connection.setKeysPerBatch(1);
+        try {
+            new StubScript(connection).insertBatch(INSERT, names("alice", "bob"));
+            fail("A batch without a key for every row succeeded.");
+        } catch (SQLException expected) {
+            // The keys of the rows can't be matched.
+        }
+    }
+
+    @Test
+    public void testTransactionCommits() throws Exception {
+        StubConnection connection = new StubConnection();
+        final StubScript script = new StubScript(connection);
+        script.transaction(new Transaction() {
+            @Override
+            public void run() throws SQLException {
+                script.insertBatch(INSERT, names("alice"));
+            }
+        });
+        assertEquals(Arrays.asList("setAutoCommit(false)", "addBatch", "executeBatch", "commit", "setAutoCommit(true)"),
+                connection.getCalls());
+    }
+
+    @Test
+    public void testTransactionRollsBack() throws Exception {
+        StubConnection connection = new StubConnection();
+        final StubScript script = new StubScript(connection);
+        final ScriptException failure = new ScriptException("failure");
+        try {
+            script.transaction(new Transaction() {
+                @Override
+                public void run() throws SQLException, ScriptException {
+                    script.insertBatch(INSERT, names("alice"));
+                    throw failure;
+                }
+            });
+            fail("The exception of the work has been lost.");
+        } catch (ScriptException e) {
+            assertSame(failure, e);
+        }
+        assertEquals(Arrays.asList("setAutoCommit(false)", "addBatch", "executeBatch", "rollback",
+                "setAutoCommit(true)"), connection.getCalls());
+    }
+
+    @Test
+    public void testTransactionKeepsExceptionOfWork() throws Exception {
+        StubConnection connection = new StubConnection();
+        connection.setBrokenAutoCommit(true);
+        final SQLException failure = new SQLException("failure");
+        try {
+            new StubScript(connection).transaction(new Transaction() {
+                @Override
+                public void run() throws SQLException {
+                    throw failure;
+                }
+            });
+            fail("The exception of the work has been lost.");
+        } catch (SQLException e) {
+            assertSame(failure, e);
+        }
+    }
+
+    @Test
+    public void testNestedTransactionJoins() throws Exception {
+        StubConnection connection = new StubConnection();
+        final StubScript script = new StubScript(connection);
+        script.transaction(new Transaction() {
+            @Override
+            public void run() throws SQLException, ScriptException {
+                script.transaction(new Transaction() {
+                    @Override
+                    public void run() throws SQLException {
+                        script.insertBatch(INSERT, names("alice"));
+                    }
+                });
+            }
+        });
+        assertEquals(Arrays.asList("setAutoCommit(false)", "addBatch", "executeBatch", "commit", "setAutoCommit(true)"),
+                connection.getCalls());
+    }
+
+    @Test
+    public void testQueryListPadsLastChunk() throws SQLException {
+        StubConnection connection = new StubConnection();
+        List<Integer> values = new ArrayList<Integer>();
+        for (int i = 0; i < Script.USER_BATCH_SIZE + 2; i++) {
+            values.add(i);
+        }
+        new StubScript(connection).queryList("SELECT 1 FROM `{prefix}members` WHERE `id_member` IN ({list})",
+                                             new RowMapper<Integer>() {
+                                                 @Override
+                                                 public Integer map(ResultSet row) {
+                                                     return 1;
+                                                 }
+                                             }, values);
+        // Both chunks use the same statement, the second one repeats its last value.
+        assertEquals(1, connection.getPrepared().size());
+        List<StubConnection.Execution> queries = connection.getExecutions();
+        assertEquals(2, queries.size());
+        assertEquals(values.subList(0, Script.USER_BATCH_SIZE), queries.get(0).getParameters());
+        List<Integer> padded = new ArrayList<Integer>();
+        for (int i = 0; i < Script.USER_BATCH_SIZE; i++) {
+            padded.add(Math.min(Script.USER_BATCH_SIZE + i, Script.USER_BATCH_SIZE + 1));
+        }
+        assertEquals(padded, queries.get(1).getParameters());
+    }
+
+    @Test
+    public void testCompiledQueriesAreBounded() {
+        final List<String> resolved = new ArrayList<String>();
+        StubScript script = new StubScript(new StubConnection()) {
+            @Override
+            protected String resolve(String sql) {
+                resolved.add(sql);
+                return super.resolve(sql);
+            }
+        };
+        assertEquals("INSERT INTO `smf_members` (`member_name`) VALUES (?)", script.compile(INSERT));
+        script.compile(INSERT);
+        assertEquals(1, resolved.size());
+        for (int i = 0; i < Script.COMPILED_SIZE; i++) {
+            script.compile(new QueryTemplate("SELECT " + i));
+        }
+        // The least recently used query has been dropped, the others are still compiled.
+        script.compile(new QueryTemplate("SELECT " + (Script.COMPILED_SIZE - 1)));
+        assertEquals(Script.COMPILED_SIZE + 1, resolved.size());
+        script.compile(INSERT);
+        assertEquals(Script.COMPILED_SIZE + 2, resolved.size());
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.classes.general;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.craftfire.commons.database.DataManager;
+
+import com.craftfire.bifrost.enums.CacheCleanupReason;
+import com.craftfire.bifrost.enums.CacheGroup;
+import com.craftfire.bifrost.enums.Scripts;
+
+public class ScriptUserTest {
+    @Test
+    public void testRenameDropsOldUsername() {
+        Script script = new Script(Scripts.SMF, "2.0", new DataManager(null, "user", "password"));
+        ScriptHandle handle = new ScriptHandle(1, script);
+        Cache cache = handle.getCache();
+        ScriptUser user = new ScriptUser(script, 5, "alice", "secret");
+        ScriptUser.addCache(handle, user);
+        cache.put(CacheGroup.POST_COUNT, "alice", 3);
+        cache.put(CacheGroup.USER_ID, "alice", 5);
+        cache.put(CacheGroup.IS_REGISTERED, "alice", true);
+        cache.put(CacheGroup.POST_COUNT, "carol", 7);
+
+        user.setUsername("bob");
+        ScriptUser.cleanupCache(handle, user, CacheCleanupReason.UPDATE);
+        // Everything cached by the old username is gone, other users keep their objects.
+        assertFalse(cache.contains(CacheGroup.POST_COUNT, "alice"));
+        assertFalse(cache.contains(CacheGroup.USER_ID, "alice"));
+        assertFalse(cache.contains(CacheGroup.IS_REGISTERED, "alice"));
+        assertTrue(cache.contains(CacheGroup.POST_COUNT, "carol"));
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.scripts.cms;
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.craftfire.bifrost.cache.HighWaterMarks;
+import com.craftfire.bifrost.enums.Scripts;
+import com.craftfire.bifrost.sql.StubConnection;
+
+public class WordPressTest {
+    @Test
+    public void testPollChanges() throws Exception {
+        StubConnection connection = new StubConnection();
+        connection.setResponder(new StubConnection.Responder() {
+            @Override
+            public ResultSet query(String sql, List<Object> parameters) {
+                return StubConnection.result(new String[] {"bifrost_mark", "bifrost_id", "ID", "user_login"},
+                                             Arrays.asList(new Object[] {1350000000L, 4, 4, "alice"},
+                                                           new Object[] {1350000000L, 5, 5, "bob"}));
+            }
+        });
+        final List<String> changes = new ArrayList<String>();
+        WordPress wordpress = new WordPress(Scripts.WP, "3.4.2", connection.getDataManager("wp_")) {
+            @Override
+            protected void userChanged(int userid, String username, boolean created) {
+                changes.add("user " + userid + " " + username + " " + created);
+            }
+        };
+        HighWaterMarks marks = new HighWaterMarks();
+        marks.set("users.UNIX_TIMESTAMP(`user_registered`)", 1340000000L);
+        marks.set("users.UNIX_TIMESTAMP(`user_registered`).`ID`", 3);
+        assertEquals(2, wordpress.pollChanges(marks));
+
+        List<StubConnection.Execution> queries = connection.getExecutions();
+        assertEquals(1, queries.size());
+        // The registration dates are stored in UTC, so they are compared to the time in UTC.
+        assertEquals("SELECT UNIX_TIMESTAMP(`user_registered`) AS `bifrost_mark`, `ID` AS `bifrost_id`, `ID`, " +
+                "`user_login` FROM `wp_users` WHERE UNIX_TIMESTAMP(`user_registered`) < " +
+                "UNIX_TIMESTAMP(UTC_TIMESTAMP()) AND (UNIX_TIMESTAMP(`user_registered`) > ? OR " +
+                "(UNIX_TIMESTAMP(`user_registered`) = ? AND `ID` > ?)) ORDER BY `bifrost_mark` ASC, `bifrost_id` ASC " +
+                "LIMIT 500", queries.get(0).getSQL());
+        assertEquals(Arrays.<Object>asList(1340000000L, 1340000000L, 3L), queries.get(0).getParameters());
+        assertEquals(Arrays.asList("user 4 alice true", "user 5 bob true"), changes);
+        assertEquals(1350000000L, marks.get("users.UNIX_TIMESTAMP(`user_registered`)"));
+        assertEquals(5, marks.get("users.UNIX_TIMESTAMP(`user_registered`).`ID`"));
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.scripts.forum;
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.craftfire.bifrost.cache.HighWaterMarks;
+import com.craftfire.bifrost.enums.Scripts;
+import com.craftfire.bifrost.sql.StubConnection;
+
+public class PhpBBTest {
+    @Test
+    public void testPollChanges() throws Exception {
+        StubConnection connection = new StubConnection();
+        connection.setResponder(new StubConnection.Responder() {
+            @Override
+            public ResultSet query(String sql, List<Object> parameters) {
+                return StubConnection.result(new String[] {"bifrost_mark", "username"},
+                                             Arrays.asList(new Object[] {53, "alice"}, new Object[] {54, "bob"}));
+            }
+        });
+        final List<String> changes = new ArrayList<String>();
+        PhpBB phpbb = new PhpBB(Scripts.PHPBB, "3.0.11", connection.getDataManager("phpbb_")) {
+            @Override
+            protected void userChanged(int userid, String username, boolean created) {
+                changes.add("user " + userid + " " + username + " " + created);
+            }
+        };
+        HighWaterMarks marks = new HighWaterMarks();
+        marks.set("users.`user_id`", 52);
+        assertEquals(2, phpbb.pollChanges(marks));
+
+        List<StubConnection.Execution> queries = connection.getExecutions();
+        assertEquals(1, queries.size());
+        assertEquals("SELECT `user_id` AS `bifrost_mark`, `username` FROM `phpbb_users` WHERE 1 AND `user_id` > ? " +
+                "ORDER BY `bifrost_mark` ASC LIMIT 500", queries.get(0).getSQL());
+        assertEquals(Arrays.<Object>asList(52L), queries.get(0).getParameters());
+        assertEquals(Arrays.asList("user 53 alice true", "user 54 bob true"), changes);
+        assertEquals(54, marks.get("users.`user_id`"));
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.scripts.forum;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.craftfire.bifrost.cache.HighWaterMarks;
+import com.craftfire.bifrost.classes.forum.ForumHandle;
+import com.craftfire.bifrost.classes.forum.ForumPost;
+import com.craftfire.bifrost.classes.forum.ForumThread;
+import com.craftfire.bifrost.classes.forum.ForumUser;
+import com.craftfire.bifrost.classes.general.ScriptUser;
+import com.craftfire.bifrost.enums.Scripts;
+import com.craftfire.bifrost.sql.StubConnection;
+
+public class SMFTest {
+    /**
+     * Records the changes {@link SMF#pollChanges(HighWaterMarks)} found instead of invalidating the cache.
+     */
+    private static class RecordingSMF extends SMF {
+        private final List<String> changes = new ArrayList<String>();
+
+        RecordingSMF(StubConnection connection) {
+            super(Scripts.SMF, "2.0.2", connection.getDataManager("smf_"));
+        }
+
+        @Override
+        protected void postChanged(int postid, int threadid, int boardid, int userid, String username, boolean created) {
+            this.changes.add("post " + postid + " " + threadid + " " + boardid + " " + userid + " " + username + " " + created);
+        }
+
+        @Override
+        protected void threadChanged(int threadid, int boardid, int firstpostid, int lastpostid, int userid,
+                                     String username, boolean created) {
+            this.changes.add("thread " + threadid + " " + boardid + " " + firstpostid + " " + lastpostid + " " + userid +
+                             " " + username + " " + created);
+        }
+
+        @Override
+        protected void userChanged(int userid, String username, boolean created) {
+            this.changes.add("user " + userid + " " + username + " " + created);
+        }
+    }
+
+    private static ResultSet rows(String[] labels, Object[]... rows) {
+        return StubConnection.result(labels, Arrays.asList(rows));
+    }
+
+    @Test
+    public void testPollChanges() throws Exception {
+        StubConnection connection = new StubConnection();
+        connection.setResponder(new StubConnection.Responder() {
+            @Override
+            public ResultSet query(String sql, List<Object> parameters) {
+                if (sql.contains("FROM `smf_messages`")) {
+                    return rows(new String[] {"bifrost_mark", "bifrost_id", "id_msg", "id_topic", "id_board", "id_member",
+                                              "poster_name"},
+                                new Object[] {12, 12, 12, 4, 2, 7, "alice"}, new Object[] {13, 8, 8, 3, 2, 9, "bob"});
+                } else if (sql.contains("FROM `smf_topics`")) {
+                    return rows(new String[] {"bifrost_mark", "id_board", "id_first_msg", "id_last_msg",
+                                              "id_member_started", "username"}, new Object[] {4, 2, 12, 12, 7, "alice"});
+                } else if (sql.contains("FROM `smf_members`")) {
+                    return rows(new String[] {"bifrost_mark", "username"}, new Object[] {7, "alice"});
+                }
+                return rows(new String[] {"bifrost_mark", "name"}, new Object[] {2, "spammers"});
+            }
+        });
+        RecordingSMF smf = new RecordingSMF(connection);
+        HighWaterMarks marks = new HighWaterMarks();
+        marks.set("messages.`id_msg_modified`", 11);
+        marks.set("messages.`id_msg_modified`.`id_msg`", 11);
+        marks.set("topics.`id_topic`", 3);
+        marks.set("members.`id_member`", 6);
+        marks.set("ban_groups.`id_ban_group`", 1);
+        assertEquals(5, smf.pollChanges(marks));
+
+        List<StubConnection.Execution> queries = connection.getExecutions();
+        assertEquals(4, queries.size());
+        // Edited messages get a new modified ID, the rows of the same modified ID are ordered by their own ID.
+        assertEquals("SELECT `id_msg_modified` AS `bifrost_mark`, `id_msg` AS `bifrost_id`, `id_msg`, `id_topic`, " +
+                "`id_board`, `id_member`, `poster_name` AS `poster_name` FROM `smf_messages` WHERE 1 AND " +
+                "(`id_msg_modified` > ? OR (`id_msg_modified` = ? AND `id_msg` > ?)) ORDER BY `bifrost_mark` ASC, " +
+                "`bifrost_id` ASC LIMIT 500", queries.get(0).getSQL());
+        assertEquals(Arrays.<Object>asList(11L, 11L, 11L), queries.get(0).getParameters());
+        assertEquals("SELECT `id_topic` AS `bifrost_mark`, `id_board`, `id_first_msg`, `id_last_msg`, " +
+                "`id_member_started`, (SELECT `member_name` FROM `smf_members` WHERE `id_member` = " +
+                "`id_member_started`) AS `username` FROM `smf_topics` WHERE 1 AND `id_topic` > ? ORDER BY " +
+                "`bifrost_mark` ASC LIMIT 500", queries.get(1).getSQL());
+        assertEquals("SELECT `id_member` AS `bifrost_mark`, `member_name` AS `username` FROM `smf_members` WHERE 1 " +
+                "AND `id_member` > ? ORDER BY `bifrost_mark` ASC LIMIT 500", queries.get(2).getSQL());
+        assertEquals("SELECT `id_ban_group` AS `bifrost_mark`, `name` FROM `smf_ban_groups` WHERE 1 AND " +
+                "`id_ban_group` > ? ORDER BY `bifrost_mark` ASC LIMIT 500", queries.get(3).getSQL());
+
+        // A message whose modified ID is its own ID is new, the other one has been edited.
+        assertEquals(Arrays.asList("post 12 4 2 7 alice true", "post 8 3 2 9 bob false",
+                                   "thread 4 2 12 12 7 alice true", "user 7 alice true"), smf.changes);
+        assertEquals(13, marks.get("messages.`id_msg_modified`"));
+        assertEquals(8, marks.get("messages.`id_msg_modified`.`id_msg`"));
+        assertEquals(4, marks.get("topics.`id_topic`"));
+        assertEquals(7, marks.get("members.`id_member`"));
+        assertEquals(2, marks.get("ban_groups.`id_ban_group`"));
+    }
+
+    /**
+     * Returns one row for a query of all columns of a table, the columns that aren't specified are null.
+     *
+     * @param  sql     the query
+     * @param  values  the labels and values of the specified columns, in pairs
+     * @return         the result
+     */
+    private static ResultSet record(String sql, Object... values) {
+        String[] labels = sql.substring("SELECT ".length(), sql.indexOf(" FROM ")).split(", ");
+        Object[] row = new Object[labels.length];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = labels[i].substring(labels[i].lastIndexOf(' ') + 1).replace("`", "");
+            labels[i] = labels[i].substring(labels[i].indexOf('.') + 1);
+            for (int j = 0; j < values.length; j += 2) {
+                if (labels[i].equals(values[j])) {
+                    row[i] = values[j + 1];
+                }
+            }
+        }
+        return rows(labels, row);
+    }
+
+    @Test
+    public void testCreateUsers() throws Exception {
+        StubConnection connection = new StubConnection();
+        connection.setResponder(new StubConnection.Responder() {
+            @Override
+            public ResultSet query(String sql, List<Object> parameters) {
+                if (sql.contains("FROM `smf_members` WHERE `member_name` IN (") && parameters.contains("alice")) {
+                    return record(sql, "id_member", 7, "member_name", "alice");
+                }
+                return rows(new String[0]);
+            }
+        });
+        SMF smf = new SMF(Scripts.SMF, "2.0.2", connection.getDataManager("smf_"));
+        new ForumHandle(1, smf);
+        ScriptUser alice = new ForumUser(smf, 0, "alice", "secret"), bob = new ForumUser(smf, 0, "bob", "secret"),
+                twice = new ForumUser(smf, 0, "Bob", "secret"), carol = new ForumUser(smf, 0, "carol", "secret");
+        bob.setEmail("bob@example.com");
+        smf.createUsers(Arrays.asList(alice, bob, twice, carol));
+
+        // The registered user and the second user with the same name are skipped, the others get the generated keys.
+        assertEquals(0, alice.getID());
+        assertEquals(100, bob.getID());
+        assertEquals(0, twice.getID());
+        assertEquals(101, carol.getID());
+        List<StubConnection.Execution> inserts = connection.getExecutions("addBatch", "INSERT INTO `smf_members`");
+        assertEquals(2, inserts.size());
+        assertEquals(Arrays.<Object>asList("bob", "secret", bob.getRegDate().getTime() / 1000, "bob", "bob@example.com",
+                                           null, null, bob.getPasswordSalt()), inserts.get(0).getParameters());
+        assertEquals("carol", inserts.get(1).getParameters().get(0));
+        List<StubConnection.Execution> settings = connection.getExecutions("executeUpdate", "UPDATE `smf_settings`");
+        assertEquals(Arrays.<Object>asList("carol", "latestRealName"), settings.get(0).getParameters());
+        assertEquals(Arrays.<Object>asList(101, "latestMember"), settings.get(1).getParameters());
+        assertEquals(Arrays.<Object>asList(2, "totalMembers"), settings.get(3).getParameters());
+        assertEquals("setAutoCommit(false)", connection.getCalls().get(1));
+        assertTrue(connection.getCalls().contains("commit"));
+    }
+
+    @Test
+    public void testCreatePosts() throws Exception {
+        StubConnection connection = new StubConnection();
+        connection.setResponder(new StubConnection.Responder() {
+            @Override
+            public ResultSet query(String sql, List<Object> parameters) {
+                if (sql.contains("FROM `smf_topics` WHERE `id_topic` = ?")) {
+                    return record(sql, "id_topic", parameters.get(0), "id_board", 2);
+                }
+                return rows(new String[0]);
+            }
+        });
+        SMF smf = new SMF(Scripts.SMF, "2.0.2", connection.getDataManager("smf_"));
+        new ForumHandle(1, smf);
+        ScriptUser alice = new ForumUser(smf, 7, "alice", null);
+        List<ForumPost> posts = new ArrayList<ForumPost>();
+        for (int i = 0; i < 2; i++) {
+            ForumPost post = new ForumPost(smf, 0, 4);
+            post.setAuthor(alice);
+            post.setSubject("Subject " + i);
+            post.setBody("Body " + i);
+            posts.add(post);
+        }
+        smf.createPosts(posts);
+
+        assertEquals(100, posts.get(0).getID());
+        assertEquals(101, posts.get(1).getID());
+        List<StubConnection.Execution> inserts = connection.getExecutions("addBatch", "INSERT INTO `smf_messages`");
+        assertEquals(2, inserts.size());
+        // The topic comes before the board, like the columns of the insert.
+        assertEquals(Arrays.<Object>asList(4, 2, 7, "Subject 0", "Body 0", posts.get(0).getPostDate().getTime() / 1000,
+                                           "alice", null, null), inserts.get(0).getParameters());
+        assertEquals(Arrays.<Object>asList(101, 101),
+                     connection.getExecutions("addBatch", "`id_msg_modified` = ?").get(1).getParameters());
+        assertEquals(Arrays.<Object>asList(101, 7, 4),
+                     connection.getExecutions("addBatch", "`id_member_updated` = ?").get(1).getParameters());
+        assertEquals(Arrays.<Object>asList(101, 101, 2),
+                     connection.getExecutions("addBatch", "`id_msg_updated` = ?").get(1).getParameters());
+        assertEquals(Arrays.<Object>asList(101),
+                     connection.getExecutions("executeUpdate", "'maxMsgID'").get(0).getParameters());
+    }
+
+    @Test
+    public void testCreateThreads() throws Exception {
+        StubConnection connection = new StubConnection();
+        SMF smf = new SMF(Scripts.SMF, "2.0.2", connection.getDataManager("smf_"));
+        new ForumHandle(1, smf);
+        ScriptUser alice = new ForumUser(smf, 7, "alice", null);
+        List<ForumThread> threads = new ArrayList<ForumThread>();
+        for (int i = 0; i < 2; i++) {
+            ForumThread thread = new ForumThread(smf, 0, 0, 0, 2 + i);
+            thread.setAuthor(alice);
+            thread.setSubject("Subject " + i);
+            thread.setBody("Body " + i);
+            threads.add(thread);
+        }
+        threads.get(1).setSticky(true);
+        smf.createThreads(threads);
+
+        // The threads get the first keys, their first posts the next ones.
+        assertEquals(100, threads.get(0).getID());
+        assertEquals(101, threads.get(1).getID());
+        List<StubConnection.Execution> inserts = connection.getExecutions("addBatch", "INSERT INTO `smf_topics`");
+        assertEquals(Arrays.<Object>asList(2, 7, 7, 0, 0), inserts.get(0).getParameters());
+        assertEquals(Arrays.<Object>asList(3, 7, 7, 0, 1), inserts.get(1).getParameters());
+        // The posts are inserted with the topic of their thread first and its board second.
+        List<StubConnection.Execution> posts = connection.getExecutions("addBatch", "INSERT INTO `smf_messages`");
+        assertEquals(Arrays.<Object>asList(100, 2), posts.get(0).getParameters().subList(0, 2));
+        assertEquals(Arrays.<Object>asList(101, 3), posts.get(1).getParameters().subList(0, 2));
+        List<StubConnection.Execution> firstPosts = connection.getExecutions("addBatch", "SET `id_first_msg` = ?");
+        assertEquals(Arrays.<Object>asList(102, 102, 100), firstPosts.get(0).getParameters());
+        assertEquals(Arrays.<Object>asList(103, 103, 101), firstPosts.get(1).getParameters());
+        assertEquals(Arrays.<Object>asList(3),
+                     connection.getExecutions("addBatch", "SET `num_topics`").get(1).getParameters());
+        assertEquals(1, Collections.frequency(connection.getCalls(), "commit"));
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.scripts.forum;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.craftfire.bifrost.cache.HighWaterMarks;
+import com.craftfire.bifrost.classes.forum.ForumHandle;
+import com.craftfire.bifrost.classes.forum.ForumUser;
+import com.craftfire.bifrost.classes.general.ScriptUser;
+import com.craftfire.bifrost.enums.CacheGroup;
+import com.craftfire.bifrost.enums.Gender;
+import com.craftfire.bifrost.enums.Scripts;
+import com.craftfire.bifrost.sql.StubConnection;
+
+public class XenForoTest {
+    /**
+     * Records the changes {@link XenForo#pollChanges(HighWaterMarks)} found instead of invalidating the cache.
+     */
+    private static class RecordingXenForo extends XenForo {
+        private final List<String> changes = new ArrayList<String>();
+
+        RecordingXenForo(StubConnection connection) {
+            super(Scripts.XF, "1.1.2", connection.getDataManager("xf_"));
+        }
+
+        @Override
+        protected void postChanged(int postid, int threadid, int boardid, int userid, String username, boolean created) {
+            this.changes.add("post " + postid + " " + threadid + " " + boardid + " " + userid + " " + username + " " + created);
+        }
+
+        @Override
+        protected void threadChanged(int threadid, int boardid, int firstpostid, int lastpostid, int userid,
+                                     String username, boolean created) {
+            this.changes.add("thread " + threadid + " " + boardid + " " + firstpostid + " " + lastpostid + " " + userid +
+                             " " + username + " " + created);
+        }
+
+        @Override
+        protected void userChanged(int userid, String username, boolean created) {
+            this.changes.add("user " + userid + " " + username + " " + created);
+        }
+    }
+
+    private static ResultSet rows(String[] labels, Object[]... rows) {
+        return StubConnection.result(labels, Arrays.asList(rows));
+    }
+
+    @Test
+    public void testPollChanges() throws Exception {
+        StubConnection connection = new StubConnection();
+        connection.setResponder(new StubConnection.Responder() {
+            @Override
+            public ResultSet query(String sql, List<Object> parameters) {
+                if (sql.contains("FROM `xf_post`")) {
+                    return rows(new String[] {"bifrost_mark", "thread_id", "user_id", "username", "node_id"},
+                                new Object[] {21, 5, 7, "alice", 3});
+                } else if (sql.contains("FROM `xf_thread`")) {
+                    return rows(new String[] {"bifrost_mark", "node_id", "first_post_id", "last_post_id", "user_id",
+                                              "username"}, new Object[] {5, 3, 20, 21, 6, "bob"});
+                } else if (sql.contains("`last_activity` AS `bifrost_mark`")) {
+                    return rows(new String[] {"bifrost_mark", "bifrost_id", "user_id"}, new Object[] {1000, 6, 6});
+                }
+                return rows(new String[] {"bifrost_mark", "username"}, new Object[] {7, "alice"});
+            }
+        });
+        RecordingXenForo xenforo = new RecordingXenForo(connection);
+        xenforo.getCache().putInt(CacheGroup.USER, 6, "bob");
+        xenforo.getCache().putInt(CacheGroup.USER, 8, "carol");
+        HighWaterMarks marks = new HighWaterMarks();
+        marks.set("post.`post_id`", 20);
+        marks.set("thread.`thread_id`", 4);
+        marks.set("user.`user_id`", 6);
+        marks.set("user.`last_activity`", 900);
+        marks.set("user.`last_activity`.`user_id`", 2);
+        assertEquals(4, xenforo.pollChanges(marks));
+
+        List<StubConnection.Execution> queries = connection.getExecutions();
+        assertEquals(4, queries.size());
+        // The node of a post is read from its thread, the prefix of the correlated subquery is resolved as well.
+        assertEquals("SELECT `post_id` AS `bifrost_mark`, `thread_id`, `user_id`, `username`, IFNULL((SELECT `node_id` " +
+                "FROM `xf_thread` WHERE `thread_id` = `xf_post`.`thread_id`), 0) AS `node_id` FROM `xf_post` WHERE 1 " +
+                "AND `post_id` > ? ORDER BY `bifrost_mark` ASC LIMIT 500", queries.get(0).getSQL());
+        assertEquals(Arrays.<Object>asList(20L), queries.get(0).getParameters());
+        assertEquals("SELECT `thread_id` AS `bifrost_mark`, `node_id`, `first_post_id`, `last_post_id`, `user_id`, " +
+                "`username` FROM `xf_thread` WHERE 1 AND `thread_id` > ? ORDER BY `bifrost_mark` ASC LIMIT 500",
+                queries.get(1).getSQL());
+        assertEquals("SELECT `user_id` AS `bifrost_mark`, `username` FROM `xf_user` WHERE 1 AND `user_id` > ? ORDER BY " +
+                "`bifrost_mark` ASC LIMIT 500", queries.get(2).getSQL());
+        // The activity of the current second is left for the next poll.
+        assertEquals("SELECT `last_activity` AS `bifrost_mark`, `user_id` AS `bifrost_id`, `user_id` FROM `xf_user` " +
+                "WHERE `last_activity` < UNIX_TIMESTAMP() AND (`last_activity` > ? OR (`last_activity` = ? AND " +
+                "`user_id` > ?)) ORDER BY `bifrost_mark` ASC, `bifrost_id` ASC LIMIT 500", queries.get(3).getSQL());
+        assertEquals(Arrays.<Object>asList(900L, 900L, 2L), queries.get(3).getParameters());
+
+        assertEquals(Arrays.asList("post 21 5 3 7 alice true", "thread 5 3 20 21 6 bob true", "user 7 alice true"),
+                     xenforo.changes);
+        // Only the user whose last activity changed is dropped.
+        assertFalse(xenforo.getCache().containsInt(CacheGroup.USER, 6));
+        assertTrue(xenforo.getCache().containsInt(CacheGroup.USER, 8));
+        assertEquals(1000, marks.get("user.`last_activity`"));
+        assertEquals(6, marks.get("user.`last_activity`.`user_id`"));
+    }
+
+    @Test
+    public void testGetUsersInChunks() throws Exception {
+        StubConnection connection = new StubConnection();
+        XenForo script = new XenForo(Scripts.XF, "1.1.2", connection.getDataManager("xf_"));
+        List<Integer> userids = new ArrayList<Integer>();
+        for (int i = 1; i <= 150; i++) {
+            userids.add(i);
+        }
+        assertTrue(script.getUsers(userids).isEmpty());
+        List<StubConnection.Execution> executions = connection.getExecutions("executeQuery", "FROM `xf_user`");
+        assertEquals(2, executions.size());
+        assertEquals(executions.get(0).getSQL(), executions.get(1).getSQL());
+        assertEquals(1, connection.getPrepared().size());
+        assertEquals(userids.subList(0, 100), executions.get(0).getParameters());
+        List<Object> last = executions.get(1).getParameters();
+        assertEquals(100, last.size());
+        assertEquals(userids.subList(100, 150), last.subList(0, 50));
+        assertEquals(150, last.get(99));
+    }
+
+    @Test
+    public void testCreateUsers() throws Exception {
+        StubConnection connection = new StubConnection();
+        connection.setResponder(new StubConnection.Responder() {
+            @Override
+            public ResultSet query(String sql, List<Object> parameters) {
+                return StubConnection.value(40);
+            }
+        });
+        XenForo xenforo = new XenForo(Scripts.XF, "1.1.2", connection.getDataManager("xf_"));
+        new ForumHandle(1, xenforo);
+        ScriptUser alice = new ForumUser(xenforo, 0, "alice", "secret");
+        ScriptUser bob = new ForumUser(xenforo, 0, "bob", "secret");
+        alice.setEmail("alice@example.com");
+        alice.setGender(Gender.FEMALE);
+        alice.setBirthday(new GregorianCalendar(1990, Calendar.MARCH, 14).getTime());
+        xenforo.createUsers(Arrays.asList(alice, bob));
+
+        assertEquals(100, alice.getID());
+        assertEquals(101, bob.getID());
+        List<StubConnection.Execution> inserts = connection.getExecutions("addBatch", "INSERT INTO `xf_user` (");
+        assertEquals(2, inserts.size());
+        List<Object> row = inserts.get(0).getParameters();
+        assertEquals(Arrays.<Object>asList("alice", "alice@example.com", "female", null), row.subList(0, 4));
+        assertEquals(row.get(4), row.get(5));
+        assertEquals(Arrays.<Object>asList("bob", null, ""), inserts.get(1).getParameters().subList(0, 3));
+        // Every other table gets one batch with a row per user, keyed by the generated IDs.
+        for (String table : new String[] {"user_privacy", "user_option", "user_group_relation"}) {
+            List<StubConnection.Execution> rows = connection.getExecutions("addBatch", "`xf_" + table + "` (");
+            assertEquals(Arrays.<Object>asList(100), rows.get(0).getParameters());
+            assertEquals(Arrays.<Object>asList(101), rows.get(1).getParameters());
+        }
+        List<StubConnection.Execution> profiles = connection.getExecutions("addBatch", "INSERT INTO `xf_user_profile`");
+        assertEquals(Arrays.<Object>asList(100, "14", "3", "1990"), profiles.get(0).getParameters());
+        assertEquals(Arrays.<Object>asList(101, 0, 0, 0), profiles.get(1).getParameters());
+        List<StubConnection.Execution> authentications = connection.getExecutions("addBatch",
+                                                                                  "INSERT INTO `xf_user_authenticate`");
+        assertEquals(100, authentications.get(0).getParameters().get(0));
+        assertTrue(((String) authentications.get(0).getParameters().get(1)).contains(alice.getPasswordSalt()));
+        List<StubConnection.Execution> ips = connection.getExecutions("addBatch", "INSERT INTO `xf_ip`");
+        assertEquals(Arrays.<Object>asList(100, "user", 41, "register", 0L, row.get(4)), ips.get(0).getParameters());
+        assertEquals(Arrays.<Object>asList(101, "user", 42, "register", 0L, row.get(4)), ips.get(1).getParameters());
+        assertEquals(Arrays.<Object>asList("user", "register"),
+                     connection.getExecutions("executeQuery", "FROM `xf_ip`").get(0).getParameters());
+        // The batches run in one transaction, one executeBatch per table.
+        assertEquals(7, Collections.frequency(connection.getCalls(), "executeBatch"));
+        List<String> calls = connection.getCalls();
+        assertEquals("setAutoCommit(false)", calls.get(0));
+        assertEquals(Arrays.asList("commit", "setAutoCommit(true)"), calls.subList(calls.size() - 2, calls.size()));
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.junit.Test;
+
+public class KeysetIteratorTest {
+    /**
+     * Walks the keys 1 to {@code rows} with gaps, recording the key every page is loaded after.
+     */
+    private static class Table extends KeysetIterator<Integer> {
+        private final int rows;
+        private final List<Integer> loads = new ArrayList<Integer>();
+
+        Table(int rows, int pageSize) {
+            super(pageSize);
+            this.rows = rows;
+        }
+
+        @Override
+        protected List<Integer> load(int after, int limit) {
+            this.loads.add(after);
+            List<Integer> page = new ArrayList<Integer>();
+            for (int key = after + 1; key <= this.rows * 2 && page.size() < limit; key++) {
+                // Only even keys exist, so the next page can't be found by counting rows.
+                if (key % 2 == 0) {
+                    page.add(key);
+                }
+            }
+            return page;
+        }
+
+        @Override
+        protected int getKey(Integer row) {
+            return row;
+        }
+    }
+
+    private static List<Integer> walk(Table table) {
+        List<Integer> keys = new ArrayList<Integer>();
+        while (table.hasNext()) {
+            keys.add(table.next());
+        }
+        return keys;
+    }
+
+    @Test
+    public void testPages() {
+        Table table = new Table(7, 3);
+        List<Integer> keys = walk(table);
+        assertEquals(7, keys.size());
+        assertEquals(2, keys.get(0).intValue());
+        assertEquals(14, keys.get(6).intValue());
+        // The last page has fewer rows than requested, so no page is loaded after it.
+        assertEquals(3, table.loads.size());
+        assertEquals(6, table.loads.get(1).intValue());
+        assertEquals(12, table.loads.get(2).intValue());
+        assertFalse(table.hasNext());
+        assertEquals(3, table.loads.size());
+    }
+
+    @Test
+    public void testFullLastPage() {
+        Table table = new Table(6, 3);
+        assertEquals(6, walk(table).size());
+        // A full page may be followed by more rows, so one more, empty page is loaded.
+        assertEquals(3, table.loads.size());
+        assertEquals(12, table.loads.get(2).intValue());
+        assertFalse(table.hasNext());
+        assertEquals(3, table.loads.size());
+    }
+
+    @Test
+    public void testEmptyTable() {
+        Table table = new Table(0, 3);
+        assertFalse(table.hasNext());
+        try {
+            table.next();
+            fail("A row of an empty table has been returned.");
+        } catch (NoSuchElementException expected) {
+            // There are no rows.
+        }
+        assertEquals(1, table.loads.size());
+    }
+
+    @Test
+    public void testHasNextDoesNotSkip() {
+        Table table = new Table(2, 1);
+        assertTrue(table.hasNext());
+        assertTrue(table.hasNext());
+        assertEquals(2, table.next().intValue());
+        assertEquals(4, table.next().intValue());
+        assertFalse(table.hasNext());
+    }
+
+    @Test
+    public void testExceptionsAreWrapped() {
+        final SQLException broken = new SQLException("broken");
+        KeysetIterator<Integer> iterator = new KeysetIterator<Integer>(10) {
+            @Override
+            protected List<Integer> load(int after, int limit) throws SQLException {
+                throw broken;
+            }
+
+            @Override
+            protected int getKey(Integer row) {
+                return row;
+            }
+        };
+        try {
+            iterator.hasNext();
+            fail("The exception of the script has been lost.");
+        } catch (IllegalStateException e) {
+            assertSame(broken, e.getCause());
+        }
+    }
+
+    @Test
+    public void testInvalidPageSize() {
+        try {
+            new Table(1, 0);
+            fail("An iterator without rows per page has been created.");
+        } catch (IllegalArgumentException expected) {
+            // The page size must be positive.
+        }
+    }
+}
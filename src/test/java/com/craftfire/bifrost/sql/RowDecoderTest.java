@@ -0,0 +1,174 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Date;
+
+import org.junit.Test;
+
+public class RowDecoderTest {
+    enum Field {
+        ID, NAME, POSTS, ACTIVATED, REGISTERED
+    }
+
+    public static class Member {
+        private final int id;
+        private String name;
+        private int posts;
+        private boolean activated;
+        private Date registered;
+
+        public Member(int id) {
+            this.id = id;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public void setPosts(int posts) {
+            this.posts = posts;
+        }
+
+        public void setActivated(boolean activated) {
+            this.activated = activated;
+        }
+
+        public void setRegistered(Date registered) {
+            this.registered = registered;
+        }
+
+        public void setFriends(Member friend) {
+        }
+    }
+
+    private static final RowMapper<Member> FACTORY = new RowMapper<Member>() {
+        @Override
+        public Member map(ResultSet row) throws SQLException {
+            return new Member(row.getInt(1));
+        }
+    };
+
+    /**
+     * Returns a result set whose current row holds the values, an exception value is thrown when it is read.
+     */
+    private static ResultSet row(final Object... values) {
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] {ResultSet.class},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws SQLException {
+                        Object value = values[(Integer) args[0] - 1];
+                        if (value instanceof SQLException) {
+                            throw (SQLException) value;
+                        }
+                        if (method.getName().equals("getString")) {
+                            return value;
+                        } else if (method.getName().equals("getInt")) {
+                            return ((Number) value).intValue();
+                        } else if (method.getName().equals("getLong")) {
+                            return ((Number) value).longValue();
+                        }
+                        throw new SQLException("Unsupported " + method.getName());
+                    }
+                });
+    }
+
+    private static RowDecoder<Member> decoder(Schema<Field> schema) {
+        return RowDecoder.builder(Member.class, schema)
+                .set(Field.NAME, "setName")
+                .set(Field.POSTS, "setPosts")
+                .set(Field.ACTIVATED, "setActivated")
+                .set(Field.REGISTERED, "setRegistered")
+                .build(FACTORY);
+    }
+
+    @Test
+    public void testDecode() throws SQLException {
+        Schema<Field> schema = new Schema<Field>("members", Field.class,
+                "id_member", "member_name", "posts", "is_activated", "date_registered");
+        Member member = decoder(schema).map(row(5, "alice", 12, 1, 1300000000L));
+        assertEquals(5, member.id);
+        assertEquals("alice", member.name);
+        assertEquals(12, member.posts);
+        assertTrue(member.activated);
+        assertEquals(new Date(1300000000000L), member.registered);
+        assertFalse(decoder(schema).map(row(6, "bob", 0, 0, 0L)).activated);
+    }
+
+    @Test
+    public void testMissingColumnsAreSkipped() throws SQLException {
+        Schema<Field> schema = new Schema<Field>("members", Field.class,
+                "ID_MEMBER", "memberName", null, null, "dateRegistered");
+        Member member = decoder(schema).map(row(5, "alice", 1300000000L));
+        assertEquals("alice", member.name);
+        assertEquals(0, member.posts);
+        assertFalse(member.activated);
+        assertEquals(new Date(1300000000000L), member.registered);
+    }
+
+    @Test
+    public void testNoSetters() throws SQLException {
+        Schema<Field> schema = new Schema<Field>("members", Field.class, "id", null, null, null, null);
+        Member member = RowDecoder.builder(Member.class, schema).build(FACTORY).map(row(9));
+        assertEquals(9, member.id);
+        assertNull(member.name);
+    }
+
+    @Test
+    public void testSQLExceptionIsPassedOn() {
+        Schema<Field> schema = new Schema<Field>("members", Field.class, "id", "name", "posts", null, null);
+        SQLException broken = new SQLException("broken");
+        try {
+            decoder(schema).map(row(1, "alice", broken));
+            fail("The broken column has been read.");
+        } catch (SQLException e) {
+            assertSame(broken, e);
+        }
+    }
+
+    @Test
+    public void testInvalidSetters() {
+        Schema<Field> schema = new Schema<Field>("members", Field.class, "id", "name", null, null, null);
+        try {
+            RowDecoder.builder(Member.class, schema).set(Field.NAME, "setNickname");
+            fail("A setter that doesn't exist has been added.");
+        } catch (IllegalArgumentException expected) {
+            // The class has no such setter.
+        }
+        try {
+            RowDecoder.builder(Member.class, schema).set(Field.NAME, "setFriends");
+            fail("A setter of an unsupported type has been added.");
+        } catch (IllegalArgumentException expected) {
+            // Members can't be read from a column.
+        }
+    }
+}
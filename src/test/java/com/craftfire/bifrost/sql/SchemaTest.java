@@ -0,0 +1,79 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class SchemaTest {
+    enum Member {
+        ID, NAME, EMAIL, REG_DATE
+    }
+
+    private static final Schema<Member> OLD = new Schema<Member>("members", Member.class,
+            "ID_MEMBER", "memberName", null, "dateRegistered");
+    private static final Schema<Member> NEW = new Schema<Member>("members", Member.class,
+            "id_member", "member_name", "email_address", "date_registered");
+
+    @Test
+    public void testColumns() {
+        assertEquals("`id_member`, `member_name`, `email_address`, `date_registered`", NEW.getColumns());
+        assertEquals("`ID_MEMBER`, `memberName`, `dateRegistered`", OLD.getColumns());
+        assertTrue(NEW.has(Member.EMAIL));
+        assertFalse(OLD.has(Member.EMAIL));
+        assertNull(OLD.getColumn(Member.EMAIL));
+        assertEquals("memberName", OLD.getColumn(Member.NAME));
+    }
+
+    @Test
+    public void testIndices() {
+        assertEquals(3, NEW.getIndex(Member.EMAIL));
+        assertEquals(4, NEW.getIndex(Member.REG_DATE));
+        // The missing column is skipped, so the columns after it move up.
+        assertEquals(0, OLD.getIndex(Member.EMAIL));
+        assertEquals(3, OLD.getIndex(Member.REG_DATE));
+    }
+
+    @Test
+    public void testResolve() {
+        String sql = "SELECT {members.*} FROM `{prefix}members` WHERE {members.reg_date} > ? AND `{members.id}` = ?";
+        assertEquals("SELECT `id_member`, `member_name`, `email_address`, `date_registered` FROM `{prefix}members` "
+                + "WHERE date_registered > ? AND `id_member` = ?", NEW.resolve(sql));
+        assertEquals("SELECT `ID_MEMBER`, `memberName`, `dateRegistered` FROM `{prefix}members` "
+                + "WHERE dateRegistered > ? AND `ID_MEMBER` = ?", OLD.resolve(sql));
+        // Tokens of other tables and of missing columns are left alone.
+        assertEquals("{messages.id} {members.email}", OLD.resolve("{messages.id} {members.email}"));
+    }
+
+    @Test
+    public void testWrongColumnCount() {
+        try {
+            new Schema<Member>("members", Member.class, "id_member");
+            fail("A schema without a column for every field has been created.");
+        } catch (IllegalArgumentException expected) {
+            // Every field needs a column or null.
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.craftfire.commons.database.DataManager;
+
+public class StatementCacheTest {
+    private static class StubDataManager extends DataManager {
+        private StubConnection connection = new StubConnection();
+
+        StubDataManager() {
+            super(null, "user", "password");
+        }
+
+        @Override
+        public Connection getConnection() {
+            return this.connection.getConnection();
+        }
+
+        @Override
+        public boolean isConnected() {
+            return true;
+        }
+    }
+
+    @Test
+    public void testReuse() throws Exception {
+        StubDataManager dataManager = new StubDataManager();
+        StatementCache cache = new StatementCache(dataManager, 2);
+        PreparedStatement statement = cache.prepare("SELECT 1");
+        assertSame(statement, cache.prepare("SELECT 1"));
+        assertEquals(1, dataManager.connection.getPrepared().size());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsClosed() throws Exception {
+        StubDataManager dataManager = new StubDataManager();
+        StatementCache cache = new StatementCache(dataManager, 2);
+        PreparedStatement first = cache.prepare("SELECT 1");
+        PreparedStatement second = cache.prepare("SELECT 2");
+        // Using the first statement makes the second one the least recently used.
+        cache.prepare("SELECT 1");
+        cache.prepare("SELECT 3");
+        assertEquals(Arrays.asList("SELECT 1", "SELECT 3"), cache.getQueries());
+        assertTrue(second.isClosed());
+        assertFalse(first.isClosed());
+        // A dropped statement is prepared again.
+        assertNotSame(second, cache.prepare("SELECT 2"));
+        assertEquals(4, dataManager.connection.getPrepared().size());
+    }
+
+    @Test
+    public void testNewConnectionDropsStatements() throws Exception {
+        StubDataManager dataManager = new StubDataManager();
+        StatementCache cache = new StatementCache(dataManager, 8);
+        PreparedStatement first = cache.prepare("SELECT 1");
+        PreparedStatement second = cache.prepare("SELECT 2");
+        StubConnection old = dataManager.connection;
+        dataManager.connection = new StubConnection();
+        PreparedStatement again = cache.prepare("SELECT 1");
+        assertNotSame(first, again);
+        assertTrue(first.isClosed());
+        assertTrue(second.isClosed());
+        assertEquals(2, old.getClosed().size());
+        assertEquals(Arrays.asList("SELECT 1"), dataManager.connection.getPrepared());
+        assertEquals(Arrays.asList("SELECT 1"), cache.getQueries());
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        StubDataManager dataManager = new StubDataManager();
+        StatementCache cache = new StatementCache(dataManager, 8);
+        PreparedStatement statement = cache.prepare("SELECT 1");
+        cache.clear();
+        assertTrue(statement.isClosed());
+        assertTrue(cache.getQueries().isEmpty());
+        assertNotSame(statement, cache.prepare("SELECT 1"));
+    }
+
+    @Test
+    public void testInsertsReturnKeys() throws Exception {
+        StubDataManager dataManager = new StubDataManager();
+        StatementCache cache = new StatementCache(dataManager, 8);
+        cache.prepare("  insert INTO `members` VALUES (?)");
+        cache.prepare("SELECT 1");
+        assertEquals(Arrays.asList(true, false), dataManager.connection.getReturningKeys());
+    }
+}
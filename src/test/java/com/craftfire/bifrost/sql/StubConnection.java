@@ -0,0 +1,421 @@
+/*
+ * This file is part of Bifrost.
+ *
+ * Copyright (c) 2011 CraftFire <http://www.craftfire.com/>
+ * Bifrost is licensed under the GNU Lesser General Public License.
+ *
+ * Bifrost is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Bifrost is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.craftfire.bifrost.sql;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.craftfire.commons.database.DataManager;
+
+/**
+ * A JDBC connection for tests, made of proxies, that records what the code under test prepares and runs.
+ * <p>
+ * Queries are answered by the {@link Responder} of the connection, see {@link #result(String[], List)}. Inserted
+ * rows get increasing keys, starting at 100. The calls of a transaction and of its statements are recorded in
+ * {@link #getCalls()}, every executed statement with its parameters in {@link #getExecutions()}.
+ */
+public class StubConnection implements InvocationHandler {
+    /**
+     * Answers the queries of a {@link StubConnection}.
+     */
+    public interface Responder {
+        /**
+         * Returns the result of a query.
+         *
+         * @param  sql           the compiled query
+         * @param  parameters    the values bound to its parameters, in their order
+         * @return               the result, see {@link StubConnection#result(String[], List)}
+         * @throws SQLException  to let the query fail
+         */
+        ResultSet query(String sql, List<Object> parameters) throws SQLException;
+    }
+
+    /**
+     * A statement that has been run, or added to a batch.
+     */
+    public static class Execution {
+        private final String method, sql;
+        private final List<Object> parameters;
+
+        private Execution(String method, String sql, List<Object> parameters) {
+            this.method = method;
+            this.sql = sql;
+            this.parameters = Collections.unmodifiableList(new ArrayList<Object>(parameters));
+        }
+
+        /**
+         * Returns the JDBC method that ran the statement, like {@code executeQuery} or {@code addBatch}.
+         *
+         * @return the name of the method
+         */
+        public String getMethod() {
+            return this.method;
+        }
+
+        /**
+         * Returns the query of the statement.
+         *
+         * @return the compiled query
+         */
+        public String getSQL() {
+            return this.sql;
+        }
+
+        /**
+         * Returns the values that were bound to the parameters of the statement.
+         *
+         * @return the values, in the order of the parameters
+         */
+        public List<Object> getParameters() {
+            return this.parameters;
+        }
+
+        @Override
+        public String toString() {
+            return this.method + " " + this.sql + " " + this.parameters;
+        }
+    }
+
+    private static final Responder EMPTY = new Responder() {
+        @Override
+        public ResultSet query(String sql, List<Object> parameters) {
+            return result(new String[0], new ArrayList<Object[]>());
+        }
+    };
+    private final Connection connection = proxy(Connection.class, this);
+    private final List<String> calls = new ArrayList<String>();
+    private final List<String> prepared = new ArrayList<String>();
+    private final List<Boolean> returningKeys = new ArrayList<Boolean>();
+    private final List<PreparedStatement> closed = new ArrayList<PreparedStatement>();
+    private final List<Execution> executions = new ArrayList<Execution>();
+    private Responder responder = EMPTY;
+    private boolean autoCommit = true;
+    private boolean brokenAutoCommit;
+    private int keysPerBatch = -1;
+    private int nextKey = 100;
+
+    /**
+     * Returns the proxy of the connection.
+     *
+     * @return the {@link Connection}
+     */
+    public Connection getConnection() {
+        return this.connection;
+    }
+
+    /**
+     * Returns a {@link DataManager} whose connection is this connection.
+     *
+     * @param  prefix  the table prefix of the data manager
+     * @return         the {@link DataManager}
+     */
+    public DataManager getDataManager(final String prefix) {
+        return new DataManager(null, "user", "password") {
+            @Override
+            public Connection getConnection() {
+                return StubConnection.this.connection;
+            }
+
+            @Override
+            public boolean isConnected() {
+                return true;
+            }
+
+            @Override
+            public String getPrefix() {
+                return prefix;
+            }
+        };
+    }
+
+    /**
+     * Sets the {@link Responder} that answers the queries, by default every result is empty.
+     *
+     * @param responder  the {@link Responder}
+     */
+    public void setResponder(Responder responder) {
+        this.responder = responder;
+    }
+
+    /**
+     * Makes {@code setAutoCommit(true)} fail, like a connection that broke during a transaction.
+     *
+     * @param brokenAutoCommit  {@code true} to fail
+     */
+    public void setBrokenAutoCommit(boolean brokenAutoCommit) {
+        this.brokenAutoCommit = brokenAutoCommit;
+    }
+
+    /**
+     * Limits the generated keys a batch returns, like a driver that only returns the key of its last row.
+     *
+     * @param keysPerBatch  the amount of keys, -1 for a key per row
+     */
+    public void setKeysPerBatch(int keysPerBatch) {
+        this.keysPerBatch = keysPerBatch;
+    }
+
+    /**
+     * Returns the calls of transactions and statements, like {@code setAutoCommit(false)}, {@code addBatch} or
+     * {@code commit}.
+     *
+     * @return the calls in their order
+     */
+    public List<String> getCalls() {
+        return this.calls;
+    }
+
+    /**
+     * Returns the queries that have been prepared.
+     *
+     * @return the queries in their order
+     */
+    public List<String> getPrepared() {
+        return this.prepared;
+    }
+
+    /**
+     * Returns whether each prepared statement has been asked to return the generated keys.
+     *
+     * @return a flag for every prepared query
+     */
+    public List<Boolean> getReturningKeys() {
+        return this.returningKeys;
+    }
+
+    /**
+     * Returns the statements that have been closed.
+     *
+     * @return the closed statements
+     */
+    public List<PreparedStatement> getClosed() {
+        return this.closed;
+    }
+
+    /**
+     * Returns the statements that have been run or added to a batch.
+     *
+     * @return the executions in their order
+     */
+    public List<Execution> getExecutions() {
+        return this.executions;
+    }
+
+    /**
+     * Returns the executions of the specified JDBC method whose query contains the text.
+     *
+     * @param  method  the JDBC method, like {@code addBatch}
+     * @param  text    the text the query contains
+     * @return         the matching executions in their order
+     */
+    public List<Execution> getExecutions(String method, String text) {
+        List<Execution> found = new ArrayList<Execution>();
+        for (Execution execution : this.executions) {
+            if (execution.getMethod().equals(method) && execution.getSQL().contains(text)) {
+                found.add(execution);
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws SQLException {
+        String name = method.getName();
+        if (name.equals("getAutoCommit")) {
+            return this.autoCommit;
+        } else if (name.equals("setAutoCommit")) {
+            this.calls.add("setAutoCommit(" + args[0] + ")");
+            if (this.brokenAutoCommit && (Boolean) args[0]) {
+                throw new SQLException("The connection is gone.");
+            }
+            this.autoCommit = (Boolean) args[0];
+        } else if (name.equals("commit") || name.equals("rollback")) {
+            this.calls.add(name);
+        } else if (name.equals("prepareStatement")) {
+            this.prepared.add((String) args[0]);
+            this.returningKeys.add(args.length > 1 && args[1].equals(Statement.RETURN_GENERATED_KEYS));
+            return statement((String) args[0]);
+        } else if (name.equals("isClosed")) {
+            return false;
+        }
+        return identity(proxy, method, args);
+    }
+
+    private PreparedStatement statement(final String sql) {
+        final List<Object> parameters = new ArrayList<Object>();
+        final List<Integer> keys = new ArrayList<Integer>();
+        return proxy(PreparedStatement.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws SQLException {
+                String name = method.getName();
+                if (name.equals("setObject")) {
+                    int index = (Integer) args[0];
+                    while (parameters.size() < index) {
+                        parameters.add(null);
+                    }
+                    parameters.set(index - 1, args[1]);
+                } else if (name.equals("clearParameters")) {
+                    parameters.clear();
+                } else if (name.equals("executeQuery")) {
+                    record(name, sql, parameters);
+                    return StubConnection.this.responder.query(sql, new ArrayList<Object>(parameters));
+                } else if (name.equals("addBatch") || name.equals("executeUpdate")) {
+                    record(name, sql, parameters);
+                    keys.add(StubConnection.this.nextKey++);
+                    return name.equals("executeUpdate") ? 1 : null;
+                } else if (name.equals("executeBatch")) {
+                    record(name, sql, Collections.emptyList());
+                    int[] counts = new int[keys.size()];
+                    Arrays.fill(counts, 1);
+                    return counts;
+                } else if (name.equals("getGeneratedKeys")) {
+                    int count = (StubConnection.this.keysPerBatch < 0) ? keys.size()
+                            : Math.min(StubConnection.this.keysPerBatch, keys.size());
+                    List<Object[]> rows = new ArrayList<Object[]>();
+                    for (int key : keys.subList(0, count)) {
+                        rows.add(new Object[] {key});
+                    }
+                    keys.clear();
+                    return result(new String[] {"GENERATED_KEY"}, rows);
+                } else if (name.equals("close")) {
+                    StubConnection.this.closed.add((PreparedStatement) proxy);
+                    return null;
+                } else if (name.equals("isClosed")) {
+                    return StubConnection.this.closed.contains(proxy);
+                }
+                return identity(proxy, method, args);
+            }
+        });
+    }
+
+    private void record(String method, String sql, List<Object> parameters) {
+        this.calls.add(method);
+        this.executions.add(new Execution(method, sql, parameters));
+    }
+
+    /**
+     * Returns a result with the specified rows.
+     * <p>
+     * Its columns can be read by their index or label with {@code getObject}, {@code getString}, {@code getInt} and
+     * {@code getLong}, and are described by {@code getMetaData}.
+     *
+     * @param  labels  the labels of the columns
+     * @param  rows    the values of every row, in the order of the labels
+     * @return         the {@link ResultSet}
+     */
+    public static ResultSet result(final String[] labels, final List<Object[]> rows) {
+        final ResultSetMetaData metaData = proxy(ResultSetMetaData.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("getColumnCount")) {
+                    return labels.length;
+                } else if (method.getName().equals("getColumnLabel") || method.getName().equals("getColumnName")) {
+                    return labels[(Integer) args[0] - 1];
+                }
+                return identity(proxy, method, args);
+            }
+        });
+        return proxy(ResultSet.class, new InvocationHandler() {
+            private int row = -1;
+            private boolean wasNull;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws SQLException {
+                String name = method.getName();
+                if (name.equals("next")) {
+                    return ++this.row < rows.size();
+                } else if (name.equals("getMetaData")) {
+                    return metaData;
+                } else if (name.equals("wasNull")) {
+                    return this.wasNull;
+                } else if (name.equals("findColumn")) {
+                    return column(args[0]) + 1;
+                } else if (name.equals("getObject") || name.equals("getString") || name.equals("getInt")
+                        || name.equals("getLong")) {
+                    Object value = rows.get(this.row)[column(args[0])];
+                    this.wasNull = value == null;
+                    if (name.equals("getString")) {
+                        return (value == null) ? null : value.toString();
+                    } else if (name.equals("getInt")) {
+                        return (value == null) ? 0 : Integer.parseInt(value.toString());
+                    } else if (name.equals("getLong")) {
+                        return (value == null) ? 0L : Long.parseLong(value.toString());
+                    }
+                    return value;
+                }
+                return identity(proxy, method, args);
+            }
+
+            private int column(Object column) throws SQLException {
+                if (column instanceof Integer) {
+                    return (Integer) column - 1;
+                }
+                for (int i = 0; i < labels.length; i++) {
+                    if (labels[i].equalsIgnoreCase((String) column)) {
+                        return i;
+                    }
+                }
+                throw new SQLException("The result has no column " + column + ".");
+            }
+        });
+    }
+
+    /**
+     * Returns a result with one row of one column, like the result of {@code SELECT MAX(...)}.
+     *
+     * @param  value  the value of the column
+     * @return        the {@link ResultSet}
+     */
+    public static ResultSet value(Object value) {
+        return result(new String[] {"value"}, Collections.singletonList(new Object[] {value}));
+    }
+
+    private static Object identity(Object proxy, Method method, Object[] args) {
+        if (method.getName().equals("equals")) {
+            return proxy == args[0];
+        } else if (method.getName().equals("hashCode")) {
+            return System.identityHashCode(proxy);
+        } else if (method.getName().equals("toString")) {
+            return method.getDeclaringClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+        } else if (method.getReturnType() == boolean.class) {
+            return false;
+        } else if (method.getReturnType() == int.class) {
+            return 0;
+        } else if (method.getReturnType() == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, handler));
+    }
+}